@@ -3,20 +3,31 @@ package com.scidef.betfair.api;
 import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
 import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
 import com.betfair.publicapi.types.exchange.v5.GetBetResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesResp;
 import com.betfair.publicapi.types.exchange.v5.GetMarketResp;
 import com.betfair.publicapi.types.exchange.v5.Runner;
 import com.scidef.betfair.api.aop.ExceededMaxRetriesException;
 import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.jfr.JfrEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.scidef.betfair.api.HorseRacing.HORSE_RACING_SPORT_ID;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
+import static com.scidef.betfair.api.MessageUtil.parseRemovedRunners;
 import static com.scidef.betfair.api.ResultsAPI.getPosition;
 
 /**
@@ -25,6 +36,11 @@ import static com.scidef.betfair.api.ResultsAPI.getPosition;
  * typically provided by the API when the bet is first returned but this can be
  * added afterwards.
  * <p/>
+ * The individual <code>enrichBetsWith...</code> methods each look up their own data.
+ * To enrich bets with everything at once, use <code>enrichBets</code>, which looks up
+ * each market only once and makes its API calls concurrently. Each lookup or calculation it
+ * makes is also recorded as a JFR <code>EnrichmentStage</code> event (see <code>JfrEvents</code>).
+ * <p/>
  * User: tompearson
  * Date: 20/01/2013
  */
@@ -32,12 +48,184 @@ public class BetEnrichment {
 
     private static final Logger LOG = LoggerFactory.getLogger(BetEnrichment.class);
 
+    private static final int DEFAULT_THREADS = 4;
+
     private final ExchangeAPI exchangeAPI;
     private final HorseRacing horseRacing;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor; // if set, the executor was created here and is shut down by shutdown
 
+    private MarketDataCoalescer marketDataCoalescer; // if set, market reads are shared with concurrent callers
+    private ResultsIndex resultsIndex; // if set, winners are read from the bulk results index
+
+    /**
+     * Create a bet enrichment with its own pool of daemon threads for <code>enrichBets</code>.
+     * The pool belongs to this instance, and is released by <code>shutdown</code>.
+     *
+     * @param exchangeAPI an instance of the <code>ExchangeAPI</code>
+     * @param horseRacing an instance of <code>HorseRacing</code>
+     */
     public BetEnrichment(ExchangeAPI exchangeAPI, HorseRacing horseRacing) {
+        this(exchangeAPI, horseRacing, Executors.newFixedThreadPool(DEFAULT_THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "bet-enrichment");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param exchangeAPI an instance of the <code>ExchangeAPI</code>
+     * @param horseRacing an instance of <code>HorseRacing</code>
+     * @param executor    the executor on which <code>enrichBets</code> makes its API calls; it
+     *                    still belongs to the caller, who must shut it down
+     */
+    public BetEnrichment(ExchangeAPI exchangeAPI, HorseRacing horseRacing, ExecutorService executor) {
+        this(exchangeAPI, horseRacing, executor, false);
+    }
+
+    private BetEnrichment(ExchangeAPI exchangeAPI, HorseRacing horseRacing, ExecutorService executor,
+                          boolean ownsExecutor) {
         this.exchangeAPI = exchangeAPI;
         this.horseRacing = horseRacing;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Shut down the pool created by the two argument constructor. Lookups already started are
+     * left to finish. An executor passed in by the caller is left running.
+     */
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Enrich a list of bets with runner names, number of runners, non-runner info, matched
+     * sizes, event outcomes and profit or loss, in a single pipeline.
+     * <p/>
+     * The bets are grouped by market once, and the market, market prices and results for
+     * each market are each fetched once. All of these calls, along with the
+     * <code>getBet</code> call for each placed bet, are made concurrently. The results
+     * are then applied in dependency order: non-runners and event outcomes are matched
+     * on runner name, so are applied after runner names, and profit or loss is
+     * calculated last.
+     * <p/>
+     * Where the <code>HorseRacing</code> non-runner index has been updated since the off,
+     * the market prices are not fetched at all.
+     * <p/>
+     * As with the individual enrichment methods, a failure to look up data for one market
+     * or bet is logged and the rest of the bets are still enriched.
+     *
+     * @param bets a list of <code>Bet</code>s to be enriched
+     * @return a report of the time taken by each stage of the pipeline
+     */
+    public EnrichmentReport enrichBets(List<Bet> bets) {
+        EnrichmentReport report = new EnrichmentReport();
+        Map<Integer, List<Bet>> betsByMarketId = mapBetsByMarketId(bets);
+
+        // start all the lookups, which are independent of each other
+        Map<Integer, Future<GetMarketResp>> markets = new HashMap<Integer, Future<GetMarketResp>>();
+        Map<Integer, Future<GetMarketPricesResp>> marketPrices = new HashMap<Integer, Future<GetMarketPricesResp>>();
+        Map<Integer, Future<List<String>>> winners = new HashMap<Integer, Future<List<String>>>();
+        for (final Integer marketId : betsByMarketId.keySet()) {
+            markets.put(marketId, submit(report, EnrichmentStage.RUNNER_NAMES, new Callable<GetMarketResp>() {
+                @Override
+                public GetMarketResp call() throws Exception {
+                    return getMarket(marketId);
+                }
+            }));
+            if (!isNonRunnerIndexCurrent(marketId, betsByMarketId.get(marketId))) {
+                marketPrices.put(marketId, submit(report, EnrichmentStage.NON_RUNNERS,
+                        new Callable<GetMarketPricesResp>() {
+                            @Override
+                            public GetMarketPricesResp call() throws Exception {
+                                return getMarketPrices(marketId);
+                            }
+                        }));
+            }
+            winners.put(marketId, submit(report, EnrichmentStage.EVENT_OUTCOMES, new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return fetchWinners(marketId);
+                }
+            }));
+        }
+        Map<Bet, Future<GetBetResp>> betResps = new LinkedHashMap<Bet, Future<GetBetResp>>();
+        for (final Bet bet : bets) {
+            if (bet.getBetId() != null) {
+                betResps.put(bet, submit(report, EnrichmentStage.MATCHED_SIZE, new Callable<GetBetResp>() {
+                    @Override
+                    public GetBetResp call() throws Exception {
+                        return exchangeAPI.getBet(bet.getBetId());
+                    }
+                }));
+            }
+        }
+
+        // runner names first, as the non-runner and outcome stages match on them
+        for (Map.Entry<Integer, List<Bet>> entry : betsByMarketId.entrySet()) {
+            GetMarketResp getMarketResp = await(markets.get(entry.getKey()), "runners", entry.getKey());
+            if (getMarketResp != null) {
+                applyRunners(entry.getValue(), getMarketResp);
+                if (nonRunnerIndex() != null) {
+                    nonRunnerIndex().registerRunners(entry.getKey(),
+                            getMarketResp.getMarket().getRunners().getRunner());
+                }
+            }
+        }
+        report.recordFinished(EnrichmentStage.RUNNER_NAMES);
+
+        for (Map.Entry<Integer, List<Bet>> entry : betsByMarketId.entrySet()) {
+            int marketId = entry.getKey();
+            if (!marketPrices.containsKey(marketId)) {
+                // already known from polling
+                applyNonRunners(marketId, entry.getValue(), Collections.<String>emptyList());
+                continue;
+            }
+            GetMarketPricesResp getMarketPricesResp = await(marketPrices.get(marketId), "non-runners", marketId);
+            if (getMarketPricesResp != null) {
+                if (nonRunnerIndex() != null) {
+                    nonRunnerIndex().update(marketId, getMarketPricesResp.getMarketPrices());
+                }
+                applyNonRunners(marketId, entry.getValue(),
+                        parseRemovedRunners(getMarketPricesResp.getMarketPrices().getRemovedRunners()));
+            }
+        }
+        report.recordFinished(EnrichmentStage.NON_RUNNERS);
+
+        for (Map.Entry<Bet, Future<GetBetResp>> entry : betResps.entrySet()) {
+            GetBetResp betResp = await(entry.getValue(), "bet", entry.getKey().getBetId());
+            if (betResp != null) {
+                applyMatchedSize(entry.getKey(), betResp);
+            }
+        }
+        report.recordFinished(EnrichmentStage.MATCHED_SIZE);
+
+        for (Map.Entry<Integer, List<Bet>> entry : betsByMarketId.entrySet()) {
+            List<String> marketWinners = await(winners.get(entry.getKey()), "winners", entry.getKey());
+            if (marketWinners != null) {
+                applyEventOutcomes(entry.getValue(), marketWinners);
+            }
+        }
+        report.recordFinished(EnrichmentStage.EVENT_OUTCOMES);
+
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginEnrichmentStage();
+        enrichBetsWithProfitOrLossCalculation(bets);
+        JfrEvents.commitEnrichmentStage(event, EnrichmentStage.PROFIT_OR_LOSS.name(), false);
+        report.recordCall(EnrichmentStage.PROFIT_OR_LOSS, System.nanoTime() - start, false);
+        report.recordFinished(EnrichmentStage.PROFIT_OR_LOSS);
+
+        report.recordElapsed();
+        LOG.info("Enriched " + bets.size() + " bets: " + report);
+        return report;
     }
 
     /**
@@ -54,19 +242,7 @@ public class BetEnrichment {
         for (Integer marketId : betsByMarketId.keySet()) {
             LOG.info("Looking up runners for marketId " + marketId);
             try {
-                GetMarketResp getMarketResp = exchangeAPI.getMarket(marketId);
-
-                Map<Integer, String> runnerNamesBySelectionId = new HashMap<Integer, String>();
-                final List<Runner> runnerList = getMarketResp.getMarket().getRunners().getRunner();
-                for (Runner runner : runnerList) {
-                    runnerNamesBySelectionId.put(runner.getSelectionId(), runner.getName());
-                }
-                for (Bet bet : betsByMarketId.get(marketId)) {
-                    if (runnerNamesBySelectionId.containsKey(bet.getSelectionId())) {
-                        bet.setRunnerName(runnerNamesBySelectionId.get(bet.getSelectionId()));
-                        bet.setNumberOfRunners(runnerList.size());
-                    }
-                }
+                applyRunners(betsByMarketId.get(marketId), getMarket(marketId));
             } catch (ExceededMaxRetriesException e) {
                 // ignore for now - enrichment can be attempted at a later stage
                 LOG.warn("Exceeded max retries when attempting to look up runners for marketId " + marketId);
@@ -77,6 +253,9 @@ public class BetEnrichment {
     /**
      * Enrich a list of bets with data about whether or not a runner is, in fact,
      * a non-runner.
+     * <p/>
+     * If the market has been polled since its start time, the non-runners are taken
+     * from the <code>HorseRacing</code> non-runner index rather than looked up again.
      *
      * @param bets a list of <code>Bet</code>s to be enriched
      */
@@ -85,6 +264,10 @@ public class BetEnrichment {
 
         // find the non-runners for each marketId and update each bet
         for (Integer marketId : betsByMarketId.keySet()) {
+            if (isNonRunnerIndexCurrent(marketId, betsByMarketId.get(marketId))) {
+                applyNonRunners(marketId, betsByMarketId.get(marketId), Collections.<String>emptyList());
+                continue;
+            }
             List<String> nonRunners;
             try {
                 nonRunners = horseRacing.getNonRunners(marketId);
@@ -93,13 +276,7 @@ public class BetEnrichment {
                 LOG.warn(e.getMessage());
                 continue;
             }
-            for (Bet bet : betsByMarketId.get(marketId)) {
-                if (nonRunners.contains(bet.getRunnerName())) {
-                    bet.setNonRunner(true);
-                } else {
-                    bet.setNonRunner(false);
-                }
-            }
+            applyNonRunners(marketId, betsByMarketId.get(marketId), nonRunners);
         }
     }
 
@@ -112,10 +289,7 @@ public class BetEnrichment {
     public void enrichBetsWithMatchedSize(List<Bet> bets) throws BetfairException {
         for (Bet bet : bets) {
             if (bet.getBetId() != null) {
-                GetBetResp betResp = exchangeAPI.getBet(bet.getBetId());
-                if (betResp.getBet().getBetStatus().equals(BetStatusEnum.S)) {
-                    bet.setAmountMatched(betResp.getBet().getMatchedSize());
-                }
+                applyMatchedSize(bet, exchangeAPI.getBet(bet.getBetId()));
             }
         }
     }
@@ -147,32 +321,169 @@ public class BetEnrichment {
             if (bet.getNonRunner() == null || bet.getEventOutcome() == null) {
                 continue;
             }
-            if (bet.getBetType().equals(BetTypeEnum.L)) {
-                if (bet.getNonRunner()) {
-                    bet.setProfitOrLoss(0.0);
-                } else if (bet.getEventOutcome().equals(1)) {
-                    bet.setProfitOrLoss(-1 * (bet.getPrice() - 1));
-                } else {
-                    bet.setProfitOrLoss(1.0);
-                }
+            if (bet.getBetType().equals(BetTypeEnum.L) || bet.getBetType().equals(BetTypeEnum.B)) {
+                bet.setProfitOrLoss(calculateProfitOrLoss(bet.getBetType(), bet.getPrice(),
+                        bet.getNonRunner(), bet.getEventOutcome()));
             }
-            if (bet.getBetType().equals(BetTypeEnum.B)) {
-                if (bet.getNonRunner()) {
-                    bet.setProfitOrLoss(0.0);
-                } else if (bet.getEventOutcome().equals(1)) {
-                    bet.setProfitOrLoss(bet.getPrice() - 1);
-                } else {
-                    bet.setProfitOrLoss(-1.0);
-                }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Enriched bet with profit or loss calculation: " + bet);
             }
+        }
+    }
 
-            LOG.info("Enriched bet with profit or loss calculation: " + bet);
+    /**
+     * Calculate the profit or loss of a level-stakes bet (ie, a stake or liability of 1).
+     *
+     * @param betType      the bet type (back or lay)
+     * @param price        the price (odds) at which the bet was placed
+     * @param nonRunner    whether or not the runner turned out to be a non-runner
+     * @param eventOutcome the position the runner placed; 0 if the runner did not place
+     * @return the profit (positive) or loss (negative) of the bet
+     */
+    public static double calculateProfitOrLoss(BetTypeEnum betType, double price, boolean nonRunner,
+                                               int eventOutcome) {
+        if (nonRunner) {
+            return 0.0;
+        }
+        if (betType.equals(BetTypeEnum.L)) {
+            return eventOutcome == 1 ? -1 * (price - 1) : 1.0;
         }
+        return eventOutcome == 1 ? price - 1 : -1.0;
+    }
+
+    public MarketDataCoalescer getMarketDataCoalescer() {
+        return marketDataCoalescer;
+    }
+
+    public void setMarketDataCoalescer(MarketDataCoalescer marketDataCoalescer) {
+        this.marketDataCoalescer = marketDataCoalescer;
+    }
+
+    public ResultsIndex getResultsIndex() {
+        return resultsIndex;
+    }
+
+    public void setResultsIndex(ResultsIndex resultsIndex) {
+        this.resultsIndex = resultsIndex;
     }
 
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
+    // the results lookup used by enrichBets - overridden in tests
+    List<String> fetchWinners(int marketId) throws BetfairException {
+        ResultsIndex resultsIndex = this.resultsIndex;
+        if (resultsIndex != null) {
+            return resultsIndex.getWinners(marketId);
+        }
+        return ResultsAPI.getWinners(HORSE_RACING_SPORT_ID, marketId);
+    }
+
+    private GetMarketResp getMarket(int marketId) throws BetfairException {
+        return marketDataCoalescer != null ?
+                marketDataCoalescer.getMarket(marketId) : exchangeAPI.getMarket(marketId);
+    }
+
+    private GetMarketPricesResp getMarketPrices(int marketId) throws BetfairException {
+        return marketDataCoalescer != null ?
+                marketDataCoalescer.getMarketPrices(marketId) : exchangeAPI.getMarketPrices(marketId);
+    }
+
+    private <T> Future<T> submit(final EnrichmentReport report, final EnrichmentStage stage,
+                                 final Callable<T> callable) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+                Object event = JfrEvents.beginEnrichmentStage();
+                boolean failed = true;
+                try {
+                    T result = callable.call();
+                    failed = false;
+                    return result;
+                } finally {
+                    JfrEvents.commitEnrichmentStage(event, stage.name(), failed);
+                    report.recordCall(stage, System.nanoTime() - start, failed);
+                }
+            }
+        });
+    }
+
+    private static <T> T await(Future<T> future, String what, Object id) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // restore interrupted status; the remaining lookups will fail fast
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while waiting for " + what + " for " + id);
+        } catch (ExecutionException e) {
+            // ignore and continue enriching other bets
+            LOG.warn("Failed to look up " + what + " for " + id + ": " + e.getCause());
+        }
+        return null;
+    }
+
+    private static void applyRunners(List<Bet> bets, GetMarketResp getMarketResp) {
+        Map<Integer, String> runnerNamesBySelectionId = new HashMap<Integer, String>();
+        final List<Runner> runnerList = getMarketResp.getMarket().getRunners().getRunner();
+        for (Runner runner : runnerList) {
+            runnerNamesBySelectionId.put(runner.getSelectionId(), runner.getName());
+        }
+        for (Bet bet : bets) {
+            if (runnerNamesBySelectionId.containsKey(bet.getSelectionId())) {
+                bet.setRunnerName(runnerNamesBySelectionId.get(bet.getSelectionId()));
+                bet.setNumberOfRunners(runnerList.size());
+            }
+        }
+    }
+
+    private NonRunnerIndex nonRunnerIndex() {
+        return horseRacing != null ? horseRacing.getNonRunnerIndex() : null;
+    }
+
+    // the index is only trusted if it was updated after the off, by which time all removals are known
+    private boolean isNonRunnerIndexCurrent(int marketId, List<Bet> bets) {
+        NonRunnerIndex index = nonRunnerIndex();
+        if (index == null) {
+            return false;
+        }
+        long latestEventTime = Long.MIN_VALUE;
+        for (Bet bet : bets) {
+            if (bet.getEventTime() == null) {
+                return false;
+            }
+            latestEventTime = Math.max(latestEventTime, bet.getEventTime().getTime());
+        }
+        return index.isCurrent(marketId, latestEventTime);
+    }
+
+    private void applyNonRunners(int marketId, List<Bet> bets, List<String> nonRunners) {
+        NonRunnerIndex index = nonRunnerIndex();
+        for (Bet bet : bets) {
+            if (nonRunners.contains(bet.getRunnerName()) ||
+                    (index != null && index.isNonRunner(marketId, bet.getSelectionId(), bet.getRunnerName()))) {
+                bet.setNonRunner(true);
+            } else {
+                bet.setNonRunner(false);
+            }
+        }
+    }
+
+    private static void applyMatchedSize(Bet bet, GetBetResp betResp) {
+        if (betResp.getBet().getBetStatus().equals(BetStatusEnum.S)) {
+            bet.setAmountMatched(betResp.getBet().getMatchedSize());
+        }
+    }
+
+    private static void applyEventOutcomes(List<Bet> bets, List<String> winners) {
+        for (Bet bet : bets) {
+            if (bet.getRunnerName() != null) {
+                bet.setEventOutcome(winners.indexOf(bet.getRunnerName()) + 1);
+            }
+        }
+    }
+
     private static Map<Integer, List<Bet>> mapBetsByMarketId(List<Bet> bets) {
         // break down the bets by marketId
         Map<Integer, List<Bet>> betsByMarketId = new HashMap<Integer, List<Bet>>();
@@ -0,0 +1,246 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.aop.DeadlineExceededException;
+import com.scidef.betfair.api.exception.BetfairException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.ws.BindingProvider;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A point in time after which the result of a call is no longer wanted, eg the off time of
+ * the race whose prices are being read.
+ * <p/>
+ * A deadline is set for the current thread and applies to every API call the thread makes
+ * until it is restored, without being passed through each method:
+ * <pre>
+ * Deadline previous = Deadline.set(Deadline.after(2000));
+ * try {
+ *     horseRacing.getRunners(marketId);
+ * } finally {
+ *     Deadline.restore(previous);
+ * }
+ * </pre>
+ * The <code>RetryMethodAspect</code> does not start an attempt, or sleep before a retry, once
+ * the deadline has passed or would pass first. The HTTP connections of the
+ * <code>StreamingExchangeAPI</code> and <code>ResultsAPI</code> have their timeouts cut to the
+ * time remaining, so a call in progress is abandoned when the deadline passes. So do the SOAP
+ * ports: the request context of a JAX-WS port is shared by every thread using it, so the
+ * <code>GlobalAPI</code> and <code>ExchangeAPI</code> give each thread a port of its own,
+ * and set its connect and request timeouts before each call.
+ * <p/>
+ * In each case a <code>DeadlineExceededException</code> is thrown, and the miss is counted
+ * in total and by operation.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public final class Deadline {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Deadline.class);
+
+    // the request context properties read by the JAX-WS reference implementation, in ms
+    static final String CONNECT_TIMEOUT = "com.sun.xml.ws.connect.timeout";
+    static final String REQUEST_TIMEOUT = "com.sun.xml.ws.request.timeout";
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final ConcurrentMap<String, AtomicLong> MISSES_BY_OPERATION =
+            new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * A call to make with a deadline set.
+     */
+    public interface Call<V> {
+
+        V call() throws BetfairException;
+
+    }
+
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param timeoutMillis the time from now, in ms
+     * @return a deadline that time from now
+     */
+    public static Deadline after(long timeoutMillis) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * Set the deadline for the calls made by the current thread. If the thread already has
+     * an earlier deadline, that one is kept.
+     *
+     * @param deadline the deadline
+     * @return the deadline the thread had before, to be passed to <code>restore</code>
+     */
+    public static Deadline set(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+        if (previous == null || deadline.expiresAtNanos - previous.expiresAtNanos < 0) {
+            CURRENT.set(deadline);
+        }
+        return previous;
+    }
+
+    /**
+     * Restore the deadline the current thread had before a call to <code>set</code>.
+     *
+     * @param previous the deadline returned by <code>set</code>, which may be null
+     */
+    public static void restore(Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Make a call with a deadline set for the current thread.
+     *
+     * @param timeoutMillis the time from now, in ms, by which the call must complete
+     * @param call          the call
+     * @return the result of the call
+     * @throws BetfairException if the call fails
+     */
+    public static <V> V call(long timeoutMillis, Call<V> call) throws BetfairException {
+        Deadline previous = set(after(timeoutMillis));
+        try {
+            return call.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * @return the deadline for the current thread, or null if there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Check the deadline for the current thread before doing some work.
+     *
+     * @param operation the operation about to be done, eg <code>ExchangeAPI.getMarketPricesCompressed</code>
+     * @return the time remaining, in ms (at least 1), or <code>Long.MAX_VALUE</code> if there is no deadline
+     * @throws DeadlineExceededException if the deadline has passed, which is counted as a miss
+     */
+    public static long checkCurrent(String operation) {
+        Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        long remaining = deadline.getRemainingMillis();
+        if (remaining <= 0) {
+            throw miss(operation, null);
+        }
+        return remaining;
+    }
+
+    /**
+     * Record that an operation has missed the deadline for the current thread.
+     *
+     * @param operation the operation
+     * @param cause     the exception that the operation failed with, if any
+     * @return the exception to throw
+     */
+    public static DeadlineExceededException miss(String operation, Throwable cause) {
+        MISSES.incrementAndGet();
+        AtomicLong misses = MISSES_BY_OPERATION.get(operation);
+        if (misses == null) {
+            AtomicLong created = new AtomicLong();
+            misses = MISSES_BY_OPERATION.putIfAbsent(operation, created);
+            if (misses == null) {
+                misses = created;
+            }
+        }
+        misses.incrementAndGet();
+        LOG.warn("Deadline missed by " + operation);
+        return new DeadlineExceededException(operation, cause);
+    }
+
+    /**
+     * @return true if the current thread has a deadline and it has passed
+     */
+    public static boolean isCurrentExpired() {
+        Deadline deadline = CURRENT.get();
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * @return the number of deadline misses, for all operations
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    /**
+     * @return the number of deadline misses by operation
+     */
+    public static Map<String, Long> getMissesByOperation() {
+        Map<String, Long> misses = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : MISSES_BY_OPERATION.entrySet()) {
+            misses.put(entry.getKey(), entry.getValue().get());
+        }
+        return misses;
+    }
+
+    /**
+     * @return the time remaining until this deadline, in ms, rounded up; 0 once it has passed
+     */
+    public long getRemainingMillis() {
+        long remainingNanos = expiresAtNanos - System.nanoTime();
+        return remainingNanos <= 0 ? 0 : (remainingNanos + 999999) / 1000000;
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[" + getRemainingMillis() + "ms]";
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // cut a connection timeout (where 0 means none) to the time remaining for the current thread
+    static int timeoutMillis(int configuredMillis, String operation) {
+        long remaining = checkCurrent(operation);
+        if (configuredMillis > 0 && configuredMillis <= remaining) {
+            return configuredMillis;
+        }
+        return remaining == Long.MAX_VALUE ? configuredMillis : (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    // set the timeouts of a SOAP port from the current thread's deadline, if any; the port must be
+    // the thread's own, as its request context applies to every call made through it
+    static void applyTo(Object port, String operation) {
+        long remaining = checkCurrent(operation);
+        if (!(port instanceof BindingProvider)) {
+            return;
+        }
+        Map<String, Object> requestContext = ((BindingProvider) port).getRequestContext();
+        if (remaining == Long.MAX_VALUE) {
+            requestContext.remove(CONNECT_TIMEOUT);
+            requestContext.remove(REQUEST_TIMEOUT);
+        } else {
+            Integer timeoutMillis = (int) Math.min(remaining, Integer.MAX_VALUE);
+            requestContext.put(CONNECT_TIMEOUT, timeoutMillis);
+            requestContext.put(REQUEST_TIMEOUT, timeoutMillis);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.scidef.betfair.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage timings and call counts for one run of the bet enrichment pipeline.
+ * <p/>
+ * For each stage, the report records the number of calls made, how many of them
+ * failed, the total time spent in those calls and how long after the start of the
+ * run the stage finished. As the calls of a stage run concurrently, the total call
+ * time can be greater than the time taken for the stage to finish.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class EnrichmentReport {
+
+    private static final int STAGE_COUNT = EnrichmentStage.values().length;
+
+    private final long startNanos;
+    private final AtomicLongArray calls = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray failures = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray callNanos = new AtomicLongArray(STAGE_COUNT);
+    private final AtomicLongArray finishedAfterNanos = new AtomicLongArray(STAGE_COUNT);
+    private volatile long elapsedNanos;
+
+    EnrichmentReport() {
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param stage the enrichment stage
+     * @return the number of calls made for the stage
+     */
+    public long getCalls(EnrichmentStage stage) {
+        return calls.get(stage.ordinal());
+    }
+
+    /**
+     * @param stage the enrichment stage
+     * @return the number of calls for the stage that failed
+     */
+    public long getFailures(EnrichmentStage stage) {
+        return failures.get(stage.ordinal());
+    }
+
+    /**
+     * @param stage the enrichment stage
+     * @return the total time, in ms, spent in calls for the stage
+     */
+    public long getCallTime(EnrichmentStage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(callNanos.get(stage.ordinal()));
+    }
+
+    /**
+     * @param stage the enrichment stage
+     * @return the time, in ms, from the start of the run until the stage finished
+     */
+    public long getFinishedAfter(EnrichmentStage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(finishedAfterNanos.get(stage.ordinal()));
+    }
+
+    /**
+     * @return the total time, in ms, taken by the run
+     */
+    public long getElapsedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("EnrichmentReport{elapsed=").append(getElapsedTime()).append("ms");
+        for (EnrichmentStage stage : EnrichmentStage.values()) {
+            sb.append(", ").append(stage).append("={calls=").append(getCalls(stage))
+                    .append(", failures=").append(getFailures(stage))
+                    .append(", callTime=").append(getCallTime(stage))
+                    .append("ms, finishedAfter=").append(getFinishedAfter(stage)).append("ms}");
+        }
+        return sb.append('}').toString();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    void recordCall(EnrichmentStage stage, long nanos, boolean failed) {
+        calls.incrementAndGet(stage.ordinal());
+        callNanos.addAndGet(stage.ordinal(), nanos);
+        if (failed) {
+            failures.incrementAndGet(stage.ordinal());
+        }
+    }
+
+    void recordFinished(EnrichmentStage stage) {
+        finishedAfterNanos.set(stage.ordinal(), System.nanoTime() - startNanos);
+    }
+
+    void recordElapsed() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.scidef.betfair.api;
+
+/**
+ * The stages of the bet enrichment pipeline run by <code>BetEnrichment.enrichBets</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public enum EnrichmentStage {
+
+    /** runner names and number of runners, from <code>getMarket</code> */
+    RUNNER_NAMES,
+
+    /** non-runners, from the removed runners in <code>getMarketPrices</code> */
+    NON_RUNNERS,
+
+    /** matched sizes, from <code>getBet</code> */
+    MATCHED_SIZE,
+
+    /** event outcomes, from the results feed */
+    EVENT_OUTCOMES,
+
+    /** profit or loss, calculated locally */
+    PROFIT_OR_LOSS
+
+}
@@ -2,6 +2,7 @@ package com.scidef.betfair.api;
 
 import com.betfair.publicapi.types.exchange.v5.APIRequest;
 import com.betfair.publicapi.types.exchange.v5.APIRequestHeader;
+import com.betfair.publicapi.types.exchange.v5.ArrayOfInt;
 import com.betfair.publicapi.types.exchange.v5.ArrayOfPlaceBets;
 import com.betfair.publicapi.types.exchange.v5.BetCategoryTypeEnum;
 import com.betfair.publicapi.types.exchange.v5.BetPersistenceTypeEnum;
@@ -9,6 +10,7 @@ import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
 import com.betfair.publicapi.types.exchange.v5.BetsOrderByEnum;
 import com.betfair.publicapi.types.exchange.v5.GetAccountFundsReq;
 import com.betfair.publicapi.types.exchange.v5.GetAccountFundsResp;
+import com.betfair.publicapi.types.exchange.v5.GetAllMarketsErrorEnum;
 import com.betfair.publicapi.types.exchange.v5.GetAllMarketsReq;
 import com.betfair.publicapi.types.exchange.v5.GetAllMarketsResp;
 import com.betfair.publicapi.types.exchange.v5.GetBetErrorEnum;
@@ -39,13 +41,20 @@ import java.util.List;
 /**
  * This class provides methods wrapping a subset of Betfair's exchange services.
  * <p/>
+ * An instance holds no state of its own beyond the service ports and the <code>GlobalAPI</code>
+ * it reads the session token from, so it is safe to share between threads. Each thread calls
+ * through a service port of its own, created on its first call.
+ * <p/>
+ * If the calling thread has a <code>Deadline</code>, a request is not sent once it has passed,
+ * and the timeouts of each request are cut to the time remaining.
+ * <p/>
  * User: tompearson
  * Date: 21/05/2010
  */
 public class ExchangeAPI {
 
-    private BFExchangeService exchangeService;
-    private GlobalAPI globalAPI;
+    private final ThreadLocal<BFExchangeService> exchangePorts;
+    private final GlobalAPI globalAPI;
 
     /**
      * Primary constructor
@@ -54,7 +63,30 @@ public class ExchangeAPI {
      */
     public ExchangeAPI(GlobalAPI globalAPI) {
         this.globalAPI = globalAPI;
-        exchangeService = new BFExchangeService_Service().getBFExchangeService();
+        final BFExchangeService_Service service = new BFExchangeService_Service();
+        this.exchangePorts = new ThreadLocal<BFExchangeService>() {
+            @Override
+            protected BFExchangeService initialValue() {
+                return service.getBFExchangeService();
+            }
+        };
+    }
+
+    /**
+     * Create an instance using the service ports built by a started <code>ServiceBootstrap</code>.
+     *
+     * @param globalAPI an instance of the <code>GlobalAPI</code>, used to retrieve session details
+     * @param bootstrap a started service bootstrap
+     */
+    public ExchangeAPI(GlobalAPI globalAPI, final ServiceBootstrap bootstrap) {
+        this.globalAPI = globalAPI;
+        bootstrap.getExchangeService(); // fails fast if the bootstrap has not been started
+        this.exchangePorts = new ThreadLocal<BFExchangeService>() {
+            @Override
+            protected BFExchangeService initialValue() {
+                return bootstrap.getExchangeService();
+            }
+        };
     }
 
     /**
@@ -64,8 +96,8 @@ public class ExchangeAPI {
      */
     public GetAccountFundsResp getAccountFunds() {
         GetAccountFundsReq req = new GetAccountFundsReq();
-        addHeader(req);
-        return exchangeService.getAccountFunds(req);
+        addHeader(req, "ExchangeAPI.getAccountFunds");
+        return exchangeService().getAccountFunds(req);
     }
 
     /**
@@ -75,8 +107,33 @@ public class ExchangeAPI {
      */
     public GetAllMarketsResp getAllMarkets() {
         GetAllMarketsReq req = new GetAllMarketsReq();
-        addHeader(req);
-        return exchangeService.getAllMarkets(req);
+        addHeader(req, "ExchangeAPI.getAllMarkets");
+        return exchangeService().getAllMarkets(req);
+    }
+
+    /**
+     * Retrieve information about all of the markets that are currently active or suspended
+     * for the given event types (sports).
+     *
+     * @param eventTypeIds the ids of the event types to retrieve markets for
+     * @return a <code>GetAllMarketsResp</code> object containing details of the markets
+     * @throws BetfairException if there is a problem retrieving the markets
+     */
+    public GetAllMarketsResp getAllMarkets(int... eventTypeIds) throws BetfairException {
+        GetAllMarketsReq req = new GetAllMarketsReq();
+        addHeader(req, "ExchangeAPI.getAllMarkets");
+        ArrayOfInt ids = new ArrayOfInt();
+        for (int eventTypeId : eventTypeIds) {
+            ids.getInt().add(eventTypeId);
+        }
+        req.setEventTypeIds(ids);
+        GetAllMarketsResp resp = exchangeService().getAllMarkets(req);
+        if (resp.getErrorCode().equals(GetAllMarketsErrorEnum.OK)) {
+            return resp;
+        }
+        MessageUtil.checkResponseForAPIError(resp);
+        throw new BetfairException("getAllMarkets error. Error code: " + resp.getErrorCode() + "; API code: "
+                + resp.getHeader().getErrorCode());
     }
 
     /**
@@ -90,9 +147,9 @@ public class ExchangeAPI {
      */
     public GetMarketResp getMarket(int marketId) throws BetfairException {
         GetMarketReq req = new GetMarketReq();
-        addHeader(req);
+        addHeader(req, "ExchangeAPI.getMarket");
         req.setMarketId(marketId);
-        GetMarketResp resp = exchangeService.getMarket(req);
+        GetMarketResp resp = exchangeService().getMarket(req);
         if (resp.getErrorCode().equals(GetMarketErrorEnum.OK)) {
             return resp;
         }
@@ -112,9 +169,9 @@ public class ExchangeAPI {
      */
     public GetMarketPricesResp getMarketPrices(int marketId) throws BetfairException {
         GetMarketPricesReq req = new GetMarketPricesReq();
-        addHeader(req);
+        addHeader(req, "ExchangeAPI.getMarketPrices");
         req.setMarketId(marketId);
-        GetMarketPricesResp resp = exchangeService.getMarketPrices(req);
+        GetMarketPricesResp resp = exchangeService().getMarketPrices(req);
         if (resp.getErrorCode().equals(GetMarketPricesErrorEnum.OK)) {
             return resp;
         }
@@ -134,9 +191,9 @@ public class ExchangeAPI {
      */
     public GetMarketPricesCompressedResp getMarketPricesCompressed(int marketId) throws BetfairException {
         GetMarketPricesCompressedReq req = new GetMarketPricesCompressedReq();
-        addHeader(req);
+        addHeader(req, "ExchangeAPI.getMarketPricesCompressed");
         req.setMarketId(marketId);
-        GetMarketPricesCompressedResp resp = exchangeService.getMarketPricesCompressed(req);
+        GetMarketPricesCompressedResp resp = exchangeService().getMarketPricesCompressed(req);
         if (resp.getErrorCode().equals(GetMarketPricesErrorEnum.OK)) {
             return resp;
         }
@@ -155,9 +212,9 @@ public class ExchangeAPI {
      */
     public GetBetResp getBet(long betId) throws BetfairException {
         GetBetReq req = new GetBetReq();
-        addHeader(req);
+        addHeader(req, "ExchangeAPI.getBet");
         req.setBetId(betId);
-        GetBetResp resp = exchangeService.getBet(req);
+        GetBetResp resp = exchangeService().getBet(req);
         if (resp.getErrorCode().equals(GetBetErrorEnum.OK)) {
             return resp;
         }
@@ -176,14 +233,14 @@ public class ExchangeAPI {
      */
     public GetMUBetsResp getMatchedAndUnmatchedBets(int marketId, BetStatusEnum betStatus) throws BetfairException {
         GetMUBetsReq req = new GetMUBetsReq();
-        addHeader(req);
+        addHeader(req, "ExchangeAPI.getMatchedAndUnmatchedBets");
         req.setMarketId(marketId);
         req.setBetStatus(betStatus);
         req.setOrderBy(BetsOrderByEnum.NONE);
         req.setRecordCount(200);
         req.setSortOrder(SortOrderEnum.ASC);
         req.setStartRecord(0);
-        GetMUBetsResp resp = exchangeService.getMUBets(req);
+        GetMUBetsResp resp = exchangeService().getMUBets(req);
         if (resp.getErrorCode().equals(GetMUBetsErrorEnum.OK)) {
             return resp;
         }
@@ -201,7 +258,7 @@ public class ExchangeAPI {
      */
     public PlaceBetsResp placeBets(List<Bet> bets) throws BetfairException {
         PlaceBetsReq req = new PlaceBetsReq();
-        addHeader(req);
+        addHeader(req, "ExchangeAPI.placeBets");
         ArrayOfPlaceBets arrayOfPlaceBets = new ArrayOfPlaceBets();
         for (Bet bet : bets) {
             PlaceBets placeBets = new PlaceBets();
@@ -217,7 +274,7 @@ public class ExchangeAPI {
             arrayOfPlaceBets.getPlaceBets().add(placeBets);
         }
         req.setBets(arrayOfPlaceBets);
-        PlaceBetsResp resp = exchangeService.placeBets(req);
+        PlaceBetsResp resp = exchangeService().placeBets(req);
         if (resp.getErrorCode().equals(PlaceBetsErrorEnum.OK)) {
             return resp;
         }
@@ -229,19 +286,30 @@ public class ExchangeAPI {
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
-    // simple helper method to set the current session token on a request
-    private void addHeader(APIRequest req) {
+    // the calling thread's service port
+    private BFExchangeService exchangeService() {
+        return exchangePorts.get();
+    }
+
+    // simple helper method to set the current session token on a request, and the timeouts from any deadline
+    private void addHeader(APIRequest req, String operation) {
         APIRequestHeader header = new APIRequestHeader();
         header.setSessionToken(globalAPI.getSessionToken());
         req.setHeader(header);
+        Deadline.applyTo(exchangeService(), operation);
     }
 
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
     // for tests
-    ExchangeAPI(BFExchangeService exchangeService, GlobalAPI globalAPI) {
-        this.exchangeService = exchangeService;
+    ExchangeAPI(final BFExchangeService exchangeService, GlobalAPI globalAPI) {
+        this.exchangePorts = new ThreadLocal<BFExchangeService>() {
+            @Override
+            protected BFExchangeService initialValue() {
+                return exchangeService;
+            }
+        };
         this.globalAPI = globalAPI;
     }
 }
@@ -18,10 +18,19 @@ import com.betfair.publicapi.v3.bfglobalservice.BFGlobalService;
 import com.betfair.publicapi.v3.bfglobalservice.BFGlobalService_Service;
 import com.scidef.betfair.api.exception.BetfairException;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * This class provides methods wrapping some of Betfair's high-level global services such as login,
  * logout and event type retrieval.
  * <p/>
+ * An instance is safe to share between threads. The session token is held in an atomic
+ * reference, so every request is sent with the token of a complete login (or logout), and
+ * each thread calls through a service port of its own, created on its first call.
+ * <p/>
+ * If the calling thread has a <code>Deadline</code>, a request is not sent once it has passed,
+ * and the timeouts of each request are cut to the time remaining.
+ * <p/>
  * User: tompearson
  * Date: 21/05/2010
  */
@@ -29,14 +38,35 @@ public class GlobalAPI {
 
     public static final int FREE_API_PRODUCT_ID = 82;
 
-    private BFGlobalService globalService;
-    private String sessionToken;
+    private final ThreadLocal<BFGlobalService> globalPorts;
+    private final AtomicReference<String> sessionToken = new AtomicReference<String>();
 
     /**
      * Primary constructor
      */
     public GlobalAPI() {
-        this.globalService = new BFGlobalService_Service().getBFGlobalService();
+        final BFGlobalService_Service service = new BFGlobalService_Service();
+        this.globalPorts = new ThreadLocal<BFGlobalService>() {
+            @Override
+            protected BFGlobalService initialValue() {
+                return service.getBFGlobalService();
+            }
+        };
+    }
+
+    /**
+     * Create an instance using the service ports built by a started <code>ServiceBootstrap</code>.
+     *
+     * @param bootstrap a started service bootstrap
+     */
+    public GlobalAPI(final ServiceBootstrap bootstrap) {
+        bootstrap.getGlobalService(); // fails fast if the bootstrap has not been started
+        this.globalPorts = new ThreadLocal<BFGlobalService>() {
+            @Override
+            protected BFGlobalService initialValue() {
+                return bootstrap.getGlobalService();
+            }
+        };
     }
 
     /**
@@ -56,10 +86,11 @@ public class GlobalAPI {
         req.setProductId(productId);
         req.setLocationId(0);
         req.setVendorSoftwareId(0);
+        Deadline.applyTo(globalService(), "GlobalAPI.login");
 
-        LoginResp resp = globalService.login(req);
+        LoginResp resp = globalService().login(req);
         if (resp.getErrorCode().equals(LoginErrorEnum.OK)) {
-            sessionToken = resp.getHeader().getSessionToken();
+            sessionToken.set(resp.getHeader().getSessionToken());
             return;
         }
         MessageUtil.checkResponseForAPIError(resp);
@@ -74,10 +105,10 @@ public class GlobalAPI {
      */
     public void logout() throws BetfairException {
         LogoutReq req = new LogoutReq();
-        addHeader(req);
-        LogoutResp resp = globalService.logout(req);
+        addHeader(req, "GlobalAPI.logout");
+        LogoutResp resp = globalService().logout(req);
         if (resp.getErrorCode().equals(LogoutErrorEnum.OK)) {
-            sessionToken = resp.getHeader().getSessionToken();
+            sessionToken.set(resp.getHeader().getSessionToken());
             return;
         }
         MessageUtil.checkResponseForAPIError(resp);
@@ -92,8 +123,8 @@ public class GlobalAPI {
      */
     public GetEventTypesResp getAllEventTypes() {
         GetEventTypesReq req = new GetEventTypesReq();
-        addHeader(req);
-        return globalService.getAllEventTypes(req);
+        addHeader(req, "GlobalAPI.getAllEventTypes");
+        return globalService().getAllEventTypes(req);
     }
 
     /**
@@ -107,9 +138,9 @@ public class GlobalAPI {
      */
     public GetEventsResp getEvents(int eventParentId) throws BetfairException {
         GetEventsReq req = new GetEventsReq();
-        addHeader(req);
+        addHeader(req, "GlobalAPI.getEvents");
         req.setEventParentId(eventParentId);
-        GetEventsResp resp = globalService.getEvents(req);
+        GetEventsResp resp = globalService().getEvents(req);
         if (resp.getErrorCode().equals(GetEventsErrorEnum.OK)) {
             return resp;
         }
@@ -125,30 +156,41 @@ public class GlobalAPI {
      * @return a session token if a user is logged in or null otherwise
      */
     public String getSessionToken() {
-        return sessionToken;
+        return sessionToken.get();
     }
 
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
-    // simple helper method to set the current session token on a request
-    private void addHeader(APIRequest request) {
+    // the calling thread's service port
+    private BFGlobalService globalService() {
+        return globalPorts.get();
+    }
+
+    // simple helper method to set the current session token on a request, and the timeouts from any deadline
+    private void addHeader(APIRequest request, String operation) {
         APIRequestHeader header = new APIRequestHeader();
-        header.setSessionToken(sessionToken);
+        header.setSessionToken(sessionToken.get());
         request.setHeader(header);
+        Deadline.applyTo(globalService(), operation);
     }
 
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
     // for tests
-    GlobalAPI(BFGlobalService globalService) {
-        this.globalService = globalService;
+    GlobalAPI(final BFGlobalService globalService) {
+        this.globalPorts = new ThreadLocal<BFGlobalService>() {
+            @Override
+            protected BFGlobalService initialValue() {
+                return globalService;
+            }
+        };
     }
 
     // for tests
     void setSessionToken(String sessionToken) {
-        this.sessionToken = sessionToken;
+        this.sessionToken.set(sessionToken);
     }
 
 }
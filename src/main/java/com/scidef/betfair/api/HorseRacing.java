@@ -1,32 +1,61 @@
 package com.scidef.betfair.api;
 
+import com.betfair.publicapi.types.exchange.v5.GetAllMarketsResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketResp;
 import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
 import com.betfair.publicapi.types.exchange.v5.GetMarketPricesResp;
+import com.betfair.publicapi.types.exchange.v5.MarketStatusEnum;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
 import com.betfair.publicapi.types.exchange.v5.Price;
+import com.betfair.publicapi.types.exchange.v5.Runner;
 import com.betfair.publicapi.types.global.v3.BFEvent;
 import com.betfair.publicapi.types.global.v3.GetEventsResp;
 import com.betfair.publicapi.types.global.v3.MarketSummary;
+import com.scidef.betfair.api.account.SessionPool;
 import com.scidef.betfair.api.aop.ExceededMaxRetriesException;
+import com.scidef.betfair.api.catalog.MarketCatalog;
 import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.jfr.JfrEvents;
+import com.scidef.betfair.api.paper.PaperExchange;
+import com.scidef.betfair.api.prices.PriceHistory;
+import com.scidef.betfair.api.trace.Span;
+import com.scidef.betfair.api.trace.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import static com.scidef.betfair.api.MessageUtil.getMarketNameWithTime;
 import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketPrices;
+import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketStatus;
+import static com.scidef.betfair.api.MessageUtil.parseCompressedRemovedRunners;
+import static com.scidef.betfair.api.MessageUtil.parseRemovedRunners;
 
 /**
  * A collection of methods specifically designed to deal with betting on horse races
  * via the Betfair APIs.
  * <p/>
+ * An instance may be shared by any number of worker threads. Logging in is coalesced, so
+ * threads that find the session expired at the same time wait for a single login rather
+ * than each making their own. The event and market patterns are held as one immutable
+ * snapshot: a setter publishes a new snapshot, and each call reads a single snapshot and
+ * filters all of its events and markets with it. The other settings are volatile and take
+ * effect from the next call. None of this takes a lock shared by all callers.
+ * <p/>
+ * When tracing is on (see <code>Tracer</code>), building the events and markets maps, getting
+ * the runners of a market and parsing their prices are each traced as a span.
+ * <p/>
  * User: tompearson
  * Date: 20/01/2013
  */
@@ -38,21 +67,33 @@ public class HorseRacing {
     public static final int IRE_HORSE_RACING_EVENT_ID = 298252;
     public static final int HORSE_RACING_SPORT_ID = 7;
 
-    private static final Pattern SEMICOLON_DELIMITER = Pattern.compile("(?<!\\\\);");
-    private static final Pattern COMMA_DELIMITER = Pattern.compile("(?<!\\\\),");
+    // holds no state between calls, so one instance is shared by every call
+    private static final DatatypeFactory DATATYPE_FACTORY = createDatatypeFactory();
+
+    // the key of the single login flight; the username may be null, which a ConcurrentHashMap cannot hold
+    private static final String LOGIN = "login";
 
     private final String username;
     private final String password;
-    private boolean loggedIn = false;
+    private volatile boolean loggedIn = false;
+    private final SingleFlight<String, Boolean> loginFlight = new SingleFlight<String, Boolean>(0);
 
     private final GlobalAPI globalAPI;
     private final ExchangeAPI exchangeAPI;
 
-    private List<Pattern> eventInclusionPatterns;
-    private List<Pattern> marketInclusionPatterns;  // if inclusion patterns are set, they will be used
-    private List<Pattern> marketExclusionPatterns;  // otherwise, exclusion patterns are used
+    private final AtomicReference<Filters> filters = new AtomicReference<Filters>(new Filters(null, null, null));
+
+    private volatile boolean mockBets = true; // set this to false to place bets
+    private volatile boolean catalogMode = false; // if set, the events map is built from a single getAllMarkets call
 
-    private boolean mockBets = true; // set this to false to place bets
+    private final NonRunnerIndex nonRunnerIndex = new NonRunnerIndex();
+    private volatile PriceHistory priceHistory; // if set, every poll of a market's prices is recorded
+    private volatile MarketDataCoalescer marketDataCoalescer; // if set, concurrent market reads are shared
+    private volatile SingleFlight<Integer, List<RunnerPricesWrapper>> runnersFlight;
+    private volatile StreamingExchangeAPI streamingExchangeAPI; // if set, compressed prices are read without JAXB
+    private volatile SessionPool sessionPool; // if set, prices are read across the sessions in the pool
+    private volatile PaperExchange paperExchange; // if set, mock bets are matched against the prices of each poll
+    private volatile ResultsIndex resultsIndex; // if set, closed paper markets are settled from its results
 
     public HorseRacing(String username, String password,
                        GlobalAPI globalAPI, ExchangeAPI exchangeAPI) {
@@ -64,15 +105,24 @@ public class HorseRacing {
 
     /**
      * Login to the Betfair Free API using the configured username and password.
+     * <p/>
+     * If another thread is already logging in, this waits for (and shares the outcome of)
+     * that login instead.
      */
     public void login() {
         try {
-            globalAPI.login(username, password, GlobalAPI.FREE_API_PRODUCT_ID);
+            loginFlight.get(LOGIN, new SingleFlight.Call<Boolean>() {
+                @Override
+                public Boolean call() throws BetfairException {
+                    globalAPI.login(username, password, GlobalAPI.FREE_API_PRODUCT_ID);
+                    loggedIn = true;
+                    return Boolean.TRUE;
+                }
+            });
         } catch (BetfairException e) {
             LOG.error("Failed to login.", e);
             throw new RuntimeException(e);
         }
-        loggedIn = true;
     }
 
     /**
@@ -99,28 +149,45 @@ public class HorseRacing {
             login();
         }
 
-        List<BFEvent> events = new ArrayList<BFEvent>();
-
-        addEventsForEventId(GB_HORSE_RACING_EVENT_ID, events);
-        addEventsForEventId(IRE_HORSE_RACING_EVENT_ID, events);
-
-        return events;
+        return getEvents(filters.get());
     }
 
     /**
      * Retrieve all the runners for a given market id.
+     * <p/>
+     * The non-runner index is also updated with any runners removed from the market and, if
+     * a price history has been set, the prices are recorded in it. If a paper exchange has
+     * been set, the mock bets waiting on it are matched against the prices; once the market
+     * is found closed, they are closed on the paper exchange too (see <code>settlePaperBets</code>).
+     * <p/>
+     * If a market data coalescer has been set, concurrent callers for the same market share
+     * one call and one parsed (unmodifiable) list of runners, whichever of the following the
+     * prices are read from. If a session pool has been set, the prices are read on whichever
+     * of its sessions has the most headroom; otherwise, if a streaming exchange API has been
+     * set, they are read through it; otherwise they are read through the <code>ExchangeAPI</code>.
      *
      * @param marketId the market id for which the runners should be retrieved
      * @return a list of <code>RunnerPricesWrapper</code> with all the runners and prices or
      *         null if the request fails and the maximum number of retries is exceeded
      * @throws BetfairException if there is a problem retrieving the runners
      */
-    public List<RunnerPricesWrapper> getRunners(int marketId) throws BetfairException {
+    public List<RunnerPricesWrapper> getRunners(final int marketId) throws BetfairException {
+        Span span = Tracer.start("HorseRacing.getRunners");
         try {
-            GetMarketPricesCompressedResp psc = exchangeAPI.getMarketPricesCompressed(marketId);
-            return parseCompressedMarketPrices(psc.getMarketPrices());
+            SingleFlight<Integer, List<RunnerPricesWrapper>> runnersFlight = this.runnersFlight;
+            if (runnersFlight != null) {
+                return runnersFlight.get(marketId, new SingleFlight.Call<List<RunnerPricesWrapper>>() {
+                    @Override
+                    public List<RunnerPricesWrapper> call() throws BetfairException {
+                        return Collections.unmodifiableList(fetchRunners(marketId));
+                    }
+                });
+            }
+            return fetchRunners(marketId);
         } catch (ExceededMaxRetriesException e) {
             LOG.error("Failed to get runners for marketId " + marketId, e);
+        } finally {
+            span.end();
         }
         return null;
     }
@@ -140,82 +207,120 @@ public class HorseRacing {
             login();
         }
 
-        Map<MarketSummary, List<RunnerPricesWrapper>> marketsMap =
-                new HashMap<MarketSummary, List<RunnerPricesWrapper>>();
-
-        // populate marketsMap
-        GetEventsResp er = globalAPI.getEvents(bfEvent.getEventId());
-        for (MarketSummary marketSummary : er.getMarketItems().getMarketSummary()) {
+        return getMarketsMapForEvent(bfEvent, date, filters.get());
+    }
 
-            // check the market should be included
-            boolean marketMatch = true;
-            if (date != null) {
-                if (marketSummary.getStartTime().getDay() != date.get(Calendar.DAY_OF_MONTH) ||
-                        marketSummary.getStartTime().getMonth() != date.get(Calendar.MONTH) + 1 ||
-                        marketSummary.getStartTime().getYear() != date.get(Calendar.YEAR)) {
-                    LOG.info("Excluding market [" + bfEvent.getEventName() + ": " +
-                            getMarketNameWithTime(marketSummary) + "] because of its " +
-                            "start time: " + new SimpleDateFormat("dd/MM/yyyy").format(
-                            marketSummary.getStartTime().toGregorianCalendar().getTime()));
-                    marketMatch = false;
-                }
-            }
-            if (marketMatch) {
-                if (marketInclusionPatterns != null && marketInclusionPatterns.size() != 0) {
-                    marketMatch = false;
-                    for (Pattern marketPattern : marketInclusionPatterns) {
-                        if (marketPattern.matcher(marketSummary.getMarketName()).find()) {
-                            LOG.info("Including market [" + bfEvent.getEventName() + ": " +
-                                    getMarketNameWithTime(marketSummary) + "] because of pattern: " +
-                                    marketPattern.pattern());
-                            marketMatch = true;
-                        }
-                    }
-                } else {
-                    for (Pattern marketPattern : marketExclusionPatterns) {
-                        if (marketPattern.matcher(marketSummary.getMarketName()).find()) {
-                            LOG.info("Excluding market [" + bfEvent.getEventName() + ": " +
-                                    getMarketNameWithTime(marketSummary) + "] because of pattern: " +
-                                    marketPattern.pattern());
-                            marketMatch = false;
-                        }
-                    }
-                }
+    /**
+     * Build a map of events to market maps.
+     * <p/>
+     * In catalog mode, the events and markets are read from a single <code>getAllMarkets</code>
+     * call rather than one <code>getEvents</code> call per country and per meeting.
+     *
+     * @param date the date for the markets to be found; if null then all markets are returned
+     * @return a map of events to market maps
+     * @throws BetfairException if there is a problem building the map
+     */
+    public Map<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> getEventsMap(GregorianCalendar date)
+            throws BetfairException {
+        Span span = Tracer.start("HorseRacing.getEventsMap");
+        try {
+            if (catalogMode) {
+                return getEventsMapFromCatalog(date);
             }
 
-            if (!marketMatch) {
-                continue;
+            if (!loggedIn) {
+                login();
             }
 
-            try {
-                List<RunnerPricesWrapper> runnerPricesWrappers = getRunners(marketSummary.getMarketId());
-                marketsMap.put(marketSummary, runnerPricesWrappers);
-            } catch (ExceededMaxRetriesException e) {
-                LOG.error("Failed to get compressed market prices for marketId " + marketSummary.getMarketId(), e);
+            Map<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> eventsMap =
+                    new HashMap<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>>();
+
+            // populate eventsMap, filtering every event and market with the same patterns
+            Filters filters = this.filters.get();
+            List<BFEvent> events = getEvents(filters);
+            for (BFEvent bfEvent : events) {
+                Map<MarketSummary, List<RunnerPricesWrapper>> marketsMap = getMarketsMapForEvent(bfEvent, date, filters);
+                eventsMap.put(bfEvent, marketsMap);
             }
+
+            return eventsMap;
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Retrieve the catalog of all horse racing markets that are currently active or suspended.
+     *
+     * @return the market catalog
+     * @throws BetfairException if there is a problem retrieving the markets
+     */
+    public MarketCatalog getCatalog() throws BetfairException {
+        if (!loggedIn) {
+            login();
         }
 
-        return marketsMap;
+        try {
+            GetAllMarketsResp resp = exchangeAPI.getAllMarkets(HORSE_RACING_SPORT_ID);
+            return MarketCatalog.parse(resp.getMarketData());
+        } catch (ExceededMaxRetriesException e) {
+            throw new BetfairException("Exceeded max retries", e);
+        }
     }
 
     /**
-     * Build a map of events to market maps.
+     * Build a map of events to market maps from the catalog of horse racing markets.
+     * <p/>
+     * The result has the same structure as <code>getEventsMap</code>, with the GB and IRE
+     * meetings as events, and the same event inclusion and market inclusion/exclusion
+     * patterns are applied, but the events and markets are built from a single
+     * <code>getAllMarkets</code> call. The runners are then retrieved for each market as
+     * before.
      *
      * @param date the date for the markets to be found; if null then all markets are returned
      * @return a map of events to market maps
      * @throws BetfairException if there is a problem building the map
      */
-    public Map<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> getEventsMap(GregorianCalendar date)
-            throws BetfairException {
+    public Map<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> getEventsMapFromCatalog(
+            GregorianCalendar date) throws BetfairException {
+        MarketCatalog catalog = getCatalog();
+        Filters filters = this.filters.get();
 
         Map<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> eventsMap =
                 new HashMap<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>>();
+        Map<Integer, BFEvent> events = new HashMap<Integer, BFEvent>();
+
+        for (int countryEventId : new int[]{GB_HORSE_RACING_EVENT_ID, IRE_HORSE_RACING_EVENT_ID}) {
+            for (int row : catalog.getRowsForEvent(countryEventId)) {
+                int eventId = catalog.getEventId(row);
+                BFEvent bfEvent = events.get(eventId);
+                if (bfEvent == null) {
+                    bfEvent = new BFEvent();
+                    bfEvent.setEventId(eventId);
+                    bfEvent.setEventName(getEventName(catalog.getMenuPath(row)));
+                    bfEvent.setEventTypeId(HORSE_RACING_SPORT_ID);
+                    events.put(eventId, bfEvent);
+                    if (filters.isEventIncluded(bfEvent)) {
+                        eventsMap.put(bfEvent, new HashMap<MarketSummary, List<RunnerPricesWrapper>>());
+                    }
+                }
+                Map<MarketSummary, List<RunnerPricesWrapper>> marketsMap = eventsMap.get(bfEvent);
+                if (marketsMap == null) {
+                    continue;
+                }
+
+                MarketSummary marketSummary = buildMarketSummary(catalog, row);
+                if (!filters.isMarketIncluded(bfEvent, marketSummary, date)) {
+                    continue;
+                }
 
-        // populate eventsMap
-        List<BFEvent> events = getEvents();
-        for (BFEvent bfEvent : events) {
-            Map<MarketSummary, List<RunnerPricesWrapper>> marketsMap = getMarketsMapForEvent(bfEvent, date);
-            eventsMap.put(bfEvent, marketsMap);
+                try {
+                    List<RunnerPricesWrapper> runnerPricesWrappers = getRunners(marketSummary.getMarketId());
+                    marketsMap.put(marketSummary, runnerPricesWrappers);
+                } catch (ExceededMaxRetriesException e) {
+                    LOG.error("Failed to get compressed market prices for marketId " + marketSummary.getMarketId(), e);
+                }
+            }
         }
 
         return eventsMap;
@@ -235,20 +340,91 @@ public class HorseRacing {
 
         GetMarketPricesResp getMarketPricesResp;
         try {
-            getMarketPricesResp = exchangeAPI.getMarketPrices(marketId);
+            getMarketPricesResp = marketDataCoalescer != null ?
+                    marketDataCoalescer.getMarketPrices(marketId) : exchangeAPI.getMarketPrices(marketId);
+        } catch (ExceededMaxRetriesException e) {
+            throw new BetfairException("Exceeded max retries", e);
+        }
+        nonRunnerIndex.update(marketId, getMarketPricesResp.getMarketPrices());
+        return parseRemovedRunners(getMarketPricesResp.getMarketPrices().getRemovedRunners());
+    }
+
+    /**
+     * Place bets on a single market. In mock mode the bets are placed on the paper exchange,
+     * which matches them against the prices of each poll, or are only logged if there is no
+     * paper exchange.
+     *
+     * @param bets the bets to place
+     * @return the outcome of placing the bets, or null if they were only logged
+     * @throws BetfairException if there is a problem placing the bets
+     */
+    public PlaceBetsResp placeBets(List<Bet> bets) throws BetfairException {
+        if (mockBets) {
+            PaperExchange paperExchange = this.paperExchange;
+            if (paperExchange == null) {
+                LOG.info("Mock placing " + bets.size() + " bets: " + bets);
+                return null;
+            }
+            return paperExchange.placeBets(bets);
+        }
+
+        if (!loggedIn) {
+            login();
+        }
+
+        try {
+            return exchangeAPI.placeBets(bets);
         } catch (ExceededMaxRetriesException e) {
             throw new BetfairException("Exceeded max retries", e);
         }
-        String removedRunners = getMarketPricesResp.getMarketPrices().getRemovedRunners();
-        String[] splitOnSemicolon = SEMICOLON_DELIMITER.split(removedRunners);
-        List<String> nonRunners = new ArrayList<String>();
-        for (String nonRunner : splitOnSemicolon) {
-            String[] splitOnComma = COMMA_DELIMITER.split(nonRunner);
-            if (splitOnComma.length > 0) {
-                nonRunners.add(splitOnComma[0]);
+    }
+
+    /**
+     * Settle the paper bets on a closed market from its result, taken from the results index
+     * if one is set, or from the market's results feed otherwise. The winners are matched to
+     * selection ids by the names of the market's runners.
+     * <p/>
+     * A market found closed by a poll has its unmatched paper bets lapsed straight away, and
+     * is settled by the poll if the results index already holds its result; otherwise it
+     * waits for this method to be called.
+     *
+     * @param marketId the id of the market
+     * @return the profit (or, if negative, loss) on the market's paper bets
+     * @throws BetfairException if there is no paper exchange, or the result or runners of the
+     *                          market cannot be retrieved or matched up
+     */
+    public double settlePaperBets(int marketId) throws BetfairException {
+        PaperExchange paperExchange = this.paperExchange;
+        if (paperExchange == null) {
+            throw new BetfairException("There is no paper exchange to settle marketId " + marketId);
+        }
+        ResultsIndex resultsIndex = this.resultsIndex;
+        List<String> winners = resultsIndex != null ? resultsIndex.getWinners(marketId) : getWinners(marketId);
+
+        if (!loggedIn) {
+            login();
+        }
+
+        GetMarketResp getMarketResp;
+        try {
+            getMarketResp = exchangeAPI.getMarket(marketId);
+        } catch (ExceededMaxRetriesException e) {
+            throw new BetfairException("Exceeded max retries", e);
+        }
+        List<Integer> winnerIds = new ArrayList<Integer>();
+        for (String winner : winners) {
+            for (Runner runner : getMarketResp.getMarket().getRunners().getRunner()) {
+                if (winner.equalsIgnoreCase(runner.getName().trim())) {
+                    winnerIds.add(runner.getSelectionId());
+                    break;
+                }
             }
         }
-        return nonRunners;
+        if (winnerIds.size() < winners.size()) {
+            throw new BetfairException("Could not match the winners " + winners + " of marketId " + marketId +
+                    " to its runners");
+        }
+        return paperExchange.settle(marketId, winnerIds);
     }
 
     /**
@@ -287,6 +463,66 @@ public class HorseRacing {
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Provides the index of non-runners, which is kept up to date by <code>getRunners</code>
+     * and <code>getNonRunners</code>.
+     *
+     * @return the non-runner index
+     */
+    public NonRunnerIndex getNonRunnerIndex() {
+        return nonRunnerIndex;
+    }
+
+    public PriceHistory getPriceHistory() {
+        return priceHistory;
+    }
+
+    public void setPriceHistory(PriceHistory priceHistory) {
+        this.priceHistory = priceHistory;
+    }
+
+    public MarketDataCoalescer getMarketDataCoalescer() {
+        return marketDataCoalescer;
+    }
+
+    public void setMarketDataCoalescer(MarketDataCoalescer marketDataCoalescer) {
+        this.marketDataCoalescer = marketDataCoalescer;
+        this.runnersFlight = marketDataCoalescer != null ?
+                new SingleFlight<Integer, List<RunnerPricesWrapper>>(marketDataCoalescer.getFreshnessMillis()) : null;
+    }
+
+    public StreamingExchangeAPI getStreamingExchangeAPI() {
+        return streamingExchangeAPI;
+    }
+
+    public void setStreamingExchangeAPI(StreamingExchangeAPI streamingExchangeAPI) {
+        this.streamingExchangeAPI = streamingExchangeAPI;
+    }
+
+    public SessionPool getSessionPool() {
+        return sessionPool;
+    }
+
+    public void setSessionPool(SessionPool sessionPool) {
+        this.sessionPool = sessionPool;
+    }
+
+    public PaperExchange getPaperExchange() {
+        return paperExchange;
+    }
+
+    public void setPaperExchange(PaperExchange paperExchange) {
+        this.paperExchange = paperExchange;
+    }
+
+    public ResultsIndex getResultsIndex() {
+        return resultsIndex;
+    }
+
+    public void setResultsIndex(ResultsIndex resultsIndex) {
+        this.resultsIndex = resultsIndex;
+    }
+
     public boolean isMockBets() {
         return mockBets;
     }
@@ -295,44 +531,174 @@ public class HorseRacing {
         this.mockBets = mockBets;
     }
 
+    public boolean isCatalogMode() {
+        return catalogMode;
+    }
+
+    public void setCatalogMode(boolean catalogMode) {
+        this.catalogMode = catalogMode;
+    }
+
     public List<Pattern> getEventInclusionPatterns() {
-        return eventInclusionPatterns;
+        return filters.get().eventInclusionPatterns;
     }
 
     public void setEventInclusionPatterns(List<Pattern> eventInclusionPatterns) {
-        this.eventInclusionPatterns = eventInclusionPatterns;
+        Filters current;
+        do {
+            current = filters.get();
+        } while (!filters.compareAndSet(current, current.withEventInclusionPatterns(eventInclusionPatterns)));
     }
 
     public List<Pattern> getMarketInclusionPatterns() {
-        return marketInclusionPatterns;
+        return filters.get().marketInclusionPatterns;
     }
 
     public void setMarketInclusionPatterns(List<Pattern> marketInclusionPatterns) {
-        this.marketInclusionPatterns = marketInclusionPatterns;
+        Filters current;
+        do {
+            current = filters.get();
+        } while (!filters.compareAndSet(current, current.withMarketInclusionPatterns(marketInclusionPatterns)));
     }
 
     public List<Pattern> getMarketExclusionPatterns() {
-        return marketExclusionPatterns;
+        return filters.get().marketExclusionPatterns;
     }
 
     public void setMarketExclusionPatterns(List<Pattern> marketExclusionPatterns) {
-        this.marketExclusionPatterns = marketExclusionPatterns;
+        Filters current;
+        do {
+            current = filters.get();
+        } while (!filters.compareAndSet(current, current.withMarketExclusionPatterns(marketExclusionPatterns)));
     }
 
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
-    private void addEventsForEventId(int eventId, List<BFEvent> events) throws BetfairException {
+    private List<BFEvent> getEvents(Filters filters) throws BetfairException {
+        List<BFEvent> events = new ArrayList<BFEvent>();
+
+        addEventsForEventId(GB_HORSE_RACING_EVENT_ID, events, filters);
+        addEventsForEventId(IRE_HORSE_RACING_EVENT_ID, events, filters);
+
+        return events;
+    }
+
+    private Map<MarketSummary, List<RunnerPricesWrapper>> getMarketsMapForEvent(BFEvent bfEvent,
+                                                                                GregorianCalendar date,
+                                                                                Filters filters)
+            throws BetfairException {
+        Span span = Tracer.start("HorseRacing.getMarketsMapForEvent");
+        try {
+            Map<MarketSummary, List<RunnerPricesWrapper>> marketsMap =
+                    new HashMap<MarketSummary, List<RunnerPricesWrapper>>();
+
+            // populate marketsMap
+            GetEventsResp er = globalAPI.getEvents(bfEvent.getEventId());
+            for (MarketSummary marketSummary : er.getMarketItems().getMarketSummary()) {
+
+                if (!filters.isMarketIncluded(bfEvent, marketSummary, date)) {
+                    continue;
+                }
+
+                try {
+                    List<RunnerPricesWrapper> runnerPricesWrappers = getRunners(marketSummary.getMarketId());
+                    marketsMap.put(marketSummary, runnerPricesWrappers);
+                } catch (ExceededMaxRetriesException e) {
+                    LOG.error("Failed to get compressed market prices for marketId " + marketSummary.getMarketId(), e);
+                }
+            }
+
+            return marketsMap;
+        } finally {
+            span.end();
+        }
+    }
+
+    private List<RunnerPricesWrapper> fetchRunners(int marketId) throws BetfairException {
+        String compressed;
+        if (sessionPool != null) {
+            compressed = sessionPool.getMarketPricesCompressed(marketId).getMarketPrices();
+        } else if (streamingExchangeAPI != null) {
+            compressed = streamingExchangeAPI.getMarketPricesCompressed(marketId);
+        } else {
+            GetMarketPricesCompressedResp psc = marketDataCoalescer != null ?
+                    marketDataCoalescer.getMarketPricesCompressed(marketId) :
+                    exchangeAPI.getMarketPricesCompressed(marketId);
+            compressed = psc.getMarketPrices();
+        }
+        Span parse = Tracer.start("MessageUtil.parseCompressedMarketPrices");
+        Object parseEvent = JfrEvents.beginPriceParse();
+        List<RunnerPricesWrapper> runnerPricesWrappers;
+        try {
+            runnerPricesWrappers = parseCompressedMarketPrices(compressed);
+        } finally {
+            parse.end();
+        }
+        JfrEvents.commitPriceParse(parseEvent, marketId, compressed.length(), runnerPricesWrappers.size());
+        nonRunnerIndex.update(marketId, parseCompressedRemovedRunners(compressed), runnerPricesWrappers);
+        if (parseCompressedMarketStatus(compressed) == MarketStatusEnum.CLOSED) {
+            onMarketClosed(marketId);
+        } else if (priceHistory != null) {
+            priceHistory.record(marketId, runnerPricesWrappers, System.currentTimeMillis());
+        }
+        if (paperExchange != null) {
+            paperExchange.onPrices(marketId, runnerPricesWrappers);
+        }
+        return runnerPricesWrappers;
+    }
+
+    // a poll has found the market closed, so its prices will not change again
+    private void onMarketClosed(int marketId) {
+        PriceHistory priceHistory = this.priceHistory;
+        if (priceHistory != null) {
+            priceHistory.release(marketId);
+        }
+        PaperExchange paperExchange = this.paperExchange;
+        if (paperExchange != null) {
+            paperExchange.close(marketId);
+            ResultsIndex resultsIndex = this.resultsIndex;
+            if (resultsIndex != null && resultsIndex.contains(marketId) && paperExchange.isAwaitingSettlement(marketId)) {
+                try {
+                    settlePaperBets(marketId);
+                } catch (BetfairException e) {
+                    LOG.warn("Failed to settle paper bets on marketId " + marketId, e);
+                }
+            }
+        }
+    }
+
+    private static MarketSummary buildMarketSummary(MarketCatalog catalog, int row) {
+        MarketSummary marketSummary = new MarketSummary();
+        marketSummary.setMarketId(catalog.getMarketId(row));
+        marketSummary.setMarketName(catalog.getMarketName(row));
+        marketSummary.setEventTypeId(catalog.getEventTypeId(row));
+        marketSummary.setEventParentId(catalog.getEventId(row));
+        marketSummary.setNumberOfWinners(catalog.getNumberOfWinners(row));
+        GregorianCalendar startTime = new GregorianCalendar();
+        startTime.setTimeInMillis(catalog.getStartTime(row));
+        marketSummary.setStartTime(DATATYPE_FACTORY.newXMLGregorianCalendar(startTime));
+        return marketSummary;
+    }
+
+    private static DatatypeFactory createDatatypeFactory() {
+        try {
+            return DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new IllegalStateException("Failed to create datatype factory", e);
+        }
+    }
+
+    private static String getEventName(String menuPath) {
+        // the menu path ends with the meeting, eg "\Horse Racing\GB\Kemp 19th Oct"
+        return menuPath.substring(menuPath.lastIndexOf('\\') + 1);
+    }
+
+    private void addEventsForEventId(int eventId, List<BFEvent> events, Filters filters) throws BetfairException {
         GetEventsResp eventsResp = globalAPI.getEvents(eventId);
         for (BFEvent bfEvent : eventsResp.getEventItems().getBFEvent()) {
             // check the event should be included
-            boolean eventMatch = false;
-            for (Pattern eventPattern : eventInclusionPatterns) {
-                if (eventPattern.matcher(bfEvent.getEventName()).find()) {
-                    eventMatch = true;
-                }
-            }
-            if (eventMatch) {
+            if (filters.isEventIncluded(bfEvent)) {
                 events.add(bfEvent);
             }
         }
@@ -375,4 +741,86 @@ public class HorseRacing {
     boolean isLoggedIn() {
         return loggedIn;
     }
+
+    // an immutable snapshot of the event and market patterns; null lists are held as empty lists
+    private static final class Filters {
+
+        private final List<Pattern> eventInclusionPatterns;
+        private final List<Pattern> marketInclusionPatterns;
+        private final List<Pattern> marketExclusionPatterns;
+
+        Filters(List<Pattern> eventInclusionPatterns, List<Pattern> marketInclusionPatterns,
+                List<Pattern> marketExclusionPatterns) {
+            this.eventInclusionPatterns = copyOf(eventInclusionPatterns);
+            this.marketInclusionPatterns = copyOf(marketInclusionPatterns);
+            this.marketExclusionPatterns = copyOf(marketExclusionPatterns);
+        }
+
+        boolean isMarketIncluded(BFEvent bfEvent, MarketSummary marketSummary, GregorianCalendar date) {
+            boolean marketMatch = true;
+            if (date != null) {
+                if (marketSummary.getStartTime().getDay() != date.get(Calendar.DAY_OF_MONTH) ||
+                        marketSummary.getStartTime().getMonth() != date.get(Calendar.MONTH) + 1 ||
+                        marketSummary.getStartTime().getYear() != date.get(Calendar.YEAR)) {
+                    LOG.info("Excluding market [" + bfEvent.getEventName() + ": " +
+                            getMarketNameWithTime(marketSummary) + "] because of its " +
+                            "start time: " + new SimpleDateFormat("dd/MM/yyyy").format(
+                            marketSummary.getStartTime().toGregorianCalendar().getTime()));
+                    marketMatch = false;
+                }
+            }
+            if (marketMatch) {
+                if (marketInclusionPatterns.size() != 0) {
+                    marketMatch = false;
+                    for (Pattern marketPattern : marketInclusionPatterns) {
+                        if (marketPattern.matcher(marketSummary.getMarketName()).find()) {
+                            LOG.info("Including market [" + bfEvent.getEventName() + ": " +
+                                    getMarketNameWithTime(marketSummary) + "] because of pattern: " +
+                                    marketPattern.pattern());
+                            marketMatch = true;
+                        }
+                    }
+                } else {
+                    for (Pattern marketPattern : marketExclusionPatterns) {
+                        if (marketPattern.matcher(marketSummary.getMarketName()).find()) {
+                            LOG.info("Excluding market [" + bfEvent.getEventName() + ": " +
+                                    getMarketNameWithTime(marketSummary) + "] because of pattern: " +
+                                    marketPattern.pattern());
+                            marketMatch = false;
+                        }
+                    }
+                }
+            }
+            return marketMatch;
+        }
+
+        boolean isEventIncluded(BFEvent bfEvent) {
+            boolean eventMatch = false;
+            for (Pattern eventPattern : eventInclusionPatterns) {
+                if (eventPattern.matcher(bfEvent.getEventName()).find()) {
+                    eventMatch = true;
+                }
+            }
+            return eventMatch;
+        }
+
+        Filters withEventInclusionPatterns(List<Pattern> eventInclusionPatterns) {
+            return new Filters(eventInclusionPatterns, marketInclusionPatterns, marketExclusionPatterns);
+        }
+
+        Filters withMarketInclusionPatterns(List<Pattern> marketInclusionPatterns) {
+            return new Filters(eventInclusionPatterns, marketInclusionPatterns, marketExclusionPatterns);
+        }
+
+        Filters withMarketExclusionPatterns(List<Pattern> marketExclusionPatterns) {
+            return new Filters(eventInclusionPatterns, marketInclusionPatterns, marketExclusionPatterns);
+        }
+
+        private static List<Pattern> copyOf(List<Pattern> patterns) {
+            return patterns == null ? Collections.<Pattern>emptyList() :
+                    Collections.unmodifiableList(new ArrayList<Pattern>(patterns));
+        }
+
+    }
+
 }
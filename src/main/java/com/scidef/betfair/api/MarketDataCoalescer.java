@@ -0,0 +1,119 @@
+package com.scidef.betfair.api;
+
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketResp;
+import com.scidef.betfair.api.exception.BetfairException;
+
+/**
+ * A single-flight layer in front of the market reads of the <code>ExchangeAPI</code>.
+ * <p/>
+ * Concurrent callers asking for the same market from the same method (eg, a price poller
+ * and a strategy both asking for the compressed prices) share a single call and its
+ * response, which callers must therefore not modify. An optional freshness window lets
+ * callers that arrive just after a call has completed share it too.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class MarketDataCoalescer {
+
+    private final ExchangeAPI exchangeAPI;
+    private final long freshnessMillis;
+
+    private final SingleFlight<Integer, GetMarketPricesCompressedResp> marketPricesCompressed;
+    private final SingleFlight<Integer, GetMarketPricesResp> marketPrices;
+    private final SingleFlight<Integer, GetMarketResp> markets;
+
+    /**
+     * Create a coalescer that only shares calls that are still in flight.
+     *
+     * @param exchangeAPI the exchange API to read from
+     */
+    public MarketDataCoalescer(ExchangeAPI exchangeAPI) {
+        this(exchangeAPI, 0L);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param exchangeAPI     the exchange API to read from
+     * @param freshnessMillis how long after a call completes its response may be reused
+     */
+    public MarketDataCoalescer(ExchangeAPI exchangeAPI, long freshnessMillis) {
+        this.exchangeAPI = exchangeAPI;
+        this.freshnessMillis = freshnessMillis;
+        this.marketPricesCompressed = new SingleFlight<Integer, GetMarketPricesCompressedResp>(freshnessMillis);
+        this.marketPrices = new SingleFlight<Integer, GetMarketPricesResp>(freshnessMillis);
+        this.markets = new SingleFlight<Integer, GetMarketResp>(freshnessMillis);
+    }
+
+    /**
+     * @see ExchangeAPI#getMarketPricesCompressed(int)
+     */
+    public GetMarketPricesCompressedResp getMarketPricesCompressed(final int marketId) throws BetfairException {
+        return marketPricesCompressed.get(marketId, new SingleFlight.Call<GetMarketPricesCompressedResp>() {
+            @Override
+            public GetMarketPricesCompressedResp call() throws BetfairException {
+                return exchangeAPI.getMarketPricesCompressed(marketId);
+            }
+        });
+    }
+
+    /**
+     * @see ExchangeAPI#getMarketPrices(int)
+     */
+    public GetMarketPricesResp getMarketPrices(final int marketId) throws BetfairException {
+        return marketPrices.get(marketId, new SingleFlight.Call<GetMarketPricesResp>() {
+            @Override
+            public GetMarketPricesResp call() throws BetfairException {
+                return exchangeAPI.getMarketPrices(marketId);
+            }
+        });
+    }
+
+    /**
+     * @see ExchangeAPI#getMarket(int)
+     */
+    public GetMarketResp getMarket(final int marketId) throws BetfairException {
+        return markets.get(marketId, new SingleFlight.Call<GetMarketResp>() {
+            @Override
+            public GetMarketResp call() throws BetfairException {
+                return exchangeAPI.getMarket(marketId);
+            }
+        });
+    }
+
+    public long getFreshnessMillis() {
+        return freshnessMillis;
+    }
+
+    public SingleFlight<Integer, GetMarketPricesCompressedResp> getMarketPricesCompressedStats() {
+        return marketPricesCompressed;
+    }
+
+    public SingleFlight<Integer, GetMarketPricesResp> getMarketPricesStats() {
+        return marketPrices;
+    }
+
+    public SingleFlight<Integer, GetMarketResp> getMarketStats() {
+        return markets;
+    }
+
+    /**
+     * @return the total number of calls saved by coalescing, over all methods
+     */
+    public long getSavedCalls() {
+        return marketPricesCompressed.getSaved() + marketPrices.getSaved() + markets.getSaved();
+    }
+
+    @Override
+    public String toString() {
+        return "MarketDataCoalescer{" +
+                "getMarketPricesCompressed=" + marketPricesCompressed +
+                ", getMarketPrices=" + marketPrices +
+                ", getMarket=" + markets +
+                '}';
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.scidef.betfair.api;
 
 import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.MarketStatusEnum;
 import com.betfair.publicapi.types.exchange.v5.Price;
 import com.betfair.publicapi.types.exchange.v5.RunnerPrices;
 import com.betfair.publicapi.types.global.v3.MarketSummary;
@@ -24,6 +25,8 @@ public class MessageUtil {
     private static final Pattern COLON_DELIMITER = Pattern.compile("(?<!\\\\):");
     private static final Pattern PIPE_DELIMITER = Pattern.compile("(?<!\\\\)\\|");
     private static final Pattern TILDA_DELIMTER = Pattern.compile("(?<!\\\\)~");
+    private static final Pattern SEMICOLON_DELIMITER = Pattern.compile("(?<!\\\\);");
+    private static final Pattern COMMA_DELIMITER = Pattern.compile("(?<!\\\\),");
 
     /**
      * Check a response from the Global API for errors.
@@ -48,7 +51,16 @@ public class MessageUtil {
      */
     public static void checkResponseForAPIError(com.betfair.publicapi.types.exchange.v5.APIResponse resp)
             throws BetfairException {
-        com.betfair.publicapi.types.exchange.v5.APIErrorEnum errorCode = resp.getHeader().getErrorCode();
+        checkAPIErrorCode(resp.getHeader().getErrorCode());
+    }
+
+    /**
+     * Check the error code from the header of an Exchange API response.
+     *
+     * @param errorCode the error code to check
+     */
+    public static void checkAPIErrorCode(com.betfair.publicapi.types.exchange.v5.APIErrorEnum errorCode)
+            throws BetfairException {
         if (errorCode.equals(com.betfair.publicapi.types.exchange.v5.APIErrorEnum.NO_SESSION)) {
             throw new NoSessionException();
         }
@@ -123,9 +135,74 @@ public class MessageUtil {
         return listOfRunnerPrices;
     }
 
+    /**
+     * Parse the removed runners data from a market's prices, returning the names of the
+     * removed runners (ie, the non-runners).
+     * <p/>
+     * The data is a semicolon-delimited list of removed runners, each of which is a
+     * comma-delimited name, removal time and reduction factor.
+     *
+     * @param removedRunners the removed runners data
+     * @return a list of the names of the removed runners, in the order they were removed
+     */
+    public static List<String> parseRemovedRunners(String removedRunners) {
+        List<String> nonRunners = new ArrayList<String>();
+        for (String[] removedRunner : splitRemovedRunners(removedRunners)) {
+            nonRunners.add(removedRunner[0]);
+        }
+        return nonRunners;
+    }
+
+    /**
+     * Extract the removed runners data from the header of the market prices data in
+     * compressed form.
+     *
+     * @param compressed the compressed market prices data
+     * @return the removed runners data, which is empty if there are no removed runners
+     */
+    public static String parseCompressedRemovedRunners(String compressed) {
+        String[] header = TILDA_DELIMTER.split(COLON_DELIMITER.split(compressed, 2)[0], -1);
+        return header.length > 9 ? header[9] : "";
+    }
+
+    /**
+     * Extract the market status from the header of the market prices data in compressed
+     * form.
+     *
+     * @param compressed the compressed market prices data
+     * @return the status of the market, or null if it is missing or not recognised
+     */
+    public static MarketStatusEnum parseCompressedMarketStatus(String compressed) {
+        String[] header = TILDA_DELIMTER.split(COLON_DELIMITER.split(compressed, 2)[0], -1);
+        if (header.length > 2) {
+            for (MarketStatusEnum status : MarketStatusEnum.values()) {
+                if (status.name().equals(header[2])) {
+                    return status;
+                }
+            }
+        }
+        return null;
+    }
+
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
+    // split removed runners data into [name, removal time, reduction factor] entries
+    static List<String[]> splitRemovedRunners(String removedRunners) {
+        List<String[]> entries = new ArrayList<String[]>();
+        if (removedRunners == null) {
+            return entries;
+        }
+        String[] splitOnSemicolon = SEMICOLON_DELIMITER.split(removedRunners);
+        for (String nonRunner : splitOnSemicolon) {
+            String[] splitOnComma = COMMA_DELIMITER.split(nonRunner);
+            if (splitOnComma.length > 0 && splitOnComma[0].length() > 0) {
+                entries.add(splitOnComma);
+            }
+        }
+        return entries;
+    }
+
     private static void populatePriceListFromInput(String input, List<Price> bestPrices) {
         String[] backPrices = TILDA_DELIMTER.split(input);
         if (backPrices.length >= 4) {
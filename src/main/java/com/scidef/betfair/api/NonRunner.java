@@ -0,0 +1,62 @@
+package com.scidef.betfair.api;
+
+/**
+ * A runner that has been removed from a market, as recorded by the <code>NonRunnerIndex</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class NonRunner {
+
+    private final int selectionId;
+    private final String name;
+    private final String removalTime;
+    private final double reductionFactor;
+    private final long detectedAt;
+
+    /**
+     * @param selectionId     the selection id of the runner
+     * @param name            the name of the runner
+     * @param removalTime     the removal time as given by Betfair (eg, "10.18")
+     * @param reductionFactor the reduction factor applied to matched bets on the market
+     * @param detectedAt      the time (in ms since the epoch) at which the removal was first seen
+     */
+    public NonRunner(int selectionId, String name, String removalTime, double reductionFactor, long detectedAt) {
+        this.selectionId = selectionId;
+        this.name = name;
+        this.removalTime = removalTime;
+        this.reductionFactor = reductionFactor;
+        this.detectedAt = detectedAt;
+    }
+
+    public int getSelectionId() {
+        return selectionId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRemovalTime() {
+        return removalTime;
+    }
+
+    public double getReductionFactor() {
+        return reductionFactor;
+    }
+
+    public long getDetectedAt() {
+        return detectedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "NonRunner{" +
+                "selectionId=" + selectionId +
+                ", name='" + name + '\'' +
+                ", removalTime='" + removalTime + '\'' +
+                ", reductionFactor=" + reductionFactor +
+                ", detectedAt=" + detectedAt +
+                '}';
+    }
+}
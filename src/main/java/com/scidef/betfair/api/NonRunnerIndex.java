@@ -0,0 +1,349 @@
+package com.scidef.betfair.api;
+
+import com.betfair.publicapi.types.exchange.v5.MarketPrices;
+import com.betfair.publicapi.types.exchange.v5.Runner;
+import com.betfair.publicapi.types.exchange.v5.RunnerPrices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static com.scidef.betfair.api.MessageUtil.splitRemovedRunners;
+
+/**
+ * An index of the non-runners in each market, keyed by selection id.
+ * <p/>
+ * Betfair only identifies removed runners by name, so the index resolves each removal to
+ * a selection id using the runner names registered from <code>getMarket</code>. If a
+ * name cannot be matched, but exactly one selection has disappeared from the prices
+ * since the previous update, the removal is assigned to that selection instead.
+ * Names are compared ignoring case, punctuation and any bracketed suffix such as a
+ * country code.
+ * <p/>
+ * The index is updated from each price poll. As the removed runners data only ever
+ * grows, an update whose removed runners data is unchanged does no parsing, and an
+ * update that extends it parses only the new entries.
+ * <p/>
+ * So that a long-running poller does not grow the index without end, a market is kept for
+ * <code>maxAgeMillis</code> (a day by default) after it was last registered or updated, and
+ * is then removed. Updates look for such markets at most once a minute. A market can also
+ * be removed as soon as it is settled, with <code>remove</code>.
+ * <p/>
+ * Queries are lock-free and take constant time; updates lock only the market being
+ * updated.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class NonRunnerIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NonRunnerIndex.class);
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final long EVICTION_INTERVAL_MILLIS = 60 * 1000L;
+
+    private static final Pattern IGNORED_NAME_PARTS = Pattern.compile("\\(.*?\\)|[^\\p{L}\\p{N}]");
+
+    private final ConcurrentMap<Integer, MarketNonRunners> markets =
+            new ConcurrentHashMap<Integer, MarketNonRunners>();
+
+    private volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private final AtomicLong nextEviction = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Register the runner names for a market, so that removals can be resolved to
+     * selection ids.
+     *
+     * @param marketId the id of the market
+     * @param runners  the runners in the market, as returned by <code>getMarket</code>
+     */
+    public void registerRunners(int marketId, List<Runner> runners) {
+        MarketNonRunners market = getOrCreate(marketId);
+        synchronized (market) {
+            for (Runner runner : runners) {
+                market.selectionIdsByName.put(normalise(runner.getName()), runner.getSelectionId());
+            }
+            market.resolvePending(null);
+            market.lastSeen = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Update the index for a market from a poll of its compressed prices.
+     *
+     * @param marketId       the id of the market
+     * @param removedRunners the removed runners data from the compressed prices header
+     * @param runnerPrices   the parsed runner prices from the same poll
+     */
+    public void update(int marketId, String removedRunners, List<RunnerPricesWrapper> runnerPrices) {
+        Set<Integer> activeSelectionIds = new HashSet<Integer>();
+        for (RunnerPricesWrapper wrapper : runnerPrices) {
+            activeSelectionIds.add(wrapper.getRunnerPrices().getSelectionId());
+        }
+        update(marketId, removedRunners, activeSelectionIds);
+    }
+
+    /**
+     * Update the index for a market from its (uncompressed) market prices.
+     *
+     * @param marketId     the id of the market
+     * @param marketPrices the market prices, as returned by <code>getMarketPrices</code>
+     */
+    public void update(int marketId, MarketPrices marketPrices) {
+        Set<Integer> activeSelectionIds = null;
+        if (marketPrices.getRunnerPrices() != null) {
+            activeSelectionIds = new HashSet<Integer>();
+            for (RunnerPrices runnerPrices : marketPrices.getRunnerPrices().getRunnerPrices()) {
+                activeSelectionIds.add(runnerPrices.getSelectionId());
+            }
+        }
+        update(marketId, marketPrices.getRemovedRunners(), activeSelectionIds);
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @param time     a time in ms since the epoch
+     * @return true if the market has been updated at or after the given time
+     */
+    public boolean isCurrent(int marketId, long time) {
+        MarketNonRunners market = markets.get(marketId);
+        return market != null && market.lastUpdated >= time;
+    }
+
+    /**
+     * @param marketId    the id of the market
+     * @param selectionId the selection id of the runner
+     * @return true if the runner is known to have been removed from the market
+     */
+    public boolean isNonRunner(int marketId, int selectionId) {
+        return getNonRunner(marketId, selectionId) != null;
+    }
+
+    /**
+     * Check whether a runner has been removed, falling back on the runner name for
+     * removals that could not be resolved to a selection id.
+     *
+     * @param marketId    the id of the market
+     * @param selectionId the selection id of the runner
+     * @param runnerName  the name of the runner; may be null
+     * @return true if the runner is known to have been removed from the market
+     */
+    public boolean isNonRunner(int marketId, int selectionId, String runnerName) {
+        MarketNonRunners market = markets.get(marketId);
+        if (market == null) {
+            return false;
+        }
+        return market.nonRunners.containsKey(selectionId) ||
+                (runnerName != null && market.removedNames.contains(normalise(runnerName)));
+    }
+
+    /**
+     * @param marketId    the id of the market
+     * @param selectionId the selection id of the runner
+     * @return the details of the removal, or null if the runner is not known to have been removed
+     */
+    public NonRunner getNonRunner(int marketId, int selectionId) {
+        MarketNonRunners market = markets.get(marketId);
+        return market != null ? market.nonRunners.get(selectionId) : null;
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return the non-runners in the market that have been resolved to a selection id
+     */
+    public Collection<NonRunner> getNonRunners(int marketId) {
+        MarketNonRunners market = markets.get(marketId);
+        return market != null ? market.nonRunners.values() : Collections.<NonRunner>emptyList();
+    }
+
+    /**
+     * Remove a market from the index, eg once it has been settled.
+     *
+     * @param marketId the id of the market
+     */
+    public void remove(int marketId) {
+        markets.remove(marketId);
+    }
+
+    /**
+     * @return the number of markets in the index
+     */
+    public int size() {
+        return markets.size();
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @param maxAgeMillis how long a market is kept after it was last registered or updated, in ms
+     */
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the number of markets removed from the index for being older than <code>maxAgeMillis</code>
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private void update(int marketId, String removedRunners, Set<Integer> activeSelectionIds) {
+        if (removedRunners == null) {
+            removedRunners = "";
+        }
+        MarketNonRunners market = getOrCreate(marketId);
+        long now = System.currentTimeMillis();
+        synchronized (market) {
+            if (!removedRunners.equals(market.lastRemovedRunners)) {
+                // removals are appended, so usually only the new tail needs parsing
+                String added = removedRunners.startsWith(market.lastRemovedRunners) ?
+                        removedRunners.substring(market.lastRemovedRunners.length()) : removedRunners;
+                for (String[] entry : splitRemovedRunners(added)) {
+                    String name = normalise(entry[0]);
+                    if (market.removedNames.add(name)) {
+                        market.pending.add(new PendingRemoval(entry, now));
+                    }
+                }
+                market.lastRemovedRunners = removedRunners;
+            }
+
+            Set<Integer> disappeared = null;
+            if (activeSelectionIds != null && market.lastActiveSelectionIds != null) {
+                disappeared = new HashSet<Integer>(market.lastActiveSelectionIds);
+                disappeared.removeAll(activeSelectionIds);
+            }
+            market.resolvePending(disappeared);
+            if (activeSelectionIds != null) {
+                market.lastActiveSelectionIds = activeSelectionIds;
+            }
+            market.lastUpdated = now;
+            market.lastSeen = now;
+        }
+        long due = nextEviction.get();
+        if (now >= due && nextEviction.compareAndSet(due, now + EVICTION_INTERVAL_MILLIS)) {
+            evict(now);
+        }
+    }
+
+    // removes the markets last registered or updated more than maxAgeMillis before now; returns the number removed
+    int evict(long now) {
+        long oldest = now - maxAgeMillis;
+        int evicted = 0;
+        for (Iterator<MarketNonRunners> it = markets.values().iterator(); it.hasNext(); ) {
+            if (it.next().lastSeen < oldest) {
+                it.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            evictions.addAndGet(evicted);
+            LOG.debug("Removed " + evicted + " markets not updated for " + maxAgeMillis + "ms");
+        }
+        return evicted;
+    }
+
+    private MarketNonRunners getOrCreate(int marketId) {
+        MarketNonRunners market = markets.get(marketId);
+        if (market == null) {
+            MarketNonRunners created = new MarketNonRunners(marketId);
+            market = markets.putIfAbsent(marketId, created);
+            if (market == null) {
+                market = created;
+            }
+        }
+        return market;
+    }
+
+    private static String normalise(String name) {
+        return IGNORED_NAME_PARTS.matcher(name.toLowerCase()).replaceAll("");
+    }
+
+    private static double parseReductionFactor(String[] entry) {
+        if (entry.length > 2) {
+            try {
+                return Double.parseDouble(entry[2].trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Unparseable reduction factor for removed runner " + entry[0] + ": " + entry[2]);
+            }
+        }
+        return 0.0;
+    }
+
+    private static class MarketNonRunners {
+
+        private final int marketId;
+
+        // guarded by this
+        private final Map<String, Integer> selectionIdsByName = new HashMap<String, Integer>();
+        private final List<PendingRemoval> pending = new ArrayList<PendingRemoval>();
+        private Set<Integer> lastActiveSelectionIds;
+        private String lastRemovedRunners = "";
+
+        // read without locking; replaced wholesale when a removal is resolved
+        private volatile Map<Integer, NonRunner> nonRunners = Collections.emptyMap();
+        private final Set<String> removedNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private volatile long lastUpdated = Long.MIN_VALUE;
+        private volatile long lastSeen = System.currentTimeMillis(); // last registered or updated
+
+        private MarketNonRunners(int marketId) {
+            this.marketId = marketId;
+        }
+
+        private void resolvePending(Set<Integer> disappeared) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<Integer, NonRunner> resolved = new HashMap<Integer, NonRunner>(nonRunners);
+            for (Iterator<PendingRemoval> it = pending.iterator(); it.hasNext(); ) {
+                PendingRemoval removal = it.next();
+                String[] entry = removal.entry;
+                Integer selectionId = selectionIdsByName.get(normalise(entry[0]));
+                if (selectionId == null && pending.size() == 1 && disappeared != null && disappeared.size() == 1) {
+                    selectionId = disappeared.iterator().next();
+                }
+                if (selectionId == null) {
+                    continue;
+                }
+                resolved.put(selectionId, new NonRunner(selectionId, entry[0],
+                        entry.length > 1 ? entry[1].trim() : null, parseReductionFactor(entry), removal.firstSeen));
+                it.remove();
+            }
+            if (!pending.isEmpty()) {
+                LOG.debug("Could not yet resolve " + pending.size() + " removed runners in marketId " + marketId);
+            }
+            nonRunners = Collections.unmodifiableMap(resolved);
+        }
+    }
+
+    // a removed runner not yet resolved to a selection id, and when it was first seen
+    private static class PendingRemoval {
+
+        private final String[] entry;
+        private final long firstSeen;
+
+        private PendingRemoval(String[] entry, long firstSeen) {
+            this.entry = entry;
+            this.firstSeen = firstSeen;
+        }
+    }
+
+}
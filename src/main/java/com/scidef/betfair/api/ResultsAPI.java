@@ -1,28 +1,90 @@
 package com.scidef.betfair.api;
 
+import com.scidef.betfair.api.aop.DeadlineExceededException;
 import com.scidef.betfair.api.exception.BetfairException;
-import com.sun.syndication.feed.synd.SyndEntry;
-import com.sun.syndication.feed.synd.SyndFeed;
-import com.sun.syndication.io.SyndFeedInput;
-import com.sun.syndication.io.XmlReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 /**
  * A class to handle results retrieval from the Betfair RSS feed.
  * <p/>
+ * Feeds are fetched with connect and read timeouts, so a slow response cannot hang the
+ * caller (if the caller has set a <code>Deadline</code>, they are cut to the time
+ * remaining). <code>getWinnersAsync</code> sends the request with the JDK's non-blocking
+ * <code>HttpClient</code>, so no thread waits for the response, and streams the body on
+ * an executor of the caller's choosing. Each feed is streamed, and parsing of a market's
+ * feed stops as soon as the first entry's description has been read.
+ * <code>getAllWinners</code> instead reads the feed for a whole sport, giving the results
+ * of every recently settled market from one request.
+ * The <code>ETag</code> and <code>Last-Modified</code> headers of recent responses are
+ * remembered and sent back on the next request for the same feed, so a feed that has not
+ * changed is answered with an empty <code>304 Not Modified</code> and the previous result
+ * is reused.
+ * <p/>
  * User: tompearson
  * Date: 11/06/2010
  */
 public class ResultsAPI {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ResultsAPI.class);
+
     private static final String BETFAIR_RSS_URL = "http://rss.betfair.com/RSS.aspx";
+    private static final String FETCH_FEED = "ResultsAPI.fetchFeed";
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+    private static final int MAX_CACHED_FEEDS = 1024;
 
     private static final Pattern COLON_DELIMITER = Pattern.compile(":");
     private static final Pattern COMMA_DELIMITER = Pattern.compile(",");
+    private static final Pattern MARKET_ID = Pattern.compile("marketID=(\\d+)", Pattern.CASE_INSENSITIVE);
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+    private static volatile String rssUrl = BETFAIR_RSS_URL;
+    private static volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private static volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private static volatile HttpClient httpClient = createHttpClient(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+
+    // the validators and parsed results of recently fetched feeds, least recently used first
+    private static final Map<String, CachedFeed> FEED_CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedFeed>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedFeed> eldest) {
+                    return size() > MAX_CACHED_FEEDS;
+                }
+            });
 
     /**
      * Get the winners of an event as defined by the given sport and market ids.
@@ -33,23 +95,129 @@ public class ResultsAPI {
      * @throws BetfairException if there is a problem retrieving the winners
      */
     public static List<String> getWinners(int sportId, int marketId) throws BetfairException {
-        String url = BETFAIR_RSS_URL + "?format=rss" +
+        String url = rssUrl + "?format=rss" +
                 "&sportID=" + sportId +
                 "&marketID=" + marketId;
-        SyndFeed feed = fetchFeed(url);
+        return toWinners(url, fetchFirstDescription(url));
+    }
 
-        if (feed != null && feed.getEntries() != null && feed.getEntries().size() > 0) {
-            SyndEntry entry = (SyndEntry) feed.getEntries().get(0);
-            return parseWinners(entry.getDescription().getValue().trim());
+    /**
+     * Get the winners of every recently settled market in a sport, from a single request
+     * for the sport's feed.
+     * <p/>
+     * Entries whose market id or winners cannot be read are skipped.
+     *
+     * @param sportId the id of the sport
+     * @return a map of market id to the winners of the market, in the order they placed
+     * @throws BetfairException if there is a problem retrieving the feed
+     */
+    public static Map<Integer, List<String>> getAllWinners(int sportId) throws BetfairException {
+        String url = rssUrl + "?format=rss" +
+                "&sportID=" + sportId;
+        return fetchFeed(url, ALL_WINNERS);
+    }
+
+    /**
+     * Read the winners of every market in a saved copy of a results feed, eg to settle
+     * recorded markets in a backtest.
+     *
+     * @param in the feed, which is not closed
+     * @return the winners of each market in the feed, in the order they placed, keyed by market id
+     * @throws BetfairException if there is a problem parsing the feed
+     */
+    public static Map<Integer, List<String>> getAllWinners(InputStream in) throws BetfairException {
+        try {
+            return parseAllWinners(in);
+        } catch (XMLStreamException e) {
+            throw new BetfairException("Problem parsing results feed", e);
         }
-        throw new BetfairException("Problem fetching results from URL " +
-                url);
+    }
+
+    /**
+     * Get the winners of an event without blocking, so the caller can wait for several
+     * results at once or give up on a slow one. The body is streamed and parsed on the
+     * common fork/join pool.
+     *
+     * @param sportId  the id of the sport
+     * @param marketId the id of the market
+     * @return a future for the winners, in the order they placed; the future fails with a
+     *         <code>BetfairException</code> if there is a problem retrieving them
+     * @see #getWinnersAsync(int, int, Executor)
+     */
+    public static Future<List<String>> getWinnersAsync(int sportId, int marketId) {
+        return getWinnersAsync(sportId, marketId, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Get the winners of an event without blocking, so the caller can wait for several
+     * results at once or give up on a slow one. The request is sent by the JDK's
+     * <code>HttpClient</code>, whose timeout is cut to the caller's deadline, if any. Once
+     * the response headers arrive, the body is streamed on the given executor, which
+     * stops reading it after the first entry.
+     *
+     * @param sportId  the id of the sport
+     * @param marketId the id of the market
+     * @param executor the executor on which to read and parse the body
+     * @return a future for the winners, in the order they placed; the future fails with a
+     *         <code>BetfairException</code> if there is a problem retrieving them
+     */
+    public static Future<List<String>> getWinnersAsync(int sportId, int marketId, Executor executor) {
+        final String url = rssUrl + "?format=rss" +
+                "&sportID=" + sportId +
+                "&marketID=" + marketId;
+        final CachedFeed cached = FEED_CACHE.get(url);
+        final Deadline deadline = Deadline.current();
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept-Encoding", "gzip");
+        try {
+            int timeoutMillis = Deadline.timeoutMillis(readTimeoutMillis, FETCH_FEED);
+            if (timeoutMillis > 0) {
+                request.timeout(Duration.ofMillis(timeoutMillis));
+            }
+        } catch (DeadlineExceededException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (cached != null) {
+            if (cached.etag != null) {
+                request.header("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                request.header("If-Modified-Since", cached.lastModified);
+            }
+        }
+
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream())
+                .handle(new BiFunction<HttpResponse<InputStream>, Throwable, HttpResponse<InputStream>>() {
+                    @Override
+                    public HttpResponse<InputStream> apply(HttpResponse<InputStream> response, Throwable failure) {
+                        if (failure != null) {
+                            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ?
+                                    failure.getCause() : failure;
+                            if (deadline != null && deadline.isExpired()) {
+                                throw Deadline.miss(FETCH_FEED, cause);
+                            }
+                            throw new CompletionException(new BetfairException("Problem fetching results from URL " +
+                                    url, cause));
+                        }
+                        return response;
+                    }
+                })
+                .thenApplyAsync(new Function<HttpResponse<InputStream>, List<String>>() {
+                    @Override
+                    public List<String> apply(HttpResponse<InputStream> response) {
+                        try {
+                            return toWinners(url, readFirstDescription(url, cached, deadline, response));
+                        } catch (BetfairException e) {
+                            throw new CompletionException(e);
+                        }
+                    }
+                }, executor);
     }
 
     /**
      * Utility method to work out the position of a given runner.
      * <p/>
-     * The answer could be first (1), second (2), etc – or 0 if the runner did not place.
+     * The answer could be first (1), second (2), etc – or 0 if the runner did not place.
      *
      * @param sportId    the id of the sport
      * @param marketId   the id of the market
@@ -58,7 +226,25 @@ public class ResultsAPI {
      * @throws BetfairException if there is a problem getting the position
      */
     public static int getPosition(int sportId, int marketId, String runnerName) throws BetfairException {
-        List<String> winners = getWinners(sportId, marketId);
+        return getPosition(getWinners(sportId, marketId), runnerName);
+    }
+
+    /**
+     * Set the timeouts used when fetching feeds.
+     *
+     * @param connectTimeoutMillis the connect timeout, in ms
+     * @param readTimeoutMillis    the read timeout, in ms
+     */
+    public static void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        ResultsAPI.connectTimeoutMillis = connectTimeoutMillis;
+        ResultsAPI.readTimeoutMillis = readTimeoutMillis;
+        ResultsAPI.httpClient = createHttpClient(connectTimeoutMillis);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    static int getPosition(List<String> winners, String runnerName) {
         int position = 1;
         for (String winner : winners) {
             if (winner.equals(runnerName)) {
@@ -69,9 +255,6 @@ public class ResultsAPI {
         return 0;
     }
 
-    /////////////////////////////////////////////////////////////////////////////
-    /////////////////////////////////////////////////////////////////////////////
-
     static List<String> parseWinners(String winnersString) throws BetfairException {
         String[] splitOnColon = COLON_DELIMITER.split(winnersString);
         if (splitOnColon.length != 2) {
@@ -85,18 +268,265 @@ public class ResultsAPI {
         return winners;
     }
 
-    private static SyndFeed fetchFeed(String url) throws BetfairException {
-        SyndFeed feed;
+    static List<String> toWinners(String url, String description) throws BetfairException {
+        if (description != null) {
+            return parseWinners(description.trim());
+        }
+        throw new BetfairException("Problem fetching results from URL " +
+                url);
+    }
+
+    // fetch a feed, returning the description of its first entry or null if it has none
+    static String fetchFirstDescription(String url) throws BetfairException {
+        return fetchFeed(url, FIRST_DESCRIPTION);
+    }
+
+    // fetch a feed, reusing the previous result if the feed has not been modified since
+    @SuppressWarnings("unchecked")
+    private static <T> T fetchFeed(String url, FeedParser<T> parser) throws BetfairException {
+        CachedFeed cached = FEED_CACHE.get(url);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(Deadline.timeoutMillis(connectTimeoutMillis, FETCH_FEED));
+            connection.setReadTimeout(Deadline.timeoutMillis(readTimeoutMillis, FETCH_FEED));
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (cached != null) {
+                if (cached.etag != null) {
+                    connection.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                return (T) cached.result;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                // read what is left of the error so the connection can be reused
+                discard(connection.getErrorStream());
+                throw new BetfairException("Problem fetching results from URL " + url + ". HTTP status: " + status);
+            }
+
+            T result;
+            InputStream in = connection.getInputStream();
+            try {
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                result = parser.parse(in);
+            } finally {
+                in.close();
+            }
+
+            cache(url, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), result);
+            return result;
+        } catch (IOException e) {
+            if (Deadline.isCurrentExpired()) {
+                throw Deadline.miss(FETCH_FEED, e);
+            }
+            throw new BetfairException("Problem fetching results from URL " +
+                    url, e);
+        } catch (XMLStreamException e) {
+            throw new BetfairException("Problem parsing results from URL " +
+                    url, e);
+        }
+    }
+
+    // stream the description of the first entry of a feed fetched by the HttpClient, or null if it has none
+    private static String readFirstDescription(String url, CachedFeed cached, Deadline deadline,
+                                               HttpResponse<InputStream> response) throws BetfairException {
+        InputStream in = response.body();
+        int status = response.statusCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            discard(in);
+            return (String) cached.result;
+        }
+        if (status != HttpURLConnection.HTTP_OK) {
+            discard(in);
+            throw new BetfairException("Problem fetching results from URL " + url + ". HTTP status: " + status);
+        }
         try {
-            URL feedSource = new URL(url);
-            SyndFeedInput input = new SyndFeedInput();
-            feed = input.build(new XmlReader(feedSource));
-        } catch (Exception e) {
+            try {
+                if ("gzip".equalsIgnoreCase(response.headers().firstValue("Content-Encoding").orElse(null))) {
+                    in = new GZIPInputStream(in);
+                }
+                String description = parseFirstDescription(in);
+                cache(url, response.headers().firstValue("ETag").orElse(null),
+                        response.headers().firstValue("Last-Modified").orElse(null), description);
+                return description;
+            } finally {
+                // closing the body early abandons the rest of the feed
+                in.close();
+            }
+        } catch (IOException e) {
+            if (deadline != null && deadline.isExpired()) {
+                throw Deadline.miss(FETCH_FEED, e);
+            }
             throw new BetfairException("Problem fetching results from URL " +
                     url, e);
+        } catch (XMLStreamException e) {
+            throw new BetfairException("Problem parsing results from URL " +
+                    url, e);
         }
-        return feed;
     }
 
+    // remember the validators of a feed, to send back on the next request for it
+    private static void cache(String url, String etag, String lastModified, Object result) {
+        if (etag != null || lastModified != null) {
+            FEED_CACHE.put(url, new CachedFeed(etag, lastModified, result));
+        } else {
+            FEED_CACHE.remove(url);
+        }
+    }
+
+    // read a response body to the end and close it, ignoring any failure
+    private static void discard(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+        } catch (IOException e) {
+            LOG.debug("Problem discarding response body", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOG.debug("Problem closing response body", e);
+            }
+        }
+    }
+
+    // read the description of the first item of an RSS feed, without reading the rest of the feed
+    static String parseFirstDescription(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            boolean inItem = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("item".equals(name)) {
+                        inItem = true;
+                    } else if (inItem && "description".equals(name)) {
+                        return reader.getElementText();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inItem && "item".equals(reader.getLocalName())) {
+                    // the first item has no description
+                    return null;
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    // read the winners of every item of an RSS feed, keyed by the market id in the item's link or guid
+    static Map<Integer, List<String>> parseAllWinners(InputStream in) throws XMLStreamException {
+        Map<Integer, List<String>> winnersByMarketId = new HashMap<Integer, List<String>>();
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            boolean inItem = false;
+            String title = null;
+            String description = null;
+            Integer marketId = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("item".equals(name)) {
+                        inItem = true;
+                        title = null;
+                        description = null;
+                        marketId = null;
+                    } else if (inItem && "title".equals(name)) {
+                        title = reader.getElementText();
+                    } else if (inItem && "description".equals(name)) {
+                        description = reader.getElementText();
+                    } else if (inItem && marketId == null && ("link".equals(name) || "guid".equals(name))) {
+                        Matcher matcher = MARKET_ID.matcher(reader.getElementText());
+                        if (matcher.find()) {
+                            marketId = Integer.valueOf(matcher.group(1));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inItem && "item".equals(reader.getLocalName())) {
+                    inItem = false;
+                    if (marketId == null || description == null) {
+                        LOG.warn("Skipping result [" + title + "] with no market id or winners");
+                        continue;
+                    }
+                    try {
+                        winnersByMarketId.put(marketId,
+                                Collections.unmodifiableList(parseWinners(description.trim())));
+                    } catch (BetfairException e) {
+                        LOG.warn("Skipping result [" + title + "]: " + e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return winnersByMarketId;
+    }
+
+    private static HttpClient createHttpClient(int connectTimeoutMillis) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (connectTimeoutMillis > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeoutMillis));
+        }
+        return builder.build();
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    private interface FeedParser<T> {
+        T parse(InputStream in) throws XMLStreamException;
+    }
+
+    private static final FeedParser<String> FIRST_DESCRIPTION = new FeedParser<String>() {
+        @Override
+        public String parse(InputStream in) throws XMLStreamException {
+            return parseFirstDescription(in);
+        }
+    };
+
+    private static final FeedParser<Map<Integer, List<String>>> ALL_WINNERS =
+            new FeedParser<Map<Integer, List<String>>>() {
+                @Override
+                public Map<Integer, List<String>> parse(InputStream in) throws XMLStreamException {
+                    return Collections.unmodifiableMap(parseAllWinners(in));
+                }
+            };
+
+    private static class CachedFeed {
+
+        private final String etag;
+        private final String lastModified;
+        private final Object result;
+
+        private CachedFeed(String etag, String lastModified, Object result) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+    }
+
+    // for tests
+    static void setRssUrl(String rssUrl) {
+        ResultsAPI.rssUrl = rssUrl;
+    }
 
 }
@@ -0,0 +1,293 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.exception.BetfairException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An index of the winners of each settled market in a sport, built from the sport-wide
+ * results feed.
+ * <p/>
+ * Rather than one request per market (or per bet), <code>refresh</code> fetches the feed
+ * for the whole sport once and adds the results of every market in it to the index. The
+ * index can be refreshed on a schedule, eg every few minutes through the afternoon and
+ * evening while races are being settled.
+ * <p/>
+ * So that the index does not grow without end, a market is kept for <code>maxAgeMillis</code>
+ * (a day by default) after it was last seen in the feed or looked up on its own, and is
+ * removed by the first refresh after that. If it is asked for again, it is looked up again.
+ * <p/>
+ * A market that is not in the index, eg one settled since the last refresh, is looked up
+ * on its own feed and added to the index, unless this fallback has been turned off.
+ * <p/>
+ * Lookups are lock-free and can be made from any thread.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class ResultsIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResultsIndex.class);
+
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 5 * 60 * 1000L;
+    public static final int DEFAULT_FIRST_HOUR = 12;
+    public static final int DEFAULT_LAST_HOUR = 22;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final int sportId;
+    private final ConcurrentMap<Integer, IndexedResult> resultsByMarketId =
+            new ConcurrentHashMap<Integer, IndexedResult>();
+
+    private volatile boolean fallbackToMarketFeed = true; // if set, markets not in the index are fetched individually
+    private volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private volatile long lastRefreshed = -1;
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Primary constructor
+     *
+     * @param sportId the id of the sport, eg <code>HorseRacing.HORSE_RACING_SPORT_ID</code>
+     */
+    public ResultsIndex(int sportId) {
+        this.sportId = sportId;
+    }
+
+    /**
+     * Fetch the sport-wide results feed and add its results to the index, then remove the
+     * markets that have not been seen for <code>maxAgeMillis</code>.
+     *
+     * @return the number of markets added to the index
+     * @throws BetfairException if there is a problem retrieving the feed
+     */
+    public int refresh() throws BetfairException {
+        Map<Integer, List<String>> results;
+        try {
+            results = ResultsAPI.getAllWinners(sportId);
+        } catch (BetfairException e) {
+            refreshFailures.incrementAndGet();
+            throw e;
+        }
+        long now = System.currentTimeMillis();
+        int added = 0;
+        for (Map.Entry<Integer, List<String>> result : results.entrySet()) {
+            if (resultsByMarketId.put(result.getKey(), new IndexedResult(result.getValue(), now)) == null) {
+                added++;
+            }
+        }
+        int evicted = evict(now);
+        lastRefreshed = now;
+        refreshes.incrementAndGet();
+        LOG.debug("Refreshed results for sportId " + sportId + ": " + added + " new markets, " +
+                evicted + " removed, " + resultsByMarketId.size() + " in total");
+        return added;
+    }
+
+    /**
+     * Get the winners of a market.
+     *
+     * @param marketId the id of the market
+     * @return the winners of the market, in the order they placed
+     * @throws BetfairException if the market is not in the index and cannot be looked up
+     */
+    public List<String> getWinners(int marketId) throws BetfairException {
+        IndexedResult result = resultsByMarketId.get(marketId);
+        if (result != null) {
+            return result.winners;
+        }
+        if (!fallbackToMarketFeed) {
+            throw new BetfairException("No results for marketId " + marketId);
+        }
+        fallbacks.incrementAndGet();
+        List<String> winners = Collections.unmodifiableList(ResultsAPI.getWinners(sportId, marketId));
+        resultsByMarketId.put(marketId, new IndexedResult(winners, System.currentTimeMillis()));
+        return winners;
+    }
+
+    /**
+     * Work out the position of a given runner, as <code>ResultsAPI.getPosition</code> does.
+     *
+     * @param marketId   the id of the market
+     * @param runnerName the name of the runner
+     * @return the position the runner placed, or 0 if the runner did not place
+     * @throws BetfairException if the market is not in the index and cannot be looked up
+     */
+    public int getPosition(int marketId, String runnerName) throws BetfairException {
+        return ResultsAPI.getPosition(getWinners(marketId), runnerName);
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return true if the results of the market are in the index
+     */
+    public boolean contains(int marketId) {
+        return resultsByMarketId.containsKey(marketId);
+    }
+
+    /**
+     * @return the number of markets in the index
+     */
+    public int size() {
+        return resultsByMarketId.size();
+    }
+
+    /**
+     * Refresh the index on a schedule with the default interval and hours.
+     */
+    public void start() {
+        start(DEFAULT_REFRESH_INTERVAL_MILLIS, DEFAULT_FIRST_HOUR, DEFAULT_LAST_HOUR);
+    }
+
+    /**
+     * Refresh the index on a schedule, between the given hours of the (local) day only.
+     *
+     * @param intervalMillis the time between refreshes, in ms
+     * @param firstHour      the hour of the day from which to refresh, eg 12
+     * @param lastHour       the hour of the day from which to stop refreshing, eg 22
+     */
+    public synchronized void start(long intervalMillis, final int firstHour, final int lastHour) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "results-index");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refreshIfDue(new GregorianCalendar(), firstHour, lastHour);
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop refreshing the index on a schedule.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public int getSportId() {
+        return sportId;
+    }
+
+    public boolean isFallbackToMarketFeed() {
+        return fallbackToMarketFeed;
+    }
+
+    public void setFallbackToMarketFeed(boolean fallbackToMarketFeed) {
+        this.fallbackToMarketFeed = fallbackToMarketFeed;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @param maxAgeMillis how long a market is kept after it was last seen in the feed, in ms
+     */
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the time (in ms since the epoch) of the last successful refresh, or -1 if there has been none
+     */
+    public long getLastRefreshed() {
+        return lastRefreshed;
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+
+    /**
+     * @return the number of markets that were not in the index and were looked up individually
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * @return the number of markets removed from the index for being older than <code>maxAgeMillis</code>
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // removes the markets last seen more than maxAgeMillis before now; returns the number removed
+    int evict(long now) {
+        long oldest = now - maxAgeMillis;
+        int evicted = 0;
+        for (Iterator<IndexedResult> it = resultsByMarketId.values().iterator(); it.hasNext(); ) {
+            if (it.next().indexedAt < oldest) {
+                it.remove();
+                evicted++;
+            }
+        }
+        evictions.addAndGet(evicted);
+        return evicted;
+    }
+
+    // refreshes the index if the time is within the refresh hours; returns true if it was refreshed
+    boolean refreshIfDue(Calendar now, int firstHour, int lastHour) {
+        int hour = now.get(Calendar.HOUR_OF_DAY);
+        if (hour < firstHour || hour >= lastHour) {
+            return false;
+        }
+        try {
+            refresh();
+            return true;
+        } catch (Exception e) {
+            // keep the schedule running, and serve what is already in the index
+            LOG.warn("Failed to refresh results for sportId " + sportId, e);
+            return false;
+        }
+    }
+
+    private static class IndexedResult {
+
+        private final List<String> winners;
+        private final long indexedAt;
+
+        private IndexedResult(List<String> winners, long indexedAt) {
+            this.winners = winners;
+            this.indexedAt = indexedAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,315 @@
+package com.scidef.betfair.api;
+
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedReq;
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
+import com.betfair.publicapi.types.global.v3.GetEventsReq;
+import com.betfair.publicapi.types.global.v3.GetEventsResp;
+import com.betfair.publicapi.v3.bfglobalservice.BFGlobalService;
+import com.betfair.publicapi.v3.bfglobalservice.BFGlobalService_Service;
+import com.betfair.publicapi.v5.bfexchangeservice.BFExchangeService;
+import com.betfair.publicapi.v5.bfexchangeservice.BFExchangeService_Service;
+import com.scidef.betfair.api.exception.BetfairException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An explicit startup phase for the Betfair services.
+ * <p/>
+ * Creating a service port parses its WSDL and builds the JAXB context for its types, and
+ * the JAXB runtime is otherwise only loaded on the first call, so left to themselves these
+ * costs fall on the first request made. <code>start</code> instead pays them up front and
+ * in parallel: it builds the global and exchange service ports from the WSDLs bundled on
+ * the classpath (under <code>wsdl/</code>), and loads the JAXB runtime by marshalling and
+ * unmarshalling a request and a response of each service.
+ * <p/>
+ * The round trips use a JAXB context of their own, not the ports' contexts (which are built
+ * as the ports are created, and are not exposed by JAX-WS). They only warm the JAXB runtime:
+ * loading its classes and the generated types, and compiling the code they run. The first
+ * call through each port still creates that port's marshallers and opens its connection.
+ * <p/>
+ * Once started, each thread is given ports of its own, created from the parsed WSDLs on its
+ * first call, as a thread's <code>Deadline</code> is applied to the request context of the
+ * port it calls through. The bootstrap can be passed to the <code>GlobalAPI</code> and
+ * <code>ExchangeAPI</code>:
+ * <pre>
+ *     ServiceBootstrap bootstrap = new ServiceBootstrap();
+ *     bootstrap.start();
+ *     GlobalAPI globalAPI = new GlobalAPI(bootstrap);
+ *     ExchangeAPI exchangeAPI = new ExchangeAPI(globalAPI, bootstrap);
+ * </pre>
+ * The ports can also be pointed at other endpoints than those in the WSDLs, eg a local
+ * <code>StubServer</code> for load testing.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class ServiceBootstrap {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceBootstrap.class);
+
+    public static final String GLOBAL_SERVICE_WSDL = "wsdl/BFGlobalService.wsdl";
+    public static final String EXCHANGE_SERVICE_WSDL = "wsdl/BFExchangeService.wsdl";
+
+    private static final String GLOBAL_TYPES_NAMESPACE = "http://www.betfair.com/publicapi/types/global/v3/";
+    private static final String EXCHANGE_TYPES_NAMESPACE = "http://www.betfair.com/publicapi/types/exchange/v5/";
+
+    private final String globalEndpoint; // if set, the global service port is pointed at this URL
+    private final String exchangeEndpoint; // if set, the exchange service port is pointed at this URL
+
+    // the parsed WSDLs, from which each thread's ports are created
+    private volatile BFGlobalService_Service globalService;
+    private volatile BFExchangeService_Service exchangeService;
+
+    private final ThreadLocal<BFGlobalService> globalPorts = new ThreadLocal<BFGlobalService>() {
+        @Override
+        protected BFGlobalService initialValue() {
+            return createGlobalPort();
+        }
+    };
+    private final ThreadLocal<BFExchangeService> exchangePorts = new ThreadLocal<BFExchangeService>() {
+        @Override
+        protected BFExchangeService initialValue() {
+            return createExchangePort();
+        }
+    };
+
+    private final Map<String, Long> taskTimes = new ConcurrentHashMap<String, Long>();
+    private volatile long startupTime = -1;
+
+    /**
+     * Create a bootstrap for the endpoints in the WSDLs.
+     */
+    public ServiceBootstrap() {
+        this(null, null);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param globalEndpoint   the URL of the global service, or null for the one in its WSDL
+     * @param exchangeEndpoint the URL of the exchange service, or null for the one in its WSDL
+     */
+    public ServiceBootstrap(String globalEndpoint, String exchangeEndpoint) {
+        this.globalEndpoint = globalEndpoint;
+        this.exchangeEndpoint = exchangeEndpoint;
+    }
+
+    /**
+     * Parse the WSDLs, build a service port of each and load the JAXB runtime, in parallel.
+     * Subsequent calls do nothing.
+     *
+     * @throws BetfairException if any part of the startup fails
+     */
+    public synchronized void start() throws BetfairException {
+        if (startupTime >= 0) {
+            return;
+        }
+
+        Map<String, Callable<?>> tasks = new LinkedHashMap<String, Callable<?>>();
+        tasks.put("globalService", new Callable<Object>() {
+            @Override
+            public Object call() {
+                URL wsdl = getWsdlLocation(GLOBAL_SERVICE_WSDL);
+                globalService = wsdl != null ? new BFGlobalService_Service(wsdl) : new BFGlobalService_Service();
+                return createGlobalPort();
+            }
+        });
+        tasks.put("exchangeService", new Callable<Object>() {
+            @Override
+            public Object call() {
+                URL wsdl = getWsdlLocation(EXCHANGE_SERVICE_WSDL);
+                exchangeService = wsdl != null ? new BFExchangeService_Service(wsdl) : new BFExchangeService_Service();
+                return createExchangePort();
+            }
+        });
+        tasks.put("globalTypes", new Callable<Object>() {
+            @Override
+            public Object call() throws JAXBException {
+                return roundTrip(GLOBAL_TYPES_NAMESPACE, new GetEventsReq(), new GetEventsResp());
+            }
+        });
+        tasks.put("exchangeTypes", new Callable<Object>() {
+            @Override
+            public Object call() throws JAXBException {
+                return roundTrip(EXCHANGE_TYPES_NAMESPACE,
+                        new GetMarketPricesCompressedReq(), new GetMarketPricesCompressedResp());
+            }
+        });
+
+        start(tasks);
+    }
+
+    /**
+     * @return the calling thread's global service port, which no other thread uses
+     * @throws IllegalStateException if the bootstrap has not been started
+     */
+    public BFGlobalService getGlobalService() {
+        checkStarted();
+        return globalPorts.get();
+    }
+
+    /**
+     * @return the calling thread's exchange service port, which no other thread uses
+     * @throws IllegalStateException if the bootstrap has not been started
+     */
+    public BFExchangeService getExchangeService() {
+        checkStarted();
+        return exchangePorts.get();
+    }
+
+    /**
+     * @return true once <code>start</code> has completed successfully
+     */
+    public boolean isStarted() {
+        return startupTime >= 0;
+    }
+
+    /**
+     * @return the time, in ms, taken by <code>start</code>, or -1 if it has not completed
+     */
+    public long getStartupTime() {
+        return startupTime;
+    }
+
+    /**
+     * @return the time, in ms, taken by each startup task, keyed by task name
+     */
+    public Map<String, Long> getTaskTimes() {
+        return Collections.unmodifiableMap(taskTimes);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // runs the tasks in parallel, recording how long each takes
+    synchronized void start(Map<String, Callable<?>> tasks) throws BetfairException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "service-bootstrap");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            Map<String, Future<?>> futures = new LinkedHashMap<String, Future<?>>();
+            for (Map.Entry<String, Callable<?>> task : tasks.entrySet()) {
+                futures.put(task.getKey(), executor.submit(timed(task.getKey(), task.getValue())));
+            }
+            List<String> failed = new ArrayList<String>();
+            Throwable cause = null;
+            for (Map.Entry<String, Future<?>> future : futures.entrySet()) {
+                try {
+                    future.getValue().get();
+                } catch (ExecutionException e) {
+                    LOG.error("Startup task " + future.getKey() + " failed", e.getCause());
+                    failed.add(future.getKey());
+                    cause = e.getCause();
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw new BetfairException("Startup failed for " + failed, cause);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BetfairException("Interrupted during startup", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        startupTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Started Betfair services in " + startupTime + "ms " + taskTimes);
+    }
+
+    private <V> Callable<V> timed(final String name, final Callable<V> task) {
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    taskTimes.put(name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+            }
+        };
+    }
+
+    private void checkStarted() {
+        if (!isStarted()) {
+            throw new IllegalStateException("ServiceBootstrap has not been started");
+        }
+    }
+
+    private BFGlobalService createGlobalPort() {
+        BFGlobalService port = globalService.getBFGlobalService();
+        setEndpoint(port, globalEndpoint);
+        return port;
+    }
+
+    private BFExchangeService createExchangePort() {
+        BFExchangeService port = exchangeService.getBFExchangeService();
+        setEndpoint(port, exchangeEndpoint);
+        return port;
+    }
+
+    private static void setEndpoint(Object port, String endpoint) {
+        if (endpoint != null) {
+            ((BindingProvider) port).getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpoint);
+        }
+    }
+
+    private static URL getWsdlLocation(String resource) {
+        URL url = ServiceBootstrap.class.getClassLoader().getResource(resource);
+        if (url == null) {
+            LOG.warn("WSDL " + resource + " is not on the classpath; using the generated location");
+        }
+        return url;
+    }
+
+    // marshal and unmarshal a request and a response through a context of our own, so the JAXB runtime
+    // and the service's types are loaded before the first call; the port's own context is not touched
+    private static Object roundTrip(String namespace, Object request, Object response) throws JAXBException {
+        JAXBContext context = JAXBContext.newInstance(request.getClass(), response.getClass());
+        Object result = null;
+        for (Object value : new Object[]{request, response}) {
+            result = roundTrip(context, namespace, value);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T roundTrip(JAXBContext context, String namespace, T value) throws JAXBException {
+        Class<T> type = (Class<T>) value.getClass();
+        StringWriter writer = new StringWriter();
+        context.createMarshaller().marshal(
+                new JAXBElement<T>(new QName(namespace, type.getSimpleName()), type, value), writer);
+        return context.createUnmarshaller().unmarshal(
+                new StreamSource(new StringReader(writer.toString())), type).getValue();
+    }
+
+}
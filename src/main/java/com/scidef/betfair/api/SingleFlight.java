@@ -0,0 +1,210 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.trace.Span;
+import com.scidef.betfair.api.trace.Tracer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent requests for the same key into a single call.
+ * <p/>
+ * The first caller for a key makes the call; any other caller for the same key that
+ * arrives while it is in flight waits for it and shares its result (or exception).
+ * If a freshness window is set, a successful result is also shared with callers that
+ * arrive up to that long after it completed. Failed calls are never reused.
+ * <p/>
+ * When tracing is on, the time a caller spends waiting for a call in flight is traced as a
+ * <code>SingleFlight.wait</code> span.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * The call to make on behalf of all the callers for a key.
+     */
+    public interface Call<V> {
+
+        V call() throws BetfairException;
+
+    }
+
+    private final long freshnessNanos;
+    private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<K, Flight<V>>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong servedFresh = new AtomicLong();
+
+    /**
+     * @param freshnessMillis how long after a call completes its result may be reused; 0 to
+     *                        only share calls that are still in flight
+     */
+    public SingleFlight(long freshnessMillis) {
+        this.freshnessNanos = TimeUnit.MILLISECONDS.toNanos(freshnessMillis);
+    }
+
+    /**
+     * Get the value for a key, making the call only if no call for the key is in flight
+     * (or fresh).
+     *
+     * @param key  the key
+     * @param call the call to make if needed
+     * @return the result of the call
+     * @throws BetfairException if the call failed
+     */
+    public V get(K key, Call<V> call) throws BetfairException {
+        requests.incrementAndGet();
+        while (true) {
+            Flight<V> flight = flights.get(key);
+            if (flight == null) {
+                Flight<V> created = new Flight<V>();
+                if (flights.putIfAbsent(key, created) == null) {
+                    return run(key, created, call);
+                }
+            } else if (!flight.isDone()) {
+                joined.incrementAndGet();
+                Span span = Tracer.start("SingleFlight.wait");
+                try {
+                    return flight.await();
+                } finally {
+                    span.end();
+                }
+            } else if (flight.failure == null && System.nanoTime() - flight.completedAt < freshnessNanos) {
+                servedFresh.incrementAndGet();
+                return flight.await();
+            } else {
+                Flight<V> created = new Flight<V>();
+                if (flights.replace(key, flight, created)) {
+                    return run(key, created, call);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget any result held for a key, so that the next caller makes a new call.
+     *
+     * @param key the key
+     */
+    public void remove(K key) {
+        Flight<V> flight = flights.get(key);
+        if (flight != null && flight.isDone()) {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return the number of requests made via <code>get</code>
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of calls actually made
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * @return the number of requests that shared a call already in flight
+     */
+    public long getJoined() {
+        return joined.get();
+    }
+
+    /**
+     * @return the number of requests served from a result within the freshness window
+     */
+    public long getServedFresh() {
+        return servedFresh.get();
+    }
+
+    /**
+     * @return the number of calls saved by coalescing
+     */
+    public long getSaved() {
+        return joined.get() + servedFresh.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight{" +
+                "requests=" + getRequests() +
+                ", executions=" + getExecutions() +
+                ", joined=" + getJoined() +
+                ", servedFresh=" + getServedFresh() +
+                '}';
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private V run(K key, Flight<V> flight, Call<V> call) throws BetfairException {
+        executions.incrementAndGet();
+        try {
+            V value = call.call();
+            flight.complete(value, null);
+            if (freshnessNanos <= 0) {
+                flights.remove(key, flight);
+            }
+            return value;
+        } catch (Throwable t) {
+            flight.complete(null, t);
+            flights.remove(key, flight);
+            return flight.await();
+        }
+    }
+
+    private static class Flight<V> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile V value;
+        private volatile Throwable failure;
+        private volatile long completedAt;
+
+        private boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        private void complete(V value, Throwable failure) {
+            this.value = value;
+            this.failure = failure;
+            this.completedAt = System.nanoTime();
+            done.countDown();
+        }
+
+        private V await() throws BetfairException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                // restore interrupted status
+                Thread.currentThread().interrupt();
+                throw new BetfairException("Interrupted waiting for a shared request", e);
+            }
+            if (failure == null) {
+                return value;
+            }
+            if (failure instanceof BetfairException) {
+                throw (BetfairException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new BetfairException("Shared request failed", failure);
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.scidef.betfair.api;
+
+import com.betfair.publicapi.types.exchange.v5.APIErrorEnum;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.trace.Span;
+import com.scidef.betfair.api.trace.Tracer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A lightweight SOAP client for the hot price-polling calls of the Betfair exchange service.
+ * <p/>
+ * Each request is written from a pre-built template, and each response is streamed with
+ * StAX, so only the compressed prices string is created from it: there is no JAXB object
+ * graph or DOM. The string can be passed straight to
+ * <code>MessageUtil.parseCompressedMarketPrices</code>.
+ * <p/>
+ * Errors are handled as by the <code>ExchangeAPI</code>: a header error code of
+ * <code>NO_SESSION</code> or <code>EXCEEDED_THROTTLE</code> throws the corresponding
+ * exception (see <code>MessageUtil.checkAPIErrorCode</code>) and any other error code
+ * or SOAP fault throws a <code>BetfairException</code>. As its name ends with "API", its
+ * methods are retried by the <code>RetryMethodAspect</code> in the same way.
+ * <p/>
+ * If the calling thread has a <code>Deadline</code>, the connect and read timeouts are cut
+ * to the time remaining, and a request is not sent once it has passed.
+ * <p/>
+ * When tracing is on, the time until the response status arrives is traced as a
+ * <code>StreamingExchangeAPI.network</code> span and the streaming of the response body as a
+ * <code>StreamingExchangeAPI.parse</code> span.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class StreamingExchangeAPI {
+
+    public static final String DEFAULT_ENDPOINT = "https://api.betfair.com/exchange/v5/BFExchangeService";
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+    private static final String GET_MARKET_PRICES_COMPRESSED_ACTION = "getMarketPricesCompressed";
+    private static final String GET_MARKET_PRICES_COMPRESSED = "StreamingExchangeAPI.getMarketPricesCompressed";
+    private static final String GET_MARKET_PRICES_COMPRESSED_START =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                    "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" " +
+                    "xmlns:bfex=\"http://www.betfair.com/publicapi/v5/BFExchangeService/\">" +
+                    "<soap:Body><bfex:getMarketPricesCompressed><bfex:request>" +
+                    "<header><clientStamp>0</clientStamp><sessionToken>";
+    private static final String GET_MARKET_PRICES_COMPRESSED_MIDDLE =
+            "</sessionToken></header><marketId>";
+    private static final String GET_MARKET_PRICES_COMPRESSED_END =
+            "</marketId></bfex:request></bfex:getMarketPricesCompressed></soap:Body></soap:Envelope>";
+
+    private final GlobalAPI globalAPI;
+    private final URL endpoint;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /**
+     * Create a client for the Betfair exchange service with the default timeouts.
+     *
+     * @param globalAPI an instance of the <code>GlobalAPI</code>, used to retrieve session details
+     */
+    public StreamingExchangeAPI(GlobalAPI globalAPI) {
+        this(globalAPI, DEFAULT_ENDPOINT, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param globalAPI            an instance of the <code>GlobalAPI</code>, used to retrieve session details
+     * @param endpoint             the URL of the exchange service
+     * @param connectTimeoutMillis the connect timeout, in ms
+     * @param readTimeoutMillis    the read timeout, in ms
+     */
+    public StreamingExchangeAPI(GlobalAPI globalAPI, String endpoint,
+                                int connectTimeoutMillis, int readTimeoutMillis) {
+        this.globalAPI = globalAPI;
+        try {
+            this.endpoint = new URL(endpoint);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid endpoint: " + endpoint, e);
+        }
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Retrieve the current prices of a market in compressed form.
+     *
+     * @param marketId the id of the market
+     * @return the compressed market prices data, as returned by
+     *         <code>ExchangeAPI.getMarketPricesCompressed(marketId).getMarketPrices()</code>
+     * @throws BetfairException if there is a problem retrieving the prices
+     */
+    public String getMarketPricesCompressed(int marketId) throws BetfairException {
+        String request = buildGetMarketPricesCompressedRequest(globalAPI.getSessionToken(), marketId);
+        Span network = Tracer.start("StreamingExchangeAPI.network");
+        try {
+            // the connection is not disconnected, so that it can be kept alive for the next call
+            HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+            connection.setConnectTimeout(Deadline.timeoutMillis(connectTimeoutMillis, GET_MARKET_PRICES_COMPRESSED));
+            connection.setReadTimeout(Deadline.timeoutMillis(readTimeoutMillis, GET_MARKET_PRICES_COMPRESSED));
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
+            connection.setRequestProperty("SOAPAction", GET_MARKET_PRICES_COMPRESSED_ACTION);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+
+            byte[] body = request.getBytes(UTF_8);
+            connection.setFixedLengthStreamingMode(body.length);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+
+            // SOAP faults come back with a 500 status, but are parsed like any other response
+            InputStream in = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST ?
+                    connection.getInputStream() : connection.getErrorStream();
+            network.end();
+            if (in == null) {
+                throw new BetfairException("getMarketPricesCompressed error. HTTP status: "
+                        + connection.getResponseCode());
+            }
+            Span parse = Tracer.start("StreamingExchangeAPI.parse");
+            try {
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                return parseGetMarketPricesCompressedResponse(in);
+            } finally {
+                in.close();
+                parse.end();
+            }
+        } catch (IOException e) {
+            if (Deadline.isCurrentExpired()) {
+                throw Deadline.miss(GET_MARKET_PRICES_COMPRESSED, e);
+            }
+            throw new BetfairException("getMarketPricesCompressed failed for marketId " + marketId, e);
+        } finally {
+            network.end();
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    static String buildGetMarketPricesCompressedRequest(String sessionToken, int marketId) {
+        // session tokens are base 64 strings, so need no escaping
+        return new StringBuilder(GET_MARKET_PRICES_COMPRESSED_START.length() + 256)
+                .append(GET_MARKET_PRICES_COMPRESSED_START)
+                .append(sessionToken)
+                .append(GET_MARKET_PRICES_COMPRESSED_MIDDLE)
+                .append(marketId)
+                .append(GET_MARKET_PRICES_COMPRESSED_END)
+                .toString();
+    }
+
+    static String parseGetMarketPricesCompressedResponse(InputStream in) throws BetfairException {
+        String apiErrorCode = null;
+        String errorCode = null;
+        String marketPrices = null;
+        String fault = null;
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+            try {
+                // the result is the element two levels inside the soap body
+                int depth = 0;
+                int bodyDepth = -1;
+                int resultDepth = -1;
+                boolean inHeader = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (resultDepth < 0) {
+                            if (bodyDepth < 0) {
+                                if (depth == 2 && "Body".equals(name)) {
+                                    bodyDepth = depth;
+                                }
+                            } else if (fault != null) {
+                                if ("faultstring".equals(name)) {
+                                    fault = reader.getElementText();
+                                    depth--;
+                                }
+                            } else if (depth == bodyDepth + 1 && "Fault".equals(name)) {
+                                fault = "";
+                            } else if (depth == bodyDepth + 2) {
+                                resultDepth = depth;
+                            }
+                        } else if (depth == resultDepth + 1) {
+                            if ("header".equals(name)) {
+                                inHeader = true;
+                            } else if ("errorCode".equals(name)) {
+                                errorCode = reader.getElementText();
+                                depth--;
+                            } else if ("marketPrices".equals(name)) {
+                                marketPrices = reader.getElementText();
+                                depth--;
+                            }
+                        } else if (inHeader && depth == resultDepth + 2 && "errorCode".equals(name)) {
+                            apiErrorCode = reader.getElementText();
+                            depth--;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (depth == resultDepth) {
+                            // nothing more is needed from the rest of the envelope
+                            break;
+                        }
+                        if (depth == resultDepth + 1) {
+                            inHeader = false;
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new BetfairException("Failed to parse getMarketPricesCompressed response", e);
+        }
+
+        if (fault != null) {
+            throw new BetfairException("getMarketPricesCompressed fault: " + fault);
+        }
+        if ("OK".equals(errorCode) && marketPrices != null) {
+            return marketPrices;
+        }
+        if (apiErrorCode != null) {
+            APIErrorEnum apiError = null;
+            try {
+                apiError = APIErrorEnum.valueOf(apiErrorCode);
+            } catch (IllegalArgumentException e) {
+                // not a code we know of, so treat it as a general error
+            }
+            if (apiError != null) {
+                MessageUtil.checkAPIErrorCode(apiError);
+            }
+        }
+        throw new BetfairException("getMarketPricesCompressed error. Error code: " + errorCode + "; API code: "
+                + apiErrorCode);
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+}
@@ -0,0 +1,243 @@
+package com.scidef.betfair.api.account;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.GetAccountFundsErrorEnum;
+import com.betfair.publicapi.types.exchange.v5.GetAccountFundsResp;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.ExchangeAPI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks the account balance and available funds locally, so that placement decisions
+ * do not need a call to <code>getAccountFunds</code>.
+ * <p/>
+ * The baseline is taken from <code>getAccountFunds</code> by <code>reconcile</code>. From
+ * then on, the available funds are adjusted by every change in exposure reported by the
+ * <code>OwnOrderBook</code> (bets being placed, matched or lapsing) and by the profit or
+ * loss of settled markets. <code>reconcileIfDue</code> goes back to the API only once the
+ * reconcile interval has passed, or sooner if drift has been detected: either a reconcile
+ * found the local figures out by more than the drift tolerance, the local available funds
+ * went negative, or <code>invalidate</code> was called (eg after a bet was rejected for
+ * lack of funds).
+ * <p/>
+ * The API's available funds already allow for every live bet, so each reconcile also
+ * takes the exposure of every market in the book as the new baseline. A market first
+ * seeded after a reconcile, with bets placed before it, is likewise taken to be allowed
+ * for, rather than being deducted a second time.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class FundsTracker implements OwnOrderBook.Listener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FundsTracker.class);
+
+    private final ExchangeAPI exchangeAPI;
+    private final OwnOrderBook ownOrderBook;
+    private final long reconcileIntervalMillis;
+    private final double driftTolerance;
+
+    // guarded by this
+    private final Map<Integer, Double> exposureByMarket = new HashMap<Integer, Double>();
+    private double exposure;
+    private double balance = Double.NaN;
+    private double availableBalance = Double.NaN;
+    private long lastReconciled = Long.MIN_VALUE;
+    private boolean driftSuspected;
+    private double lastDrift;
+    private long reconciliations;
+    private long driftsDetected;
+
+    /**
+     * Create a funds tracker and register it with the own order book.
+     *
+     * @param exchangeAPI             the exchange API used to reconcile the funds
+     * @param ownOrderBook            the book of our own bets, whose changes in exposure are tracked
+     * @param reconcileIntervalMillis how often to reconcile against the API
+     * @param driftTolerance          the largest difference between the local and API figures
+     *                                that is not treated as drift
+     */
+    public FundsTracker(ExchangeAPI exchangeAPI, OwnOrderBook ownOrderBook, long reconcileIntervalMillis,
+                        double driftTolerance) {
+        this.exchangeAPI = exchangeAPI;
+        this.ownOrderBook = ownOrderBook;
+        this.reconcileIntervalMillis = reconcileIntervalMillis;
+        this.driftTolerance = driftTolerance;
+        ownOrderBook.addListener(this);
+    }
+
+    /**
+     * Take a new baseline from <code>getAccountFunds</code>.
+     *
+     * @return true if the funds were reconciled
+     */
+    public boolean reconcile() {
+        GetAccountFundsResp resp = exchangeAPI.getAccountFunds();
+        if (resp == null || !GetAccountFundsErrorEnum.OK.equals(resp.getErrorCode())) {
+            LOG.warn("Failed to reconcile account funds. Error code: " +
+                    (resp != null ? resp.getErrorCode() : null));
+            return false;
+        }
+        synchronized (this) {
+            if (lastReconciled != Long.MIN_VALUE) {
+                lastDrift = resp.getAvailBalance() - availableBalance;
+                if (Math.abs(lastDrift) > driftTolerance) {
+                    driftsDetected++;
+                    LOG.warn("Available funds drifted by " + lastDrift + " since the last reconcile");
+                }
+            }
+            balance = resp.getBalance();
+            availableBalance = resp.getAvailBalance();
+            exposureByMarket.clear();
+            exposure = 0.0;
+            for (Integer marketId : ownOrderBook.getMarketIds()) {
+                double marketExposure = ownOrderBook.getExposure(marketId);
+                exposureByMarket.put(marketId, marketExposure);
+                exposure += marketExposure;
+            }
+            driftSuspected = Math.abs(lastDrift) > driftTolerance;
+            lastReconciled = System.currentTimeMillis();
+            reconciliations++;
+        }
+        return true;
+    }
+
+    /**
+     * Reconcile against the API if the reconcile interval has passed or drift is suspected.
+     *
+     * @return true if the funds were reconciled
+     */
+    public boolean reconcileIfDue() {
+        synchronized (this) {
+            if (lastReconciled != Long.MIN_VALUE && !driftSuspected &&
+                    System.currentTimeMillis() - lastReconciled < reconcileIntervalMillis) {
+                return false;
+            }
+        }
+        return reconcile();
+    }
+
+    /**
+     * Force a reconcile the next time <code>reconcileIfDue</code> is called.
+     */
+    public synchronized void invalidate() {
+        driftSuspected = true;
+    }
+
+    /**
+     * @param liability the most the bets to be placed could lose
+     * @return true if the funds have been reconciled and the available funds cover the liability
+     */
+    public synchronized boolean canAfford(double liability) {
+        return lastReconciled != Long.MIN_VALUE && liability <= availableBalance;
+    }
+
+    /**
+     * @param bets bets to be placed
+     * @return true if the funds have been reconciled and the available funds cover the
+     *         liability of the bets
+     */
+    public boolean canAfford(List<Bet> bets) {
+        double liability = 0.0;
+        for (Bet bet : bets) {
+            double size = bet.getSize() != null ? bet.getSize() : 0.0;
+            liability += bet.getBetType() == BetTypeEnum.L ? size * (bet.getPrice() - 1) : size;
+        }
+        return canAfford(liability);
+    }
+
+    /**
+     * Adjust the funds for a market that has been settled, and stop tracking its exposure.
+     *
+     * @param marketId     the id of the market
+     * @param profitOrLoss the profit (or, if negative, loss) on the market
+     */
+    public synchronized void onSettled(int marketId, double profitOrLoss) {
+        Double marketExposure = exposureByMarket.remove(marketId);
+        if (marketExposure != null) {
+            exposure -= marketExposure;
+            availableBalance += marketExposure;
+        }
+        balance += profitOrLoss;
+        availableBalance += profitOrLoss;
+        checkForDrift();
+    }
+
+    @Override
+    public void onChange(OwnBet previous, OwnBet current) {
+        int marketId = current.getMarketId();
+        double marketExposure = ownOrderBook.getExposure(marketId);
+        synchronized (this) {
+            Double previousExposure = exposureByMarket.put(marketId, marketExposure);
+            double change = marketExposure - (previousExposure != null ? previousExposure : 0.0);
+            exposure += change;
+            if (previousExposure == null && previous == null && current.getPlacedAt() != 0 &&
+                    current.getPlacedAt() <= lastReconciled) {
+                // seeded after the reconcile, but already allowed for by the API's figures
+                return;
+            }
+            availableBalance -= change;
+            checkForDrift();
+        }
+    }
+
+    /**
+     * @return true if a baseline has been taken from the API
+     */
+    public synchronized boolean isReconciled() {
+        return lastReconciled != Long.MIN_VALUE;
+    }
+
+    /**
+     * @return the available funds, or <code>NaN</code> before the first reconcile
+     */
+    public synchronized double getAvailableBalance() {
+        return availableBalance;
+    }
+
+    /**
+     * @return the account balance, or <code>NaN</code> before the first reconcile
+     */
+    public synchronized double getBalance() {
+        return balance;
+    }
+
+    /**
+     * @return the exposure of the bets in the own order book, as tracked locally
+     */
+    public synchronized double getExposure() {
+        return exposure;
+    }
+
+    /**
+     * @return the difference between the API and local available funds found by the last reconcile
+     */
+    public synchronized double getLastDrift() {
+        return lastDrift;
+    }
+
+    public synchronized long getReconciliations() {
+        return reconciliations;
+    }
+
+    public synchronized long getDriftsDetected() {
+        return driftsDetected;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // must hold the lock
+    private void checkForDrift() {
+        if (availableBalance < 0 && lastReconciled != Long.MIN_VALUE && !driftSuspected) {
+            LOG.warn("Locally tracked available funds are negative (" + availableBalance + "); will reconcile");
+            driftSuspected = true;
+        }
+    }
+
+}
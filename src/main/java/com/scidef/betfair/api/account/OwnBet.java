@@ -0,0 +1,169 @@
+package com.scidef.betfair.api.account;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+
+/**
+ * An immutable view of one of our own bets, as held in the <code>OwnOrderBook</code>.
+ * Each change to the bet replaces it with a new instance.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class OwnBet {
+
+    private final long betId;
+    private final int marketId;
+    private final int selectionId;
+    private final BetTypeEnum betType;
+    private final double price;
+    private final double requestedSize;
+    private final double matchedSize;
+    private final double averageMatchedPrice;
+    private final OwnBetState state;
+    private final long updatedAt;
+    private final long placedAt;
+
+    /**
+     * Create a bet whose placing time is not known.
+     *
+     * @param betId               the unique bet identifier
+     * @param marketId            the id of the market
+     * @param selectionId         the id of the runner
+     * @param betType             the bet type
+     * @param price               the price requested
+     * @param requestedSize       the stake requested
+     * @param matchedSize         the stake matched so far
+     * @param averageMatchedPrice the average price of the matched stake, or 0 if none is matched
+     * @param state               the state of the bet
+     * @param updatedAt           the time (in ms since the epoch) of the change
+     */
+    public OwnBet(long betId, int marketId, int selectionId, BetTypeEnum betType, double price,
+                  double requestedSize, double matchedSize, double averageMatchedPrice,
+                  OwnBetState state, long updatedAt) {
+        this(betId, marketId, selectionId, betType, price, requestedSize, matchedSize, averageMatchedPrice,
+                state, updatedAt, 0);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param betId               the unique bet identifier
+     * @param marketId            the id of the market
+     * @param selectionId         the id of the runner
+     * @param betType             the bet type
+     * @param price               the price requested
+     * @param requestedSize       the stake requested
+     * @param matchedSize         the stake matched so far
+     * @param averageMatchedPrice the average price of the matched stake, or 0 if none is matched
+     * @param state               the state of the bet
+     * @param updatedAt           the time (in ms since the epoch) of the change
+     * @param placedAt            the time (in ms since the epoch) the bet was placed, or 0 if not known
+     */
+    public OwnBet(long betId, int marketId, int selectionId, BetTypeEnum betType, double price,
+                  double requestedSize, double matchedSize, double averageMatchedPrice,
+                  OwnBetState state, long updatedAt, long placedAt) {
+        this.betId = betId;
+        this.marketId = marketId;
+        this.selectionId = selectionId;
+        this.betType = betType;
+        this.price = price;
+        this.requestedSize = requestedSize;
+        this.matchedSize = matchedSize;
+        this.averageMatchedPrice = averageMatchedPrice;
+        this.state = state;
+        this.updatedAt = updatedAt;
+        this.placedAt = placedAt;
+    }
+
+    public long getBetId() {
+        return betId;
+    }
+
+    public int getMarketId() {
+        return marketId;
+    }
+
+    public int getSelectionId() {
+        return selectionId;
+    }
+
+    public BetTypeEnum getBetType() {
+        return betType;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getRequestedSize() {
+        return requestedSize;
+    }
+
+    public double getMatchedSize() {
+        return matchedSize;
+    }
+
+    public double getAverageMatchedPrice() {
+        return averageMatchedPrice;
+    }
+
+    public OwnBetState getState() {
+        return state;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * @return the time (in ms since the epoch) the bet was placed, or 0 if not known
+     */
+    public long getPlacedAt() {
+        return placedAt;
+    }
+
+    /**
+     * @return the stake still waiting to be matched
+     */
+    public double getUnmatchedSize() {
+        return state.isOpen() ? Math.max(0.0, requestedSize - matchedSize) : 0.0;
+    }
+
+    /**
+     * Work out the most the unmatched part of the bet could lose if it were matched.
+     *
+     * @return the liability of the unmatched stake
+     */
+    public double getUnmatchedLiability() {
+        double unmatched = getUnmatchedSize();
+        return betType == BetTypeEnum.L ? unmatched * (price - 1) : unmatched;
+    }
+
+    /**
+     * @param winner true for the outcome in which the bet's runner wins
+     * @return the profit (or, if negative, loss) of the matched stake for the outcome
+     */
+    public double getMatchedProfitOrLoss(boolean winner) {
+        double winnings = matchedSize * (averageMatchedPrice - 1);
+        if (betType == BetTypeEnum.L) {
+            return winner ? -winnings : matchedSize;
+        }
+        return winner ? winnings : -matchedSize;
+    }
+
+    @Override
+    public String toString() {
+        return "OwnBet{" +
+                "betId=" + betId +
+                ", marketId=" + marketId +
+                ", selectionId=" + selectionId +
+                ", betType=" + betType +
+                ", price=" + price +
+                ", requestedSize=" + requestedSize +
+                ", matchedSize=" + matchedSize +
+                ", averageMatchedPrice=" + averageMatchedPrice +
+                ", state=" + state +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
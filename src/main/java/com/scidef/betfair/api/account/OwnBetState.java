@@ -0,0 +1,30 @@
+package com.scidef.betfair.api.account;
+
+/**
+ * The states of a bet in the <code>OwnOrderBook</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public enum OwnBetState {
+
+    /** placed, with nothing matched yet */
+    UNMATCHED,
+
+    /** part of the bet has been matched and the rest is still waiting */
+    PARTIALLY_MATCHED,
+
+    /** the whole bet has been matched */
+    MATCHED,
+
+    /** the unmatched part of the bet has lapsed or been cancelled; any matched part stands */
+    LAPSED;
+
+    /**
+     * @return true if part of the bet may still be matched
+     */
+    public boolean isOpen() {
+        return this == UNMATCHED || this == PARTIALLY_MATCHED;
+    }
+
+}
@@ -0,0 +1,408 @@
+package com.scidef.betfair.api.account;
+
+import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
+import com.betfair.publicapi.types.exchange.v5.GetMUBetsResp;
+import com.betfair.publicapi.types.exchange.v5.MUBet;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.ExchangeAPI;
+import com.scidef.betfair.api.exception.BetfairException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A local book of our own bets in each market, so that open orders and exposure can be
+ * queried without a call to <code>getMatchedAndUnmatchedBets</code>.
+ * <p/>
+ * A market is seeded by the first <code>sync</code>, and kept up to date from the results
+ * of placing bets (<code>onPlaced</code>) and from periodic calls to <code>sync</code>.
+ * Each sync is compared with the bets already held and only the bets that have changed
+ * are replaced, so listeners are told about each state transition exactly once. An open
+ * bet that no longer appears in a complete set of matched and unmatched bets has lapsed
+ * (or been cancelled).
+ * <p/>
+ * Queries are lock-free; updates lock only the market being updated.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class OwnOrderBook {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OwnOrderBook.class);
+
+    // a newly placed bet may not appear in getMUBets straight away, so is not taken to have lapsed until this long after
+    static final long LAPSE_GRACE_MILLIS = 1000;
+
+    private static final double SIZE_TOLERANCE = 0.005;
+
+    /**
+     * Notified of every change to a bet in the book.
+     */
+    public interface Listener {
+
+        /**
+         * @param previous the bet before the change, or null if it is new to the book
+         * @param current  the bet after the change
+         */
+        void onChange(OwnBet previous, OwnBet current);
+
+    }
+
+    private final ExchangeAPI exchangeAPI;
+    private final ConcurrentMap<Integer, MarketOrders> markets = new ConcurrentHashMap<Integer, MarketOrders>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    public OwnOrderBook(ExchangeAPI exchangeAPI) {
+        this.exchangeAPI = exchangeAPI;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Seed or refresh a market from its current matched and unmatched bets.
+     *
+     * @param marketId the id of the market
+     * @throws BetfairException if there is a problem retrieving the bets
+     */
+    public void sync(int marketId) throws BetfairException {
+        GetMUBetsResp resp = exchangeAPI.getMatchedAndUnmatchedBets(marketId, BetStatusEnum.MU);
+        List<MUBet> muBets = resp.getBets() != null ? resp.getBets().getMUBet() : Collections.<MUBet>emptyList();
+        boolean complete = resp.getTotalRecordCount() <= muBets.size();
+        if (!complete) {
+            LOG.warn("Only " + muBets.size() + " of " + resp.getTotalRecordCount() + " bets returned for marketId " +
+                    marketId + "; lapsed bets will not be detected");
+        }
+        apply(marketId, muBets, complete);
+    }
+
+    /**
+     * Apply a set of matched and unmatched bets to a market.
+     *
+     * @param marketId the id of the market
+     * @param muBets   the bets, with a record for each matched or unmatched portion
+     * @param complete true if the bets are all of our bets in the market, so that any open
+     *                 bet missing from them can be taken to have lapsed
+     */
+    public void apply(int marketId, List<MUBet> muBets, boolean complete) {
+        Map<Long, Portions> portionsByBet = new LinkedHashMap<Long, Portions>();
+        for (MUBet muBet : muBets) {
+            Portions portions = portionsByBet.get(muBet.getBetId());
+            if (portions == null) {
+                portions = new Portions(muBet);
+                portionsByBet.put(muBet.getBetId(), portions);
+            }
+            portions.add(muBet);
+        }
+
+        MarketOrders market = getOrCreate(marketId);
+        List<OwnBet[]> changes = new ArrayList<OwnBet[]>();
+        long now = System.currentTimeMillis();
+        synchronized (market) {
+            for (Map.Entry<Long, Portions> entry : portionsByBet.entrySet()) {
+                OwnBet previous = market.bets.get(entry.getKey());
+                OwnBet current = entry.getValue().toOwnBet(marketId, previous, complete, now);
+                market.unconfirmed.remove(entry.getKey());
+                if (previous == null || changed(previous, current)) {
+                    market.bets.put(current.getBetId(), current);
+                    changes.add(new OwnBet[]{previous, current});
+                }
+            }
+            if (complete) {
+                for (OwnBet previous : market.bets.values()) {
+                    Long placedAt = market.unconfirmed.get(previous.getBetId());
+                    if (previous.getState().isOpen() && !portionsByBet.containsKey(previous.getBetId()) &&
+                            (placedAt == null || now - placedAt >= LAPSE_GRACE_MILLIS)) {
+                        OwnBet current = withState(previous, OwnBetState.LAPSED, now);
+                        market.unconfirmed.remove(previous.getBetId());
+                        market.bets.put(current.getBetId(), current);
+                        changes.add(new OwnBet[]{previous, current});
+                    }
+                }
+            }
+            market.seeded = true;
+        }
+        fireChanges(changes);
+    }
+
+    /**
+     * Add bets to the book from the results of placing them.
+     *
+     * @param bets the bets, in the order they were placed
+     * @param resp the response to <code>placeBets</code>
+     */
+    public void onPlaced(List<Bet> bets, PlaceBetsResp resp) {
+        if (resp.getBetResults() == null) {
+            return;
+        }
+        List<PlaceBetsResult> results = resp.getBetResults().getPlaceBetsResult();
+        List<OwnBet[]> changes = new ArrayList<OwnBet[]>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < results.size() && i < bets.size(); i++) {
+            PlaceBetsResult result = results.get(i);
+            if (!result.isSuccess()) {
+                continue;
+            }
+            Bet bet = bets.get(i);
+            double requested = bet.getSize() != null ? bet.getSize() : result.getSizeMatched();
+            OwnBet current = new OwnBet(result.getBetId(), bet.getMarketId(), bet.getSelectionId(),
+                    bet.getBetType(), bet.getPrice(), requested, result.getSizeMatched(),
+                    result.getAveragePriceMatched(), stateOf(requested, result.getSizeMatched(), true), now, now);
+            MarketOrders market = getOrCreate(bet.getMarketId());
+            synchronized (market) {
+                // a sync may already have picked the bet up
+                if (!market.bets.containsKey(current.getBetId())) {
+                    market.bets.put(current.getBetId(), current);
+                    market.unconfirmed.put(current.getBetId(), now);
+                    changes.add(new OwnBet[]{null, current});
+                }
+            }
+        }
+        fireChanges(changes);
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return true if the market has been synced at least once
+     */
+    public boolean isSeeded(int marketId) {
+        MarketOrders market = markets.get(marketId);
+        return market != null && market.seeded;
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @param betId    the unique bet identifier
+     * @return the bet, or null if it is not in the book
+     */
+    public OwnBet getBet(int marketId, long betId) {
+        MarketOrders market = markets.get(marketId);
+        return market != null ? market.bets.get(betId) : null;
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return all the bets held for the market
+     */
+    public Collection<OwnBet> getBets(int marketId) {
+        MarketOrders market = markets.get(marketId);
+        return market != null ? Collections.unmodifiableCollection(market.bets.values()) :
+                Collections.<OwnBet>emptyList();
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return the bets in the market that are unmatched or partially matched
+     */
+    public List<OwnBet> getOpenBets(int marketId) {
+        List<OwnBet> open = new ArrayList<OwnBet>();
+        for (OwnBet bet : getBets(marketId)) {
+            if (bet.getState().isOpen()) {
+                open.add(bet);
+            }
+        }
+        return open;
+    }
+
+    /**
+     * @param marketId    the id of the market
+     * @param selectionId the id of the runner
+     * @return the total stake waiting to be matched on the runner
+     */
+    public double getUnmatchedSize(int marketId, int selectionId) {
+        double size = 0.0;
+        for (OwnBet bet : getBets(marketId)) {
+            if (bet.getSelectionId() == selectionId) {
+                size += bet.getUnmatchedSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return the most that could be lost by the unmatched bets in the market if they were matched
+     */
+    public double getUnmatchedLiability(int marketId) {
+        double liability = 0.0;
+        for (OwnBet bet : getBets(marketId)) {
+            liability += bet.getUnmatchedLiability();
+        }
+        return liability;
+    }
+
+    /**
+     * Work out the most that the matched bets in a market could lose, over every possible
+     * winner of the market (including a runner we have no bets on).
+     *
+     * @param marketId the id of the market
+     * @return the worst-case loss of the matched bets, or 0 if every outcome is a profit
+     */
+    public double getMatchedExposure(int marketId) {
+        Map<Integer, double[]> bySelection = new HashMap<Integer, double[]>();
+        double totalIfLose = 0.0;
+        for (OwnBet bet : getBets(marketId)) {
+            if (bet.getMatchedSize() <= 0) {
+                continue;
+            }
+            double[] pnl = bySelection.get(bet.getSelectionId());
+            if (pnl == null) {
+                pnl = new double[2];
+                bySelection.put(bet.getSelectionId(), pnl);
+            }
+            pnl[0] += bet.getMatchedProfitOrLoss(true);
+            pnl[1] += bet.getMatchedProfitOrLoss(false);
+            totalIfLose += bet.getMatchedProfitOrLoss(false);
+        }
+        double worst = totalIfLose;
+        for (double[] pnl : bySelection.values()) {
+            worst = Math.min(worst, totalIfLose - pnl[1] + pnl[0]);
+        }
+        return Math.max(0.0, -worst);
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return the worst-case loss of the matched bets plus the liability of the unmatched bets
+     */
+    public double getExposure(int marketId) {
+        return getMatchedExposure(marketId) + getUnmatchedLiability(marketId);
+    }
+
+    /**
+     * @return the ids of the markets held in the book
+     */
+    public Collection<Integer> getMarketIds() {
+        return Collections.unmodifiableSet(markets.keySet());
+    }
+
+    /**
+     * Remove a market from the book, eg once it has been settled.
+     *
+     * @param marketId the id of the market
+     */
+    public void remove(int marketId) {
+        markets.remove(marketId);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private MarketOrders getOrCreate(int marketId) {
+        MarketOrders market = markets.get(marketId);
+        if (market == null) {
+            MarketOrders created = new MarketOrders();
+            market = markets.putIfAbsent(marketId, created);
+            if (market == null) {
+                market = created;
+            }
+        }
+        return market;
+    }
+
+    private void fireChanges(List<OwnBet[]> changes) {
+        for (OwnBet[] change : changes) {
+            LOG.debug("Bet " + change[1].getBetId() + " is now " + change[1].getState());
+            for (Listener listener : listeners) {
+                try {
+                    listener.onChange(change[0], change[1]);
+                } catch (RuntimeException e) {
+                    LOG.error("Own order book listener failed", e);
+                }
+            }
+        }
+    }
+
+    private static boolean changed(OwnBet previous, OwnBet current) {
+        return previous.getState() != current.getState() ||
+                Math.abs(previous.getMatchedSize() - current.getMatchedSize()) > SIZE_TOLERANCE ||
+                Math.abs(previous.getRequestedSize() - current.getRequestedSize()) > SIZE_TOLERANCE;
+    }
+
+    private static OwnBetState stateOf(double requested, double matched, boolean open) {
+        if (matched >= requested - SIZE_TOLERANCE) {
+            return OwnBetState.MATCHED;
+        }
+        if (!open) {
+            return OwnBetState.LAPSED;
+        }
+        return matched > 0 ? OwnBetState.PARTIALLY_MATCHED : OwnBetState.UNMATCHED;
+    }
+
+    private static OwnBet withState(OwnBet bet, OwnBetState state, long now) {
+        return new OwnBet(bet.getBetId(), bet.getMarketId(), bet.getSelectionId(), bet.getBetType(),
+                bet.getPrice(), bet.getRequestedSize(), bet.getMatchedSize(), bet.getAverageMatchedPrice(),
+                state, now, bet.getPlacedAt());
+    }
+
+    private static class MarketOrders {
+
+        private final ConcurrentMap<Long, OwnBet> bets = new ConcurrentHashMap<Long, OwnBet>();
+        private final Map<Long, Long> unconfirmed = new HashMap<Long, Long>(); // placed but not yet synced; guarded by this
+        private volatile boolean seeded;
+    }
+
+    // the matched and unmatched portions of a bet, as returned by getMUBets
+    private static class Portions {
+
+        private final MUBet first;
+        private double matched;
+        private double matchedValue;
+        private double unmatched;
+        private double unmatchedPrice = Double.NaN;
+
+        private Portions(MUBet first) {
+            this.first = first;
+        }
+
+        private void add(MUBet muBet) {
+            if (muBet.getBetStatus() == BetStatusEnum.U) {
+                unmatched += muBet.getSize();
+                unmatchedPrice = muBet.getPrice();
+            } else if (muBet.getBetStatus() == BetStatusEnum.M) {
+                matched += muBet.getSize();
+                matchedValue += muBet.getSize() * muBet.getPrice();
+            }
+        }
+
+        private OwnBet toOwnBet(int marketId, OwnBet previous, boolean complete, long now) {
+            double requested = matched + unmatched;
+            double price = !Double.isNaN(unmatchedPrice) ? unmatchedPrice : first.getPrice();
+            if (previous != null) {
+                price = previous.getPrice();
+                if (unmatched <= 0) {
+                    requested = Math.max(requested, previous.getRequestedSize());
+                }
+            }
+            OwnBetState state;
+            if (unmatched > 0 || matched >= requested - SIZE_TOLERANCE || complete) {
+                state = stateOf(requested, matched, unmatched > 0);
+            } else {
+                // without the full set of bets, a missing unmatched portion may just not have been returned
+                state = matched > 0 ? OwnBetState.PARTIALLY_MATCHED : OwnBetState.UNMATCHED;
+            }
+            long placedAt = previous != null ? previous.getPlacedAt() :
+                    first.getPlacedDate() != null ? first.getPlacedDate().toGregorianCalendar().getTimeInMillis() : 0;
+            return new OwnBet(first.getBetId(), marketId, first.getSelectionId(), first.getBetType(), price,
+                    requested, matched, matched > 0 ? matchedValue / matched : 0.0, state, now, placedAt);
+        }
+    }
+
+}
@@ -0,0 +1,498 @@
+package com.scidef.betfair.api.account;
+
+import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
+import com.betfair.publicapi.types.exchange.v5.GetBetResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.Deadline;
+import com.scidef.betfair.api.ExchangeAPI;
+import com.scidef.betfair.api.GlobalAPI;
+import com.scidef.betfair.api.aop.RetryMethodAspect;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.exception.ExceededThrottleException;
+import com.scidef.betfair.api.exception.NoSessionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of Betfair sessions, to spread requests across the per-session throttle limits.
+ * <p/>
+ * Each session has its own <code>GlobalAPI</code> (and so its own session token) and
+ * <code>ExchangeAPI</code>. The sessions may be for different accounts, or several sessions
+ * for the same account where the product allows it.
+ * <p/>
+ * The pool counts the calls made on each session to each operation over the last minute.
+ * Market reads are sent to the session with the most headroom left under the operation's
+ * throttle limit; if a session is throttled anyway, its limit is treated as used up for
+ * the rest of the minute and the read is tried on the next session. A session that has
+ * expired is logged in again and the read retried once. While a request is in progress the
+ * <code>RetryMethodAspect</code> throws these errors straight back to the pool, so that
+ * it neither logs in the primary session nor sleeps on the throttled one.
+ * <p/>
+ * Bets are placed on a named session, and the pool remembers which session owns each bet
+ * placed, so that later requests about the bet go to the account that placed it. These
+ * requests cannot fail over, so an expired owner is logged in again and the request
+ * retried once, and a throttled owner has its limit treated as used up and the error
+ * thrown back. A bet is forgotten once <code>getBet</code> finds it settled, cancelled,
+ * voided or lapsed, and only the owners of the last <code>MAX_BET_OWNERS</code> bets
+ * are kept.
+ * <p/>
+ * The pool is thread-safe. Sessions should be added before it is shared.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class SessionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionPool.class);
+
+    public static final long THROTTLE_WINDOW_MILLIS = 60000L;
+
+    public static final String GET_MARKET_PRICES_COMPRESSED = "getMarketPricesCompressed";
+    public static final String GET_MARKET_PRICES = "getMarketPrices";
+    public static final String GET_MARKET = "getMarket";
+    public static final String GET_BET = "getBet";
+    public static final String PLACE_BETS = "placeBets";
+
+    public static final int MAX_BET_OWNERS = 100000;
+
+    private final List<Session> sessions = new CopyOnWriteArrayList<Session>();
+    private final Map<String, Session> sessionsByName = new ConcurrentHashMap<String, Session>();
+    private final Map<String, Integer> throttleLimits = new ConcurrentHashMap<String, Integer>();
+    // the sessions that placed recent bets, least recently used first
+    private final Map<Long, Session> betOwners = Collections.synchronizedMap(
+            new LinkedHashMap<Long, Session>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Session> eldest) {
+                    return size() > MAX_BET_OWNERS;
+                }
+            });
+    private final AtomicInteger nextSession = new AtomicInteger();
+
+    /**
+     * Create a pool with the Free API throttle limits.
+     */
+    public SessionPool() {
+        this(defaultThrottleLimits());
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param throttleLimits the number of calls allowed per session per minute, keyed by
+     *                       operation; operations without a limit are not throttled
+     */
+    public SessionPool(Map<String, Integer> throttleLimits) {
+        this.throttleLimits.putAll(throttleLimits);
+    }
+
+    /**
+     * @return the per-minute throttle limits of the Free API for the operations the pool distributes
+     */
+    public static Map<String, Integer> defaultThrottleLimits() {
+        Map<String, Integer> limits = new HashMap<String, Integer>();
+        limits.put(GET_MARKET_PRICES_COMPRESSED, 60);
+        limits.put(GET_MARKET_PRICES, 10);
+        limits.put(GET_MARKET, 5);
+        return limits;
+    }
+
+    /**
+     * Add a session to the pool.
+     *
+     * @param name        a unique name for the session
+     * @param username    the Betfair username to log in with
+     * @param password    the password associated with the username
+     * @param globalAPI   the global API holding the session
+     * @param exchangeAPI the exchange API using the session
+     */
+    public void addSession(String name, String username, String password,
+                           GlobalAPI globalAPI, ExchangeAPI exchangeAPI) {
+        if (sessionsByName.containsKey(name)) {
+            throw new IllegalArgumentException("Session " + name + " is already in the pool");
+        }
+        Session session = new Session(name, username, password, globalAPI, exchangeAPI);
+        sessionsByName.put(name, session);
+        sessions.add(session);
+    }
+
+    /**
+     * Log in every session in the pool.
+     *
+     * @throws BetfairException if any session fails to log in
+     */
+    public void loginAll() throws BetfairException {
+        for (Session session : sessions) {
+            session.login();
+        }
+    }
+
+    /**
+     * Log out of every session in the pool, carrying on past any failures.
+     */
+    public void logoutAll() {
+        for (Session session : sessions) {
+            try {
+                session.globalAPI.logout();
+            } catch (BetfairException e) {
+                LOG.warn("Failed to logout of session " + session.name, e);
+            }
+        }
+    }
+
+    /**
+     * Retrieve the compressed prices of a market on the session with the most headroom.
+     *
+     * @param marketId the id of the market
+     * @return the compressed market prices
+     * @throws BetfairException if there is a problem retrieving the prices on every session tried
+     */
+    public GetMarketPricesCompressedResp getMarketPricesCompressed(final int marketId) throws BetfairException {
+        return read(GET_MARKET_PRICES_COMPRESSED, new Read<GetMarketPricesCompressedResp>() {
+            @Override
+            public GetMarketPricesCompressedResp call(ExchangeAPI exchangeAPI) throws BetfairException {
+                return exchangeAPI.getMarketPricesCompressed(marketId);
+            }
+        });
+    }
+
+    /**
+     * Retrieve the prices of a market on the session with the most headroom.
+     *
+     * @param marketId the id of the market
+     * @return the market prices
+     * @throws BetfairException if there is a problem retrieving the prices on every session tried
+     */
+    public GetMarketPricesResp getMarketPrices(final int marketId) throws BetfairException {
+        return read(GET_MARKET_PRICES, new Read<GetMarketPricesResp>() {
+            @Override
+            public GetMarketPricesResp call(ExchangeAPI exchangeAPI) throws BetfairException {
+                return exchangeAPI.getMarketPrices(marketId);
+            }
+        });
+    }
+
+    /**
+     * Retrieve the static data of a market on the session with the most headroom.
+     *
+     * @param marketId the id of the market
+     * @return the market
+     * @throws BetfairException if there is a problem retrieving the market on every session tried
+     */
+    public GetMarketResp getMarket(final int marketId) throws BetfairException {
+        return read(GET_MARKET, new Read<GetMarketResp>() {
+            @Override
+            public GetMarketResp call(ExchangeAPI exchangeAPI) throws BetfairException {
+                return exchangeAPI.getMarket(marketId);
+            }
+        });
+    }
+
+    /**
+     * Place bets on a named session, which becomes the owner of the bets placed.
+     *
+     * @param name the name of the session to place the bets on
+     * @param bets the bets to place
+     * @return the outcome of placing the bets
+     * @throws BetfairException if there is a problem placing the bets
+     */
+    public PlaceBetsResp placeBets(String name, final List<Bet> bets) throws BetfairException {
+        Session session = getSession(name);
+        PlaceBetsResp resp = call(session, PLACE_BETS, new Read<PlaceBetsResp>() {
+            @Override
+            public PlaceBetsResp call(ExchangeAPI exchangeAPI) throws BetfairException {
+                return exchangeAPI.placeBets(bets);
+            }
+        });
+        if (resp.getBetResults() != null) {
+            for (PlaceBetsResult result : resp.getBetResults().getPlaceBetsResult()) {
+                if (result.isSuccess()) {
+                    betOwners.put(result.getBetId(), session);
+                }
+            }
+        }
+        return resp;
+    }
+
+    /**
+     * Retrieve a bet from the session that placed it.
+     *
+     * @param betId the id of the bet
+     * @return the bet
+     * @throws BetfairException if the bet was not placed through the pool or cannot be retrieved
+     */
+    public GetBetResp getBet(final long betId) throws BetfairException {
+        Session session = betOwners.get(betId);
+        if (session == null) {
+            throw new BetfairException("betId " + betId + " was not placed through the session pool");
+        }
+        GetBetResp resp = call(session, GET_BET, new Read<GetBetResp>() {
+            @Override
+            public GetBetResp call(ExchangeAPI exchangeAPI) throws BetfairException {
+                return exchangeAPI.getBet(betId);
+            }
+        });
+        if (resp.getBet() != null && isFinal(resp.getBet().getBetStatus())) {
+            betOwners.remove(betId);
+        }
+        return resp;
+    }
+
+    /**
+     * @return the number of bets whose owning session is remembered
+     */
+    public int getBetOwnerCount() {
+        return betOwners.size();
+    }
+
+    /**
+     * @param betId the id of a bet placed through the pool
+     * @return the name of the session that placed the bet, or null if it is not known
+     */
+    public String getOwner(long betId) {
+        Session session = betOwners.get(betId);
+        return session != null ? session.name : null;
+    }
+
+    /**
+     * Provides the exchange API of a session, eg for requests about the bets it has placed.
+     *
+     * @param name the name of the session
+     * @return the exchange API of the session
+     */
+    public ExchangeAPI getExchangeAPI(String name) {
+        return getSession(name).exchangeAPI;
+    }
+
+    /**
+     * @param name      the name of the session
+     * @param operation the name of the operation, eg <code>GET_MARKET_PRICES_COMPRESSED</code>
+     * @return the number of calls the session can make to the operation without exceeding its limit
+     */
+    public int getHeadroom(String name, String operation) {
+        return getSession(name).headroom(operation, getThrottleLimit(operation), System.currentTimeMillis());
+    }
+
+    /**
+     * @return the names of the sessions in the pool, in the order they were added
+     */
+    public List<String> getSessionNames() {
+        List<String> names = new ArrayList<String>();
+        for (Session session : sessions) {
+            names.add(session.name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Set the throttle limit for an operation.
+     *
+     * @param operation      the name of the operation
+     * @param callsPerMinute the number of calls allowed per session per minute
+     */
+    public void setThrottleLimit(String operation, int callsPerMinute) {
+        throttleLimits.put(operation, callsPerMinute);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private interface Read<T> {
+        T call(ExchangeAPI exchangeAPI) throws BetfairException;
+    }
+
+    private <T> T read(String operation, Read<T> read) throws BetfairException {
+        if (sessions.isEmpty()) {
+            throw new BetfairException("The session pool is empty");
+        }
+        int limit = getThrottleLimit(operation);
+        List<Session> tried = new ArrayList<Session>(sessions.size());
+        ExceededThrottleException throttled = null;
+        boolean rethrow = RetryMethodAspect.setRethrowSessionErrors(true);
+        try {
+            while (tried.size() < sessions.size()) {
+                // don't fail over to another session once the caller's deadline has passed
+                Deadline.checkCurrent("SessionPool." + operation);
+                long now = System.currentTimeMillis();
+                Session session = choose(operation, limit, now, tried);
+                tried.add(session);
+                session.record(operation, limit, now);
+                try {
+                    return attempt(session, read);
+                } catch (ExceededThrottleException e) {
+                    LOG.warn("Session " + session.name + " was throttled on " + operation);
+                    session.exhaust(operation, limit, System.currentTimeMillis());
+                    throttled = e;
+                }
+            }
+        } finally {
+            RetryMethodAspect.setRethrowSessionErrors(rethrow);
+        }
+        throw throttled;
+    }
+
+    // call an operation on a particular session, which cannot fail over to another
+    private <T> T call(Session session, String operation, Read<T> read) throws BetfairException {
+        int limit = getThrottleLimit(operation);
+        boolean rethrow = RetryMethodAspect.setRethrowSessionErrors(true);
+        try {
+            session.record(operation, limit, System.currentTimeMillis());
+            return attempt(session, read);
+        } catch (ExceededThrottleException e) {
+            LOG.warn("Session " + session.name + " was throttled on " + operation);
+            session.exhaust(operation, limit, System.currentTimeMillis());
+            throw e;
+        } finally {
+            RetryMethodAspect.setRethrowSessionErrors(rethrow);
+        }
+    }
+
+    // make a call on a session, logging it in again and retrying once if it has expired
+    private static <T> T attempt(Session session, Read<T> read) throws BetfairException {
+        try {
+            return read.call(session.exchangeAPI);
+        } catch (NoSessionException e) {
+            LOG.info("Session " + session.name + " has expired; logging in again");
+            session.login();
+            return read.call(session.exchangeAPI);
+        }
+    }
+
+    // a bet in one of these states will not change again
+    private static boolean isFinal(BetStatusEnum status) {
+        return status == BetStatusEnum.S || status == BetStatusEnum.C ||
+                status == BetStatusEnum.V || status == BetStatusEnum.L;
+    }
+
+    // the untried session with the most headroom, starting from a rotating index to share out ties
+    private Session choose(String operation, int limit, long now, List<Session> tried) {
+        int start = (nextSession.getAndIncrement() & Integer.MAX_VALUE) % sessions.size();
+        Session best = null;
+        int bestHeadroom = -1;
+        for (int i = 0; i < sessions.size(); i++) {
+            Session session = sessions.get((start + i) % sessions.size());
+            if (tried.contains(session)) {
+                continue;
+            }
+            int headroom = session.headroom(operation, limit, now);
+            if (headroom > bestHeadroom) {
+                best = session;
+                bestHeadroom = headroom;
+            }
+        }
+        return best;
+    }
+
+    private Session getSession(String name) {
+        Session session = sessionsByName.get(name);
+        if (session == null) {
+            throw new IllegalArgumentException("No session named " + name);
+        }
+        return session;
+    }
+
+    private int getThrottleLimit(String operation) {
+        Integer limit = throttleLimits.get(operation);
+        return limit != null ? limit : Integer.MAX_VALUE;
+    }
+
+    private static class Session {
+
+        private final String name;
+        private final String username;
+        private final String password;
+        private final GlobalAPI globalAPI;
+        private final ExchangeAPI exchangeAPI;
+
+        // guarded by this
+        private final Map<String, CallWindow> windows = new HashMap<String, CallWindow>();
+
+        private Session(String name, String username, String password,
+                        GlobalAPI globalAPI, ExchangeAPI exchangeAPI) {
+            this.name = name;
+            this.username = username;
+            this.password = password;
+            this.globalAPI = globalAPI;
+            this.exchangeAPI = exchangeAPI;
+        }
+
+        private void login() throws BetfairException {
+            globalAPI.login(username, password, GlobalAPI.FREE_API_PRODUCT_ID);
+        }
+
+        private synchronized int headroom(String operation, int limit, long now) {
+            if (limit == Integer.MAX_VALUE) {
+                return limit;
+            }
+            CallWindow window = windows.get(operation);
+            return window != null ? limit - window.count(now) : limit;
+        }
+
+        private synchronized void record(String operation, int limit, long now) {
+            if (limit != Integer.MAX_VALUE) {
+                window(operation, limit).add(now);
+            }
+        }
+
+        private synchronized void exhaust(String operation, int limit, long now) {
+            if (limit != Integer.MAX_VALUE) {
+                CallWindow window = window(operation, limit);
+                for (int i = window.count(now); i < limit; i++) {
+                    window.add(now);
+                }
+            }
+        }
+
+        private CallWindow window(String operation, int limit) {
+            CallWindow window = windows.get(operation);
+            if (window == null || window.times.length != limit) {
+                window = new CallWindow(limit);
+                windows.put(operation, window);
+            }
+            return window;
+        }
+    }
+
+    // the times of the last (limit) calls to an operation
+    private static class CallWindow {
+
+        private final long[] times;
+        private int next;
+
+        private CallWindow(int limit) {
+            this.times = new long[Math.max(limit, 1)];
+            Arrays.fill(times, Long.MIN_VALUE);
+        }
+
+        private void add(long now) {
+            times[next] = now;
+            next = (next + 1) % times.length;
+        }
+
+        private int count(long now) {
+            int count = 0;
+            for (long time : times) {
+                if (time > now - THROTTLE_WINDOW_MILLIS) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.scidef.betfair.api.analytics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs group-by aggregations of profit or loss over a <code>BetTable</code>.
+ * <p/>
+ * The rows of the table are split into ranges which are aggregated in parallel on a
+ * fork/join pool. Each range accumulates into its own primitive arrays, indexed by
+ * group, and the arrays are summed as the ranges are joined, so no locking or boxing
+ * takes place during the scan.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class BetAggregator {
+
+    private static final int DEFAULT_SPLIT_THRESHOLD = 16384;
+
+    private final ForkJoinPool pool;
+    private final int splitThreshold;
+
+    /**
+     * Create an aggregator that uses the common fork/join pool.
+     */
+    public BetAggregator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_SPLIT_THRESHOLD);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param pool           the fork/join pool on which to run aggregations
+     * @param splitThreshold the number of rows below which a range is aggregated without
+     *                       being split any further
+     */
+    public BetAggregator(ForkJoinPool pool, int splitThreshold) {
+        this.pool = pool;
+        this.splitThreshold = splitThreshold;
+    }
+
+    /**
+     * Aggregate the profit or loss of the bets in a table by the given grouping.
+     *
+     * @param table    the table of bets
+     * @param grouping the grouping to apply
+     * @return a map of group label to <code>PnlSummary</code>, in group order, containing
+     *         only groups with at least one bet
+     */
+    public Map<String, PnlSummary> aggregate(BetTable table, BetGrouping grouping) {
+        int groupCount = grouping.getGroupCount(table);
+        Accumulator total = pool.invoke(new AggregateTask(table, grouping, groupCount, 0, table.getRowCount()));
+
+        Map<String, PnlSummary> summaries = new LinkedHashMap<String, PnlSummary>();
+        for (int group = 0; group < groupCount; group++) {
+            if (total.bets[group] == 0) {
+                continue;
+            }
+            String label = grouping.getLabel(table, group);
+            summaries.put(label, new PnlSummary(label, total.bets[group], total.settledBets[group],
+                    total.winningBets[group], total.profitOrLoss[group]));
+        }
+        return summaries;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static class Accumulator {
+
+        private final int[] bets;
+        private final int[] settledBets;
+        private final int[] winningBets;
+        private final double[] profitOrLoss;
+
+        private Accumulator(int groupCount) {
+            bets = new int[groupCount];
+            settledBets = new int[groupCount];
+            winningBets = new int[groupCount];
+            profitOrLoss = new double[groupCount];
+        }
+
+        private void add(Accumulator other) {
+            for (int group = 0; group < bets.length; group++) {
+                bets[group] += other.bets[group];
+                settledBets[group] += other.settledBets[group];
+                winningBets[group] += other.winningBets[group];
+                profitOrLoss[group] += other.profitOrLoss[group];
+            }
+        }
+    }
+
+    private class AggregateTask extends RecursiveTask<Accumulator> {
+
+        private static final long serialVersionUID = -2405306219845306522L;
+
+        private final BetTable table;
+        private final BetGrouping grouping;
+        private final int groupCount;
+        private final int from;
+        private final int to;
+
+        private AggregateTask(BetTable table, BetGrouping grouping, int groupCount, int from, int to) {
+            this.table = table;
+            this.grouping = grouping;
+            this.groupCount = groupCount;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from <= splitThreshold) {
+                return scan();
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(table, grouping, groupCount, from, mid);
+            AggregateTask right = new AggregateTask(table, grouping, groupCount, mid, to);
+            left.fork();
+            Accumulator result = right.compute();
+            result.add(left.join());
+            return result;
+        }
+
+        private Accumulator scan() {
+            Accumulator acc = new Accumulator(groupCount);
+            for (int row = from; row < to; row++) {
+                int group = grouping.getGroup(table, row);
+                acc.bets[group]++;
+                double pnl = table.getProfitOrLoss(row);
+                if (!Double.isNaN(pnl)) {
+                    acc.settledBets[group]++;
+                    acc.profitOrLoss[group] += pnl;
+                    if (pnl > 0) {
+                        acc.winningBets[group]++;
+                    }
+                }
+            }
+            return acc;
+        }
+    }
+
+}
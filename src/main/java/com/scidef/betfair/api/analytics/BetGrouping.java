@@ -0,0 +1,194 @@
+package com.scidef.betfair.api.analytics;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * A way of assigning each row of a <code>BetTable</code> to one of a fixed number of
+ * groups, for use with <code>BetAggregator</code>.
+ * <p/>
+ * Groups are identified by dense indices from 0 to <code>getGroupCount(table) - 1</code>
+ * so that aggregation can accumulate into primitive arrays rather than maps.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public abstract class BetGrouping {
+
+    private static final String UNKNOWN_LABEL = "Unknown";
+    private static final long MILLIS_PER_HOUR = 3600000L;
+
+    /**
+     * @param table the table being grouped
+     * @return the number of groups rows in this table may be assigned to
+     */
+    public abstract int getGroupCount(BetTable table);
+
+    /**
+     * @param table the table being grouped
+     * @param row   the row index
+     * @return the group index for the given row
+     */
+    public abstract int getGroup(BetTable table, int row);
+
+    /**
+     * @param table the table being grouped
+     * @param group the group index
+     * @return a human-readable label for the group
+     */
+    public abstract String getLabel(BetTable table, int group);
+
+    /**
+     * Group bets by venue (the bet <code>location</code>).
+     *
+     * @return a grouping by venue
+     */
+    public static BetGrouping byVenue() {
+        return new BetGrouping() {
+            @Override
+            public int getGroupCount(BetTable table) {
+                return table.getVenueCount();
+            }
+
+            @Override
+            public int getGroup(BetTable table, int row) {
+                return table.getVenue(row);
+            }
+
+            @Override
+            public String getLabel(BetTable table, int group) {
+                String venue = table.getVenueName(group);
+                return venue != null ? venue : UNKNOWN_LABEL;
+            }
+        };
+    }
+
+    /**
+     * Group bets into back bets and lay bets.
+     *
+     * @return a grouping by bet type
+     */
+    public static BetGrouping byBetType() {
+        return new BetGrouping() {
+            @Override
+            public int getGroupCount(BetTable table) {
+                return 2;
+            }
+
+            @Override
+            public int getGroup(BetTable table, int row) {
+                return table.getBetType(row);
+            }
+
+            @Override
+            public String getLabel(BetTable table, int group) {
+                return group == BetTable.LAY ? "Lay" : "Back";
+            }
+        };
+    }
+
+    /**
+     * Group bets by the number of runners in the market. Fields larger than
+     * <code>maxRunners</code> are grouped together, as are bets where the number of
+     * runners is not known.
+     *
+     * @param maxRunners the largest field size to be given its own group
+     * @return a grouping by field size
+     */
+    public static BetGrouping byNumberOfRunners(final int maxRunners) {
+        // groups: 0..maxRunners, then "more", then "unknown"
+        return new BetGrouping() {
+            @Override
+            public int getGroupCount(BetTable table) {
+                return maxRunners + 3;
+            }
+
+            @Override
+            public int getGroup(BetTable table, int row) {
+                int runners = table.getNumberOfRunners(row);
+                if (runners == BetTable.UNKNOWN) {
+                    return maxRunners + 2;
+                }
+                return runners > maxRunners ? maxRunners + 1 : runners;
+            }
+
+            @Override
+            public String getLabel(BetTable table, int group) {
+                if (group == maxRunners + 2) {
+                    return UNKNOWN_LABEL;
+                }
+                return group == maxRunners + 1 ? "> " + maxRunners : String.valueOf(group);
+            }
+        };
+    }
+
+    /**
+     * Group bets by the hour of the day at which the event took place.
+     *
+     * @param timeZone the time zone in which to work out the hour of the day
+     * @return a grouping by hour of the day
+     */
+    public static BetGrouping byHourOfDay(final TimeZone timeZone) {
+        return new BetGrouping() {
+            @Override
+            public int getGroupCount(BetTable table) {
+                return 25;
+            }
+
+            @Override
+            public int getGroup(BetTable table, int row) {
+                long eventTime = table.getEventTime(row);
+                if (eventTime == BetTable.UNKNOWN_TIME) {
+                    return 24;
+                }
+                long localTime = eventTime + timeZone.getOffset(eventTime);
+                return (int) ((localTime / MILLIS_PER_HOUR) % 24 + 24) % 24;
+            }
+
+            @Override
+            public String getLabel(BetTable table, int group) {
+                return group == 24 ? UNKNOWN_LABEL : String.format("%02d:00", group);
+            }
+        };
+    }
+
+    /**
+     * Group bets by price band. Each band includes its upper bound, so bounds of
+     * <code>2.0, 4.0</code> give the bands <code>&lt;= 2.0</code>, <code>(2.0, 4.0]</code>
+     * and <code>&gt; 4.0</code>.
+     *
+     * @param upperBounds the upper bound of each band, in ascending order
+     * @return a grouping by price band
+     */
+    public static BetGrouping byPriceBand(double... upperBounds) {
+        if (upperBounds.length == 0) {
+            throw new IllegalArgumentException("At least one price band bound is required");
+        }
+        final double[] bounds = upperBounds.clone();
+        Arrays.sort(bounds);
+        return new BetGrouping() {
+            @Override
+            public int getGroupCount(BetTable table) {
+                return bounds.length + 1;
+            }
+
+            @Override
+            public int getGroup(BetTable table, int row) {
+                int i = Arrays.binarySearch(bounds, table.getPrice(row));
+                return i >= 0 ? i : -(i + 1);
+            }
+
+            @Override
+            public String getLabel(BetTable table, int group) {
+                if (group == 0) {
+                    return "<= " + bounds[0];
+                }
+                if (group == bounds.length) {
+                    return "> " + bounds[bounds.length - 1];
+                }
+                return "(" + bounds[group - 1] + ", " + bounds[group] + "]";
+            }
+        };
+    }
+
+}
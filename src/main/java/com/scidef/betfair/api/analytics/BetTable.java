@@ -0,0 +1,211 @@
+package com.scidef.betfair.api.analytics;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.scidef.betfair.api.Bet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.scidef.betfair.api.BetEnrichment.calculateProfitOrLoss;
+
+/**
+ * A read-only, column-oriented copy of a list of <code>Bet</code>s, intended for
+ * analysing large bet histories.
+ * <p/>
+ * Each field is held in its own primitive array, so scanning a column touches no
+ * boxed values. Fields that may be missing on a <code>Bet</code> are stored using
+ * sentinel values: <code>NaN</code> for doubles, <code>-1</code> for ints and
+ * <code>Long.MIN_VALUE</code> for times. Venues (the bet <code>location</code>) are
+ * dictionary-encoded so they can be grouped on without comparing strings.
+ * <p/>
+ * If a bet has no profit or loss set but its non-runner status and event outcome
+ * are known, the profit or loss is calculated as it would be by
+ * <code>BetEnrichment.enrichBetsWithProfitOrLossCalculation</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class BetTable {
+
+    public static final int UNKNOWN = -1;
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    public static final byte BACK = 0;
+    public static final byte LAY = 1;
+
+    private static final byte NON_RUNNER_FALSE = 0;
+    private static final byte NON_RUNNER_TRUE = 1;
+
+    private final int rowCount;
+
+    private final int[] marketId;
+    private final int[] selectionId;
+    private final byte[] betType;
+    private final double[] price;
+    private final double[] size;
+    private final double[] amountMatched;
+    private final int[] venue;
+    private final long[] eventTime;
+    private final long[] timePlaced;
+    private final int[] eventOutcome;
+    private final byte[] nonRunner;
+    private final double[] profitOrLoss;
+    private final int[] numberOfRunners;
+
+    private final String[] venueNames;
+
+    /**
+     * Build a table from a list of bets. The bets are copied, so later changes to them
+     * are not reflected in the table.
+     *
+     * @param bets the <code>Bet</code>s to build the table from
+     */
+    public BetTable(List<Bet> bets) {
+        rowCount = bets.size();
+        marketId = new int[rowCount];
+        selectionId = new int[rowCount];
+        betType = new byte[rowCount];
+        price = new double[rowCount];
+        size = new double[rowCount];
+        amountMatched = new double[rowCount];
+        venue = new int[rowCount];
+        eventTime = new long[rowCount];
+        timePlaced = new long[rowCount];
+        eventOutcome = new int[rowCount];
+        nonRunner = new byte[rowCount];
+        profitOrLoss = new double[rowCount];
+        numberOfRunners = new int[rowCount];
+
+        Map<String, Integer> venueCodes = new HashMap<String, Integer>();
+        List<String> venueList = new ArrayList<String>();
+
+        int row = 0;
+        for (Bet bet : bets) {
+            marketId[row] = bet.getMarketId();
+            selectionId[row] = bet.getSelectionId();
+            betType[row] = BetTypeEnum.L.equals(bet.getBetType()) ? LAY : BACK;
+            price[row] = bet.getPrice();
+            size[row] = bet.getSize() != null ? bet.getSize() : Double.NaN;
+            amountMatched[row] = bet.getAmountMatched() != null ? bet.getAmountMatched() : Double.NaN;
+            eventTime[row] = bet.getEventTime() != null ? bet.getEventTime().getTime() : UNKNOWN_TIME;
+            timePlaced[row] = bet.getTimePlaced() != null ? bet.getTimePlaced().getTime() : UNKNOWN_TIME;
+            eventOutcome[row] = bet.getEventOutcome() != null ? bet.getEventOutcome() : UNKNOWN;
+            nonRunner[row] = bet.getNonRunner() == null ? UNKNOWN :
+                    bet.getNonRunner() ? NON_RUNNER_TRUE : NON_RUNNER_FALSE;
+            numberOfRunners[row] = bet.getNumberOfRunners() != null ? bet.getNumberOfRunners() : UNKNOWN;
+
+            if (bet.getProfitOrLoss() != null) {
+                profitOrLoss[row] = bet.getProfitOrLoss();
+            } else if (bet.getBetType() != null && nonRunner[row] != UNKNOWN && eventOutcome[row] != UNKNOWN) {
+                profitOrLoss[row] = calculateProfitOrLoss(bet.getBetType(), price[row],
+                        nonRunner[row] == NON_RUNNER_TRUE, eventOutcome[row]);
+            } else {
+                profitOrLoss[row] = Double.NaN;
+            }
+
+            String location = bet.getLocation();
+            Integer code = venueCodes.get(location);
+            if (code == null) {
+                code = venueList.size();
+                venueCodes.put(location, code);
+                venueList.add(location);
+            }
+            venue[row] = code;
+
+            row++;
+        }
+
+        venueNames = venueList.toArray(new String[venueList.size()]);
+    }
+
+    /**
+     * @return the number of bets in the table
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of distinct venues in the table
+     */
+    public int getVenueCount() {
+        return venueNames.length;
+    }
+
+    /**
+     * Look up the venue name for a dictionary code returned by <code>getVenue(int)</code>.
+     *
+     * @param code the venue code
+     * @return the venue name, which may be null if the bet had no location
+     */
+    public String getVenueName(int code) {
+        return venueNames[code];
+    }
+
+    public int getMarketId(int row) {
+        return marketId[row];
+    }
+
+    public int getSelectionId(int row) {
+        return selectionId[row];
+    }
+
+    public byte getBetType(int row) {
+        return betType[row];
+    }
+
+    public double getPrice(int row) {
+        return price[row];
+    }
+
+    public double getSize(int row) {
+        return size[row];
+    }
+
+    public double getAmountMatched(int row) {
+        return amountMatched[row];
+    }
+
+    public int getVenue(int row) {
+        return venue[row];
+    }
+
+    public long getEventTime(int row) {
+        return eventTime[row];
+    }
+
+    public long getTimePlaced(int row) {
+        return timePlaced[row];
+    }
+
+    public int getEventOutcome(int row) {
+        return eventOutcome[row];
+    }
+
+    /**
+     * @param row the row index
+     * @return true if the runner is known to be a non-runner
+     */
+    public boolean isNonRunner(int row) {
+        return nonRunner[row] == NON_RUNNER_TRUE;
+    }
+
+    public double getProfitOrLoss(int row) {
+        return profitOrLoss[row];
+    }
+
+    public int getNumberOfRunners(int row) {
+        return numberOfRunners[row];
+    }
+
+    /**
+     * @param row the row index
+     * @return true if the bet has a known profit or loss
+     */
+    public boolean isSettled(int row) {
+        return !Double.isNaN(profitOrLoss[row]);
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.scidef.betfair.api.analytics;
+
+/**
+ * The aggregated profit or loss for one group of bets, as produced by
+ * <code>BetAggregator</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PnlSummary {
+
+    private final String label;
+    private final int bets;
+    private final int settledBets;
+    private final int winningBets;
+    private final double totalProfitOrLoss;
+
+    public PnlSummary(String label, int bets, int settledBets, int winningBets, double totalProfitOrLoss) {
+        this.label = label;
+        this.bets = bets;
+        this.settledBets = settledBets;
+        this.winningBets = winningBets;
+        this.totalProfitOrLoss = totalProfitOrLoss;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the total number of bets in the group
+     */
+    public int getBets() {
+        return bets;
+    }
+
+    /**
+     * @return the number of bets in the group with a known profit or loss
+     */
+    public int getSettledBets() {
+        return settledBets;
+    }
+
+    /**
+     * @return the number of settled bets in the group that made a profit
+     */
+    public int getWinningBets() {
+        return winningBets;
+    }
+
+    public double getTotalProfitOrLoss() {
+        return totalProfitOrLoss;
+    }
+
+    /**
+     * @return the mean profit or loss per settled bet, or 0 if no bets have settled
+     */
+    public double getAverageProfitOrLoss() {
+        return settledBets > 0 ? totalProfitOrLoss / settledBets : 0.0;
+    }
+
+    /**
+     * @return the proportion of settled bets that made a profit, or 0 if no bets have settled
+     */
+    public double getStrikeRate() {
+        return settledBets > 0 ? (double) winningBets / settledBets : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return "PnlSummary{" +
+                "label='" + label + '\'' +
+                ", bets=" + bets +
+                ", settledBets=" + settledBets +
+                ", winningBets=" + winningBets +
+                ", totalProfitOrLoss=" + totalProfitOrLoss +
+                '}';
+    }
+}
@@ -0,0 +1,338 @@
+package com.scidef.betfair.api.aop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A circuit breaker for a single API operation.
+ * <p/>
+ * While <code>CLOSED</code>, the outcome of each call is recorded in a sliding window of the
+ * last <code>windowSize</code> calls. Once the window holds at least <code>minimumCalls</code>
+ * calls and either the proportion that failed reaches <code>failureRateThreshold</code> or
+ * the proportion that took at least <code>slowCallMillis</code> reaches
+ * <code>slowCallRateThreshold</code>, the breaker opens.
+ * <p/>
+ * While <code>OPEN</code>, calls are refused straight away. After <code>openMillis</code> ms
+ * the breaker becomes <code>HALF_OPEN</code> and lets up to <code>halfOpenTrials</code> trial
+ * calls through: if they all succeed (and are not slow) the breaker closes again, and if any
+ * of them fails it opens for another <code>openMillis</code> ms.
+ * <p/>
+ * Every change of state starts a new generation, and the permit handed out for a call is
+ * the generation it was let through in. The outcome of a call is only recorded if the
+ * breaker is still in that generation, so eg a call let through while closed that
+ * finishes after the breaker has gone half open is not taken for a trial.
+ * <p/>
+ * Each change of state is logged and published to any registered listeners. An instance may
+ * be used from any number of threads; a closed breaker admits calls without locking.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 20;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 10000L;
+    public static final double DEFAULT_SLOW_CALL_RATE_THRESHOLD = 0.8;
+    public static final long DEFAULT_OPEN_MILLIS = 30000L;
+    public static final int DEFAULT_HALF_OPEN_TRIALS = 2;
+
+    public static final long NO_PERMIT = -1L;
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified whenever a circuit breaker changes state.
+     */
+    public interface Listener {
+
+        void stateChanged(CircuitBreaker circuitBreaker, State from, State to);
+
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallMillis;
+    private final double slowCallRateThreshold;
+    private final long openMillis;
+    private final int halfOpenTrials;
+
+    // the sliding window of outcomes, guarded by this
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    private volatile State state = State.CLOSED;
+    private volatile long generation; // written under the lock, before the state it belongs to
+    private long openedAt; // guarded by this
+    private int trialsInFlight; // guarded by this
+    private int trialSuccesses; // guarded by this
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    /**
+     * Create a circuit breaker with the default thresholds.
+     *
+     * @param name the name of the operation, eg <code>ExchangeAPI.getMarketPricesCompressed</code>
+     */
+    public CircuitBreaker(String name) {
+        this(name, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE_THRESHOLD,
+                DEFAULT_SLOW_CALL_MILLIS, DEFAULT_SLOW_CALL_RATE_THRESHOLD, DEFAULT_OPEN_MILLIS,
+                DEFAULT_HALF_OPEN_TRIALS);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param name                  the name of the operation
+     * @param windowSize            the number of recent calls to work the rates out over
+     * @param minimumCalls          the number of calls needed in the window before the breaker can open
+     * @param failureRateThreshold  the proportion of failed calls, eg 0.5, at which the breaker opens
+     * @param slowCallMillis        the time, in ms, from which a call counts as slow
+     * @param slowCallRateThreshold the proportion of slow calls, eg 0.8, at which the breaker opens
+     * @param openMillis            how long, in ms, the breaker stays open before letting trial calls through
+     * @param halfOpenTrials        the number of trial calls that must succeed for the breaker to close
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          long slowCallMillis, double slowCallRateThreshold, long openMillis, int halfOpenTrials) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize || halfOpenTrials < 1) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings for " + name);
+        }
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallMillis = slowCallMillis;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenTrials = halfOpenTrials;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * Ask to make a call. Every call that is allowed must be followed by exactly one of
+     * <code>onSuccess</code>, <code>onFailure</code> or <code>onIgnored</code>, given the
+     * permit returned here.
+     *
+     * @return the permit for the call, or <code>NO_PERMIT</code> if it should fail fast
+     */
+    public long tryAcquire() {
+        long permit = generation;
+        if (state == State.CLOSED) {
+            return permit;
+        }
+        boolean allowed;
+        State from = null;
+        synchronized (this) {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                from = state;
+                generation++;
+                state = State.HALF_OPEN;
+                trialsInFlight = 0;
+                trialSuccesses = 0;
+            }
+            permit = generation;
+            if (state == State.HALF_OPEN) {
+                allowed = trialsInFlight < halfOpenTrials;
+                if (allowed) {
+                    trialsInFlight++;
+                }
+            } else {
+                allowed = state == State.CLOSED;
+            }
+        }
+        if (from != null) {
+            publish(from, State.HALF_OPEN);
+        }
+        if (!allowed) {
+            rejected.incrementAndGet();
+            return NO_PERMIT;
+        }
+        return permit;
+    }
+
+    /**
+     * Record a call that succeeded.
+     *
+     * @param permit        the permit the call was let through with
+     * @param elapsedMillis how long the call took, in ms
+     */
+    public void onSuccess(long permit, long elapsedMillis) {
+        record(permit, false, elapsedMillis >= slowCallMillis);
+    }
+
+    /**
+     * Record a call that failed.
+     *
+     * @param permit        the permit the call was let through with
+     * @param elapsedMillis how long the call took, in ms
+     */
+    public void onFailure(long permit, long elapsedMillis) {
+        record(permit, true, elapsedMillis >= slowCallMillis);
+    }
+
+    /**
+     * Record a call whose outcome says nothing about the health of the operation, eg one
+     * that failed because the session had expired.
+     *
+     * @param permit the permit the call was let through with
+     */
+    public synchronized void onIgnored(long permit) {
+        if (permit == generation && state == State.HALF_OPEN && trialsInFlight > 0) {
+            trialsInFlight--;
+        }
+    }
+
+    /**
+     * @return the current state; an open breaker whose open time has passed stays
+     *         <code>OPEN</code> until the next call asks to go through
+     */
+    public State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the proportion of the calls in the window that failed, or 0 if there are none
+     */
+    public synchronized double getFailureRate() {
+        return calls == 0 ? 0 : (double) failures / calls;
+    }
+
+    /**
+     * @return the proportion of the calls in the window that were slow, or 0 if there are none
+     */
+    public synchronized double getSlowCallRate() {
+        return calls == 0 ? 0 : (double) slowCalls / calls;
+    }
+
+    /**
+     * @return the number of calls refused because the breaker was open
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return the number of times the breaker has opened
+     */
+    public long getOpened() {
+        return opened.get();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[" + name + ": " + state + "]";
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private void record(long permit, boolean failure, boolean slowCall) {
+        State from = null;
+        State to = null;
+        synchronized (this) {
+            if (permit == generation && state == State.HALF_OPEN) {
+                if (trialsInFlight > 0) {
+                    trialsInFlight--;
+                }
+                if (failure || slowCall) {
+                    from = state;
+                    to = open();
+                } else if (++trialSuccesses >= halfOpenTrials) {
+                    from = state;
+                    to = close();
+                }
+            } else if (permit == generation && state == State.CLOSED) {
+                if (calls == windowSize) {
+                    // drop the oldest outcome
+                    failures -= failed[next] ? 1 : 0;
+                    slowCalls -= slow[next] ? 1 : 0;
+                } else {
+                    calls++;
+                }
+                failed[next] = failure;
+                slow[next] = slowCall;
+                failures += failure ? 1 : 0;
+                slowCalls += slowCall ? 1 : 0;
+                next = (next + 1) % windowSize;
+                if (calls >= minimumCalls && (failures >= failureRateThreshold * calls ||
+                        slowCalls >= slowCallRateThreshold * calls)) {
+                    from = state;
+                    to = open();
+                }
+            }
+            // a call let through before the breaker last changed state tells us nothing new
+        }
+        if (to != null) {
+            publish(from, to);
+        }
+    }
+
+    // must be called holding the lock
+    private State open() {
+        generation++;
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        opened.incrementAndGet();
+        return state;
+    }
+
+    // must be called holding the lock
+    private State close() {
+        generation++;
+        state = State.CLOSED;
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+        return state;
+    }
+
+    private void publish(State from, State to) {
+        if (to == State.OPEN) {
+            LOG.warn("Circuit breaker for [" + name + "] changed from " + from + " to " + to);
+        } else {
+            LOG.info("Circuit breaker for [" + name + "] changed from " + from + " to " + to);
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.stateChanged(this, from, to);
+            } catch (RuntimeException e) {
+                LOG.warn("Circuit breaker listener failed", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.scidef.betfair.api.aop;
+
+/**
+ * Exception thrown instead of making (or retrying) an API call while the circuit breaker
+ * for its operation is open.
+ * <p/>
+ * No request has been sent, so it is safe to repeat the call once the breaker's cool-down
+ * has passed; the operation named is the one whose breaker is open.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class CircuitOpenException extends ExceededMaxRetriesException {
+
+    private static final long serialVersionUID = -2719342856155236703L;
+
+    private final String operation;
+
+    public CircuitOpenException(String operation) {
+        super("Circuit breaker open for " + operation);
+        this.operation = operation;
+    }
+
+    public CircuitOpenException(String operation, Throwable cause) {
+        super("Circuit breaker open for " + operation, cause);
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+}
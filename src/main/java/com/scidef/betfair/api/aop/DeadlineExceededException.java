@@ -0,0 +1,32 @@
+package com.scidef.betfair.api.aop;
+
+/**
+ * Exception thrown instead of starting (or continuing) an API call once the deadline
+ * set for the calling thread has passed.
+ * <p/>
+ * The retry aspect never retries it, since a retry could only finish later still. Where a
+ * call failed once the deadline had passed, that failure is kept as the cause.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class DeadlineExceededException extends ExceededMaxRetriesException {
+
+    private static final long serialVersionUID = 5120693387471035127L;
+
+    private final String operation;
+
+    public DeadlineExceededException(String operation) {
+        this(operation, null);
+    }
+
+    public DeadlineExceededException(String operation, Throwable cause) {
+        super("Deadline exceeded by " + operation, cause);
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+}
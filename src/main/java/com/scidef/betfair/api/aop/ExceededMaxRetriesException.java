@@ -4,6 +4,9 @@ package com.scidef.betfair.api.aop;
  * Exception thrown when the maximum number of retry attempts for an API call
  * has been exceeded.
  * <p/>
+ * Calls that are given up on for other reasons are thrown as subclasses of this, so that
+ * callers can handle every call that could not be completed in one place.
+ * <p/>
  * User: tompearson
  * Date: 20/01/2013
  */
@@ -15,4 +18,12 @@ public class ExceededMaxRetriesException extends RuntimeException {
         super();
     }
 
+    public ExceededMaxRetriesException(String message) {
+        super(message);
+    }
+
+    public ExceededMaxRetriesException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
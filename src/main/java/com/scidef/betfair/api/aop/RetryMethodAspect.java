@@ -1,15 +1,28 @@
 package com.scidef.betfair.api.aop;
 
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
+import com.scidef.betfair.api.Deadline;
 import com.scidef.betfair.api.HorseRacing;
 import com.scidef.betfair.api.exception.ExceededThrottleException;
 import com.scidef.betfair.api.exception.NoSessionException;
+import com.scidef.betfair.api.jfr.JfrEvents;
+import com.scidef.betfair.api.trace.Span;
+import com.scidef.betfair.api.trace.Tracer;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.CodeSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * This aspect handles expired API sessions, exceeded throttle exceptions and
  * other API errors by intercepting the exception and retrying the method in question.
@@ -23,6 +36,31 @@ import org.slf4j.LoggerFactory;
  * In all cases, only <code>maxRetries</code> retries will be attempted before
  * an <code>ExceededMaxRetriesException</code> is thrown.
  * <p/>
+ * Each operation (eg <code>ExchangeAPI.getMarketPricesCompressed</code>) also has its own
+ * <code>CircuitBreaker</code>. Failed and slow attempts are recorded against it, and while it
+ * is open calls to the operation, and retries already under way, fail straight away with a
+ * <code>CircuitOpenException</code> rather than sleeping between attempts. Expired sessions
+ * and exceeded throttles are not counted against the operation.
+ * <p/>
+ * If the calling thread has a <code>Deadline</code>, no attempt is started once it has passed,
+ * and a retry is given up rather than slept for if the deadline would pass first; either way
+ * a <code>DeadlineExceededException</code> is thrown.
+ * <p/>
+ * When tracing is on, each attempt is traced as a span named after the operation, and each
+ * sleep before a retry as a <code>RetryMethodAspect.throttleSleep</code> or
+ * <code>RetryMethodAspect.retrySleep</code> span. Each attempt is also recorded as a JFR
+ * <code>ApiCall</code> event, and each wait before a retry as a <code>ThrottleWait</code> or
+ * <code>Retry</code> event (see <code>JfrEvents</code>).
+ * <p/>
+ * A caller that handles expired sessions and exceeded throttles itself, on the session the
+ * call was made on (eg a <code>SessionPool</code>), turns on
+ * <code>setRethrowSessionErrors</code> for its thread. Those exceptions are then thrown
+ * straight back to it, rather than logging in the primary session or sleeping before a retry.
+ * <p/>
+ * The aspect keeps no per-call state, so it may intercept calls from any number of threads.
+ * When several threads find the session expired together, <code>HorseRacing.login()</code>
+ * makes one login for all of them.
+ * <p/>
  * User: tompearson
  * Date: 25/06/2010
  */
@@ -31,11 +69,20 @@ public class RetryMethodAspect {
 
     private final static Logger LOG = LoggerFactory.getLogger(RetryMethodAspect.class);
 
-    private int maxRetries = 3;
-    private long exceededThrottleSleepTime = 60000L;
-    private long standardSleepTime = 10000L;
+    // set for threads whose callers handle expired sessions and exceeded throttles themselves
+    private static final ThreadLocal<Boolean> RETHROW_SESSION_ERRORS = new ThreadLocal<Boolean>();
+
+    private volatile int maxRetries = 3;
+    private volatile long exceededThrottleSleepTime = 60000L;
+    private volatile long standardSleepTime = 10000L;
 
-    private HorseRacing horseRacing;
+    private volatile boolean circuitBreakersEnabled = true; // if set, operations fail fast while their breaker is open
+
+    private final HorseRacing horseRacing;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers =
+            new ConcurrentHashMap<String, CircuitBreaker>();
+    private final List<CircuitBreaker.Listener> circuitBreakerListeners =
+            new CopyOnWriteArrayList<CircuitBreaker.Listener>();
 
     public RetryMethodAspect(HorseRacing horseRacing) {
         this.horseRacing = horseRacing;
@@ -46,26 +93,83 @@ public class RetryMethodAspect {
     }
 
     @Around("retry()")
-    public Object retryMethod(ProceedingJoinPoint pjp) {
+    public Object retryMethod(ProceedingJoinPoint pjp) throws Throwable {
         return retryMethod(pjp, maxRetries);
     }
 
-    public Object retryMethod(ProceedingJoinPoint pjp, int retries) {
+    public Object retryMethod(ProceedingJoinPoint pjp, int retries) throws Throwable {
         if (retries == 0) {
             throw new ExceededMaxRetriesException();
         }
+        String operation = getOperation(pjp);
+        long remaining = Deadline.checkCurrent(operation);
+        CircuitBreaker circuitBreaker = circuitBreakersEnabled ? getCircuitBreaker(operation) : null;
+        long permit = circuitBreaker != null ? circuitBreaker.tryAcquire() : CircuitBreaker.NO_PERMIT;
+        if (circuitBreaker != null && permit == CircuitBreaker.NO_PERMIT) {
+            throw new CircuitOpenException(circuitBreaker.getName());
+        }
+        int attempt = maxRetries - retries + 1;
+        long start = System.currentTimeMillis();
+        Span span = Tracer.start(operation);
+        Object event = JfrEvents.beginApiCall();
         try {
-            return pjp.proceed();
+            Object result = pjp.proceed();
+            span.end();
+            JfrEvents.commitApiCall(event, operation, getMarketId(pjp), getBytes(result), JfrEvents.SUCCESS, attempt);
+            if (circuitBreaker != null) {
+                circuitBreaker.onSuccess(permit, System.currentTimeMillis() - start);
+            }
+            return result;
         } catch (Throwable t) {
+            span.end();
+            JfrEvents.commitApiCall(event, operation, getMarketId(pjp), 0, getOutcome(t), attempt);
+            if (circuitBreaker != null) {
+                if (t instanceof NoSessionException || t instanceof ExceededThrottleException ||
+                        t instanceof CircuitOpenException || t instanceof DeadlineExceededException) {
+                    circuitBreaker.onIgnored(permit);
+                } else {
+                    circuitBreaker.onFailure(permit, System.currentTimeMillis() - start);
+                }
+            }
+            if (t instanceof CircuitOpenException || t instanceof DeadlineExceededException) {
+                // a nested call failed fast; so does this one
+                throw (ExceededMaxRetriesException) t;
+            }
+            if ((t instanceof NoSessionException || t instanceof ExceededThrottleException) &&
+                    RETHROW_SESSION_ERRORS.get() != null) {
+                // the caller handles these on the session it made the call on
+                throw t;
+            }
+            if (circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+                LOG.warn("Method [" + pjp.getSignature().toShortString() + "] failed with exception:", t);
+                throw new CircuitOpenException(circuitBreaker.getName(), t);
+            }
             if (t instanceof NoSessionException) {
+                Object retry = JfrEvents.beginRetry();
                 horseRacing.login();
+                JfrEvents.commitRetry(retry, operation, attempt, t.getClass().getName());
             } else {
+                long sleepTime = (t instanceof ExceededThrottleException) ? exceededThrottleSleepTime : standardSleepTime;
+                if (remaining != Long.MAX_VALUE && System.currentTimeMillis() + sleepTime - start >= remaining) {
+                    // the retry could not start before the deadline
+                    LOG.warn("Method [" + pjp.getSignature().toShortString() + "] failed with exception:", t);
+                    throw Deadline.miss(operation, t);
+                }
+                boolean throttled = t instanceof ExceededThrottleException;
+                Span sleep = Tracer.start(throttled ? "RetryMethodAspect.throttleSleep" : "RetryMethodAspect.retrySleep");
+                Object wait = throttled ? JfrEvents.beginThrottleWait() : JfrEvents.beginRetry();
                 try {
-                    Thread.sleep((t instanceof ExceededThrottleException) ?
-                            exceededThrottleSleepTime : standardSleepTime);
+                    Thread.sleep(sleepTime);
                 } catch (InterruptedException e) {
                     // restore interrupted status
                     Thread.currentThread().interrupt();
+                } finally {
+                    sleep.end();
+                    if (throttled) {
+                        JfrEvents.commitThrottleWait(wait, operation, attempt);
+                    } else {
+                        JfrEvents.commitRetry(wait, operation, attempt, t.getClass().getName());
+                    }
                 }
             }
             LOG.warn("Method [" + pjp.getSignature().toShortString() + "] failed with exception:", t);
@@ -73,6 +177,82 @@ public class RetryMethodAspect {
         }
     }
 
+    /**
+     * Choose whether expired sessions and exceeded throttles on the current thread's calls
+     * are thrown back to the caller rather than handled by the aspect.
+     *
+     * @param rethrow true to throw them back to the caller
+     * @return the previous setting for the thread, to restore once the caller is done
+     */
+    public static boolean setRethrowSessionErrors(boolean rethrow) {
+        boolean previous = RETHROW_SESSION_ERRORS.get() != null;
+        if (rethrow) {
+            RETHROW_SESSION_ERRORS.set(Boolean.TRUE);
+        } else {
+            RETHROW_SESSION_ERRORS.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * Get the circuit breaker for an operation, creating it with the default thresholds if
+     * it does not exist yet.
+     *
+     * @param operation the operation, as the simple class name and the method name, eg
+     *                  <code>ExchangeAPI.getMarketPricesCompressed</code>
+     * @return the circuit breaker for the operation
+     */
+    public CircuitBreaker getCircuitBreaker(String operation) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(operation);
+        if (circuitBreaker == null) {
+            CircuitBreaker created = new CircuitBreaker(operation);
+            circuitBreaker = circuitBreakers.putIfAbsent(operation, created);
+            if (circuitBreaker == null) {
+                circuitBreaker = created;
+                addListeners(circuitBreaker);
+            }
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * Use a circuit breaker with its own thresholds for an operation.
+     *
+     * @param circuitBreaker the circuit breaker, named after its operation
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        addListeners(circuitBreaker);
+        circuitBreakers.put(circuitBreaker.getName(), circuitBreaker);
+    }
+
+    /**
+     * @return the circuit breakers for the operations called so far, by operation
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableMap(circuitBreakers);
+    }
+
+    /**
+     * Register a listener for the state changes of every circuit breaker, including those
+     * created later.
+     *
+     * @param listener the listener
+     */
+    public void addCircuitBreakerListener(CircuitBreaker.Listener listener) {
+        circuitBreakerListeners.add(listener);
+        for (CircuitBreaker circuitBreaker : circuitBreakers.values()) {
+            circuitBreaker.addListener(listener);
+        }
+    }
+
+    public boolean isCircuitBreakersEnabled() {
+        return circuitBreakersEnabled;
+    }
+
+    public void setCircuitBreakersEnabled(boolean circuitBreakersEnabled) {
+        this.circuitBreakersEnabled = circuitBreakersEnabled;
+    }
+
     public void setMaxRetries(int maxRetries) {
         this.maxRetries = maxRetries;
     }
@@ -85,4 +265,56 @@ public class RetryMethodAspect {
         this.standardSleepTime = standardSleepTime;
     }
 
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static String getOperation(ProceedingJoinPoint pjp) {
+        return pjp.getSignature().getDeclaringType().getSimpleName() + "." + pjp.getSignature().getName();
+    }
+
+    // the marketId argument of the call, or 0 if it has none
+    private static int getMarketId(ProceedingJoinPoint pjp) {
+        if (!(pjp.getSignature() instanceof CodeSignature)) {
+            return 0;
+        }
+        String[] names = ((CodeSignature) pjp.getSignature()).getParameterNames();
+        Object[] args = pjp.getArgs();
+        for (int i = 0; names != null && args != null && i < names.length && i < args.length; i++) {
+            if ("marketId".equals(names[i]) && args[i] instanceof Integer) {
+                return (Integer) args[i];
+            }
+        }
+        return 0;
+    }
+
+    // the size of the compressed prices returned by the call, if any
+    private static long getBytes(Object result) {
+        String compressed = null;
+        if (result instanceof String) {
+            compressed = (String) result;
+        } else if (result instanceof GetMarketPricesCompressedResp) {
+            compressed = ((GetMarketPricesCompressedResp) result).getMarketPrices();
+        }
+        return compressed != null ? compressed.length() : 0;
+    }
+
+    private static String getOutcome(Throwable t) {
+        if (t instanceof NoSessionException) {
+            return JfrEvents.NO_SESSION;
+        } else if (t instanceof ExceededThrottleException) {
+            return JfrEvents.THROTTLED;
+        } else if (t instanceof CircuitOpenException) {
+            return JfrEvents.CIRCUIT_OPEN;
+        } else if (t instanceof DeadlineExceededException) {
+            return JfrEvents.DEADLINE_EXCEEDED;
+        }
+        return JfrEvents.FAILED;
+    }
+
+    private void addListeners(CircuitBreaker circuitBreaker) {
+        for (CircuitBreaker.Listener listener : circuitBreakerListeners) {
+            circuitBreaker.addListener(listener);
+        }
+    }
+
 }
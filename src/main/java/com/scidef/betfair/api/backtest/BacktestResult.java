@@ -0,0 +1,159 @@
+package com.scidef.betfair.api.backtest;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The outcome of a backtest, or of the part of one replayed by a single task. The results
+ * of separate tasks are combined with <code>add</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class BacktestResult {
+
+    private final SortedMap<String, Double> profitOrLossByDay = new TreeMap<String, Double>();
+    private long markets;
+    private long snapshots;
+    private long betsPlaced;
+    private long betsRejected;
+    private long strategyFailures;
+    private long settledMarkets;
+    private long unsettledMarkets;
+    private long failedDays;
+    private double profitOrLoss;
+
+    /**
+     * @return the profit (or, if negative, loss) on each day replayed, keyed by day name
+     */
+    public SortedMap<String, Double> getProfitOrLossByDay() {
+        return Collections.unmodifiableSortedMap(profitOrLossByDay);
+    }
+
+    /**
+     * @return the number of days replayed
+     */
+    public int getDays() {
+        return profitOrLossByDay.size();
+    }
+
+    public long getMarkets() {
+        return markets;
+    }
+
+    /**
+     * @return the number of sets of prices replayed
+     */
+    public long getSnapshots() {
+        return snapshots;
+    }
+
+    public long getBetsPlaced() {
+        return betsPlaced;
+    }
+
+    public long getBetsRejected() {
+        return betsRejected;
+    }
+
+    /**
+     * @return the number of evaluations in which a strategy threw an exception
+     */
+    public long getStrategyFailures() {
+        return strategyFailures;
+    }
+
+    public long getSettledMarkets() {
+        return settledMarkets;
+    }
+
+    /**
+     * @return the number of markets with no result, whose bets were left out of the profit or loss
+     */
+    public long getUnsettledMarkets() {
+        return unsettledMarkets;
+    }
+
+    /**
+     * @return the number of days that could not be read
+     */
+    public long getFailedDays() {
+        return failedDays;
+    }
+
+    /**
+     * @return the total profit (or, if negative, loss) on the settled markets
+     */
+    public double getProfitOrLoss() {
+        return profitOrLoss;
+    }
+
+    /**
+     * Add the results of another part of the backtest to these.
+     *
+     * @param other the other results
+     * @return these results
+     */
+    public BacktestResult add(BacktestResult other) {
+        profitOrLossByDay.putAll(other.profitOrLossByDay);
+        markets += other.markets;
+        snapshots += other.snapshots;
+        betsPlaced += other.betsPlaced;
+        betsRejected += other.betsRejected;
+        strategyFailures += other.strategyFailures;
+        settledMarkets += other.settledMarkets;
+        unsettledMarkets += other.unsettledMarkets;
+        failedDays += other.failedDays;
+        profitOrLoss += other.profitOrLoss;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "BacktestResult{" +
+                "days=" + getDays() +
+                ", markets=" + markets +
+                ", snapshots=" + snapshots +
+                ", betsPlaced=" + betsPlaced +
+                ", betsRejected=" + betsRejected +
+                ", strategyFailures=" + strategyFailures +
+                ", settledMarkets=" + settledMarkets +
+                ", unsettledMarkets=" + unsettledMarkets +
+                ", failedDays=" + failedDays +
+                ", profitOrLoss=" + profitOrLoss +
+                '}';
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    void recordDay(String day, double dayProfitOrLoss) {
+        profitOrLossByDay.put(day, dayProfitOrLoss);
+        profitOrLoss += dayProfitOrLoss;
+    }
+
+    void recordMarket(long marketSnapshots, boolean settled) {
+        markets++;
+        snapshots += marketSnapshots;
+        if (settled) {
+            settledMarkets++;
+        } else {
+            unsettledMarkets++;
+        }
+    }
+
+    void recordBets(long placed, long rejected) {
+        betsPlaced += placed;
+        betsRejected += rejected;
+    }
+
+    void recordStrategyFailure() {
+        strategyFailures++;
+    }
+
+    void recordFailedDay() {
+        failedDays++;
+    }
+
+}
@@ -0,0 +1,249 @@
+package com.scidef.betfair.api.backtest;
+
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.paper.PaperExchange;
+import com.scidef.betfair.api.prices.MarketBook;
+import com.scidef.betfair.api.strategy.BookSnapshot;
+import com.scidef.betfair.api.strategy.Strategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketPrices;
+
+/**
+ * Replays recorded days of market data (see <code>RecordedDay</code>) through strategies,
+ * to see how they would have done.
+ * <p/>
+ * Each poll of a market is parsed by <code>MessageUtil</code>, as it is when polled live,
+ * and used to update the market's <code>MarketBook</code>. A <code>BookSnapshot</code> is then
+ * given to every strategy, and the bets they ask for are placed on a <code>PaperExchange</code>,
+ * which matches them against the prices of that poll and those that follow. Once the day's
+ * prices have been replayed, each market is settled from the day's results feed, with the
+ * winners' names turned into selection ids by the day's runner names. The paper exchange
+ * is given the recorded time of each poll, so its bets are timed as they would have been.
+ * <p/>
+ * The days are split between the threads of a fork/join pool. Each day is replayed by a
+ * single thread, with its own strategies (from the <code>StrategyFactory</code>) and its own
+ * paper exchange starting from the starting balance, so days are independent of each other
+ * and the order they finish in does not matter. A day's prices are streamed from disk rather
+ * than loaded, so memory use does not depend on the size of the recording.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class Backtester {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Backtester.class);
+
+    /**
+     * Creates the strategies to replay a day through.
+     */
+    public interface StrategyFactory {
+
+        /**
+         * @return new instances of the strategies, which are only used by one thread
+         */
+        List<Strategy> create();
+
+    }
+
+    private final StrategyFactory strategyFactory;
+    private final double startingBalance;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a backtester with a fork/join pool of one thread per processor.
+     *
+     * @param strategyFactory creates the strategies to replay each day through
+     * @param startingBalance the virtual balance each day starts with
+     */
+    public Backtester(StrategyFactory strategyFactory, double startingBalance) {
+        this(strategyFactory, startingBalance, new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param strategyFactory creates the strategies to replay each day through
+     * @param startingBalance the virtual balance each day starts with
+     * @param pool            the pool the days are replayed on
+     */
+    public Backtester(StrategyFactory strategyFactory, double startingBalance, ForkJoinPool pool) {
+        this.strategyFactory = strategyFactory;
+        this.startingBalance = startingBalance;
+        this.pool = pool;
+    }
+
+    /**
+     * Replay every day recorded under a directory.
+     *
+     * @param root a directory holding a directory for each recorded day
+     * @return the combined results of the days
+     */
+    public BacktestResult run(File root) {
+        return run(RecordedDay.list(root));
+    }
+
+    /**
+     * Replay recorded days.
+     *
+     * @param days the days to replay
+     * @return the combined results of the days
+     */
+    public BacktestResult run(List<RecordedDay> days) {
+        if (days.isEmpty()) {
+            return new BacktestResult();
+        }
+        long start = System.currentTimeMillis();
+        BacktestResult result = pool.invoke(new DaysTask(days, 0, days.size()));
+        LOG.info("Backtested " + days.size() + " days in " + (System.currentTimeMillis() - start) + "ms: " + result);
+        return result;
+    }
+
+    /**
+     * Shut down the fork/join pool.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private BacktestResult replay(RecordedDay day) {
+        BacktestResult result = new BacktestResult();
+        List<Strategy> strategies = strategyFactory.create();
+        PaperExchange paperExchange = new PaperExchange(startingBalance);
+        Map<Integer, MarketBook> books = new LinkedHashMap<Integer, MarketBook>();
+        Map<Integer, Long> snapshots = new LinkedHashMap<Integer, Long>();
+        long lastTimestamp = 0;
+        try {
+            PriceStreamReader reader = day.openPrices();
+            try {
+                while (reader.next()) {
+                    int marketId = reader.getMarketId();
+                    lastTimestamp = reader.getTimestamp();
+                    List<RunnerPricesWrapper> runners;
+                    try {
+                        runners = parseCompressedMarketPrices(reader.getCompressed());
+                    } catch (RuntimeException e) {
+                        LOG.warn("Skipping unparseable prices for marketId " + marketId + " on " + day.getName(), e);
+                        continue;
+                    }
+                    MarketBook book = books.get(marketId);
+                    if (book == null) {
+                        book = new MarketBook(marketId);
+                        books.put(marketId, book);
+                        snapshots.put(marketId, 0L);
+                    }
+                    snapshots.put(marketId, snapshots.get(marketId) + 1);
+
+                    // waiting bets are matched before the strategies see the prices, as in the StrategyRuntime
+                    paperExchange.onPrices(marketId, runners, reader.getTimestamp());
+                    book.update(runners);
+                    BookSnapshot snapshot = new BookSnapshot(marketId, reader.getTimestamp(), runners,
+                            new MarketBook(book));
+                    evaluate(strategies, snapshot, paperExchange, result);
+                }
+            } finally {
+                reader.close();
+            }
+
+            double profitOrLoss = 0.0;
+            Map<Integer, Map<String, Integer>> runnerNames = day.readRunnerNames();
+            Map<Integer, List<String>> winners = day.readWinners();
+            for (Map.Entry<Integer, Long> entry : snapshots.entrySet()) {
+                int marketId = entry.getKey();
+                List<String> marketWinners = winners.get(marketId);
+                List<Integer> selectionIds = marketWinners != null ?
+                        getSelectionIds(marketId, marketWinners, runnerNames.get(marketId)) : null;
+                if (selectionIds == null) {
+                    LOG.warn("No result for marketId " + marketId + " on " + day.getName() + "; its bets are left out");
+                    result.recordMarket(entry.getValue(), false);
+                    continue;
+                }
+                profitOrLoss += paperExchange.settle(marketId, selectionIds, lastTimestamp);
+                result.recordMarket(entry.getValue(), true);
+            }
+            result.recordBets(paperExchange.getBetsPlaced(), paperExchange.getBetsRejected());
+            result.recordDay(day.getName(), profitOrLoss);
+        } catch (IOException e) {
+            LOG.error("Failed to replay " + day, e);
+            result.recordFailedDay();
+        } catch (BetfairException e) {
+            LOG.error("Failed to read the results of " + day, e);
+            result.recordFailedDay();
+        }
+        return result;
+    }
+
+    private static void evaluate(List<Strategy> strategies, BookSnapshot snapshot, PaperExchange paperExchange,
+                                 BacktestResult result) {
+        for (Strategy strategy : strategies) {
+            List<Bet> bets;
+            try {
+                bets = strategy.evaluate(snapshot);
+            } catch (Exception e) {
+                result.recordStrategyFailure();
+                LOG.debug("Strategy " + strategy.getName() + " failed evaluating marketId " + snapshot.getMarketId(), e);
+                continue;
+            }
+            if (bets != null && !bets.isEmpty()) {
+                paperExchange.placeBets(bets, snapshot.getTimestamp());
+            }
+        }
+    }
+
+    // the selection ids of the winners, or null if any of them cannot be found
+    private static List<Integer> getSelectionIds(int marketId, List<String> winners, Map<String, Integer> runnerNames) {
+        List<Integer> selectionIds = new ArrayList<Integer>(winners.size());
+        for (String winner : winners) {
+            Integer selectionId = runnerNames != null ? runnerNames.get(winner) : null;
+            if (selectionId == null) {
+                LOG.warn("Unknown winner [" + winner + "] of marketId " + marketId);
+                return null;
+            }
+            selectionIds.add(selectionId);
+        }
+        return selectionIds;
+    }
+
+    // replays a range of days, splitting it in two until there is a single day
+    private class DaysTask extends RecursiveTask<BacktestResult> {
+
+        private final List<RecordedDay> days;
+        private final int from;
+        private final int to;
+
+        private DaysTask(List<RecordedDay> days, int from, int to) {
+            this.days = days;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BacktestResult compute() {
+            if (to - from == 1) {
+                return replay(days.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            DaysTask left = new DaysTask(days, from, middle);
+            left.fork();
+            BacktestResult right = new DaysTask(days, middle, to).compute();
+            return left.join().add(right);
+        }
+
+    }
+
+}
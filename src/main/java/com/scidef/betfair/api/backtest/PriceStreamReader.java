@@ -0,0 +1,127 @@
+package com.scidef.betfair.api.backtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads back the compressed prices written by a <code>PriceStreamWriter</code>, one poll
+ * at a time, so that a day of prices never has to be held in memory at once:
+ * <pre>
+ * PriceStreamReader reader = day.openPrices();
+ * try {
+ *     while (reader.next()) {
+ *         ... reader.getMarketId(), reader.getTimestamp(), reader.getCompressed() ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ * Lines that cannot be read are skipped and counted.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PriceStreamReader implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriceStreamReader.class);
+
+    private final BufferedReader reader;
+    private final String name;
+
+    private long timestamp;
+    private int marketId;
+    private String compressed;
+    private long skippedLines;
+
+    /**
+     * Primary constructor
+     *
+     * @param file the prices file, which is read as gzip if its name ends in <code>.gz</code>
+     * @throws IOException if the file cannot be opened
+     */
+    public PriceStreamReader(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            if (file.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        this.reader = new BufferedReader(new InputStreamReader(in, PriceStreamWriter.UTF_8), 64 * 1024);
+        this.name = file.getPath();
+    }
+
+    /**
+     * Move to the next poll.
+     *
+     * @return false if there are no more polls
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            int tilde = line.indexOf('~', tab + 1);
+            if (tab > 0 && tilde > tab + 1) {
+                try {
+                    timestamp = Long.parseLong(line.substring(0, tab));
+                    marketId = Integer.parseInt(line.substring(tab + 1, tilde));
+                    compressed = line.substring(tab + 1);
+                    return true;
+                } catch (NumberFormatException e) {
+                    // fall through to skip the line
+                }
+            }
+            if (skippedLines++ == 0) {
+                LOG.warn("Skipping unreadable line in " + name + ": " + line);
+            }
+        }
+        compressed = null;
+        return false;
+    }
+
+    /**
+     * @return the time of the poll in ms since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the id of the market polled
+     */
+    public int getMarketId() {
+        return marketId;
+    }
+
+    /**
+     * @return the compressed market prices returned by the poll
+     */
+    public String getCompressed() {
+        return compressed;
+    }
+
+    /**
+     * @return the number of lines that could not be read
+     */
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.scidef.betfair.api.backtest;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a day of market data in the form read by <code>RecordedDay</code>: the compressed
+ * prices of each poll, in the order they were polled, and the names of the runners of each
+ * market. The results of the day are saved separately, as a copy of the results feed.
+ * <pre>
+ * PriceStreamWriter writer = new PriceStreamWriter(new File(root, "2026-10-19"));
+ * writer.writeRunnerName(marketId, selectionId, runnerName);
+ * writer.writePrices(System.currentTimeMillis(), compressed);
+ * ...
+ * writer.close();
+ * </pre>
+ * Writes are synchronized, so one writer may be shared by the threads polling the markets.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PriceStreamWriter implements Closeable {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Writer prices;
+    private final Writer runners;
+
+    /**
+     * Primary constructor
+     *
+     * @param dayDir the directory for the day, which is created if need be
+     * @throws IOException if the files cannot be created
+     */
+    public PriceStreamWriter(File dayDir) throws IOException {
+        if (!dayDir.isDirectory() && !dayDir.mkdirs()) {
+            throw new IOException("Failed to create directory " + dayDir);
+        }
+        prices = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(new File(dayDir, RecordedDay.PRICES_FILE))), UTF_8));
+        runners = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(dayDir, RecordedDay.RUNNERS_FILE)), UTF_8));
+    }
+
+    /**
+     * @param timestamp  the time of the poll in ms since the epoch
+     * @param compressed the compressed market prices returned by the poll
+     * @throws IOException if the prices cannot be written
+     */
+    public synchronized void writePrices(long timestamp, String compressed) throws IOException {
+        prices.write(Long.toString(timestamp));
+        prices.write('\t');
+        prices.write(compressed);
+        prices.write('\n');
+    }
+
+    /**
+     * @param marketId    the id of the market
+     * @param selectionId the selection id of the runner
+     * @param runnerName  the name of the runner, as given in the results feed
+     * @throws IOException if the name cannot be written
+     */
+    public synchronized void writeRunnerName(int marketId, int selectionId, String runnerName) throws IOException {
+        runners.write(marketId + "\t" + selectionId + "\t" + runnerName.trim() + "\n");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            prices.close();
+        } finally {
+            runners.close();
+        }
+    }
+
+}
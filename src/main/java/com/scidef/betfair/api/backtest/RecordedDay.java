@@ -0,0 +1,151 @@
+package com.scidef.betfair.api.backtest;
+
+import com.scidef.betfair.api.ResultsAPI;
+import com.scidef.betfair.api.exception.BetfairException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A day of recorded market data, held in a directory of its own (named after the day, eg
+ * <code>2026-10-19</code>) containing:
+ * <ul>
+ * <li><code>prices.txt.gz</code> - the compressed prices of each poll, one per line as the
+ * time of the poll (in ms since the epoch), a tab and the compressed prices</li>
+ * <li><code>runners.txt</code> - the runners of each market, one per line as the market
+ * id, selection id and runner name separated by tabs</li>
+ * <li><code>results.xml</code> - a copy of the results feed for the day, as read by
+ * <code>ResultsAPI</code></li>
+ * </ul>
+ * The first two are written by a <code>PriceStreamWriter</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class RecordedDay {
+
+    public static final String PRICES_FILE = "prices.txt.gz";
+    public static final String RUNNERS_FILE = "runners.txt";
+    public static final String RESULTS_FILE = "results.xml";
+
+    private final File dir;
+
+    /**
+     * Primary constructor
+     *
+     * @param dir the directory holding the day's data
+     */
+    public RecordedDay(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @param root a directory holding a directory for each recorded day
+     * @return the recorded days, in order of name
+     */
+    public static List<RecordedDay> list(File root) {
+        File[] dirs = root.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return new File(file, PRICES_FILE).isFile();
+            }
+        });
+        if (dirs == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(dirs);
+        List<RecordedDay> days = new ArrayList<RecordedDay>(dirs.length);
+        for (File dir : dirs) {
+            days.add(new RecordedDay(dir));
+        }
+        return days;
+    }
+
+    public String getName() {
+        return dir.getName();
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * @return a reader for the day's prices, which the caller must close
+     * @throws IOException if the prices cannot be opened
+     */
+    public PriceStreamReader openPrices() throws IOException {
+        return new PriceStreamReader(new File(dir, PRICES_FILE));
+    }
+
+    /**
+     * @return the selection id of each runner keyed by runner name, for each market keyed by
+     *         market id; empty if the day has no runner names
+     * @throws IOException if the runner names cannot be read
+     */
+    public Map<Integer, Map<String, Integer>> readRunnerNames() throws IOException {
+        Map<Integer, Map<String, Integer>> runnersByMarket = new HashMap<Integer, Map<String, Integer>>();
+        File file = new File(dir, RUNNERS_FILE);
+        if (!file.isFile()) {
+            return runnersByMarket;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+                PriceStreamWriter.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length < 3) {
+                    continue;
+                }
+                Integer marketId = Integer.valueOf(fields[0]);
+                Map<String, Integer> runners = runnersByMarket.get(marketId);
+                if (runners == null) {
+                    runners = new HashMap<String, Integer>();
+                    runnersByMarket.put(marketId, runners);
+                }
+                runners.put(fields[2].trim(), Integer.valueOf(fields[1]));
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid runner names in " + file, e);
+        } finally {
+            reader.close();
+        }
+        return runnersByMarket;
+    }
+
+    /**
+     * @return the winners of each market in the day's results feed, in the order they placed,
+     *         keyed by market id; empty if the day has no results
+     * @throws IOException      if the results cannot be read
+     * @throws BetfairException if the results cannot be parsed
+     */
+    public Map<Integer, List<String>> readWinners() throws IOException, BetfairException {
+        File file = new File(dir, RESULTS_FILE);
+        if (!file.isFile()) {
+            return Collections.emptyMap();
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            return ResultsAPI.getAllWinners(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordedDay{" + dir + '}';
+    }
+
+}
@@ -0,0 +1,502 @@
+package com.scidef.betfair.api.catalog;
+
+import com.betfair.publicapi.types.exchange.v5.MarketStatusEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact catalog of markets, parsed from the compressed market data returned by
+ * <code>ExchangeAPI.getAllMarkets</code>.
+ * <p/>
+ * Each market in the data is a record starting with a colon, with its fields separated
+ * by tildes (either may be escaped with a backslash):
+ * market id, name, type, status, event date, menu path, event hierarchy, bet delay,
+ * exchange id, country code, last refresh, number of runners, number of winners, total
+ * amount matched, BSP market and turning in-play.
+ * <p/>
+ * The parser scans the characters of the data directly, so numbers, flags and statuses
+ * are read without creating any objects, and strings (names, menu paths and country
+ * codes, which repeat heavily) are interned as they are read. Each field is held in a
+ * column indexed by row, and markets can be looked up by id or by any event in their
+ * hierarchy, eg a meeting or the GB horse racing event.
+ * <p/>
+ * Instances are immutable once parsed (the columns are filled in while parsing and handed
+ * to the catalog's final fields), and so can be shared between threads.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class MarketCatalog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MarketCatalog.class);
+
+    private static final int FIELD_COUNT = 16;
+    private static final MarketStatusEnum[] STATUSES = MarketStatusEnum.values();
+    private static final int[] NO_ROWS = new int[0];
+
+    private final int size;
+    private final int[] marketIds;
+    private final String[] names;
+    private final char[] types;
+    private final byte[] statuses;
+    private final long[] startTimes;
+    private final String[] menuPaths;
+    private final int[] hierarchyOffsets;
+    private final int[] hierarchyLengths;
+    private final int[] hierarchies;
+    private final String[] countries;
+    private final int[] numberOfRunners;
+    private final int[] numberOfWinners;
+    private final double[] totalMatched;
+    private final boolean[] bspMarkets;
+    private final boolean[] turningInPlay;
+
+    private final int[] idTable; // open addressing table of row + 1, keyed by market id
+    private final Map<Integer, int[]> rowsByEvent;
+    private final int internedStrings;
+
+    private MarketCatalog(Columns columns, int internedStrings) {
+        this.size = columns.size;
+        this.marketIds = columns.marketIds;
+        this.names = columns.names;
+        this.types = columns.types;
+        this.statuses = columns.statuses;
+        this.startTimes = columns.startTimes;
+        this.menuPaths = columns.menuPaths;
+        this.hierarchyOffsets = columns.hierarchyOffsets;
+        this.hierarchyLengths = columns.hierarchyLengths;
+        this.hierarchies = columns.hierarchies;
+        this.countries = columns.countries;
+        this.numberOfRunners = columns.numberOfRunners;
+        this.numberOfWinners = columns.numberOfWinners;
+        this.totalMatched = columns.totalMatched;
+        this.bspMarkets = columns.bspMarkets;
+        this.turningInPlay = columns.turningInPlay;
+        this.idTable = buildIdTable(marketIds, size);
+        this.rowsByEvent = buildRowsByEvent(hierarchies, hierarchyOffsets, hierarchyLengths, size);
+        this.internedStrings = internedStrings;
+    }
+
+    /**
+     * Parse the compressed market data returned by <code>getAllMarkets</code>.
+     *
+     * @param marketData the compressed market data; may be null or empty
+     * @return the catalog of markets
+     */
+    public static MarketCatalog parse(String marketData) {
+        if (marketData == null || marketData.isEmpty()) {
+            return new MarketCatalog(new Columns(0), 0);
+        }
+
+        // estimate the number of markets from the average record length
+        Columns columns = new Columns(Math.max(16, marketData.length() / 128));
+        char[] cs = marketData.toCharArray();
+        StringPool pool = new StringPool();
+        int[] fieldStarts = new int[FIELD_COUNT + 1];
+        boolean[] escaped = new boolean[FIELD_COUNT];
+
+        int pos = 0;
+        while (pos < cs.length) {
+            if (cs[pos] == ':') {
+                pos++;
+                continue;
+            }
+            // find the fields of the record
+            int fields = 0;
+            fieldStarts[0] = pos;
+            boolean fieldEscaped = false;
+            while (pos < cs.length) {
+                char c = cs[pos];
+                if (c == '\\' && pos + 1 < cs.length && (cs[pos + 1] == ':' || cs[pos + 1] == '~')) {
+                    fieldEscaped = true;
+                    pos += 2;
+                    continue;
+                }
+                if (c == '~' || c == ':') {
+                    if (fields < FIELD_COUNT) {
+                        escaped[fields] = fieldEscaped;
+                        fieldStarts[++fields] = pos + 1;
+                    }
+                    fieldEscaped = false;
+                    if (c == ':') {
+                        break;
+                    }
+                }
+                pos++;
+            }
+            if (pos >= cs.length && fields < FIELD_COUNT) {
+                escaped[fields] = fieldEscaped;
+                fieldStarts[++fields] = cs.length + 1;
+            }
+            if (fields < FIELD_COUNT) {
+                LOG.debug("Skipping market record with " + fields + " fields at position " + fieldStarts[0]);
+                continue;
+            }
+            columns.addRecord(cs, fieldStarts, escaped, pool);
+        }
+
+        return new MarketCatalog(columns, pool.size());
+    }
+
+    /**
+     * @return the number of markets in the catalog
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param marketId the id of a market
+     * @return the row of the market, or -1 if it is not in the catalog
+     */
+    public int getRow(int marketId) {
+        int mask = idTable.length - 1;
+        for (int slot = hash(marketId) & mask; idTable[slot] != 0; slot = (slot + 1) & mask) {
+            int row = idTable[slot] - 1;
+            if (marketIds[row] == marketId) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param eventId the id of an event, at any level of the event hierarchy
+     * @return the rows of the markets under the event, in catalog order
+     */
+    public int[] getRowsForEvent(int eventId) {
+        int[] rows = rowsByEvent.get(eventId);
+        return rows != null ? rows.clone() : NO_ROWS;
+    }
+
+    public int getMarketId(int row) {
+        return marketIds[row];
+    }
+
+    public String getMarketName(int row) {
+        return names[row];
+    }
+
+    /**
+     * @param row the row of the market
+     * @return the market type: O (odds), L (line), R (range) or A (asian handicap)
+     */
+    public char getMarketType(int row) {
+        return types[row];
+    }
+
+    /**
+     * @param row the row of the market
+     * @return the market status, or null if it was not recognised
+     */
+    public MarketStatusEnum getStatus(int row) {
+        return statuses[row] >= 0 ? STATUSES[statuses[row]] : null;
+    }
+
+    /**
+     * @param row the row of the market
+     * @return the start time of the event, in ms since the epoch
+     */
+    public long getStartTime(int row) {
+        return startTimes[row];
+    }
+
+    /**
+     * @param row the row of the market
+     * @return the menu path, eg "\Horse Racing\GB\Kemp 19th Oct"
+     */
+    public String getMenuPath(int row) {
+        return menuPaths[row];
+    }
+
+    /**
+     * @param row the row of the market
+     * @return the ids of the events above the market, from the event type down, followed by the market id
+     */
+    public int[] getEventHierarchy(int row) {
+        return Arrays.copyOfRange(hierarchies, hierarchyOffsets[row], hierarchyOffsets[row] + hierarchyLengths[row]);
+    }
+
+    /**
+     * @param row the row of the market
+     * @return the id of the event the market belongs to (eg the meeting), or -1 if not known
+     */
+    public int getEventId(int row) {
+        return hierarchyLengths[row] >= 2 ? hierarchies[hierarchyOffsets[row] + hierarchyLengths[row] - 2] : -1;
+    }
+
+    /**
+     * @param row the row of the market
+     * @return the id of the event type (sport), or -1 if not known
+     */
+    public int getEventTypeId(int row) {
+        return hierarchyLengths[row] >= 1 ? hierarchies[hierarchyOffsets[row]] : -1;
+    }
+
+    public String getCountry(int row) {
+        return countries[row];
+    }
+
+    public int getNumberOfRunners(int row) {
+        return numberOfRunners[row];
+    }
+
+    public int getNumberOfWinners(int row) {
+        return numberOfWinners[row];
+    }
+
+    public double getTotalMatched(int row) {
+        return totalMatched[row];
+    }
+
+    public boolean isBspMarket(int row) {
+        return bspMarkets[row];
+    }
+
+    public boolean isTurningInPlay(int row) {
+        return turningInPlay[row];
+    }
+
+    /**
+     * @return the number of distinct strings held by the catalog
+     */
+    public int getInternedStringCount() {
+        return internedStrings;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static int[] buildIdTable(int[] marketIds, int size) {
+        int tableSize = Integer.highestOneBit(Math.max(size, 8) * 2) * 2;
+        int[] idTable = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int row = 0; row < size; row++) {
+            int slot = hash(marketIds[row]) & mask;
+            while (idTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            idTable[slot] = row + 1;
+        }
+        return idTable;
+    }
+
+    private static Map<Integer, int[]> buildRowsByEvent(int[] hierarchies, int[] hierarchyOffsets,
+                                                        int[] hierarchyLengths, int size) {
+        // count the markets under each event, then fill in their rows
+        Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+        for (int row = 0; row < size; row++) {
+            for (int i = 0; i < hierarchyLengths[row] - 1; i++) {
+                int eventId = hierarchies[hierarchyOffsets[row] + i];
+                int[] count = counts.get(eventId);
+                if (count == null) {
+                    counts.put(eventId, new int[]{1});
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+        Map<Integer, int[]> rowsByEvent = new HashMap<Integer, int[]>(counts.size() * 2);
+        for (Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+            rowsByEvent.put(entry.getKey(), new int[entry.getValue()[0]]);
+            entry.getValue()[0] = 0;
+        }
+        for (int row = 0; row < size; row++) {
+            for (int i = 0; i < hierarchyLengths[row] - 1; i++) {
+                int eventId = hierarchies[hierarchyOffsets[row] + i];
+                rowsByEvent.get(eventId)[counts.get(eventId)[0]++] = row;
+            }
+        }
+        return rowsByEvent;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static String string(char[] cs, int from, int to, boolean escaped, StringPool pool) {
+        if (to <= from) {
+            return null;
+        }
+        if (!escaped) {
+            return pool.intern(cs, from, to);
+        }
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = from; i < to; i++) {
+            if (cs[i] == '\\' && i + 1 < to && (cs[i + 1] == ':' || cs[i + 1] == '~')) {
+                i++;
+            }
+            sb.append(cs[i]);
+        }
+        return pool.intern(sb.toString());
+    }
+
+    private static byte parseStatus(char[] cs, int from, int to) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            String name = STATUSES[i].name();
+            if (name.length() == to - from && regionEquals(name, cs, from)) {
+                return (byte) i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionEquals(String s, char[] cs, int from) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != cs[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseLong(char[] cs, int from, int to) {
+        long value = 0;
+        boolean negative = from < to && cs[from] == '-';
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            char c = cs[i];
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseDouble(char[] cs, int from, int to) {
+        long whole = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean inFraction = false;
+        boolean negative = from < to && cs[from] == '-';
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            char c = cs[i];
+            if (c == '.' && !inFraction) {
+                inFraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (inFraction) {
+                    if (scale < 1000000000000L) {
+                        fraction = fraction * 10 + (c - '0');
+                        scale *= 10;
+                    }
+                } else {
+                    whole = whole * 10 + (c - '0');
+                }
+            } else {
+                // exponents and the like are rare enough to leave to the JDK
+                return Double.parseDouble(new String(cs, from, to - from));
+            }
+        }
+        double value = whole + (double) fraction / scale;
+        return negative ? -value : value;
+    }
+
+    // the columns of a catalog while it is being parsed, which grow as records are added
+    private static class Columns {
+
+        private int size;
+        private int[] marketIds;
+        private String[] names;
+        private char[] types;
+        private byte[] statuses;
+        private long[] startTimes;
+        private String[] menuPaths;
+        private int[] hierarchyOffsets;
+        private int[] hierarchyLengths;
+        private int[] hierarchies;
+        private int hierarchySize;
+        private String[] countries;
+        private int[] numberOfRunners;
+        private int[] numberOfWinners;
+        private double[] totalMatched;
+        private boolean[] bspMarkets;
+        private boolean[] turningInPlay;
+
+        private Columns(int capacity) {
+            marketIds = new int[capacity];
+            names = new String[capacity];
+            types = new char[capacity];
+            statuses = new byte[capacity];
+            startTimes = new long[capacity];
+            menuPaths = new String[capacity];
+            hierarchyOffsets = new int[capacity];
+            hierarchyLengths = new int[capacity];
+            hierarchies = new int[capacity * 4];
+            countries = new String[capacity];
+            numberOfRunners = new int[capacity];
+            numberOfWinners = new int[capacity];
+            totalMatched = new double[capacity];
+            bspMarkets = new boolean[capacity];
+            turningInPlay = new boolean[capacity];
+        }
+
+        private void addRecord(char[] cs, int[] fieldStarts, boolean[] escaped, StringPool pool) {
+            if (size == marketIds.length) {
+                grow();
+            }
+            int row = size;
+            marketIds[row] = (int) parseLong(cs, fieldStarts[0], fieldStarts[1] - 1);
+            names[row] = string(cs, fieldStarts[1], fieldStarts[2] - 1, escaped[1], pool);
+            types[row] = fieldStarts[3] - 1 > fieldStarts[2] ? cs[fieldStarts[2]] : ' ';
+            statuses[row] = parseStatus(cs, fieldStarts[3], fieldStarts[4] - 1);
+            startTimes[row] = parseLong(cs, fieldStarts[4], fieldStarts[5] - 1);
+            menuPaths[row] = string(cs, fieldStarts[5], fieldStarts[6] - 1, escaped[5], pool);
+            parseHierarchy(row, cs, fieldStarts[6], fieldStarts[7] - 1);
+            countries[row] = string(cs, fieldStarts[9], fieldStarts[10] - 1, escaped[9], pool);
+            numberOfRunners[row] = (int) parseLong(cs, fieldStarts[11], fieldStarts[12] - 1);
+            numberOfWinners[row] = (int) parseLong(cs, fieldStarts[12], fieldStarts[13] - 1);
+            totalMatched[row] = parseDouble(cs, fieldStarts[13], fieldStarts[14] - 1);
+            bspMarkets[row] = fieldStarts[15] - 1 > fieldStarts[14] && cs[fieldStarts[14]] == 'Y';
+            turningInPlay[row] = fieldStarts[16] - 1 > fieldStarts[15] && cs[fieldStarts[15]] == 'Y';
+            size++;
+        }
+
+        private void parseHierarchy(int row, char[] cs, int from, int to) {
+            hierarchyOffsets[row] = hierarchySize;
+            int count = 0;
+            int pos = from;
+            while (pos < to) {
+                if (cs[pos] == '/') {
+                    pos++;
+                    continue;
+                }
+                int end = pos;
+                while (end < to && cs[end] != '/') {
+                    end++;
+                }
+                if (hierarchySize == hierarchies.length) {
+                    hierarchies = Arrays.copyOf(hierarchies, hierarchies.length * 2);
+                }
+                hierarchies[hierarchySize++] = (int) parseLong(cs, pos, end);
+                count++;
+                pos = end;
+            }
+            hierarchyLengths[row] = count;
+        }
+
+        private void grow() {
+            int capacity = marketIds.length * 2;
+            marketIds = Arrays.copyOf(marketIds, capacity);
+            names = Arrays.copyOf(names, capacity);
+            types = Arrays.copyOf(types, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            startTimes = Arrays.copyOf(startTimes, capacity);
+            menuPaths = Arrays.copyOf(menuPaths, capacity);
+            hierarchyOffsets = Arrays.copyOf(hierarchyOffsets, capacity);
+            hierarchyLengths = Arrays.copyOf(hierarchyLengths, capacity);
+            countries = Arrays.copyOf(countries, capacity);
+            numberOfRunners = Arrays.copyOf(numberOfRunners, capacity);
+            numberOfWinners = Arrays.copyOf(numberOfWinners, capacity);
+            totalMatched = Arrays.copyOf(totalMatched, capacity);
+            bspMarkets = Arrays.copyOf(bspMarkets, capacity);
+            turningInPlay = Arrays.copyOf(turningInPlay, capacity);
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.scidef.betfair.api.catalog;
+
+/**
+ * Interns strings straight from a range of characters, so that a value that has been
+ * seen before costs no allocation at all.
+ * <p/>
+ * This class is not thread-safe.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+class StringPool {
+
+    private String[] table = new String[256];
+    private int size;
+
+    /**
+     * @param cs   the characters
+     * @param from the start of the range, inclusive
+     * @param to   the end of the range, exclusive
+     * @return the pooled string equal to the range of characters
+     */
+    String intern(char[] cs, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + cs[i];
+        }
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            String pooled = table[slot];
+            if (pooled == null) {
+                return add(slot, new String(cs, from, to - from));
+            }
+            if (pooled.hashCode() == hash && matches(pooled, cs, from, to)) {
+                return pooled;
+            }
+        }
+    }
+
+    /**
+     * @param s the string
+     * @return the pooled string equal to <code>s</code>
+     */
+    String intern(String s) {
+        int hash = s.hashCode();
+        int mask = table.length - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            String pooled = table[slot];
+            if (pooled == null) {
+                return add(slot, s);
+            }
+            if (pooled.equals(s)) {
+                return pooled;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private String add(int slot, String s) {
+        table[slot] = s;
+        if (++size * 2 > table.length) {
+            resize();
+        }
+        return s;
+    }
+
+    private void resize() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String s : old) {
+            if (s != null) {
+                int slot = spread(s.hashCode()) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = s;
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String s, char[] cs, int from, int to) {
+        if (s.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != cs[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
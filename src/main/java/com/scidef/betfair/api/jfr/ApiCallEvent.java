@@ -0,0 +1,40 @@
+package com.scidef.betfair.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A single attempt at a Betfair API operation, as made by the <code>RetryMethodAspect</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+@Name(JfrEvents.API_CALL)
+@Label("API Call")
+@Category({"Betfair", "API"})
+@Description("An attempt at a Betfair API operation")
+final class ApiCallEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    @Description("The simple class name and method name, eg ExchangeAPI.getMarketPricesCompressed")
+    String operation;
+
+    @Label("Market Id")
+    @Description("The market the call was for, or 0")
+    int marketId;
+
+    @Label("Bytes")
+    @Description("The size of the compressed prices returned, for the operations that return them")
+    @DataAmount
+    long bytes;
+
+    @Label("Outcome")
+    String outcome;
+
+    @Label("Attempt")
+    int attempt;
+
+}
@@ -0,0 +1,95 @@
+package com.scidef.betfair.api.jfr;
+
+/**
+ * Creates and commits the events for <code>JfrEvents</code>. Only loaded once JFR is known
+ * to be available, as loading it loads the event classes.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+final class Emitter {
+
+    private Emitter() {
+    }
+
+    static Object beginApiCall() {
+        ApiCallEvent event = new ApiCallEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitApiCall(Object begun, String operation, int marketId, long bytes, String outcome, int attempt) {
+        ApiCallEvent event = (ApiCallEvent) begun;
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.marketId = marketId;
+            event.bytes = bytes;
+            event.outcome = outcome;
+            event.attempt = attempt;
+            event.commit();
+        }
+    }
+
+    static Object beginRetry() {
+        RetryEvent event = new RetryEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitRetry(Object begun, String operation, int attempt, String cause) {
+        RetryEvent event = (RetryEvent) begun;
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.attempt = attempt;
+            event.cause = cause;
+            event.commit();
+        }
+    }
+
+    static Object beginThrottleWait() {
+        ThrottleWaitEvent event = new ThrottleWaitEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitThrottleWait(Object begun, String operation, int attempt) {
+        ThrottleWaitEvent event = (ThrottleWaitEvent) begun;
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.attempt = attempt;
+            event.commit();
+        }
+    }
+
+    static Object beginPriceParse() {
+        PriceParseEvent event = new PriceParseEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitPriceParse(Object begun, int marketId, long bytes, int runners) {
+        PriceParseEvent event = (PriceParseEvent) begun;
+        if (event.shouldCommit()) {
+            event.marketId = marketId;
+            event.bytes = bytes;
+            event.runners = runners;
+            event.commit();
+        }
+    }
+
+    static Object beginEnrichmentStage() {
+        EnrichmentStageEvent event = new EnrichmentStageEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitEnrichmentStage(Object begun, String stage, boolean failed) {
+        EnrichmentStageEvent event = (EnrichmentStageEvent) begun;
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+
+}
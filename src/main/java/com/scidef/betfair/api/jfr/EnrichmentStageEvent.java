@@ -0,0 +1,26 @@
+package com.scidef.betfair.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A single lookup or calculation made by a stage of <code>BetEnrichment.enrichBets</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+@Name(JfrEvents.ENRICHMENT_STAGE)
+@Label("Enrichment Stage")
+@Category({"Betfair", "Enrichment"})
+@Description("A lookup or calculation made by a stage of the bet enrichment pipeline")
+final class EnrichmentStageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Failed")
+    boolean failed;
+
+}
@@ -0,0 +1,180 @@
+package com.scidef.betfair.api.jfr;
+
+/**
+ * Java Flight Recorder events for Betfair operations, so that the allocation and latency
+ * hot spots in a recording can be tied to specific operations and markets in JMC.
+ * <p/>
+ * Each event is timed between a <code>begin</code> and a <code>commit</code> call:
+ * <pre>
+ * Object event = JfrEvents.beginPriceParse();
+ * List&lt;RunnerPricesWrapper&gt; runners = parseCompressedMarketPrices(compressed);
+ * JfrEvents.commitPriceParse(event, marketId, compressed.length(), runners.size());
+ * </pre>
+ * The events are:
+ * <ul>
+ * <li><code>com.scidef.betfair.ApiCall</code> - each attempt at an API operation, with its
+ * market, the size of the compressed prices returned and its outcome</li>
+ * <li><code>com.scidef.betfair.Retry</code> - the wait before an operation is retried</li>
+ * <li><code>com.scidef.betfair.ThrottleWait</code> - the wait before a throttled operation is retried</li>
+ * <li><code>com.scidef.betfair.CompressedPriceParse</code> - the parsing of a market's
+ * compressed prices, with the number of runners</li>
+ * <li><code>com.scidef.betfair.EnrichmentStage</code> - each lookup or calculation made by a
+ * stage of the bet enrichment pipeline</li>
+ * </ul>
+ * They are enabled like any other JFR event, eg in a custom <code>.jfc</code> file. The events
+ * are compiled against the <code>jdk.jfr</code> module, which is why the build targets JDK 11;
+ * on a runtime image without that module the <code>begin</code> methods return null and
+ * nothing is recorded. While JFR is not recording an event costs a small allocation.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public final class JfrEvents {
+
+    public static final String API_CALL = "com.scidef.betfair.ApiCall";
+    public static final String RETRY = "com.scidef.betfair.Retry";
+    public static final String THROTTLE_WAIT = "com.scidef.betfair.ThrottleWait";
+    public static final String PRICE_PARSE = "com.scidef.betfair.CompressedPriceParse";
+    public static final String ENRICHMENT_STAGE = "com.scidef.betfair.EnrichmentStage";
+
+    // the outcomes of an API call
+    public static final String SUCCESS = "SUCCESS";
+    public static final String NO_SESSION = "NO_SESSION";
+    public static final String THROTTLED = "THROTTLED";
+    public static final String CIRCUIT_OPEN = "CIRCUIT_OPEN";
+    public static final String DEADLINE_EXCEEDED = "DEADLINE_EXCEEDED";
+    public static final String FAILED = "FAILED";
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private JfrEvents() {
+    }
+
+    /**
+     * @return true if the JVM supports JFR, so that events can be recorded
+     */
+    public static boolean isSupported() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Start timing an attempt at an API operation.
+     *
+     * @return the event, to be passed to <code>commitApiCall</code>
+     */
+    public static Object beginApiCall() {
+        return AVAILABLE ? Emitter.beginApiCall() : null;
+    }
+
+    /**
+     * @param event     the event returned by <code>beginApiCall</code>
+     * @param operation the operation, eg <code>ExchangeAPI.getMarketPricesCompressed</code>
+     * @param marketId  the market the call was for, or 0
+     * @param bytes     the size of the compressed prices returned, or 0
+     * @param outcome   the outcome, eg <code>SUCCESS</code>
+     * @param attempt   the attempt, starting at 1
+     */
+    public static void commitApiCall(Object event, String operation, int marketId, long bytes,
+                                     String outcome, int attempt) {
+        if (event != null) {
+            Emitter.commitApiCall(event, operation, marketId, bytes, outcome, attempt);
+        }
+    }
+
+    /**
+     * Start timing the wait before an operation is retried.
+     *
+     * @return the event, to be passed to <code>commitRetry</code>
+     */
+    public static Object beginRetry() {
+        return AVAILABLE ? Emitter.beginRetry() : null;
+    }
+
+    /**
+     * @param event     the event returned by <code>beginRetry</code>
+     * @param operation the operation
+     * @param attempt   the attempt that failed
+     * @param cause     the class of the exception the attempt failed with
+     */
+    public static void commitRetry(Object event, String operation, int attempt, String cause) {
+        if (event != null) {
+            Emitter.commitRetry(event, operation, attempt, cause);
+        }
+    }
+
+    /**
+     * Start timing the wait before a throttled operation is retried.
+     *
+     * @return the event, to be passed to <code>commitThrottleWait</code>
+     */
+    public static Object beginThrottleWait() {
+        return AVAILABLE ? Emitter.beginThrottleWait() : null;
+    }
+
+    /**
+     * @param event     the event returned by <code>beginThrottleWait</code>
+     * @param operation the operation
+     * @param attempt   the attempt that was throttled
+     */
+    public static void commitThrottleWait(Object event, String operation, int attempt) {
+        if (event != null) {
+            Emitter.commitThrottleWait(event, operation, attempt);
+        }
+    }
+
+    /**
+     * Start timing the parsing of a market's compressed prices.
+     *
+     * @return the event, to be passed to <code>commitPriceParse</code>
+     */
+    public static Object beginPriceParse() {
+        return AVAILABLE ? Emitter.beginPriceParse() : null;
+    }
+
+    /**
+     * @param event    the event returned by <code>beginPriceParse</code>
+     * @param marketId the market
+     * @param bytes    the size of the compressed prices
+     * @param runners  the number of runners parsed
+     */
+    public static void commitPriceParse(Object event, int marketId, long bytes, int runners) {
+        if (event != null) {
+            Emitter.commitPriceParse(event, marketId, bytes, runners);
+        }
+    }
+
+    /**
+     * Start timing a lookup or calculation made by a stage of the enrichment pipeline.
+     *
+     * @return the event, to be passed to <code>commitEnrichmentStage</code>
+     */
+    public static Object beginEnrichmentStage() {
+        return AVAILABLE ? Emitter.beginEnrichmentStage() : null;
+    }
+
+    /**
+     * @param event  the event returned by <code>beginEnrichmentStage</code>
+     * @param stage  the stage, eg <code>RUNNER_NAMES</code>
+     * @param failed true if the lookup failed
+     */
+    public static void commitEnrichmentStage(Object event, String stage, boolean failed) {
+        if (event != null) {
+            Emitter.commitEnrichmentStage(event, stage, failed);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.scidef.betfair.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The parsing of a market's compressed prices into <code>RunnerPricesWrapper</code>s.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+@Name(JfrEvents.PRICE_PARSE)
+@Label("Compressed Price Parse")
+@Category({"Betfair", "Prices"})
+@Description("The parsing of a market's compressed prices")
+final class PriceParseEvent extends jdk.jfr.Event {
+
+    @Label("Market Id")
+    int marketId;
+
+    @Label("Bytes")
+    @Description("The size of the compressed prices")
+    @DataAmount
+    long bytes;
+
+    @Label("Runners")
+    int runners;
+
+}
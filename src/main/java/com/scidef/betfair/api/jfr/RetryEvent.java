@@ -0,0 +1,32 @@
+package com.scidef.betfair.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The wait before a Betfair API operation is retried: the sleep after an error, or the
+ * login after an expired session.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+@Name(JfrEvents.RETRY)
+@Label("API Retry")
+@Category({"Betfair", "API"})
+@Description("The wait before a failed Betfair API operation is retried")
+final class RetryEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Attempt")
+    @Description("The attempt that failed")
+    int attempt;
+
+    @Label("Cause")
+    @Description("The class of the exception the attempt failed with")
+    String cause;
+
+}
@@ -0,0 +1,27 @@
+package com.scidef.betfair.api.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The wait before a Betfair API operation that exceeded its throttle is retried.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+@Name(JfrEvents.THROTTLE_WAIT)
+@Label("API Throttle Wait")
+@Category({"Betfair", "API"})
+@Description("The wait before a throttled Betfair API operation is retried")
+final class ThrottleWaitEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Attempt")
+    @Description("The attempt that was throttled")
+    int attempt;
+
+}
@@ -0,0 +1,706 @@
+package com.scidef.betfair.api.paper;
+
+import com.betfair.publicapi.types.exchange.v5.ArrayOfPlaceBetsResult;
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsErrorEnum;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResultEnum;
+import com.betfair.publicapi.types.exchange.v5.Price;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.account.OwnBet;
+import com.scidef.betfair.api.account.OwnBetState;
+import com.scidef.betfair.api.account.OwnOrderBook;
+import com.scidef.betfair.api.prices.PriceLadder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A paper-trading exchange, which matches bets placed in mock mode against the back and
+ * lay depth of the latest prices of each market, and keeps a virtual balance.
+ * <p/>
+ * Bets are placed with <code>placeBets</code>, which returns a <code>PlaceBetsResp</code>
+ * of the same shape as <code>ExchangeAPI.placeBets</code>, and are matched as follows:
+ * <ul>
+ * <li>on placement, a bet is matched against the offers on the other side of the book at
+ * its price or better, best first and at the price of each offer. The stake it takes is
+ * removed from the depth until the next prices arrive, so that it cannot be matched twice</li>
+ * <li>any stake left unmatched joins the back of the queue at its price, behind the stake
+ * displayed there</li>
+ * <li>on each new set of prices (<code>onPrices</code>), a waiting bet is matched at its
+ * price if an offer now crosses it, or in full if the market has traded through its price.
+ * Otherwise any fall in the stake displayed at its price is taken off the queue ahead of
+ * it first, and only the rest is matched</li>
+ * </ul>
+ * The liability of each bet (its stake for a back, its stake times the price less one for
+ * a lay) is held back from the available balance when it is placed, and released when the
+ * bet is cancelled or lapses, or its market settled; <code>settle</code> adds the profit or
+ * loss of the matched stakes to the balance. A market that has closed but whose result is
+ * not yet known can be <code>close</code>d first, which lapses its unmatched stakes and
+ * drops its prices; a closed market with no matched stakes is forgotten straight away.
+ * Listeners are told about every change to a bet, as with the <code>OwnOrderBook</code>.
+ * <p/>
+ * Each market is locked only while it is being updated, so that prices for many markets
+ * can be matched at once. A settled market keeps an empty entry, marked as settled under
+ * its lock, so that bets and prices arriving after it has been settled are turned away;
+ * only the entries of the most recently settled markets are kept.
+ * <p/>
+ * The time of each change to a bet is taken from the caller where it is given, eg the
+ * time of the recorded prices when backtesting, and from the system clock otherwise.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PaperExchange {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PaperExchange.class);
+
+    // prices within this of each other are the same tick
+    private static final double PRICE_TOLERANCE = 1e-6;
+
+    static final int MAX_SETTLED_MARKETS = 10000;
+
+    private final ConcurrentMap<Integer, MarketState> markets = new ConcurrentHashMap<Integer, MarketState>();
+    // the most recently settled markets, oldest first, whose settled entries are kept in markets
+    private final Map<Integer, Boolean> settledMarkets = Collections.synchronizedMap(
+            new LinkedHashMap<Integer, Boolean>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                    if (size() > MAX_SETTLED_MARKETS) {
+                        markets.remove(eldest.getKey());
+                        return true;
+                    }
+                    return false;
+                }
+            });
+    private final List<OwnOrderBook.Listener> listeners = new CopyOnWriteArrayList<OwnOrderBook.Listener>();
+    private final AtomicLong nextBetId = new AtomicLong(1);
+    private final AtomicLong betsPlaced = new AtomicLong();
+    private final AtomicLong betsRejected = new AtomicLong();
+    private final AtomicLong fills = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+
+    // guarded by account; always taken after the lock of a market, never before
+    private final Object account = new Object();
+    private double balance;
+    private double exposure;
+
+    /**
+     * Primary constructor
+     *
+     * @param startingBalance the virtual balance to start with
+     */
+    public PaperExchange(double startingBalance) {
+        this.balance = startingBalance;
+    }
+
+    public void addListener(OwnOrderBook.Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(OwnOrderBook.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Place bets against the latest prices of their markets.
+     *
+     * @param bets the bets to place, which may be on any number of markets
+     * @return the outcome of placing each bet, in the same order as the bets
+     */
+    public PlaceBetsResp placeBets(List<Bet> bets) {
+        return placeBets(bets, System.currentTimeMillis());
+    }
+
+    /**
+     * Place bets against the latest prices of their markets.
+     *
+     * @param bets the bets to place, which may be on any number of markets
+     * @param now  the time of placing, in ms since the epoch
+     * @return the outcome of placing each bet, in the same order as the bets
+     */
+    public PlaceBetsResp placeBets(List<Bet> bets, long now) {
+        PlaceBetsResp resp = new PlaceBetsResp();
+        resp.setErrorCode(PlaceBetsErrorEnum.OK);
+        ArrayOfPlaceBetsResult results = new ArrayOfPlaceBetsResult();
+        resp.setBetResults(results);
+        List<OwnBet[]> changes = new ArrayList<OwnBet[]>();
+        for (Bet bet : bets) {
+            results.getPlaceBetsResult().add(place(bet, now, changes));
+        }
+        fireChanges(changes);
+        return resp;
+    }
+
+    /**
+     * Match the waiting bets in a market against its new prices, and keep the prices for
+     * the bets placed until the next ones arrive. The same list of prices is only applied
+     * once, so it can be passed on by more than one caller.
+     *
+     * @param marketId the id of the market
+     * @param runners  the parsed runner prices
+     */
+    public void onPrices(int marketId, List<RunnerPricesWrapper> runners) {
+        onPrices(marketId, runners, System.currentTimeMillis());
+    }
+
+    /**
+     * Match the waiting bets in a market against its new prices, and keep the prices for
+     * the bets placed until the next ones arrive. The same list of prices is only applied
+     * once, so it can be passed on by more than one caller.
+     *
+     * @param marketId the id of the market
+     * @param runners  the parsed runner prices
+     * @param now      the time of the prices, in ms since the epoch
+     */
+    public void onPrices(int marketId, List<RunnerPricesWrapper> runners, long now) {
+        if (runners == null) {
+            return;
+        }
+        MarketState market = getOrCreate(marketId);
+        List<OwnBet[]> changes = new ArrayList<OwnBet[]>();
+        synchronized (market) {
+            if (market.settled || market.closed || runners == market.lastRunners) {
+                return;
+            }
+            market.lastRunners = runners;
+            for (RunnerPricesWrapper runner : runners) {
+                int selectionId = runner.getRunnerPrices().getSelectionId();
+                Depth next = new Depth(runner.getBestPricesToBack(), runner.getBestPricesToLay());
+                Depth previous = market.depths.put(selectionId, next);
+                List<PaperOrder> open = market.openOrders.get(selectionId);
+                if (open == null) {
+                    continue;
+                }
+                for (Iterator<PaperOrder> i = open.iterator(); i.hasNext(); ) {
+                    PaperOrder order = i.next();
+                    OwnBet before = order.toOwnBet();
+                    if (matchWaiting(order, previous, next, now)) {
+                        fills.incrementAndGet();
+                        changes.add(new OwnBet[]{before, order.toOwnBet()});
+                    }
+                    if (!order.state.isOpen()) {
+                        i.remove();
+                    }
+                }
+            }
+        }
+        snapshots.incrementAndGet();
+        fireChanges(changes);
+    }
+
+    /**
+     * Cancel the unmatched part of a bet.
+     *
+     * @param marketId the id of the market
+     * @param betId    the unique bet identifier
+     * @return the bet after the cancel, or null if it is not known
+     */
+    public OwnBet cancel(int marketId, long betId) {
+        return cancel(marketId, betId, System.currentTimeMillis());
+    }
+
+    /**
+     * Cancel the unmatched part of a bet.
+     *
+     * @param marketId the id of the market
+     * @param betId    the unique bet identifier
+     * @param now      the time of the cancel, in ms since the epoch
+     * @return the bet after the cancel, or null if it is not known
+     */
+    public OwnBet cancel(int marketId, long betId, long now) {
+        MarketState market = markets.get(marketId);
+        if (market == null) {
+            return null;
+        }
+        OwnBet before;
+        OwnBet after;
+        synchronized (market) {
+            PaperOrder order = market.orders.get(betId);
+            if (order == null) {
+                return null;
+            }
+            if (!order.state.isOpen()) {
+                return order.toOwnBet();
+            }
+            before = order.toOwnBet();
+            release(order, order.getLiability(order.getUnmatchedSize()), 0.0);
+            order.state = OwnBetState.LAPSED;
+            order.updatedAt = now;
+            List<PaperOrder> open = market.openOrders.get(order.selectionId);
+            if (open != null) {
+                open.remove(order);
+            }
+            after = order.toOwnBet();
+        }
+        fireChanges(Collections.singletonList(new OwnBet[]{before, after}));
+        return after;
+    }
+
+    /**
+     * Close a market whose result is not yet known: lapse its unmatched stakes, releasing
+     * their liability, and drop its prices. Bets and prices arriving afterwards are turned
+     * away. The matched stakes keep their liability until the market is settled; if there
+     * are none, the market is settled straight away.
+     *
+     * @param marketId the id of the market
+     */
+    public void close(int marketId) {
+        close(marketId, System.currentTimeMillis());
+    }
+
+    /**
+     * Close a market whose result is not yet known: lapse its unmatched stakes, releasing
+     * their liability, and drop its prices. Bets and prices arriving afterwards are turned
+     * away. The matched stakes keep their liability until the market is settled; if there
+     * are none, the market is settled straight away.
+     *
+     * @param marketId the id of the market
+     * @param now      the time of closing, in ms since the epoch
+     */
+    public void close(int marketId, long now) {
+        MarketState market = markets.get(marketId);
+        if (market == null) {
+            return;
+        }
+        List<OwnBet[]> changes = new ArrayList<OwnBet[]>();
+        boolean settled;
+        synchronized (market) {
+            if (market.settled || market.closed) {
+                return;
+            }
+            market.closed = true;
+            boolean matched = false;
+            for (PaperOrder order : market.orders.values()) {
+                if (order.state.isOpen()) {
+                    OwnBet before = order.toOwnBet();
+                    release(order, order.getLiability(order.getUnmatchedSize()), 0.0);
+                    order.state = OwnBetState.LAPSED;
+                    order.updatedAt = now;
+                    changes.add(new OwnBet[]{before, order.toOwnBet()});
+                }
+                matched |= order.matchedSize > 0.0;
+            }
+            market.openOrders.clear();
+            market.depths.clear();
+            market.lastRunners = null;
+            settled = !matched;
+            if (settled) {
+                market.orders.clear();
+                market.settled = true;
+            }
+        }
+        if (settled) {
+            settledMarkets.put(marketId, Boolean.TRUE);
+        }
+        fireChanges(changes);
+        LOG.info("Closed paper market " + marketId + (settled ? " with no matched bets" : "; awaiting its result"));
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return true if the market has been closed and has matched bets waiting to be settled
+     */
+    public boolean isAwaitingSettlement(int marketId) {
+        MarketState market = markets.get(marketId);
+        if (market == null) {
+            return false;
+        }
+        synchronized (market) {
+            return market.closed && !market.settled;
+        }
+    }
+
+    /**
+     * Settle a market: lapse its unmatched stakes, release the liability held for its bets
+     * and add the profit or loss of the matched stakes to the balance. Bets placed on the
+     * market afterwards are rejected.
+     *
+     * @param marketId the id of the market
+     * @param winners  the selection ids of the winning runners
+     * @return the profit (or, if negative, loss) on the market
+     */
+    public double settle(int marketId, Collection<Integer> winners) {
+        return settle(marketId, winners, System.currentTimeMillis());
+    }
+
+    /**
+     * Settle a market: lapse its unmatched stakes, release the liability held for its bets
+     * and add the profit or loss of the matched stakes to the balance. Bets placed on the
+     * market afterwards are rejected.
+     *
+     * @param marketId the id of the market
+     * @param winners  the selection ids of the winning runners
+     * @param now      the time of settling, in ms since the epoch
+     * @return the profit (or, if negative, loss) on the market; 0 if it was already settled
+     */
+    public double settle(int marketId, Collection<Integer> winners, long now) {
+        MarketState market = getOrCreate(marketId);
+        List<OwnBet[]> changes = new ArrayList<OwnBet[]>();
+        double profitOrLoss = 0.0;
+        synchronized (market) {
+            if (market.settled) {
+                return 0.0;
+            }
+            market.settled = true;
+            for (PaperOrder order : market.orders.values()) {
+                if (order.state.isOpen()) {
+                    OwnBet before = order.toOwnBet();
+                    order.state = OwnBetState.LAPSED;
+                    order.updatedAt = now;
+                    changes.add(new OwnBet[]{before, order.toOwnBet()});
+                }
+                double orderProfitOrLoss = order.toOwnBet().getMatchedProfitOrLoss(winners.contains(order.selectionId));
+                release(order, order.reserved, orderProfitOrLoss);
+                profitOrLoss += orderProfitOrLoss;
+            }
+            market.orders.clear();
+            market.openOrders.clear();
+            market.depths.clear();
+            market.lastRunners = null;
+        }
+        settledMarkets.put(marketId, Boolean.TRUE);
+        fireChanges(changes);
+        LOG.info("Settled paper bets on marketId " + marketId + " for " + profitOrLoss);
+        return profitOrLoss;
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @param betId    the unique bet identifier
+     * @return the bet, or null if it is not known or its market has been settled
+     */
+    public OwnBet getBet(int marketId, long betId) {
+        MarketState market = markets.get(marketId);
+        if (market == null) {
+            return null;
+        }
+        synchronized (market) {
+            PaperOrder order = market.orders.get(betId);
+            return order != null ? order.toOwnBet() : null;
+        }
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return the bets on the market, in the order they were placed
+     */
+    public List<OwnBet> getBets(int marketId) {
+        MarketState market = markets.get(marketId);
+        if (market == null) {
+            return Collections.emptyList();
+        }
+        synchronized (market) {
+            List<OwnBet> bets = new ArrayList<OwnBet>(market.orders.size());
+            for (PaperOrder order : market.orders.values()) {
+                bets.add(order.toOwnBet());
+            }
+            return bets;
+        }
+    }
+
+    /**
+     * @return the virtual balance, including the liability held for open and unsettled bets
+     */
+    public double getBalance() {
+        synchronized (account) {
+            return balance;
+        }
+    }
+
+    /**
+     * @return the liability held for open and unsettled bets
+     */
+    public double getExposure() {
+        synchronized (account) {
+            return exposure;
+        }
+    }
+
+    /**
+     * @return the balance less the exposure, which new bets must be covered by
+     */
+    public double getAvailableBalance() {
+        synchronized (account) {
+            return balance - exposure;
+        }
+    }
+
+    public long getBetsPlaced() {
+        return betsPlaced.get();
+    }
+
+    public long getBetsRejected() {
+        return betsRejected.get();
+    }
+
+    /**
+     * @return the number of times a waiting bet has been matched by new prices
+     */
+    public long getFills() {
+        return fills.get();
+    }
+
+    /**
+     * @return the number of sets of prices applied
+     */
+    public long getSnapshots() {
+        return snapshots.get();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private PlaceBetsResult place(Bet bet, long now, List<OwnBet[]> changes) {
+        PlaceBetsResult result = new PlaceBetsResult();
+        Double size = bet.getSize();
+        if (size == null || !(size > 0.0) || Double.isInfinite(size) || bet.getBetType() == null ||
+                !(bet.getPrice() >= PriceLadder.MIN_PRICE && bet.getPrice() <= PriceLadder.MAX_PRICE)) {
+            return reject(result, PlaceBetsResultEnum.INVALID_SIZE, bet);
+        }
+
+        MarketState market = getOrCreate(bet.getMarketId());
+        PaperOrder order;
+        synchronized (market) {
+            if (market.settled || market.closed) {
+                return reject(result, PlaceBetsResultEnum.MARKET_CLOSED, bet);
+            }
+            order = new PaperOrder(nextBetId.getAndIncrement(), bet.getMarketId(), bet.getSelectionId(),
+                    bet.getBetType(), bet.getPrice(), size, now);
+            double liability = order.getLiability(size);
+            synchronized (account) {
+                if (liability > balance - exposure) {
+                    LOG.warn("Insufficient paper funds to place " + bet + "; available " + (balance - exposure));
+                    order = null;
+                } else {
+                    exposure += liability;
+                }
+            }
+            if (order == null) {
+                return reject(result, PlaceBetsResultEnum.UNKNOWN_ERROR, bet);
+            }
+            order.reserved = liability;
+
+            Depth depth = market.depths.get(order.selectionId);
+            if (depth != null) {
+                matchOffers(order, depth.opposite(order.betType), false, now);
+                if (order.state.isOpen()) {
+                    order.queueAhead = depth.own(order.betType).queueAt(order.betType, order.price);
+                }
+            }
+            market.orders.put(order.betId, order);
+            if (order.state.isOpen()) {
+                List<PaperOrder> open = market.openOrders.get(order.selectionId);
+                if (open == null) {
+                    open = new ArrayList<PaperOrder>();
+                    market.openOrders.put(order.selectionId, open);
+                }
+                open.add(order);
+            }
+            changes.add(new OwnBet[]{null, order.toOwnBet()});
+        }
+
+        betsPlaced.incrementAndGet();
+        result.setSuccess(true);
+        result.setResultCode(PlaceBetsResultEnum.OK);
+        result.setBetId(order.betId);
+        result.setSizeMatched(order.matchedSize);
+        result.setAveragePriceMatched(order.getAverageMatchedPrice());
+        return result;
+    }
+
+    private PlaceBetsResult reject(PlaceBetsResult result, PlaceBetsResultEnum resultCode, Bet bet) {
+        betsRejected.incrementAndGet();
+        LOG.debug("Rejected paper bet " + bet + ": " + resultCode);
+        result.setSuccess(false);
+        result.setResultCode(resultCode);
+        return result;
+    }
+
+    // match a waiting order against new prices; returns true if any of it was matched
+    private boolean matchWaiting(PaperOrder order, Depth previous, Depth next, long now) {
+        double matchedBefore = order.matchedSize;
+
+        // an offer on the other side at our price or better would have been matched with us
+        matchOffers(order, next.opposite(order.betType), true, now);
+        if (!order.state.isOpen()) {
+            return true;
+        }
+
+        // if there was stake at our price or ahead of it, and now there is none, it has all been matched
+        Side own = next.own(order.betType);
+        if (previous != null && previous.own(order.betType).isAtOrAhead(order.betType, order.price) &&
+                !own.isAtOrAhead(order.betType, order.price) && own.size > 0) {
+            order.fill(order.getUnmatchedSize(), order.price, now);
+            return true;
+        }
+
+        double amount = own.amountAt(order.price);
+        if (Double.isNaN(order.queueAhead)) {
+            order.queueAhead = own.queueAt(order.betType, order.price);
+        } else if (previous != null && !Double.isNaN(amount)) {
+            // assume the stake taken from our price was ahead of us, and the stake added behind us
+            double taken = previous.own(order.betType).amountAt(order.price) - amount;
+            if (taken > 0.0) {
+                double queueAhead = order.queueAhead - taken;
+                if (queueAhead < 0.0) {
+                    order.fill(-queueAhead, order.price, now);
+                    queueAhead = 0.0;
+                }
+                order.queueAhead = queueAhead;
+            }
+        }
+        return order.matchedSize > matchedBefore;
+    }
+
+    // match an order against the offers on the other side at its price or better, taking the stake from them
+    private static void matchOffers(PaperOrder order, Side offers, boolean atOrderPrice, long now) {
+        for (int level = 0; level < offers.size && order.state.isOpen(); level++) {
+            double offerPrice = offers.prices[level];
+            if (!crosses(order.betType, order.price, offerPrice)) {
+                break;
+            }
+            double filled = order.fill(offers.amounts[level], atOrderPrice ? order.price : offerPrice, now);
+            offers.amounts[level] -= filled;
+        }
+    }
+
+    // true if an offer at the price can be matched with an order, ie it is at the order's price or better
+    private static boolean crosses(BetTypeEnum betType, double orderPrice, double offerPrice) {
+        return betType == BetTypeEnum.L ? offerPrice <= orderPrice + PRICE_TOLERANCE :
+                offerPrice >= orderPrice - PRICE_TOLERANCE;
+    }
+
+    // release liability held for an order, and add any profit or loss to the balance
+    private void release(PaperOrder order, double liability, double profitOrLoss) {
+        synchronized (account) {
+            exposure -= liability;
+            balance += profitOrLoss;
+        }
+        order.reserved -= liability;
+    }
+
+    private MarketState getOrCreate(int marketId) {
+        MarketState market = markets.get(marketId);
+        if (market == null) {
+            MarketState created = new MarketState();
+            market = markets.putIfAbsent(marketId, created);
+            if (market == null) {
+                market = created;
+            }
+        }
+        return market;
+    }
+
+    private void fireChanges(List<OwnBet[]> changes) {
+        for (OwnBet[] change : changes) {
+            for (OwnOrderBook.Listener listener : listeners) {
+                try {
+                    listener.onChange(change[0], change[1]);
+                } catch (RuntimeException e) {
+                    LOG.error("Paper exchange listener failed for " + change[1], e);
+                }
+            }
+        }
+    }
+
+    // the orders and latest prices of a market; guarded by the instance itself
+    private static class MarketState {
+
+        private final Map<Long, PaperOrder> orders = new LinkedHashMap<Long, PaperOrder>();
+        private final Map<Integer, List<PaperOrder>> openOrders = new HashMap<Integer, List<PaperOrder>>();
+        private final Map<Integer, Depth> depths = new HashMap<Integer, Depth>();
+        private List<RunnerPricesWrapper> lastRunners;
+        private boolean closed; // once set, the market only holds matched bets and turns away bets and prices
+        private boolean settled; // once set, the market is empty and turns away bets and prices
+
+    }
+
+    // a copy of a runner's prices, whose stakes are taken by the bets matched against them
+    private static class Depth {
+
+        private final Side toBack;
+        private final Side toLay;
+
+        private Depth(List<Price> bestPricesToBack, List<Price> bestPricesToLay) {
+            this.toBack = new Side(bestPricesToBack);
+            this.toLay = new Side(bestPricesToLay);
+        }
+
+        // the offers a bet of the type is matched against
+        private Side opposite(BetTypeEnum betType) {
+            return betType == BetTypeEnum.L ? toLay : toBack;
+        }
+
+        // the offers a bet of the type waits among
+        private Side own(BetTypeEnum betType) {
+            return betType == BetTypeEnum.L ? toBack : toLay;
+        }
+
+    }
+
+    // one side of a runner's prices, best first
+    private static class Side {
+
+        private final int size;
+        private final double[] prices;
+        private final double[] amounts;
+
+        private Side(List<Price> levels) {
+            size = levels != null ? levels.size() : 0;
+            prices = new double[size];
+            amounts = new double[size];
+            for (int level = 0; level < size; level++) {
+                prices[level] = levels.get(level).getPrice();
+                amounts[level] = levels.get(level).getAmountAvailable();
+            }
+        }
+
+        // the stake displayed at the price, or NaN if the price is not displayed
+        private double amountAt(double price) {
+            for (int level = 0; level < size; level++) {
+                if (Math.abs(prices[level] - price) < PRICE_TOLERANCE) {
+                    return amounts[level];
+                }
+            }
+            return Double.NaN;
+        }
+
+        // the stake ahead of a bet of the type waiting at the price: that displayed at the price,
+        // none if the price is not displayed but is ahead of the last price that is, or NaN if unknown
+        private double queueAt(BetTypeEnum betType, double price) {
+            double amount = amountAt(price);
+            if (!Double.isNaN(amount)) {
+                return amount;
+            }
+            return size == 0 || isAhead(betType, price, prices[size - 1]) ? 0.0 : Double.NaN;
+        }
+
+        // true if the best price on this side is the price, or is ahead of a bet of the type waiting at it
+        private boolean isAtOrAhead(BetTypeEnum betType, double price) {
+            return size > 0 && !isAhead(betType, price, prices[0]);
+        }
+
+        // true if a bet of the type waiting at the price would be matched before any stake at the other price
+        private static boolean isAhead(BetTypeEnum betType, double price, double other) {
+            // a waiting lay is offered to backers, who take the highest price first
+            return betType == BetTypeEnum.L ? price > other + PRICE_TOLERANCE : price < other - PRICE_TOLERANCE;
+        }
+
+    }
+
+}
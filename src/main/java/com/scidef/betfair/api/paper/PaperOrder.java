@@ -0,0 +1,91 @@
+package com.scidef.betfair.api.paper;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.scidef.betfair.api.account.OwnBet;
+import com.scidef.betfair.api.account.OwnBetState;
+
+/**
+ * A bet placed on the <code>PaperExchange</code>. Unlike <code>OwnBet</code> it is mutable,
+ * and is only read or changed while holding the lock of its market.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+class PaperOrder {
+
+    // stakes smaller than this are taken to be fully matched, as with the OwnOrderBook
+    static final double SIZE_TOLERANCE = 0.005;
+
+    final long betId;
+    final int marketId;
+    final int selectionId;
+    final BetTypeEnum betType;
+    final double price;
+    final double size;
+
+    double matchedSize;
+    double matchedValue; // the sum of each matched stake times its price
+    double queueAhead = Double.NaN; // the stake ahead of the order at its price, or NaN until known
+    double reserved; // the liability held back from the available balance
+    OwnBetState state = OwnBetState.UNMATCHED;
+    long updatedAt;
+
+    PaperOrder(long betId, int marketId, int selectionId, BetTypeEnum betType, double price, double size,
+               long placedAt) {
+        this.betId = betId;
+        this.marketId = marketId;
+        this.selectionId = selectionId;
+        this.betType = betType;
+        this.price = price;
+        this.size = size;
+        this.updatedAt = placedAt;
+    }
+
+    /**
+     * @return the stake still waiting to be matched
+     */
+    double getUnmatchedSize() {
+        return state.isOpen() ? Math.max(0.0, size - matchedSize) : 0.0;
+    }
+
+    /**
+     * @param stake the stake
+     * @return the liability of the stake at the order's price
+     */
+    double getLiability(double stake) {
+        return betType == BetTypeEnum.L ? stake * (price - 1) : stake;
+    }
+
+    /**
+     * Match part of the order.
+     *
+     * @param stake      the stake to match, which is capped at the unmatched stake
+     * @param matchPrice the price it is matched at
+     * @param now        the time of the match
+     * @return the stake matched
+     */
+    double fill(double stake, double matchPrice, long now) {
+        double filled = Math.min(stake, getUnmatchedSize());
+        if (filled <= 0.0) {
+            return 0.0;
+        }
+        matchedSize += filled;
+        matchedValue += filled * matchPrice;
+        state = size - matchedSize < SIZE_TOLERANCE ? OwnBetState.MATCHED : OwnBetState.PARTIALLY_MATCHED;
+        updatedAt = now;
+        return filled;
+    }
+
+    /**
+     * @return the average price of the matched stake, or 0 if none is matched
+     */
+    double getAverageMatchedPrice() {
+        return matchedSize > 0.0 ? matchedValue / matchedSize : 0.0;
+    }
+
+    OwnBet toOwnBet() {
+        return new OwnBet(betId, marketId, selectionId, betType, price, size, matchedSize,
+                getAverageMatchedPrice(), state, updatedAt);
+    }
+
+}
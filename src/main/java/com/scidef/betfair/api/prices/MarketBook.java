@@ -0,0 +1,309 @@
+package com.scidef.betfair.api.prices;
+
+import com.betfair.publicapi.types.exchange.v5.Price;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A running aggregate of the book for one market: the back and lay book percentages,
+ * each runner's implied probability and spread in ticks, and the favourite.
+ * <p/>
+ * Rather than rescanning the market on every price poll, <code>update</code> compares
+ * each runner's best prices with those already held and adjusts the book sums only for
+ * the runners whose prices have changed. To stop rounding errors accumulating, the
+ * sums are recalculated from scratch every <code>RESYNC_INTERVAL</code> changes.
+ * <p/>
+ * The back book percentage is the sum of 100 / best price to back over all runners
+ * with a price; a book over 100% is the overround. Runners without a price contribute
+ * nothing to the book and have a <code>NaN</code> probability and a spread of -1.
+ * <p/>
+ * This class is not thread-safe; it is intended to be updated and read by the thread
+ * that polls the market. Use the copy constructor to hand the book to other threads.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class MarketBook {
+
+    public static final int NO_FAVOURITE = -1;
+    public static final int UNKNOWN_SPREAD = -1;
+
+    static final int RESYNC_INTERVAL = 1024;
+
+    private final int marketId;
+
+    private final Map<Integer, Integer> slotsBySelectionId = new HashMap<Integer, Integer>();
+    private int[] selectionIds = new int[16];
+    private double[] bestBack = new double[16];
+    private double[] bestLay = new double[16];
+    private int[] spreadTicks = new int[16];
+    private long[] lastSeen = new long[16]; // the update in which each runner was last in a snapshot
+    private int runnerCount;
+
+    private double backBookSum;
+    private double layBookSum;
+    private int favouriteSlot = -1;
+    private int changesSinceResync;
+    private long updates;
+
+    public MarketBook(int marketId) {
+        this.marketId = marketId;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param other the book to copy
+     */
+    public MarketBook(MarketBook other) {
+        this.marketId = other.marketId;
+        this.slotsBySelectionId.putAll(other.slotsBySelectionId);
+        this.selectionIds = Arrays.copyOf(other.selectionIds, other.runnerCount);
+        this.bestBack = Arrays.copyOf(other.bestBack, other.runnerCount);
+        this.bestLay = Arrays.copyOf(other.bestLay, other.runnerCount);
+        this.spreadTicks = Arrays.copyOf(other.spreadTicks, other.runnerCount);
+        this.lastSeen = Arrays.copyOf(other.lastSeen, other.runnerCount);
+        this.runnerCount = other.runnerCount;
+        this.backBookSum = other.backBookSum;
+        this.layBookSum = other.layBookSum;
+        this.favouriteSlot = other.favouriteSlot;
+        this.changesSinceResync = other.changesSinceResync;
+        this.updates = other.updates;
+    }
+
+    /**
+     * Update the book from a snapshot of the market's prices. Runners missing from the
+     * snapshot are taken to have been removed from the market.
+     *
+     * @param runners the parsed runner prices
+     * @return the number of runners whose prices changed
+     */
+    public int update(List<RunnerPricesWrapper> runners) {
+        int changed = 0;
+        long stamp = ++updates;
+        for (RunnerPricesWrapper runner : runners) {
+            int selectionId = runner.getRunnerPrices().getSelectionId();
+            if (updateRunner(selectionId, bestPrice(runner.getBestPricesToBack()),
+                    bestPrice(runner.getBestPricesToLay()))) {
+                changed++;
+            }
+            lastSeen[slotsBySelectionId.get(selectionId)] = stamp;
+        }
+        if (runnerCount > runners.size()) {
+            for (int slot = runnerCount - 1; slot >= 0; slot--) {
+                if (lastSeen[slot] != stamp) {
+                    removeRunner(selectionIds[slot]);
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Update the best prices for a single runner, adding it to the book if necessary.
+     *
+     * @param selectionId the selection id of the runner
+     * @param back        the best price to back, or <code>NaN</code> if none
+     * @param lay         the best price to lay, or <code>NaN</code> if none
+     * @return true if the runner's prices changed
+     */
+    public boolean updateRunner(int selectionId, double back, double lay) {
+        Integer slot = slotsBySelectionId.get(selectionId);
+        if (slot == null) {
+            slot = addSlot(selectionId);
+        } else if (samePrice(bestBack[slot], back) && samePrice(bestLay[slot], lay)) {
+            return false;
+        }
+
+        backBookSum += inverse(back) - inverse(bestBack[slot]);
+        layBookSum += inverse(lay) - inverse(bestLay[slot]);
+        double previousBack = bestBack[slot];
+        bestBack[slot] = back;
+        bestLay[slot] = lay;
+        spreadTicks[slot] = Double.isNaN(back) || Double.isNaN(lay) ?
+                UNKNOWN_SPREAD : PriceLadder.ticksBetween(back, lay);
+
+        if (slot == favouriteSlot && !(back <= previousBack)) {
+            // the favourite has drifted (or lost its price) so another runner may now be favourite
+            favouriteSlot = findFavourite();
+        } else if (!Double.isNaN(back) && (favouriteSlot < 0 || back < bestBack[favouriteSlot])) {
+            favouriteSlot = slot;
+        }
+
+        if (++changesSinceResync >= RESYNC_INTERVAL) {
+            resync();
+        }
+        return true;
+    }
+
+    /**
+     * Remove a runner from the book, eg when it becomes a non-runner.
+     *
+     * @param selectionId the selection id of the runner
+     */
+    public void removeRunner(int selectionId) {
+        Integer slot = slotsBySelectionId.remove(selectionId);
+        if (slot == null) {
+            return;
+        }
+        backBookSum -= inverse(bestBack[slot]);
+        layBookSum -= inverse(bestLay[slot]);
+
+        // move the last runner into the vacated slot
+        int last = runnerCount - 1;
+        if (slot != last) {
+            selectionIds[slot] = selectionIds[last];
+            bestBack[slot] = bestBack[last];
+            bestLay[slot] = bestLay[last];
+            spreadTicks[slot] = spreadTicks[last];
+            lastSeen[slot] = lastSeen[last];
+            slotsBySelectionId.put(selectionIds[slot], slot);
+        }
+        runnerCount--;
+        if (favouriteSlot == slot) {
+            favouriteSlot = findFavourite();
+        } else if (favouriteSlot == last) {
+            favouriteSlot = slot;
+        }
+    }
+
+    public int getMarketId() {
+        return marketId;
+    }
+
+    public int getRunnerCount() {
+        return runnerCount;
+    }
+
+    /**
+     * @return the number of snapshots the book has been updated from
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    /**
+     * @return the back book percentage (100 for a fair book)
+     */
+    public double getBackBookPercentage() {
+        return backBookSum * 100;
+    }
+
+    /**
+     * @return the lay book percentage (100 for a fair book)
+     */
+    public double getLayBookPercentage() {
+        return layBookSum * 100;
+    }
+
+    /**
+     * @return the back overround, in percentage points over 100
+     */
+    public double getBackOverround() {
+        return getBackBookPercentage() - 100;
+    }
+
+    /**
+     * @return the selection id of the runner with the shortest price to back, or
+     *         <code>NO_FAVOURITE</code> if no runner has a price
+     */
+    public int getFavourite() {
+        return favouriteSlot >= 0 ? selectionIds[favouriteSlot] : NO_FAVOURITE;
+    }
+
+    public double getBestBack(int selectionId) {
+        Integer slot = slotsBySelectionId.get(selectionId);
+        return slot != null ? bestBack[slot] : Double.NaN;
+    }
+
+    public double getBestLay(int selectionId) {
+        Integer slot = slotsBySelectionId.get(selectionId);
+        return slot != null ? bestLay[slot] : Double.NaN;
+    }
+
+    /**
+     * @param selectionId the selection id of the runner
+     * @return the spread between the best back and lay prices in ticks, or
+     *         <code>UNKNOWN_SPREAD</code> if either is missing
+     */
+    public int getSpreadTicks(int selectionId) {
+        Integer slot = slotsBySelectionId.get(selectionId);
+        return slot != null ? spreadTicks[slot] : UNKNOWN_SPREAD;
+    }
+
+    /**
+     * @param selectionId the selection id of the runner
+     * @return the probability implied by the best price to back
+     */
+    public double getImpliedProbability(int selectionId) {
+        return 1 / getBestBack(selectionId);
+    }
+
+    /**
+     * @param selectionId the selection id of the runner
+     * @return the implied probability scaled so that the back book sums to 1
+     */
+    public double getNormalisedProbability(int selectionId) {
+        return getImpliedProbability(selectionId) / backBookSum;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // recalculate the sums from scratch
+    void resync() {
+        backBookSum = 0;
+        layBookSum = 0;
+        for (int slot = 0; slot < runnerCount; slot++) {
+            backBookSum += inverse(bestBack[slot]);
+            layBookSum += inverse(bestLay[slot]);
+        }
+        changesSinceResync = 0;
+    }
+
+    private int addSlot(int selectionId) {
+        if (runnerCount == selectionIds.length) {
+            int capacity = Math.max(runnerCount * 2, 16);
+            selectionIds = Arrays.copyOf(selectionIds, capacity);
+            bestBack = Arrays.copyOf(bestBack, capacity);
+            bestLay = Arrays.copyOf(bestLay, capacity);
+            spreadTicks = Arrays.copyOf(spreadTicks, capacity);
+            lastSeen = Arrays.copyOf(lastSeen, capacity);
+        }
+        int slot = runnerCount++;
+        selectionIds[slot] = selectionId;
+        bestBack[slot] = Double.NaN;
+        bestLay[slot] = Double.NaN;
+        spreadTicks[slot] = UNKNOWN_SPREAD;
+        slotsBySelectionId.put(selectionId, slot);
+        return slot;
+    }
+
+    private int findFavourite() {
+        int favourite = -1;
+        for (int slot = 0; slot < runnerCount; slot++) {
+            if (!Double.isNaN(bestBack[slot]) && (favourite < 0 || bestBack[slot] < bestBack[favourite])) {
+                favourite = slot;
+            }
+        }
+        return favourite;
+    }
+
+    private static boolean samePrice(double a, double b) {
+        return a == b || (Double.isNaN(a) && Double.isNaN(b));
+    }
+
+    private static double inverse(double price) {
+        return Double.isNaN(price) ? 0.0 : 1 / price;
+    }
+
+    private static double bestPrice(List<Price> prices) {
+        return prices != null && !prices.isEmpty() ? prices.get(0).getPrice() : Double.NaN;
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.scidef.betfair.api.prices;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how often to poll a market's prices from how long it is until the off.
+ * <p/>
+ * The policy is a set of bands, each with the time to the off at which it starts and
+ * the interval to poll at. Once the market is off, it is polled at the in-play interval
+ * until the in-play duration has passed, and then not at all.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PollingPolicy {
+
+    public static final long STOP = -1;
+
+    private final long[] fromTimeToOff;
+    private final long[] intervals;
+    private final long inPlayInterval;
+    private final long inPlayDuration;
+
+    /**
+     * @param fromTimeToOff  the time to the off (ms) from which each band applies, longest first
+     * @param intervals      the polling interval (ms) for each band
+     * @param inPlayInterval the polling interval (ms) once the market is off
+     * @param inPlayDuration how long (ms) after the off to stop polling
+     */
+    public PollingPolicy(long[] fromTimeToOff, long[] intervals, long inPlayInterval, long inPlayDuration) {
+        if (fromTimeToOff.length != intervals.length) {
+            throw new IllegalArgumentException("Each band needs an interval");
+        }
+        for (int i = 1; i < fromTimeToOff.length; i++) {
+            if (fromTimeToOff[i] >= fromTimeToOff[i - 1]) {
+                throw new IllegalArgumentException("Bands must be ordered longest time to the off first");
+            }
+        }
+        this.fromTimeToOff = Arrays.copyOf(fromTimeToOff, fromTimeToOff.length);
+        this.intervals = Arrays.copyOf(intervals, intervals.length);
+        this.inPlayInterval = inPlayInterval;
+        this.inPlayDuration = inPlayDuration;
+    }
+
+    /**
+     * The default policy: every 15 minutes more than 2 hours before the off, every 2 minutes
+     * from then, every 15 seconds in the last 30 minutes and every second in the last 5
+     * minutes, then every 5 seconds for 10 minutes after the off.
+     *
+     * @return the default polling policy
+     */
+    public static PollingPolicy defaultPolicy() {
+        return new PollingPolicy(
+                new long[]{TimeUnit.HOURS.toMillis(2), TimeUnit.MINUTES.toMillis(30), TimeUnit.MINUTES.toMillis(5), 0},
+                new long[]{TimeUnit.MINUTES.toMillis(15), TimeUnit.MINUTES.toMillis(2), TimeUnit.SECONDS.toMillis(15),
+                        TimeUnit.SECONDS.toMillis(1)},
+                TimeUnit.SECONDS.toMillis(5), TimeUnit.MINUTES.toMillis(10));
+    }
+
+    /**
+     * @param timeToOff the time until the off in ms; negative once the market is off
+     * @return the polling interval in ms, or <code>STOP</code> if the market should no longer be polled
+     */
+    public long getInterval(long timeToOff) {
+        if (timeToOff < 0) {
+            return -timeToOff <= inPlayDuration ? inPlayInterval : STOP;
+        }
+        for (int band = 0; band < fromTimeToOff.length; band++) {
+            if (timeToOff >= fromTimeToOff[band]) {
+                return intervals[band];
+            }
+        }
+        return intervals[intervals.length - 1];
+    }
+
+    /**
+     * @param timeToOff the time until the off in ms; negative once the market is off
+     * @return the time until the off at which the interval will next change
+     */
+    public long getNextChange(long timeToOff) {
+        if (timeToOff < 0) {
+            return -inPlayDuration;
+        }
+        for (int band = 0; band < fromTimeToOff.length; band++) {
+            if (timeToOff >= fromTimeToOff[band]) {
+                return fromTimeToOff[band];
+            }
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,447 @@
+package com.scidef.betfair.api.prices;
+
+import com.betfair.publicapi.types.global.v3.MarketSummary;
+import com.scidef.betfair.api.Deadline;
+import com.scidef.betfair.api.HorseRacing;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.trace.Span;
+import com.scidef.betfair.api.trace.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Polls the compressed prices of a set of markets, each at a rate set by a
+ * <code>PollingPolicy</code> from how long it is until the market's start time.
+ * <p/>
+ * Markets are held in a priority queue ordered by when their next poll is due. A poll
+ * is brought forward if the market would otherwise sleep through moving into a faster
+ * band, and markets are dropped once the policy says to stop.
+ * <p/>
+ * The scheduler fits the whole schedule inside a global request budget: if the polling
+ * intervals of all the markets would add up to more requests per minute than the
+ * budget, every interval is stretched by the same factor, and successive requests are
+ * always spaced at least <code>60000 / requestsPerMinute</code> ms apart.
+ * <p/>
+ * A poll that starts more than <code>deadlineSlackMillis</code> after it was due has
+ * missed its deadline; misses are logged and counted, per market and in total. Each poll
+ * is also made with a <code>Deadline</code> of the market's next poll, as its prices are of
+ * no use once the next poll is due, though never shorter than the market's polling interval.
+ * <p/>
+ * When tracing is on, each poll is traced as a <code>PollingScheduler.poll</code> span, with
+ * the time it spent waiting after it was due as a <code>PollingScheduler.queued</code> span.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PollingScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PollingScheduler.class);
+
+    private static final long DEFAULT_DEADLINE_SLACK_MILLIS = 250;
+
+    /**
+     * Receives the prices from each poll.
+     */
+    public interface Listener {
+
+        /**
+         * @param marketId the id of the market
+         * @param runners  the parsed runner prices
+         */
+        void onPrices(int marketId, List<RunnerPricesWrapper> runners);
+
+    }
+
+    private final HorseRacing horseRacing;
+    private final PollingPolicy policy;
+    private final Listener listener;
+    private final int requestsPerMinute;
+    private final long minSpacingMillis;
+    private final long deadlineSlackMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // guarded by lock
+    private final PriorityQueue<ScheduledMarket> queue = new PriorityQueue<ScheduledMarket>();
+    private final Map<Integer, ScheduledMarket> markets = new HashMap<Integer, ScheduledMarket>();
+    private double requestedPerMinute; // the demand of all the markets at their unstretched intervals
+    private long lastPoll = Long.MIN_VALUE;
+    private long polls;
+    private long failures;
+    private long deadlineMisses;
+    private long maxLateness;
+
+    private volatile Thread thread; // set and cleared under lock, read by the polling thread without it
+
+    public PollingScheduler(HorseRacing horseRacing, PollingPolicy policy, Listener listener, int requestsPerMinute) {
+        this(horseRacing, policy, listener, requestsPerMinute, DEFAULT_DEADLINE_SLACK_MILLIS);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param horseRacing         the source of the prices
+     * @param policy              the polling policy
+     * @param listener            receives the prices from each poll
+     * @param requestsPerMinute   the global request budget
+     * @param deadlineSlackMillis how late a poll can start before it has missed its deadline
+     */
+    public PollingScheduler(HorseRacing horseRacing, PollingPolicy policy, Listener listener,
+                            int requestsPerMinute, long deadlineSlackMillis) {
+        if (requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("The request budget must be positive");
+        }
+        this.horseRacing = horseRacing;
+        this.policy = policy;
+        this.listener = listener;
+        this.requestsPerMinute = requestsPerMinute;
+        this.minSpacingMillis = TimeUnit.MINUTES.toMillis(1) / requestsPerMinute;
+        this.deadlineSlackMillis = deadlineSlackMillis;
+    }
+
+    /**
+     * Add a market to the schedule, to be polled straight away.
+     *
+     * @param marketSummary the market
+     */
+    public void add(MarketSummary marketSummary) {
+        add(marketSummary.getMarketId(), marketSummary.getStartTime().toGregorianCalendar().getTimeInMillis());
+    }
+
+    /**
+     * Add a market to the schedule, to be polled straight away.
+     *
+     * @param marketId  the id of the market
+     * @param startTime the start time of the market, in ms since the epoch
+     */
+    public void add(int marketId, long startTime) {
+        add(marketId, startTime, System.currentTimeMillis());
+    }
+
+    /**
+     * Remove a market from the schedule.
+     *
+     * @param marketId the id of the market
+     */
+    public void remove(int marketId) {
+        lock.lock();
+        try {
+            ScheduledMarket market = markets.remove(marketId);
+            if (market != null) {
+                queue.remove(market);
+                setBaseInterval(market, PollingPolicy.STOP);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start polling on a daemon thread.
+     */
+    public void start() {
+        lock.lock();
+        try {
+            if (thread != null) {
+                return;
+            }
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (thread == Thread.currentThread()) {
+                        long next = pollNext(System.currentTimeMillis());
+                        awaitUntil(next);
+                    }
+                }
+            }, "polling-scheduler");
+            thread.setDaemon(true);
+            thread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop polling.
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            Thread stopping = thread;
+            thread = null;
+            if (stopping != null) {
+                stopping.interrupt();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of markets in the schedule
+     */
+    public int getMarketCount() {
+        lock.lock();
+        try {
+            return markets.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the factor by which the policy's intervals are being stretched to fit the
+     *         request budget; 1 if they already fit
+     */
+    public double getStretch() {
+        lock.lock();
+        try {
+            return stretch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return the time at which the market's next poll is due, or -1 if it is not scheduled
+     */
+    public long getNextDue(int marketId) {
+        lock.lock();
+        try {
+            ScheduledMarket market = markets.get(marketId);
+            return market != null ? market.nextDue : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param marketId the id of the market
+     * @return the number of polls of the market that missed their deadline
+     */
+    public long getDeadlineMisses(int marketId) {
+        lock.lock();
+        try {
+            ScheduledMarket market = markets.get(marketId);
+            return market != null ? market.deadlineMisses : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getPolls() {
+        lock.lock();
+        try {
+            return polls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFailures() {
+        lock.lock();
+        try {
+            return failures;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total number of polls that missed their deadline
+     */
+    public long getDeadlineMisses() {
+        lock.lock();
+        try {
+            return deadlineMisses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the latest any poll has started after it was due, in ms
+     */
+    public long getMaxLateness() {
+        lock.lock();
+        try {
+            return maxLateness;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // for tests
+    void add(int marketId, long startTime, long now) {
+        lock.lock();
+        try {
+            if (markets.containsKey(marketId)) {
+                return;
+            }
+            long baseInterval = policy.getInterval(startTime - now);
+            if (baseInterval == PollingPolicy.STOP) {
+                LOG.info("Not polling marketId " + marketId + " as it is past the off");
+                return;
+            }
+            ScheduledMarket market = new ScheduledMarket(marketId, startTime);
+            market.nextDue = now;
+            setBaseInterval(market, baseInterval);
+            markets.put(marketId, market);
+            queue.add(market);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Poll the market at the head of the queue, if it is due and the request spacing allows.
+     *
+     * @param now the current time in ms since the epoch
+     * @return the earliest time at which another poll may be due
+     */
+    long pollNext(long now) {
+        ScheduledMarket market;
+        long lateness;
+        long timeoutMillis;
+        lock.lock();
+        try {
+            market = queue.peek();
+            if (market == null) {
+                return Long.MAX_VALUE;
+            }
+            long earliest = Math.max(market.nextDue,
+                    lastPoll == Long.MIN_VALUE ? Long.MIN_VALUE : lastPoll + minSpacingMillis);
+            if (earliest > now) {
+                return earliest;
+            }
+            queue.poll();
+
+            long timeToOff = market.startTime - now;
+            long baseInterval = policy.getInterval(timeToOff);
+            setBaseInterval(market, baseInterval);
+            if (baseInterval == PollingPolicy.STOP) {
+                markets.remove(market.marketId);
+                LOG.info("Stopped polling marketId " + market.marketId);
+                return queue.isEmpty() ? Long.MAX_VALUE : now;
+            }
+
+            lateness = now - market.nextDue;
+            maxLateness = Math.max(maxLateness, lateness);
+            if (lateness > deadlineSlackMillis) {
+                market.deadlineMisses++;
+                deadlineMisses++;
+                LOG.warn("Poll of marketId " + market.marketId + " started " + lateness + "ms late");
+            }
+
+            long interval = (long) Math.ceil(baseInterval * stretch());
+            market.nextDue = lateness > interval ? now + interval : market.nextDue + interval;
+            // don't sleep through the market moving into a faster band
+            long changesAt = market.startTime - policy.getNextChange(timeToOff);
+            if (changesAt > now && changesAt < market.nextDue) {
+                market.nextDue = changesAt;
+            }
+            // a poll brought forward to a band change may be due again almost at once, but still needs time to run
+            timeoutMillis = Math.max(baseInterval, market.nextDue - now);
+            queue.add(market);
+            lastPoll = now;
+            polls++;
+        } finally {
+            lock.unlock();
+        }
+
+        poll(market.marketId, lateness, timeoutMillis);
+        return now;
+    }
+
+    private void poll(int marketId, long lateness, long timeoutMillis) {
+        Span span = Tracer.start("PollingScheduler.poll");
+        long startNanos = System.nanoTime();
+        Tracer.record("PollingScheduler.queued", startNanos - TimeUnit.MILLISECONDS.toNanos(lateness), startNanos);
+        Deadline previous = Deadline.set(Deadline.after(timeoutMillis));
+        try {
+            List<RunnerPricesWrapper> runners = horseRacing.getRunners(marketId);
+            if (runners != null) {
+                listener.onPrices(marketId, runners);
+                return;
+            }
+        } catch (BetfairException e) {
+            LOG.error("Failed to poll marketId " + marketId, e);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to poll marketId " + marketId, e);
+        } finally {
+            Deadline.restore(previous);
+            span.end();
+        }
+        lock.lock();
+        try {
+            failures++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // must hold the lock
+    private double stretch() {
+        return Math.max(1.0, requestedPerMinute / requestsPerMinute);
+    }
+
+    // must hold the lock
+    private void setBaseInterval(ScheduledMarket market, long baseInterval) {
+        requestedPerMinute -= perMinute(market.baseInterval);
+        market.baseInterval = baseInterval;
+        requestedPerMinute += perMinute(baseInterval);
+    }
+
+    private static double perMinute(long interval) {
+        return interval > 0 ? (double) TimeUnit.MINUTES.toMillis(1) / interval : 0.0;
+    }
+
+    private void awaitUntil(long next) {
+        lock.lock();
+        try {
+            long wait = next == Long.MAX_VALUE ? Long.MAX_VALUE : next - System.currentTimeMillis();
+            if (wait > 0) {
+                changed.await(Math.min(wait, TimeUnit.MINUTES.toMillis(1)), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            // stop() interrupts the thread; the loop checks whether it should carry on
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class ScheduledMarket implements Comparable<ScheduledMarket> {
+
+        private final int marketId;
+        private final long startTime;
+        private long nextDue;
+        private long baseInterval = PollingPolicy.STOP;
+        private long deadlineMisses;
+
+        private ScheduledMarket(int marketId, long startTime) {
+            this.marketId = marketId;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public int compareTo(ScheduledMarket other) {
+            return nextDue < other.nextDue ? -1 : (nextDue == other.nextDue ? 0 : 1);
+        }
+    }
+
+}
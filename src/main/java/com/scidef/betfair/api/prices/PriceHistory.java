@@ -0,0 +1,186 @@
+package com.scidef.betfair.api.prices;
+
+import com.betfair.publicapi.types.exchange.v5.Price;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap price history for every runner being polled, with one <code>PriceRing</code>
+ * per runner.
+ * <p/>
+ * Rings are keyed by market id and selection id, as the same selection has different
+ * prices in, say, the win and place markets for a race. At most <code>maxRunners</code>
+ * rings are ever allocated, so the off-heap memory used is bounded by
+ * <code>getMaxBytes()</code> however long the process runs. Rings for markets that are
+ * no longer of interest, eg once they have closed, should be handed back with
+ * <code>release</code>, so they can be reused; once the limit is reached, snapshots for new
+ * runners are dropped.
+ * <p/>
+ * Each runner holds its ring for one generation of the ring (see <code>PriceRing</code>), so
+ * a snapshot being recorded for a market while it is released is discarded, rather than
+ * written into the ring after it has passed to another runner.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PriceHistory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriceHistory.class);
+
+    private final int maxRunners;
+    private final int capacityPerRunner;
+
+    private final ConcurrentMap<Long, Lease> rings = new ConcurrentHashMap<Long, Lease>();
+    private final Deque<PriceRing> freeRings = new ArrayDeque<PriceRing>(); // guarded by this
+    private int allocatedRings; // guarded by this
+    private final AtomicLong droppedSnapshots = new AtomicLong();
+
+    /**
+     * Primary constructor
+     *
+     * @param maxRunners        the largest number of runners to hold history for at once
+     * @param capacityPerRunner the number of snapshots to keep for each runner
+     */
+    public PriceHistory(int maxRunners, int capacityPerRunner) {
+        this.maxRunners = maxRunners;
+        this.capacityPerRunner = capacityPerRunner;
+    }
+
+    /**
+     * Record a snapshot of every runner in a market from its parsed compressed prices.
+     *
+     * @param marketId  the id of the market
+     * @param runners   the parsed runner prices
+     * @param timestamp the time of the snapshot in ms since the epoch
+     */
+    public void record(int marketId, List<RunnerPricesWrapper> runners, long timestamp) {
+        for (RunnerPricesWrapper runner : runners) {
+            int selectionId = runner.getRunnerPrices().getSelectionId();
+            Lease lease = getOrAllocate(marketId, selectionId);
+            if (lease == null) {
+                droppedSnapshots.incrementAndGet();
+                continue;
+            }
+            double lastTraded = runner.getRunnerPrices().getLastPriceMatched();
+            // turned away if the market has been released since the ring was looked up
+            lease.ring.append(lease.generation, timestamp, bestPrice(runner.getBestPricesToBack()),
+                    bestPrice(runner.getBestPricesToLay()), lastTraded > 0 ? lastTraded : Double.NaN);
+        }
+    }
+
+    /**
+     * @param marketId    the id of the market
+     * @param selectionId the selection id of the runner
+     * @return the price history for the runner, or null if none has been recorded
+     */
+    public PriceRing getRing(int marketId, int selectionId) {
+        Lease lease = rings.get(key(marketId, selectionId));
+        return lease != null ? lease.ring : null;
+    }
+
+    /**
+     * Release the price history of every runner in a market so that the memory can be
+     * reused. Rings obtained from <code>getRing</code> for the market must not be used
+     * afterwards.
+     *
+     * @param marketId the id of the market
+     */
+    public void release(int marketId) {
+        for (Iterator<Long> it = rings.keySet().iterator(); it.hasNext(); ) {
+            Long key = it.next();
+            if ((int) (key >>> 32) == marketId) {
+                Lease lease = rings.remove(key);
+                if (lease != null) {
+                    lease.ring.reset();
+                    synchronized (this) {
+                        freeRings.push(lease.ring);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the most off-heap memory, in bytes, that this history will ever use
+     */
+    public long getMaxBytes() {
+        return (long) maxRunners * capacityPerRunner * PriceRing.RECORD_SIZE;
+    }
+
+    /**
+     * @return the off-heap memory, in bytes, allocated so far
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) allocatedRings * capacityPerRunner * PriceRing.RECORD_SIZE;
+    }
+
+    /**
+     * @return the number of snapshots dropped because the runner limit had been reached
+     */
+    public long getDroppedSnapshots() {
+        return droppedSnapshots.get();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private Lease getOrAllocate(int marketId, int selectionId) {
+        Long key = key(marketId, selectionId);
+        Lease lease = rings.get(key);
+        if (lease != null) {
+            return lease;
+        }
+        synchronized (this) {
+            lease = rings.get(key);
+            if (lease != null) {
+                return lease;
+            }
+            PriceRing ring;
+            if (!freeRings.isEmpty()) {
+                ring = freeRings.pop();
+            } else if (allocatedRings < maxRunners) {
+                ring = new PriceRing(capacityPerRunner);
+                allocatedRings++;
+            } else {
+                if (droppedSnapshots.get() == 0) {
+                    LOG.warn("Price history is full (" + maxRunners + " runners); dropping snapshots for new runners");
+                }
+                return null;
+            }
+            lease = new Lease(ring, ring.getGeneration());
+            rings.put(key, lease);
+            return lease;
+        }
+    }
+
+    private static Long key(int marketId, int selectionId) {
+        return ((long) marketId << 32) | (selectionId & 0xFFFFFFFFL);
+    }
+
+    private static double bestPrice(List<Price> prices) {
+        return prices != null && !prices.isEmpty() ? prices.get(0).getPrice() : Double.NaN;
+    }
+
+    // a ring held by a runner, and the generation of the ring it holds
+    private static class Lease {
+
+        private final PriceRing ring;
+        private final int generation;
+
+        private Lease(PriceRing ring, int generation) {
+            this.ring = ring;
+            this.generation = generation;
+        }
+
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.scidef.betfair.api.prices;
+
+/**
+ * Utility methods for working with the Betfair price ladder, on which the price
+ * increment (one "tick") depends on the price band.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PriceLadder {
+
+    public static final double MIN_PRICE = 1.01;
+    public static final double MAX_PRICE = 1000.0;
+
+    // the upper bound and increment of each band, starting from MIN_PRICE
+    private static final double[] BAND_UPPER = {2.0, 3.0, 4.0, 6.0, 10.0, 20.0, 30.0, 50.0, 100.0, MAX_PRICE};
+    private static final double[] BAND_INCREMENT = {0.01, 0.02, 0.05, 0.1, 0.2, 0.5, 1.0, 2.0, 5.0, 10.0};
+
+    /**
+     * Convert a price to its position on the ladder, where <code>MIN_PRICE</code> is 0.
+     * Prices between ticks are rounded to the nearest tick.
+     *
+     * @param price a price between <code>MIN_PRICE</code> and <code>MAX_PRICE</code>
+     * @return the position of the price on the ladder
+     */
+    public static int tickIndex(double price) {
+        double lower = MIN_PRICE;
+        int base = 0;
+        for (int band = 0; band < BAND_UPPER.length; band++) {
+            if (price <= BAND_UPPER[band] || band == BAND_UPPER.length - 1) {
+                return base + (int) Math.round((Math.max(price, MIN_PRICE) - lower) / BAND_INCREMENT[band]);
+            }
+            base += (int) Math.round((BAND_UPPER[band] - lower) / BAND_INCREMENT[band]);
+            lower = BAND_UPPER[band];
+        }
+        throw new IllegalStateException("unreachable");
+    }
+
+    /**
+     * Work out the number of ticks between two prices.
+     *
+     * @param lower the lower price
+     * @param upper the upper price
+     * @return the number of ticks from <code>lower</code> up to <code>upper</code>
+     */
+    public static int ticksBetween(double lower, double upper) {
+        return tickIndex(upper) - tickIndex(lower);
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.scidef.betfair.api.prices;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A fixed-capacity ring buffer of price snapshots for a single runner, held off-heap in a
+ * direct <code>ByteBuffer</code>.
+ * <p/>
+ * Each snapshot is a fixed-size record of a timestamp, the best price to back, the best
+ * price to lay and the last traded price. Once the ring is full, each new snapshot
+ * overwrites the oldest, so the memory used never grows.
+ * <p/>
+ * A ring is reused for another runner once the history it belongs to releases it. Each reuse
+ * starts a new generation, and an append made for an earlier generation, eg by a poll that
+ * was still recording the released market, is turned away rather than mixed into the history
+ * of the runner that now has the ring.
+ * <p/>
+ * Snapshots are expected to be appended by a single polling thread. Readers copy a
+ * window of snapshots into a <code>PriceSeries</code> using optimistic reads, which
+ * neither block nor delay the writer; a read that overlaps a write is simply retried.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PriceRing {
+
+    static final int RECORD_SIZE = 32;
+
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int BEST_BACK_OFFSET = 8;
+    private static final int BEST_LAY_OFFSET = 16;
+    private static final int LAST_TRADED_OFFSET = 24;
+
+    private static final int MAX_OPTIMISTIC_READS = 4;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final StampedLock lock = new StampedLock();
+
+    // guarded by lock
+    private long sequence;
+    private int generation; // bumped each time the ring is reset for reuse
+
+    PriceRing(int capacity) {
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+    }
+
+    /**
+     * Append a snapshot, overwriting the oldest if the ring is full.
+     *
+     * @param timestamp  the time of the snapshot in ms since the epoch
+     * @param bestBack   the best price to back, or <code>NaN</code> if none
+     * @param bestLay    the best price to lay, or <code>NaN</code> if none
+     * @param lastTraded the last traded price, or <code>NaN</code> if none
+     */
+    public void append(long timestamp, double bestBack, double bestLay, double lastTraded) {
+        long stamp = lock.writeLock();
+        try {
+            write(timestamp, bestBack, bestLay, lastTraded);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the largest number of snapshots the ring can hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the total number of snapshots ever appended to the ring
+     */
+    public long getSequence() {
+        long stamp = lock.tryOptimisticRead();
+        long seq = sequence;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                seq = sequence;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * Read the most recent snapshots, oldest first.
+     *
+     * @param count the largest number of snapshots to read
+     * @param out   the series to read into; at most its capacity is read
+     * @return the number of snapshots read
+     */
+    public int readLast(int count, PriceSeries out) {
+        return read(count, Long.MIN_VALUE, out);
+    }
+
+    /**
+     * Read all the snapshots taken at or after a given time, oldest first. If there are
+     * more than will fit in <code>out</code>, only the most recent are read.
+     *
+     * @param fromTimestamp the earliest snapshot time to read, in ms since the epoch
+     * @param out           the series to read into
+     * @return the number of snapshots read
+     */
+    public int readSince(long fromTimestamp, PriceSeries out) {
+        return read(Integer.MAX_VALUE, fromTimestamp, out);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // appends a snapshot only if the ring has not been reset since the given generation
+    boolean append(int generation, long timestamp, double bestBack, double bestLay, double lastTraded) {
+        long stamp = lock.writeLock();
+        try {
+            if (this.generation != generation) {
+                return false;
+            }
+            write(timestamp, bestBack, bestLay, lastTraded);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int getGeneration() {
+        long stamp = lock.readLock();
+        try {
+            return generation;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // empties the ring for reuse, turning away appends for the runner that had it
+    void reset() {
+        long stamp = lock.writeLock();
+        try {
+            sequence = 0;
+            generation++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // must hold the write lock
+    private void write(long timestamp, double bestBack, double bestLay, double lastTraded) {
+        int offset = (int) (sequence % capacity) * RECORD_SIZE;
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+        buffer.putDouble(offset + BEST_BACK_OFFSET, bestBack);
+        buffer.putDouble(offset + BEST_LAY_OFFSET, bestLay);
+        buffer.putDouble(offset + LAST_TRADED_OFFSET, lastTraded);
+        sequence++;
+    }
+
+    private int read(int count, long fromTimestamp, PriceSeries out) {
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_READS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                int n = copy(count, fromTimestamp, out);
+                if (lock.validate(stamp)) {
+                    out.setSize(n);
+                    return n;
+                }
+            }
+        }
+        // keep failing to get a consistent view, so briefly hold off the writer
+        long stamp = lock.readLock();
+        try {
+            int n = copy(count, fromTimestamp, out);
+            out.setSize(n);
+            return n;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // may see a torn view when called optimistically - the caller validates before using the result
+    private int copy(int count, long fromTimestamp, PriceSeries out) {
+        long seq = sequence;
+        int limit = (int) Math.min(Math.min(seq, capacity), Math.min(count, out.getCapacity()));
+        int n = 0;
+        while (n < limit && buffer.getLong(offsetOf(seq - n - 1) + TIMESTAMP_OFFSET) >= fromTimestamp) {
+            n++;
+        }
+        for (int i = 0; i < n; i++) {
+            int offset = offsetOf(seq - n + i);
+            out.set(i,
+                    buffer.getLong(offset + TIMESTAMP_OFFSET),
+                    buffer.getDouble(offset + BEST_BACK_OFFSET),
+                    buffer.getDouble(offset + BEST_LAY_OFFSET),
+                    buffer.getDouble(offset + LAST_TRADED_OFFSET));
+        }
+        return n;
+    }
+
+    private int offsetOf(long record) {
+        return (int) (record % capacity) * RECORD_SIZE;
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.scidef.betfair.api.prices;
+
+/**
+ * A reusable, caller-owned holder for a window of price history read from a
+ * <code>PriceRing</code>. Entries are ordered oldest first.
+ * <p/>
+ * Prices that were not available at the time of a snapshot are <code>NaN</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PriceSeries {
+
+    private final long[] timestamps;
+    private final double[] bestBack;
+    private final double[] bestLay;
+    private final double[] lastTraded;
+    private int size;
+
+    /**
+     * @param capacity the largest number of entries this series can hold
+     */
+    public PriceSeries(int capacity) {
+        timestamps = new long[capacity];
+        bestBack = new double[capacity];
+        bestLay = new double[capacity];
+        lastTraded = new double[capacity];
+    }
+
+    public int getCapacity() {
+        return timestamps.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTimestamp(int i) {
+        return timestamps[i];
+    }
+
+    public double getBestBack(int i) {
+        return bestBack[i];
+    }
+
+    public double getBestLay(int i) {
+        return bestLay[i];
+    }
+
+    public double getLastTraded(int i) {
+        return lastTraded[i];
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    void set(int i, long timestamp, double back, double lay, double traded) {
+        timestamps[i] = timestamp;
+        bestBack[i] = back;
+        bestLay[i] = lay;
+        lastTraded[i] = traded;
+    }
+
+    void setSize(int size) {
+        this.size = size;
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.scidef.betfair.api.strategy;
+
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.prices.MarketBook;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snapshot of a market's prices, as dispatched to strategies by the <code>StrategyRuntime</code>.
+ * <p/>
+ * The same snapshot is shared by every strategy subscribed to the market, so neither the
+ * runners nor the book should be modified.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class BookSnapshot {
+
+    private final int marketId;
+    private final long timestamp;
+    private final List<RunnerPricesWrapper> runners;
+    private final MarketBook book;
+
+    /**
+     * @param marketId  the id of the market
+     * @param timestamp the time (in ms since the epoch) at which the prices were polled
+     * @param runners   the parsed runner prices
+     * @param book      a copy of the market book, updated from the runner prices
+     */
+    public BookSnapshot(int marketId, long timestamp, List<RunnerPricesWrapper> runners, MarketBook book) {
+        this.marketId = marketId;
+        this.timestamp = timestamp;
+        this.runners = Collections.unmodifiableList(runners);
+        this.book = book;
+    }
+
+    public int getMarketId() {
+        return marketId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<RunnerPricesWrapper> getRunners() {
+        return runners;
+    }
+
+    public MarketBook getBook() {
+        return book;
+    }
+
+}
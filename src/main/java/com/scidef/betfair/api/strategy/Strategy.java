@@ -0,0 +1,34 @@
+package com.scidef.betfair.api.strategy;
+
+import com.scidef.betfair.api.Bet;
+
+import java.util.List;
+
+/**
+ * A pluggable piece of trading logic, run by the <code>StrategyRuntime</code> on each
+ * new book snapshot of the markets it subscribes to.
+ * <p/>
+ * Strategies for different markets, and different strategies for the same market, are
+ * evaluated concurrently, but the runtime never evaluates one strategy on two snapshots
+ * of the same market at once. A strategy that keeps state across markets must guard it.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public interface Strategy {
+
+    /**
+     * @return a name for the strategy, used in logging and latency reporting
+     */
+    String getName();
+
+    /**
+     * Evaluate a snapshot of a market's book.
+     *
+     * @param snapshot the snapshot of the book
+     * @return the bets the strategy wants to place, which may be empty but should not be null
+     * @throws Exception if the evaluation fails; the snapshot is skipped for this strategy only
+     */
+    List<Bet> evaluate(BookSnapshot snapshot) throws Exception;
+
+}
@@ -0,0 +1,481 @@
+package com.scidef.betfair.api.strategy;
+
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.ExchangeAPI;
+import com.scidef.betfair.api.HorseRacing;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.account.FundsTracker;
+import com.scidef.betfair.api.account.OwnOrderBook;
+import com.scidef.betfair.api.aop.ExceededMaxRetriesException;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.paper.PaperExchange;
+import com.scidef.betfair.api.prices.MarketBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs pluggable <code>Strategy</code>s against the markets they subscribe to.
+ * <p/>
+ * Each time new prices are received for a market, the market's <code>MarketBook</code>
+ * is updated and a <code>BookSnapshot</code> is dispatched to every subscribed strategy
+ * in parallel on a work-stealing fork/join pool. The bets returned by the strategies
+ * are collected and placed in batches of up to <code>MAX_BETS_PER_REQUEST</code> per
+ * market, or only logged if mock bets are enabled (the default). If a <code>PaperExchange</code>
+ * is set, mock bets are placed on it instead, and matched against the prices of the
+ * following snapshots. If a <code>FundsTracker</code> is set, a batch is only placed if the
+ * locally tracked funds cover its liability.
+ * <p/>
+ * Strategies are isolated from each other: a strategy that throws an exception only
+ * loses its own evaluation, and bets are placed once every strategy has finished or the
+ * evaluation timeout has passed, whichever comes first. Bets from a strategy that misses
+ * the timeout are discarded, and while it is still running it is not given any further
+ * snapshots of the same market, so a slow strategy can neither hold up the others nor
+ * build up a backlog. An evaluation that misses the timeout before it has started is
+ * cancelled, and a strategy is only given snapshots of up to <code>maxInFlight</code>
+ * markets at a time, so one stuck on many markets cannot tie up the whole pool.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class StrategyRuntime {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StrategyRuntime.class);
+
+    public static final int MAX_BETS_PER_REQUEST = 60;
+
+    private static final long DEFAULT_EVALUATION_TIMEOUT_MILLIS = 500;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private final ExchangeAPI exchangeAPI;
+    private final ForkJoinPool pool;
+    private final long evaluationTimeoutNanos;
+
+    private final ConcurrentMap<Strategy, Subscription> subscriptions = new ConcurrentHashMap<Strategy, Subscription>();
+    private final ConcurrentMap<Integer, List<Subscription>> subscriptionsByMarket =
+            new ConcurrentHashMap<Integer, List<Subscription>>();
+    private final ConcurrentMap<Integer, MarketBook> books = new ConcurrentHashMap<Integer, MarketBook>();
+
+    private volatile boolean mockBets = true; // set this to false to place bets
+    private volatile OwnOrderBook ownOrderBook; // if set, placed bets are added to it
+    private volatile FundsTracker fundsTracker; // if set, bets are only placed if the funds cover them
+    private volatile PaperExchange paperExchange; // if set, mock bets are placed on it rather than only logged
+    private volatile int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Create a runtime with its own fork/join pool, sized to the number of processors.
+     *
+     * @param exchangeAPI the exchange API used to place bets
+     */
+    public StrategyRuntime(ExchangeAPI exchangeAPI) {
+        this(exchangeAPI, new ForkJoinPool(Runtime.getRuntime().availableProcessors()),
+                DEFAULT_EVALUATION_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param exchangeAPI             the exchange API used to place bets
+     * @param pool                    the fork/join pool on which to evaluate strategies
+     * @param evaluationTimeoutMillis how long to wait for strategies to evaluate a snapshot
+     *                                before placing the bets collected so far
+     */
+    public StrategyRuntime(ExchangeAPI exchangeAPI, ForkJoinPool pool, long evaluationTimeoutMillis) {
+        this.exchangeAPI = exchangeAPI;
+        this.pool = pool;
+        this.evaluationTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(evaluationTimeoutMillis);
+    }
+
+    /**
+     * Subscribe a strategy to one or more markets.
+     *
+     * @param strategy  the strategy
+     * @param marketIds the ids of the markets
+     */
+    public void subscribe(Strategy strategy, int... marketIds) {
+        Subscription subscription = subscriptions.get(strategy);
+        if (subscription == null) {
+            Subscription created = new Subscription(strategy);
+            subscription = subscriptions.putIfAbsent(strategy, created);
+            if (subscription == null) {
+                subscription = created;
+            }
+        }
+        for (int marketId : marketIds) {
+            List<Subscription> market = subscriptionsByMarket.get(marketId);
+            if (market == null) {
+                List<Subscription> created = new CopyOnWriteArrayList<Subscription>();
+                market = subscriptionsByMarket.putIfAbsent(marketId, created);
+                if (market == null) {
+                    market = created;
+                }
+            }
+            if (!market.contains(subscription)) {
+                market.add(subscription);
+            }
+        }
+    }
+
+    /**
+     * Unsubscribe a strategy from one or more markets.
+     *
+     * @param strategy  the strategy
+     * @param marketIds the ids of the markets
+     */
+    public void unsubscribe(Strategy strategy, int... marketIds) {
+        Subscription subscription = subscriptions.get(strategy);
+        if (subscription == null) {
+            return;
+        }
+        for (int marketId : marketIds) {
+            List<Subscription> market = subscriptionsByMarket.get(marketId);
+            if (market != null) {
+                market.remove(subscription);
+            }
+        }
+    }
+
+    /**
+     * @return the ids of the markets that at least one strategy subscribes to
+     */
+    public Set<Integer> getSubscribedMarkets() {
+        Set<Integer> marketIds = new TreeSet<Integer>();
+        for (Map.Entry<Integer, List<Subscription>> entry : subscriptionsByMarket.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                marketIds.add(entry.getKey());
+            }
+        }
+        return marketIds;
+    }
+
+    /**
+     * Poll a market's prices and dispatch them to the subscribed strategies.
+     *
+     * @param horseRacing the source of the prices
+     * @param marketId    the id of the market
+     * @return the bets asked for by the strategies
+     * @throws BetfairException if there is a problem retrieving the prices
+     */
+    public List<Bet> poll(HorseRacing horseRacing, int marketId) throws BetfairException {
+        List<RunnerPricesWrapper> runners = horseRacing.getRunners(marketId);
+        if (runners == null) {
+            return Collections.emptyList();
+        }
+        return onPrices(marketId, runners);
+    }
+
+    /**
+     * Update a market's book from new prices, dispatch a snapshot to the subscribed
+     * strategies and place the bets they ask for. Any paper exchange is given the prices
+     * first, so that its waiting bets are matched before the strategies see them.
+     *
+     * @param marketId the id of the market
+     * @param runners  the parsed runner prices
+     * @return the bets asked for by the strategies
+     */
+    public List<Bet> onPrices(int marketId, List<RunnerPricesWrapper> runners) {
+        PaperExchange paperExchange = this.paperExchange;
+        if (paperExchange != null) {
+            paperExchange.onPrices(marketId, runners);
+        }
+
+        List<Subscription> market = subscriptionsByMarket.get(marketId);
+        if (market == null || market.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        MarketBook book = getBook(marketId);
+        BookSnapshot snapshot;
+        synchronized (book) {
+            book.update(runners);
+            snapshot = new BookSnapshot(marketId, System.currentTimeMillis(),
+                    new ArrayList<RunnerPricesWrapper>(runners), new MarketBook(book));
+        }
+
+        List<Bet> bets = evaluate(snapshot, market);
+        placeBets(bets);
+        return bets;
+    }
+
+    /**
+     * @param strategy the strategy
+     * @return the evaluation counts and latency for the strategy, or null if it has never
+     *         been subscribed
+     */
+    public StrategyStats getStats(Strategy strategy) {
+        Subscription subscription = subscriptions.get(strategy);
+        return subscription != null ? subscription.stats : null;
+    }
+
+    /**
+     * Forget a market's book and subscriptions, eg once it has been settled.
+     *
+     * @param marketId the id of the market
+     */
+    public void removeMarket(int marketId) {
+        subscriptionsByMarket.remove(marketId);
+        books.remove(marketId);
+    }
+
+    /**
+     * Shut down the fork/join pool. Strategies still running are left to finish.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    public boolean isMockBets() {
+        return mockBets;
+    }
+
+    public void setMockBets(boolean mockBets) {
+        this.mockBets = mockBets;
+    }
+
+    public OwnOrderBook getOwnOrderBook() {
+        return ownOrderBook;
+    }
+
+    public void setOwnOrderBook(OwnOrderBook ownOrderBook) {
+        this.ownOrderBook = ownOrderBook;
+    }
+
+    public FundsTracker getFundsTracker() {
+        return fundsTracker;
+    }
+
+    public void setFundsTracker(FundsTracker fundsTracker) {
+        this.fundsTracker = fundsTracker;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @param maxInFlight the most evaluations a single strategy may have running at once,
+     *                    across all of its markets
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public PaperExchange getPaperExchange() {
+        return paperExchange;
+    }
+
+    public void setPaperExchange(PaperExchange paperExchange) {
+        this.paperExchange = paperExchange;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private MarketBook getBook(int marketId) {
+        MarketBook book = books.get(marketId);
+        if (book == null) {
+            MarketBook created = new MarketBook(marketId);
+            book = books.putIfAbsent(marketId, created);
+            if (book == null) {
+                book = created;
+            }
+        }
+        return book;
+    }
+
+    private List<Bet> evaluate(BookSnapshot snapshot, List<Subscription> market) {
+        List<Subscription> dispatched = new ArrayList<Subscription>(market.size());
+        List<Evaluation> evaluations = new ArrayList<Evaluation>(market.size());
+        List<Future<List<Bet>>> futures = new ArrayList<Future<List<Bet>>>(market.size());
+        for (Subscription subscription : market) {
+            if (!subscription.inFlightMarkets.add(snapshot.getMarketId())) {
+                subscription.stats.recordSkipped();
+                continue;
+            }
+            if (subscription.inFlight.incrementAndGet() > maxInFlight) {
+                subscription.release(snapshot.getMarketId());
+                subscription.stats.recordSkipped();
+                LOG.warn("Strategy " + subscription.strategy.getName() + " already has " + maxInFlight +
+                        " evaluations in flight; skipping marketId " + snapshot.getMarketId());
+                continue;
+            }
+            Evaluation evaluation = new Evaluation(subscription, snapshot);
+            dispatched.add(subscription);
+            evaluations.add(evaluation);
+            futures.add(pool.submit(evaluation));
+        }
+
+        List<Bet> bets = new ArrayList<Bet>();
+        long deadline = System.nanoTime() + evaluationTimeoutNanos;
+        for (int i = 0; i < futures.size(); i++) {
+            Subscription subscription = dispatched.get(i);
+            try {
+                List<Bet> strategyBets = futures.get(i).get(
+                        Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (strategyBets != null) {
+                    bets.addAll(strategyBets);
+                    subscription.stats.recordBets(strategyBets.size());
+                }
+            } catch (TimeoutException e) {
+                subscription.stats.recordTimeout();
+                evaluations.get(i).cancel();
+                futures.get(i).cancel(false);
+                LOG.warn("Strategy " + subscription.strategy.getName() + " timed out evaluating marketId " +
+                        snapshot.getMarketId() + "; its bets will be discarded");
+            } catch (ExecutionException e) {
+                LOG.error("Strategy " + subscription.strategy.getName() + " failed evaluating marketId " +
+                        snapshot.getMarketId(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted waiting for strategies to evaluate marketId " + snapshot.getMarketId());
+                break;
+            }
+        }
+        return bets;
+    }
+
+    private void placeBets(List<Bet> bets) {
+        if (bets.isEmpty()) {
+            return;
+        }
+
+        // placeBets only accepts bets on a single market
+        Map<Integer, List<Bet>> betsByMarket = new LinkedHashMap<Integer, List<Bet>>();
+        for (Bet bet : bets) {
+            List<Bet> marketBets = betsByMarket.get(bet.getMarketId());
+            if (marketBets == null) {
+                marketBets = new ArrayList<Bet>();
+                betsByMarket.put(bet.getMarketId(), marketBets);
+            }
+            marketBets.add(bet);
+        }
+
+        for (Map.Entry<Integer, List<Bet>> entry : betsByMarket.entrySet()) {
+            List<Bet> marketBets = entry.getValue();
+            for (int from = 0; from < marketBets.size(); from += MAX_BETS_PER_REQUEST) {
+                List<Bet> batch = marketBets.subList(from, Math.min(from + MAX_BETS_PER_REQUEST, marketBets.size()));
+                if (mockBets) {
+                    PaperExchange paperExchange = this.paperExchange;
+                    if (paperExchange != null) {
+                        applyBetIds(batch, paperExchange.placeBets(batch));
+                    } else {
+                        LOG.info("Mock placing " + batch.size() + " bets on marketId " + entry.getKey() + ": " + batch);
+                    }
+                    continue;
+                }
+                FundsTracker fundsTracker = this.fundsTracker;
+                if (fundsTracker != null) {
+                    fundsTracker.reconcileIfDue();
+                    if (!fundsTracker.canAfford(batch)) {
+                        LOG.warn("Insufficient funds to place " + batch.size() + " bets on marketId " + entry.getKey());
+                        continue;
+                    }
+                }
+                try {
+                    PlaceBetsResp resp = exchangeAPI.placeBets(batch);
+                    applyBetIds(batch, resp);
+                    OwnOrderBook ownOrderBook = this.ownOrderBook;
+                    if (ownOrderBook != null) {
+                        ownOrderBook.onPlaced(batch, resp);
+                    }
+                } catch (BetfairException e) {
+                    LOG.error("Failed to place " + batch.size() + " bets on marketId " + entry.getKey(), e);
+                } catch (ExceededMaxRetriesException e) {
+                    LOG.error("Failed to place " + batch.size() + " bets on marketId " + entry.getKey(), e);
+                }
+            }
+        }
+    }
+
+    // results are returned in the same order as the bets in the request
+    private static void applyBetIds(List<Bet> batch, PlaceBetsResp resp) {
+        if (resp.getBetResults() == null) {
+            return;
+        }
+        List<PlaceBetsResult> results = resp.getBetResults().getPlaceBetsResult();
+        for (int i = 0; i < results.size() && i < batch.size(); i++) {
+            PlaceBetsResult result = results.get(i);
+            if (result.isSuccess()) {
+                batch.get(i).setBetId(result.getBetId());
+                batch.get(i).setAmountMatched(result.getSizeMatched());
+            } else {
+                LOG.warn("Failed to place bet " + batch.get(i) + ": " + result.getResultCode());
+            }
+        }
+    }
+
+    private static class Subscription {
+
+        private final Strategy strategy;
+        private final StrategyStats stats;
+        private final Set<Integer> inFlightMarkets = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Subscription(Strategy strategy) {
+            this.strategy = strategy;
+            this.stats = new StrategyStats(strategy.getName());
+        }
+
+        private void release(int marketId) {
+            inFlight.decrementAndGet();
+            inFlightMarkets.remove(marketId);
+        }
+    }
+
+    private static class Evaluation implements Callable<List<Bet>> {
+
+        private final Subscription subscription;
+        private final BookSnapshot snapshot;
+        private final AtomicBoolean claimed = new AtomicBoolean(); // set once the evaluation has started or been cancelled
+
+        private Evaluation(Subscription subscription, BookSnapshot snapshot) {
+            this.subscription = subscription;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public List<Bet> call() throws Exception {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                List<Bet> bets = subscription.strategy.evaluate(snapshot);
+                failed = false;
+                return bets;
+            } finally {
+                subscription.stats.recordEvaluation(System.nanoTime() - start, failed);
+                subscription.release(snapshot.getMarketId());
+            }
+        }
+
+        // an evaluation that has already started cannot be stopped, and releases its own slot when it finishes
+        private void cancel() {
+            if (claimed.compareAndSet(false, true)) {
+                subscription.release(snapshot.getMarketId());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.scidef.betfair.api.strategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluation counts and latency for one strategy in a <code>StrategyRuntime</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class StrategyStats {
+
+    private final String name;
+    private final AtomicLong evaluations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bets = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    StrategyStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of snapshots the strategy has evaluated, including failures
+     */
+    public long getEvaluations() {
+        return evaluations.get();
+    }
+
+    /**
+     * @return the number of evaluations that threw an exception
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of evaluations whose bets were discarded for taking too long
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the number of snapshots not dispatched to the strategy because it was still
+     *         evaluating an earlier snapshot of the same market
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the number of bets the strategy has asked to place
+     */
+    public long getBets() {
+        return bets.get();
+    }
+
+    /**
+     * @return the mean evaluation time, in microseconds
+     */
+    public long getMeanLatency() {
+        long count = evaluations.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / count);
+    }
+
+    /**
+     * @return the longest evaluation time, in microseconds
+     */
+    public long getMaxLatency() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "StrategyStats{" +
+                "name='" + name + '\'' +
+                ", evaluations=" + getEvaluations() +
+                ", failures=" + getFailures() +
+                ", timeouts=" + getTimeouts() +
+                ", skipped=" + getSkipped() +
+                ", bets=" + getBets() +
+                ", meanLatency=" + getMeanLatency() + "us" +
+                ", maxLatency=" + getMaxLatency() + "us" +
+                '}';
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    void recordEvaluation(long nanos, boolean failed) {
+        evaluations.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+        if (failed) {
+            failures.incrementAndGet();
+        }
+    }
+
+    void recordTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    void recordSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    void recordBets(int count) {
+        bets.addAndGet(count);
+    }
+
+}
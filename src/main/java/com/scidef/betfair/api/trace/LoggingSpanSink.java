@@ -0,0 +1,53 @@
+package com.scidef.betfair.api.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A sink that logs each span at debug level, or only the spans that took at least a given
+ * time at info level.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class LoggingSpanSink implements SpanSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingSpanSink.class);
+
+    private final long thresholdNanos;
+
+    /**
+     * Log every span at debug level.
+     */
+    public LoggingSpanSink() {
+        this.thresholdNanos = -1;
+    }
+
+    /**
+     * @param thresholdMicros the time, in microseconds, from which a span is logged at info level;
+     *                        quicker spans are not logged
+     */
+    public LoggingSpanSink(long thresholdMicros) {
+        this.thresholdNanos = thresholdMicros * 1000;
+    }
+
+    @Override
+    public void accept(Span span) {
+        if (thresholdNanos < 0) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(format(span));
+            }
+        } else if (span.getDurationNanos() >= thresholdNanos) {
+            LOG.info(format(span));
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static String format(Span span) {
+        return "trace=" + span.getTraceId() + " span=" + span.getSpanId() + " parent=" + span.getParentSpanId() +
+                " name=" + span.getName() + " duration=" + (span.getDurationNanos() / 1000) + "us";
+    }
+
+}
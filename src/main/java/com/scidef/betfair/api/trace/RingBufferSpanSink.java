@@ -0,0 +1,148 @@
+package com.scidef.betfair.api.trace;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A sink that keeps the most recent spans in memory, to be dumped when something is slow.
+ * <p/>
+ * The buffer is a fixed array of slots (rounded up to a power of two) written round-robin
+ * without locking, so once it is full each new span overwrites the oldest. A dump taken
+ * while spans are being written may miss the spans written during it.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class RingBufferSpanSink implements SpanSink {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final AtomicReferenceArray<Span> slots;
+    private final int mask;
+    private final AtomicLong written = new AtomicLong();
+
+    public RingBufferSpanSink() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of spans to keep, rounded up to a power of two
+     */
+    public RingBufferSpanSink(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<Span>(size);
+        this.mask = slots.length() - 1;
+    }
+
+    @Override
+    public void accept(Span span) {
+        slots.lazySet((int) (written.getAndIncrement() & mask), span);
+    }
+
+    /**
+     * @return the spans in the buffer, oldest first
+     */
+    public List<Span> getSpans() {
+        long end = written.get();
+        long start = Math.max(0, end - slots.length());
+        List<Span> spans = new ArrayList<Span>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Span span = slots.get((int) (i & mask));
+            if (span != null) {
+                spans.add(span);
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * @return the total number of spans written, including those since overwritten
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    /**
+     * Clear the buffer.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+
+    /**
+     * Dump the spans in the buffer as text, one trace at a time with each span indented under
+     * its parent and timed from the start of the trace, eg:
+     * <pre>
+     * trace 7
+     *   HorseRacing.getRunners                         +0us    1834us
+     *     ExchangeAPI.getMarketPricesCompressed        +3us    1612us
+     *     MessageUtil.parseCompressedMarketPrices   +1619us     207us
+     * </pre>
+     *
+     * @return the dump
+     */
+    public String dump() {
+        Map<Long, List<Span>> traces = new LinkedHashMap<Long, List<Span>>();
+        for (Span span : getSpans()) {
+            List<Span> trace = traces.get(span.getTraceId());
+            if (trace == null) {
+                trace = new ArrayList<Span>();
+                traces.put(span.getTraceId(), trace);
+            }
+            trace.add(span);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Long, List<Span>> trace : traces.entrySet()) {
+            sb.append("trace ").append(trace.getKey()).append("\n");
+            dumpTrace(trace.getValue(), sb);
+        }
+        return sb.toString();
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static void dumpTrace(List<Span> spans, StringBuilder sb) {
+        // children are emitted before their parents, so order by start time to print top down
+        List<Span> ordered = new ArrayList<Span>(spans);
+        Collections.sort(ordered, new Comparator<Span>() {
+            @Override
+            public int compare(Span a, Span b) {
+                long diff = a.getStartNanos() - b.getStartNanos();
+                return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+            }
+        });
+        Map<Long, Integer> depths = new HashMap<Long, Integer>();
+        long traceStart = ordered.get(0).getStartNanos();
+        for (Span span : ordered) {
+            Integer parentDepth = depths.get(span.getParentSpanId());
+            int depth = parentDepth != null ? parentDepth + 1 : 1;
+            depths.put(span.getSpanId(), depth);
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                line.append("  ");
+            }
+            line.append(span.getName());
+            sb.append(String.format("%-48s %+8dus %8dus%n", line,
+                    (span.getStartNanos() - traceStart) / 1000, span.getDurationNanos() / 1000));
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.scidef.betfair.api.trace;
+
+/**
+ * A timed stage of a request, eg a call to <code>ExchangeAPI.getMarketPricesCompressed</code>
+ * or the parsing of its response.
+ * <p/>
+ * Spans are started by <code>Tracer.start</code> and must be ended, on the same thread, by
+ * <code>end</code>. Every span belongs to a trace: a span started while another is open on
+ * the thread is its child and shares its trace id, and one started with none open begins a
+ * new trace. Times are from <code>System.nanoTime</code>, so they are only comparable within
+ * one JVM.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public final class Span {
+
+    // the span returned while tracing is off; ending it does nothing
+    static final Span NOOP = new Span(0, 0, null, "noop", 0);
+
+    private final long traceId;
+    private final long spanId;
+    private final long parentSpanId;
+    private final String name;
+    private final long startNanos;
+    private volatile long endNanos;
+
+    private Span parent; // the span to restore on the thread when this one ends
+
+    Span(long traceId, long spanId, Span parent, String name, long startNanos) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parent = parent;
+        this.parentSpanId = parent != null ? parent.spanId : 0;
+        this.name = name;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * End the span and emit it to the sink.
+     */
+    public void end() {
+        if (this == NOOP || endNanos != 0) {
+            return;
+        }
+        endNanos = System.nanoTime();
+        Tracer.end(this, parent);
+        parent = null;
+    }
+
+    public long getTraceId() {
+        return traceId;
+    }
+
+    public long getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * @return the id of the span this one is nested in, or 0 if it is the root of its trace
+     */
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return the end time, or 0 if the span has not ended
+     */
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    public long getDurationNanos() {
+        return endNanos - startNanos;
+    }
+
+    public boolean isRoot() {
+        return parentSpanId == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Span[" + traceId + "/" + spanId + " " + name + " " + (getDurationNanos() / 1000) + "us]";
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // for a span recorded after the fact
+    Span(long traceId, long spanId, long parentSpanId, String name, long startNanos, long endNanos) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+    }
+
+}
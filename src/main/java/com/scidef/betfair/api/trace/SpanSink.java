@@ -0,0 +1,16 @@
+package com.scidef.betfair.api.trace;
+
+/**
+ * Receives each span as it ends.
+ * <p/>
+ * Spans are emitted on the thread that ended them, on the path of the request being traced,
+ * so an implementation must be quick and safe to call from many threads at once.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public interface SpanSink {
+
+    void accept(Span span);
+
+}
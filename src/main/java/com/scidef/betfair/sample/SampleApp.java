@@ -3,6 +3,7 @@ package com.scidef.betfair.sample;
 import com.scidef.betfair.api.ExchangeAPI;
 import com.scidef.betfair.api.GlobalAPI;
 import com.scidef.betfair.api.HorseRacing;
+import com.scidef.betfair.api.ServiceBootstrap;
 import com.scidef.betfair.api.exception.BetfairException;
 
 import java.util.ArrayList;
@@ -28,9 +29,11 @@ public class SampleApp {
     // file or passed in on the command line
 
     public static void main(String[] args) throws BetfairException {
-        // setup the HorseRacing class for use
-        GlobalAPI globalAPI = new GlobalAPI();
-        ExchangeAPI exchangeAPI = new ExchangeAPI(globalAPI);
+        // build the service ports up front, then setup the HorseRacing class for use
+        ServiceBootstrap bootstrap = new ServiceBootstrap();
+        bootstrap.start();
+        GlobalAPI globalAPI = new GlobalAPI(bootstrap);
+        ExchangeAPI exchangeAPI = new ExchangeAPI(globalAPI, bootstrap);
         HorseRacing horseRacing = new HorseRacing(USERNAME, PASSWORD, globalAPI, exchangeAPI);
 
         // include only events that meet the pattern for standard races
@@ -0,0 +1,96 @@
+package com.scidef.betfair.stub;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The delay a <code>StubServer</code> adds before each response, to stand in for the
+ * latency of the real services.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public abstract class LatencyDistribution {
+
+    /**
+     * @return a distribution that adds no delay
+     */
+    public static LatencyDistribution none() {
+        return fixed(0);
+    }
+
+    /**
+     * @param millis the delay, in ms
+     * @return a distribution that always adds the same delay
+     */
+    public static LatencyDistribution fixed(final long millis) {
+        return new LatencyDistribution() {
+            @Override
+            protected long nextMillis(Random random) {
+                return millis;
+            }
+
+            @Override
+            public String toString() {
+                return "fixed(" + millis + "ms)";
+            }
+        };
+    }
+
+    /**
+     * @param minMillis the shortest delay, in ms
+     * @param maxMillis the longest delay, in ms
+     * @return a distribution with delays spread evenly between the two
+     */
+    public static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+        if (maxMillis < minMillis) {
+            throw new IllegalArgumentException("maxMillis < minMillis");
+        }
+        return new LatencyDistribution() {
+            @Override
+            protected long nextMillis(Random random) {
+                return minMillis + (long) (random.nextDouble() * (maxMillis - minMillis + 1));
+            }
+
+            @Override
+            public String toString() {
+                return "uniform(" + minMillis + "-" + maxMillis + "ms)";
+            }
+        };
+    }
+
+    /**
+     * A log-normal distribution, which has the long tail of real network latencies.
+     *
+     * @param medianMillis the median delay, in ms
+     * @param sigma        the standard deviation of the log of the delay; eg 0.5 puts the 99th
+     *                     percentile at about 3.2 times the median
+     * @return the distribution
+     */
+    public static LatencyDistribution logNormal(final double medianMillis, final double sigma) {
+        if (medianMillis <= 0 || sigma < 0) {
+            throw new IllegalArgumentException("Invalid log-normal distribution");
+        }
+        return new LatencyDistribution() {
+            @Override
+            protected long nextMillis(Random random) {
+                return Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return "logNormal(" + medianMillis + "ms, " + sigma + ")";
+            }
+        };
+    }
+
+    /**
+     * @return the delay before the next response, in ms
+     */
+    public long nextMillis() {
+        return Math.max(0, nextMillis(ThreadLocalRandom.current()));
+    }
+
+    protected abstract long nextMillis(Random random);
+
+}
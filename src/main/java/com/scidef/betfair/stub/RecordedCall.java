@@ -0,0 +1,57 @@
+package com.scidef.betfair.stub;
+
+/**
+ * A SOAP request made to one of the Betfair services, and the response it got.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public final class RecordedCall {
+
+    private final String service;
+    private final String operation;
+    private final String request;
+    private final String response;
+    private final int status;
+
+    /**
+     * @param service   the service called, <code>StubServer.GLOBAL</code> or <code>StubServer.EXCHANGE</code>
+     * @param operation the operation called, eg <code>getMarketPricesCompressed</code>
+     * @param request   the SOAP request envelope
+     * @param response  the SOAP response envelope
+     * @param status    the HTTP status of the response
+     */
+    public RecordedCall(String service, String operation, String request, String response, int status) {
+        this.service = service;
+        this.operation = operation;
+        this.request = request;
+        this.response = response;
+        this.status = status;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordedCall[" + service + " " + operation + " " + status + "]";
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.scidef.betfair.stub;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A set of recorded calls to the Betfair services, as made by a <code>TrafficRecorder</code>
+ * and served back by a <code>StubServer</code>.
+ * <p/>
+ * A recording is saved to a directory with an index, <code>calls.txt</code>, holding a line
+ * for each call of the form <code>id service operation status</code>, and the request and
+ * response of each call in <code>id.request.xml</code> and <code>id.response.xml</code>.
+ * Calls can be added to the index and files by hand, eg to cover an error response.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class Recording {
+
+    public static final String INDEX = "calls.txt";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<RecordedCall> calls = new CopyOnWriteArrayList<RecordedCall>();
+
+    public void add(RecordedCall call) {
+        calls.add(call);
+    }
+
+    /**
+     * @return the calls, in the order they were recorded
+     */
+    public List<RecordedCall> getCalls() {
+        return new ArrayList<RecordedCall>(calls);
+    }
+
+    public int size() {
+        return calls.size();
+    }
+
+    /**
+     * Save the recording to a directory, which is created if need be.
+     *
+     * @param dir the directory
+     * @throws IOException if the recording cannot be written
+     */
+    public void save(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        StringBuilder index = new StringBuilder();
+        int id = 0;
+        for (RecordedCall call : calls) {
+            String name = String.format("%05d", ++id);
+            write(new File(dir, name + ".request.xml"), call.getRequest());
+            write(new File(dir, name + ".response.xml"), call.getResponse());
+            index.append(name).append(' ').append(call.getService()).append(' ')
+                    .append(call.getOperation()).append(' ').append(call.getStatus()).append('\n');
+        }
+        write(new File(dir, INDEX), index.toString());
+    }
+
+    /**
+     * Load a recording saved to a directory.
+     *
+     * @param dir the directory
+     * @return the recording
+     * @throws IOException if the recording cannot be read
+     */
+    public static Recording load(File dir) throws IOException {
+        Recording recording = new Recording();
+        BufferedReader index = new BufferedReader(reader(new FileInputStream(new File(dir, INDEX))));
+        try {
+            String line;
+            while ((line = index.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 4) {
+                    throw new IOException("Invalid line in " + INDEX + ": " + line);
+                }
+                recording.add(new RecordedCall(fields[1], fields[2],
+                        read(new File(dir, fields[0] + ".request.xml")),
+                        read(new File(dir, fields[0] + ".response.xml")),
+                        Integer.parseInt(fields[3])));
+            }
+        } finally {
+            index.close();
+        }
+        return recording;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static Reader reader(InputStream in) {
+        return new InputStreamReader(in, UTF_8);
+    }
+
+    private static String read(File file) throws IOException {
+        Reader reader = reader(new FileInputStream(file));
+        try {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, n);
+            }
+            return sb.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF_8));
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.scidef.betfair.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for the SOAP messages handled by the <code>StubServer</code> and
+ * <code>TrafficRecorder</code>. The messages are only looked at as text, so no more of each
+ * is parsed than the few elements needed.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+final class SoapMessages {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final String CONTENT_TYPE = "text/xml; charset=utf-8";
+
+    // the first element in the soap body, which is named after the operation
+    private static final Pattern OPERATION =
+            Pattern.compile("<(?:[\\w.-]+:)?Body\\b[^>]*>\\s*<(?:[\\w.-]+:)?([\\w.-]+)");
+    // the parts of a request that change from call to call
+    private static final Pattern VOLATILE_ELEMENTS =
+            Pattern.compile("<(sessionToken|clientStamp)\\b[^>]*?(?:/>|>[^<]*</\\1>)");
+    private static final Pattern WHITESPACE_BETWEEN_ELEMENTS = Pattern.compile(">\\s+<");
+    private static final Pattern HEADER_ERROR_CODE =
+            Pattern.compile("(<header\\b[^>]*>.*?<errorCode\\b[^>]*>)[^<]*(</errorCode>)", Pattern.DOTALL);
+    private static final Pattern RESULT_ERROR_CODE =
+            Pattern.compile("(</header>\\s*<errorCode\\b[^>]*>)[^<]*(</errorCode>)");
+
+    private SoapMessages() {
+    }
+
+    /**
+     * @param request a SOAP request envelope
+     * @return the name of the operation called, or null if the envelope has no body
+     */
+    static String getOperation(String request) {
+        Matcher matcher = OPERATION.matcher(request);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * @param request a SOAP request envelope
+     * @return the request without its session token, client stamp or the whitespace between
+     *         elements, so that repeats of the same call compare equal
+     */
+    static String normalise(String request) {
+        String normalised = VOLATILE_ELEMENTS.matcher(request).replaceAll("<$1/>");
+        return WHITESPACE_BETWEEN_ELEMENTS.matcher(normalised).replaceAll("><").trim();
+    }
+
+    /**
+     * Turn a recorded response into an error response of the same type, by replacing the
+     * error code in its header with an API error code, and its own error code with
+     * <code>API_ERROR</code>.
+     *
+     * @param response     a recorded SOAP response envelope
+     * @param apiErrorCode the API error code, eg <code>EXCEEDED_THROTTLE</code>
+     * @return the error response, or null if the response has no header error code
+     */
+    static String toErrorResponse(String response, String apiErrorCode) {
+        Matcher header = HEADER_ERROR_CODE.matcher(response);
+        if (!header.find()) {
+            return null;
+        }
+        String error = header.replaceFirst("$1" + apiErrorCode + "$2");
+        return RESULT_ERROR_CODE.matcher(error).replaceFirst("$1API_ERROR$2");
+    }
+
+    /**
+     * @param faultString the reason for the fault
+     * @return a SOAP fault envelope
+     */
+    static String fault(String faultString) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>" +
+                "<soap:Fault><faultcode>soap:Server</faultcode><faultstring>" +
+                faultString.replace("&", "&amp;").replace("<", "&lt;") +
+                "</faultstring></soap:Fault></soap:Body></soap:Envelope>";
+    }
+
+    static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+}
@@ -0,0 +1,371 @@
+package com.scidef.betfair.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embedded HTTP server that stands in for the Betfair global and exchange services by
+ * serving back a <code>Recording</code> of real traffic, so that the <code>GlobalAPI</code>,
+ * <code>ExchangeAPI</code> and <code>StreamingExchangeAPI</code> can be load tested end to
+ * end, over their real transport, without touching Betfair:
+ * <pre>
+ * StubServer server = new StubServer(Recording.load(dir));
+ * server.setLatency(LatencyDistribution.logNormal(40, 0.5));
+ * server.setThrottleRate(0.01);
+ * server.start();
+ * ServiceBootstrap bootstrap = new ServiceBootstrap(server.getGlobalEndpoint(), server.getExchangeEndpoint());
+ * </pre>
+ * Each request is answered with a recorded response to the same call, ignoring its session
+ * token and client stamp; if the same call was recorded more than once, the responses are
+ * served in turn. A call that was not recorded is answered with a response to the same
+ * operation, and an operation that was not recorded with a SOAP fault.
+ * <p/>
+ * Each response is sent after a delay drawn from the <code>LatencyDistribution</code>. The
+ * delays are scheduled rather than slept, so slow responses don't hold up the threads
+ * reading requests. A proportion of requests can be answered with an
+ * <code>EXCEEDED_THROTTLE</code> or <code>NO_SESSION</code> error instead, made from a
+ * recorded response to the same operation, to exercise the <code>RetryMethodAspect</code>.
+ * <p/>
+ * It can also be run on its own: <code>StubServer recordingDir [port]</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class StubServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StubServer.class);
+
+    public static final String GLOBAL = "global";
+    public static final String EXCHANGE = "exchange";
+    public static final String GLOBAL_PATH = "/global/v3/BFGlobalService";
+    public static final String EXCHANGE_PATH = "/exchange/v5/BFExchangeService";
+
+    public static final int DEFAULT_THREADS = 16;
+
+    private static final String EXCEEDED_THROTTLE = "EXCEEDED_THROTTLE";
+    private static final String NO_SESSION = "NO_SESSION";
+    private static final int BACKLOG = 1024;
+
+    private final int port;
+    private final Map<String, Replies> repliesByCall = new HashMap<String, Replies>();
+    private final Map<String, Replies> repliesByOperation = new HashMap<String, Replies>();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double throttleRate; // the proportion of requests answered with EXCEEDED_THROTTLE
+    private volatile double noSessionRate; // the proportion of requests answered with NO_SESSION
+    private int threads = DEFAULT_THREADS;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong unmatched = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong noSessions = new AtomicLong();
+
+    /**
+     * Create a server on any free port.
+     *
+     * @param recording the calls to serve back
+     */
+    public StubServer(Recording recording) {
+        this(recording, 0);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param recording the calls to serve back
+     * @param port      the port to listen on, or 0 for any free port
+     */
+    public StubServer(Recording recording, int port) {
+        this.port = port;
+        Map<String, List<RecordedCall>> byCall = new HashMap<String, List<RecordedCall>>();
+        Map<String, List<RecordedCall>> byOperation = new HashMap<String, List<RecordedCall>>();
+        for (RecordedCall call : recording.getCalls()) {
+            add(byCall, callKey(call.getService(), SoapMessages.normalise(call.getRequest())), call);
+            add(byOperation, operationKey(call.getService(), call.getOperation()), call);
+        }
+        for (Map.Entry<String, List<RecordedCall>> entry : byCall.entrySet()) {
+            repliesByCall.put(entry.getKey(), new Replies(entry.getValue()));
+        }
+        for (Map.Entry<String, List<RecordedCall>> entry : byOperation.entrySet()) {
+            repliesByOperation.put(entry.getKey(), new Replies(entry.getValue()));
+        }
+    }
+
+    /**
+     * Start listening.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", port), BACKLOG);
+        server.createContext(GLOBAL_PATH, new Handler(GLOBAL));
+        server.createContext(EXCHANGE_PATH, new Handler(EXCHANGE));
+        executor = Executors.newFixedThreadPool(threads, daemonThreads("stub-server"));
+        scheduler = Executors.newScheduledThreadPool(Math.max(1, threads / 4), daemonThreads("stub-server-delay"));
+        server.setExecutor(executor);
+        server.start();
+        LOG.info("Stub server listening on port " + getPort() + " with " + repliesByCall.size() + " recorded calls");
+    }
+
+    /**
+     * Stop listening, abandoning any responses still waiting to be sent.
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * @return the port listened on
+     * @throws IllegalStateException if the server has not been started
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("StubServer has not been started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    public String getGlobalEndpoint() {
+        return "http://localhost:" + getPort() + GLOBAL_PATH;
+    }
+
+    public String getExchangeEndpoint() {
+        return "http://localhost:" + getPort() + EXCHANGE_PATH;
+    }
+
+    public void setLatency(LatencyDistribution latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param throttleRate the proportion of requests, from 0 to 1, to answer with an
+     *                     <code>EXCEEDED_THROTTLE</code> error
+     */
+    public void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    /**
+     * @param noSessionRate the proportion of requests, from 0 to 1, to answer with a
+     *                      <code>NO_SESSION</code> error
+     */
+    public void setNoSessionRate(double noSessionRate) {
+        this.noSessionRate = noSessionRate;
+    }
+
+    /**
+     * @param threads the number of threads reading requests; takes effect from the next <code>start</code>
+     */
+    public synchronized void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the number of requests received
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests for calls that were not recorded
+     */
+    public long getUnmatched() {
+        return unmatched.get();
+    }
+
+    /**
+     * @return the number of requests answered with an <code>EXCEEDED_THROTTLE</code> error
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return the number of requests answered with a <code>NO_SESSION</code> error
+     */
+    public long getNoSessions() {
+        return noSessions.get();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: StubServer recordingDir [port]");
+            System.exit(1);
+        }
+        StubServer server = new StubServer(Recording.load(new File(args[0])),
+                args.length > 1 ? Integer.parseInt(args[1]) : 0);
+        server.start();
+        System.out.println("Global service:   " + server.getGlobalEndpoint());
+        System.out.println("Exchange service: " + server.getExchangeEndpoint());
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private class Handler implements HttpHandler {
+
+        private final String service;
+
+        private Handler(String service) {
+            this.service = service;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            String request = new String(SoapMessages.read(exchange.getRequestBody()), SoapMessages.UTF_8);
+            final Reply reply = reply(service, request);
+            long delay = latency.nextMillis();
+            final HttpExchange pending = exchange;
+            if (delay <= 0) {
+                SoapMessages.respond(pending, reply.status, reply.body);
+                return;
+            }
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        SoapMessages.respond(pending, reply.status, reply.body);
+                    } catch (IOException e) {
+                        LOG.debug("Failed to send stub response", e);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+    private Reply reply(String service, String request) {
+        String operation = SoapMessages.getOperation(request);
+        Replies byOperation = repliesByOperation.get(operationKey(service, operation));
+        if (byOperation == null) {
+            unmatched.incrementAndGet();
+            return new Reply(HttpURLConnection.HTTP_INTERNAL_ERROR,
+                    SoapMessages.fault("No recorded response for " + service + " " + operation).getBytes(SoapMessages.UTF_8));
+        }
+
+        double error = throttleRate + noSessionRate > 0 ? ThreadLocalRandom.current().nextDouble() : 1;
+        if (error < throttleRate && byOperation.throttled != null) {
+            throttled.incrementAndGet();
+            return byOperation.throttled;
+        }
+        if (error >= throttleRate && error < throttleRate + noSessionRate && byOperation.noSession != null) {
+            noSessions.incrementAndGet();
+            return byOperation.noSession;
+        }
+
+        Replies byCall = repliesByCall.get(callKey(service, SoapMessages.normalise(request)));
+        if (byCall == null) {
+            unmatched.incrementAndGet();
+            return byOperation.next();
+        }
+        return byCall.next();
+    }
+
+    private static String callKey(String service, String normalisedRequest) {
+        return service + " " + normalisedRequest;
+    }
+
+    private static String operationKey(String service, String operation) {
+        return service + " " + operation;
+    }
+
+    private static void add(Map<String, List<RecordedCall>> map, String key, RecordedCall call) {
+        List<RecordedCall> calls = map.get(key);
+        if (calls == null) {
+            calls = new ArrayList<RecordedCall>();
+            map.put(key, calls);
+        }
+        calls.add(call);
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    // a response ready to send
+    private static class Reply {
+
+        private final int status;
+        private final byte[] body;
+
+        private Reply(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    // the responses recorded for a call or an operation, served in turn
+    private static class Replies {
+
+        private final Reply[] replies;
+        private final AtomicInteger next = new AtomicInteger();
+        private final Reply throttled;
+        private final Reply noSession;
+
+        private Replies(List<RecordedCall> calls) {
+            replies = new Reply[calls.size()];
+            String ok = null;
+            for (int i = 0; i < replies.length; i++) {
+                RecordedCall call = calls.get(i);
+                replies[i] = new Reply(call.getStatus(), call.getResponse().getBytes(SoapMessages.UTF_8));
+                if (ok == null && call.getStatus() == HttpURLConnection.HTTP_OK) {
+                    ok = call.getResponse();
+                }
+            }
+            throttled = errorReply(ok, EXCEEDED_THROTTLE);
+            noSession = errorReply(ok, NO_SESSION);
+        }
+
+        private Reply next() {
+            return replies[(next.getAndIncrement() & Integer.MAX_VALUE) % replies.length];
+        }
+
+        private static Reply errorReply(String response, String apiErrorCode) {
+            String error = response != null ? SoapMessages.toErrorResponse(response, apiErrorCode) : null;
+            return error != null ? new Reply(HttpURLConnection.HTTP_OK, error.getBytes(SoapMessages.UTF_8)) : null;
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.scidef.betfair.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Records live traffic to the Betfair global and exchange services for a
+ * <code>StubServer</code> to serve back.
+ * <p/>
+ * The recorder is an HTTP proxy: the API classes are pointed at its endpoints in place of
+ * the real ones, and it forwards each request to the real service, returns the response
+ * and adds both to its <code>Recording</code>:
+ * <pre>
+ * TrafficRecorder recorder = new TrafficRecorder();
+ * recorder.start();
+ * ServiceBootstrap bootstrap = new ServiceBootstrap(recorder.getGlobalEndpoint(), recorder.getExchangeEndpoint());
+ * ... make the calls to record ...
+ * recorder.stop();
+ * recorder.getRecording().save(dir);
+ * </pre>
+ * Responses are requested uncompressed, so that they are recorded as plain XML.
+ * <p/>
+ * It can also be run on its own: <code>TrafficRecorder recordingDir [port]</code> records
+ * until Enter is pressed, then saves the recording.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class TrafficRecorder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrafficRecorder.class);
+
+    public static final String DEFAULT_GLOBAL_ENDPOINT = "https://api.betfair.com/global/v3/BFGlobalService";
+    public static final String DEFAULT_EXCHANGE_ENDPOINT = "https://api.betfair.com/exchange/v5/BFExchangeService";
+
+    private static final int TIMEOUT_MILLIS = 30000;
+
+    private final URL globalEndpoint;
+    private final URL exchangeEndpoint;
+    private final int port;
+    private final Recording recording = new Recording();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Create a recorder for the real Betfair services, on any free port.
+     */
+    public TrafficRecorder() {
+        this(DEFAULT_GLOBAL_ENDPOINT, DEFAULT_EXCHANGE_ENDPOINT, 0);
+    }
+
+    /**
+     * Primary constructor
+     *
+     * @param globalEndpoint   the URL of the global service to forward to
+     * @param exchangeEndpoint the URL of the exchange service to forward to
+     * @param port             the port to listen on, or 0 for any free port
+     */
+    public TrafficRecorder(String globalEndpoint, String exchangeEndpoint, int port) {
+        try {
+            this.globalEndpoint = new URL(globalEndpoint);
+            this.exchangeEndpoint = new URL(exchangeEndpoint);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid endpoint", e);
+        }
+        this.port = port;
+    }
+
+    /**
+     * Start listening.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext(StubServer.GLOBAL_PATH, new Handler(StubServer.GLOBAL, globalEndpoint));
+        server.createContext(StubServer.EXCHANGE_PATH, new Handler(StubServer.EXCHANGE, exchangeEndpoint));
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        LOG.info("Recording Betfair traffic on port " + getPort());
+    }
+
+    /**
+     * Stop listening.
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * @return the port listened on
+     * @throws IllegalStateException if the recorder has not been started
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("TrafficRecorder has not been started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    public String getGlobalEndpoint() {
+        return "http://localhost:" + getPort() + StubServer.GLOBAL_PATH;
+    }
+
+    public String getExchangeEndpoint() {
+        return "http://localhost:" + getPort() + StubServer.EXCHANGE_PATH;
+    }
+
+    /**
+     * @return the calls recorded so far
+     */
+    public Recording getRecording() {
+        return recording;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TrafficRecorder recordingDir [port]");
+            System.exit(1);
+        }
+        TrafficRecorder recorder = new TrafficRecorder(DEFAULT_GLOBAL_ENDPOINT, DEFAULT_EXCHANGE_ENDPOINT,
+                args.length > 1 ? Integer.parseInt(args[1]) : 0);
+        recorder.start();
+        System.out.println("Global service:   " + recorder.getGlobalEndpoint());
+        System.out.println("Exchange service: " + recorder.getExchangeEndpoint());
+        System.out.println("Recording; press Enter to stop");
+        System.in.read();
+        recorder.stop();
+        recorder.getRecording().save(new File(args[0]));
+        System.out.println("Saved " + recorder.getRecording().size() + " calls to " + args[0]);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private class Handler implements HttpHandler {
+
+        private final String service;
+        private final URL endpoint;
+
+        private Handler(String service, URL endpoint) {
+            this.service = service;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] request = SoapMessages.read(exchange.getRequestBody());
+            int status;
+            byte[] response;
+            try {
+                HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+                connection.setConnectTimeout(TIMEOUT_MILLIS);
+                connection.setReadTimeout(TIMEOUT_MILLIS);
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", SoapMessages.CONTENT_TYPE);
+                String soapAction = exchange.getRequestHeaders().getFirst("SOAPAction");
+                if (soapAction != null) {
+                    connection.setRequestProperty("SOAPAction", soapAction);
+                }
+                connection.setFixedLengthStreamingMode(request.length);
+                OutputStream out = connection.getOutputStream();
+                try {
+                    out.write(request);
+                } finally {
+                    out.close();
+                }
+
+                status = connection.getResponseCode();
+                InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST ?
+                        connection.getInputStream() : connection.getErrorStream();
+                if (in != null && "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                response = in != null ? SoapMessages.read(in) : new byte[0];
+            } catch (IOException e) {
+                LOG.warn("Failed to forward request to " + endpoint, e);
+                SoapMessages.respond(exchange, HttpURLConnection.HTTP_BAD_GATEWAY,
+                        SoapMessages.fault("Failed to forward request: " + e).getBytes(SoapMessages.UTF_8));
+                return;
+            }
+
+            String requestText = new String(request, SoapMessages.UTF_8);
+            recording.add(new RecordedCall(service, SoapMessages.getOperation(requestText), requestText,
+                    new String(response, SoapMessages.UTF_8), status));
+            SoapMessages.respond(exchange, status, response);
+        }
+
+    }
+
+}
@@ -4,17 +4,23 @@ import com.betfair.publicapi.types.exchange.v5.ArrayOfRunner;
 import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
 import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
 import com.betfair.publicapi.types.exchange.v5.GetBetResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesResp;
 import com.betfair.publicapi.types.exchange.v5.GetMarketResp;
 import com.betfair.publicapi.types.exchange.v5.Market;
+import com.betfair.publicapi.types.exchange.v5.MarketPrices;
 import com.betfair.publicapi.types.exchange.v5.Runner;
 import com.scidef.betfair.api.exception.BetfairException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.scidef.betfair.api.BetEnrichment.enrichBetsWithProfitOrLossCalculation;
 import static com.scidef.betfair.api.TestConstant.BET_ID_1;
@@ -22,7 +28,12 @@ import static com.scidef.betfair.api.TestConstant.BET_ID_2;
 import static com.scidef.betfair.api.TestConstant.MARKET_ID;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -44,6 +55,11 @@ public class BetEnrichmentTest {
         betEnrichment = new BetEnrichment(exchangeAPI, horseRacing);
     }
 
+    @After
+    public void shutdownBetEnrichment() {
+        betEnrichment.shutdown();
+    }
+
     @Test
     public void testEnrichBetsWithRunnerNamesAndNumberOfRunners() throws BetfairException {
         GetMarketResp resp = new GetMarketResp();
@@ -93,6 +109,25 @@ public class BetEnrichmentTest {
         assertThat(bets.get(1).getNonRunner(), is(true));
     }
 
+    @Test
+    public void testEnrichBetsWithNonRunnerInfoFromIndex() throws BetfairException {
+        NonRunnerIndex index = new NonRunnerIndex();
+        index.registerRunners(MARKET_ID, generateGetMarketResp().getMarket().getRunners().getRunner());
+        index.update(MARKET_ID, "Bilbo Baggins,10.18,2.0;", Collections.<RunnerPricesWrapper>emptyList());
+        when(horseRacing.getNonRunnerIndex()).thenReturn(index);
+
+        List<Bet> bets = generateBets();
+        for (Bet bet : bets) {
+            bet.setEventTime(new GregorianCalendar(2013, 0, 21).getTime());
+        }
+
+        betEnrichment.enrichBetsWithNonRunnerInfo(bets);
+
+        assertThat(bets.get(0).getNonRunner(), is(false));
+        assertThat(bets.get(1).getNonRunner(), is(true));
+        verify(horseRacing, never()).getNonRunners(MARKET_ID);
+    }
+
     @Test
     public void testEnrichBetsWithMatchedSize() throws BetfairException {
         GetBetResp resp1 = new GetBetResp();
@@ -170,9 +205,103 @@ public class BetEnrichmentTest {
         assertThat(bets.get(1).getProfitOrLoss(), is(0.0));
     }
 
+    @Test
+    public void testEnrichBets() throws BetfairException {
+        when(exchangeAPI.getMarket(MARKET_ID)).thenReturn(generateGetMarketResp());
+        GetMarketPricesResp pricesResp = new GetMarketPricesResp();
+        MarketPrices prices = new MarketPrices();
+        prices.setRemovedRunners("Fat Chance,10.18,2.0;");
+        pricesResp.setMarketPrices(prices);
+        when(exchangeAPI.getMarketPrices(MARKET_ID)).thenReturn(pricesResp);
+        GetBetResp betResp = new GetBetResp();
+        com.betfair.publicapi.types.exchange.v5.Bet bet =
+                new com.betfair.publicapi.types.exchange.v5.Bet();
+        bet.setBetStatus(BetStatusEnum.S);
+        bet.setMatchedSize(2.0);
+        betResp.setBet(bet);
+        when(exchangeAPI.getBet(BET_ID_1)).thenReturn(betResp);
+        when(exchangeAPI.getBet(BET_ID_2)).thenReturn(betResp);
+        BetEnrichment pipeline = spy(betEnrichment);
+        doReturn(Arrays.asList("Bilbo Baggins", "Dingbat")).when(pipeline).fetchWinners(MARKET_ID);
+
+        List<Bet> bets = generateBets();
+
+        EnrichmentReport report = pipeline.enrichBets(bets);
+
+        assertThat(bets.get(0).getRunnerName(), is("Dingbat"));
+        assertThat(bets.get(0).getNumberOfRunners(), is(3));
+        assertThat(bets.get(0).getNonRunner(), is(false));
+        assertThat(bets.get(0).getAmountMatched(), is(2.0));
+        assertThat(bets.get(0).getEventOutcome(), is(2));
+        assertThat(bets.get(0).getProfitOrLoss(), is(-1.0));
+        assertThat(bets.get(1).getRunnerName(), is("Bilbo Baggins"));
+        assertThat(bets.get(1).getEventOutcome(), is(1));
+        assertThat(bets.get(1).getProfitOrLoss(), is(3.0));
+
+        // both bets are in the same market, so it is only looked up once
+        verify(exchangeAPI, times(1)).getMarket(MARKET_ID);
+        verify(exchangeAPI, times(1)).getMarketPrices(MARKET_ID);
+        assertThat(report.getCalls(EnrichmentStage.RUNNER_NAMES), is(1L));
+        assertThat(report.getCalls(EnrichmentStage.MATCHED_SIZE), is(2L));
+        assertThat(report.getFailures(EnrichmentStage.EVENT_OUTCOMES), is(0L));
+    }
+
+    @Test
+    public void testEnrichBetsContinuesAfterFailedLookup() throws BetfairException {
+        when(exchangeAPI.getMarket(MARKET_ID)).thenReturn(generateGetMarketResp());
+        when(exchangeAPI.getMarketPrices(MARKET_ID)).thenThrow(new BetfairException("getMarketPrices error"));
+        BetEnrichment pipeline = spy(betEnrichment);
+        doReturn(Collections.singletonList("Dingbat")).when(pipeline).fetchWinners(MARKET_ID);
+
+        List<Bet> bets = generateBets();
+        bets.get(0).setBetId(null);
+        bets.get(1).setBetId(null);
+
+        EnrichmentReport report = pipeline.enrichBets(bets);
+
+        assertThat(bets.get(0).getRunnerName(), is("Dingbat"));
+        assertThat(bets.get(0).getEventOutcome(), is(1));
+        assertThat(bets.get(0).getNonRunner() == null, is(true));
+        assertThat(bets.get(0).getProfitOrLoss() == null, is(true));
+        assertThat(report.getFailures(EnrichmentStage.NON_RUNNERS), is(1L));
+    }
+
+    @Test
+    public void testShutdownLeavesCallersExecutorRunning() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new BetEnrichment(exchangeAPI, horseRacing, executor).shutdown();
+
+            assertThat(executor.isShutdown(), is(false));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
+    private static GetMarketResp generateGetMarketResp() {
+        GetMarketResp resp = new GetMarketResp();
+        Market market = new Market();
+        ArrayOfRunner runners = new ArrayOfRunner();
+        Runner runner1 = new Runner();
+        runner1.setSelectionId(10);
+        runner1.setName("Dingbat");
+        runners.getRunner().add(runner1);
+        Runner runner2 = new Runner();
+        runner2.setSelectionId(11);
+        runner2.setName("Bilbo Baggins");
+        runners.getRunner().add(runner2);
+        Runner runner3 = new Runner();
+        runner3.setSelectionId(12);
+        runner3.setName("Fat Chance");
+        runners.getRunner().add(runner3);
+        market.setRunners(runners);
+        resp.setMarket(market);
+        return resp;
+    }
+
     private static List<Bet> generateBets() {
         List<Bet> bets = new ArrayList<Bet>();
         Bet bet1 = new Bet(
@@ -0,0 +1,200 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.aop.DeadlineExceededException;
+import com.scidef.betfair.api.aop.RetryMethodAspect;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.ws.Dispatch;
+import javax.xml.ws.Service;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPBinding;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.scidef.betfair.api.aop.TestJoinPoint.mockJoinPoint;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>Deadline</code> class and its use by the <code>RetryMethodAspect</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class DeadlineTest {
+
+    private static final String OPERATION = "ExchangeAPI.getMarketPricesCompressed";
+
+    @After
+    public void clearDeadline() {
+        Deadline.restore(null);
+    }
+
+    @Test
+    public void testEarlierDeadlineIsKept() {
+        Deadline outer = Deadline.after(1000);
+        Deadline inner = Deadline.after(60000);
+
+        assertThat(Deadline.set(outer), is(nullValue()));
+        Deadline previous = Deadline.set(inner);
+        assertThat(Deadline.current(), is(sameInstance(outer)));
+
+        Deadline.restore(previous);
+        assertThat(Deadline.current(), is(sameInstance(outer)));
+        Deadline.restore(null);
+        assertThat(Deadline.current(), is(nullValue()));
+    }
+
+    @Test
+    public void testCallRestoresDeadline() throws BetfairException {
+        long remaining = Deadline.call(5000, new Deadline.Call<Long>() {
+            @Override
+            public Long call() {
+                return Deadline.checkCurrent(OPERATION);
+            }
+        });
+
+        assertThat(remaining > 4000 && remaining <= 5000, is(true));
+        assertThat(Deadline.current(), is(nullValue()));
+        assertThat(Deadline.checkCurrent(OPERATION), is(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testTimeoutsAreCutToTheTimeRemaining() {
+        assertThat(Deadline.timeoutMillis(10000, OPERATION), is(10000));
+        assertThat(Deadline.timeoutMillis(0, OPERATION), is(0));
+
+        Deadline.set(Deadline.after(2000));
+
+        assertThat(Deadline.timeoutMillis(10000, OPERATION) <= 2000, is(true));
+        assertThat(Deadline.timeoutMillis(0, OPERATION) <= 2000, is(true));
+        assertThat(Deadline.timeoutMillis(500, OPERATION), is(500));
+    }
+
+    @Test
+    public void testSoapRequestIsAbandonedAtTheDeadline() throws Exception {
+        // a server that takes far longer to answer than the deadline allows
+        final CountDownLatch release = new CountDownLatch(1);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            QName portName = new QName("urn:test", "SlowPort");
+            Service service = Service.create(new QName("urn:test", "Slow"));
+            service.addPort(portName, SOAPBinding.SOAP11HTTP_BINDING,
+                    "http://localhost:" + server.getAddress().getPort() + "/");
+            Dispatch<Source> port = service.createDispatch(portName, Source.class, Service.Mode.PAYLOAD);
+            assertThat(port.getClass().getName().startsWith("com.sun.xml.ws."), is(true));
+
+            Deadline.set(Deadline.after(300));
+            Deadline.applyTo(port, OPERATION);
+            long start = System.currentTimeMillis();
+            try {
+                port.invoke(new StreamSource(new StringReader("<ping xmlns=\"urn:test\"/>")));
+                fail("expected the request to time out");
+            } catch (WebServiceException e) {
+                // the request timeout was cut to the time remaining
+            }
+
+            assertThat(System.currentTimeMillis() - start < 2000, is(true));
+            assertThat(port.getRequestContext().get(Deadline.REQUEST_TIMEOUT) instanceof Integer, is(true));
+
+            // without a deadline, the port's timeouts are cleared again
+            Deadline.restore(null);
+            Deadline.applyTo(port, OPERATION);
+
+            assertThat(port.getRequestContext().containsKey(Deadline.CONNECT_TIMEOUT), is(false));
+            assertThat(port.getRequestContext().containsKey(Deadline.REQUEST_TIMEOUT), is(false));
+        } finally {
+            release.countDown();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testMissesAreCounted() {
+        Long before = Deadline.getMissesByOperation().get("DeadlineTest.expired");
+        long misses = Deadline.getMisses();
+        Deadline.set(Deadline.after(0));
+
+        try {
+            Deadline.checkCurrent("DeadlineTest.expired");
+            fail("expected a DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertThat(e.getOperation(), is("DeadlineTest.expired"));
+        }
+
+        assertThat(Deadline.getMisses(), is(misses + 1));
+        assertThat(Deadline.getMissesByOperation().get("DeadlineTest.expired"), is((before == null ? 0 : before) + 1));
+    }
+
+    @Test
+    public void testAspectDoesNotStartAfterDeadline() throws Throwable {
+        RetryMethodAspect aspect = new RetryMethodAspect(mock(HorseRacing.class));
+        ProceedingJoinPoint pjp = mockJoinPoint();
+        Deadline.set(Deadline.after(0));
+
+        try {
+            aspect.retryMethod(pjp);
+            fail("expected a DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertThat(e.getOperation(), is(OPERATION));
+        }
+
+        verify(pjp, never()).proceed();
+    }
+
+    @Test
+    public void testAspectDoesNotSleepPastDeadline() throws Throwable {
+        RetryMethodAspect aspect = new RetryMethodAspect(mock(HorseRacing.class));
+        aspect.setStandardSleepTime(10000);
+        ProceedingJoinPoint pjp = mockJoinPoint();
+        BetfairException failure = new BetfairException("Service unavailable");
+        when(pjp.proceed()).thenThrow(failure);
+        Deadline.set(Deadline.after(2000));
+
+        long start = System.currentTimeMillis();
+        try {
+            aspect.retryMethod(pjp);
+            fail("expected a DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertThat(e.getCause(), is((Throwable) failure));
+        }
+
+        // gave up straight away rather than sleeping 10s before a retry that would be too late
+        assertThat(System.currentTimeMillis() - start < 1000, is(true));
+        verify(pjp, times(1)).proceed();
+    }
+
+}
@@ -9,6 +9,7 @@ import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
 import com.betfair.publicapi.types.exchange.v5.BetsOrderByEnum;
 import com.betfair.publicapi.types.exchange.v5.GetAccountFundsReq;
 import com.betfair.publicapi.types.exchange.v5.GetAccountFundsResp;
+import com.betfair.publicapi.types.exchange.v5.GetAllMarketsErrorEnum;
 import com.betfair.publicapi.types.exchange.v5.GetAllMarketsReq;
 import com.betfair.publicapi.types.exchange.v5.GetAllMarketsResp;
 import com.betfair.publicapi.types.exchange.v5.GetBetErrorEnum;
@@ -99,6 +100,30 @@ public class ExchangeAPITest {
         verify(exchangeService).getAllMarkets(argThat(is(any(GetAllMarketsReq.class))));
     }
 
+    @Test
+    public void testGetAllMarketsForEventType() throws BetfairException {
+        GetAllMarketsResp resp = mock(GetAllMarketsResp.class);
+        when(resp.getErrorCode()).thenReturn(GetAllMarketsErrorEnum.OK);
+        when(exchangeService.getAllMarkets((GetAllMarketsReq) anyObject())).thenReturn(resp);
+
+        assertThat(exchangeAPI.getAllMarkets(HorseRacing.HORSE_RACING_SPORT_ID), is(resp));
+
+        verify(globalAPI).getSessionToken();
+        verify(exchangeService).getAllMarkets(
+                argThat(is(aGetAllMarketsReqWithEventTypeId(HorseRacing.HORSE_RACING_SPORT_ID))));
+    }
+
+    @Test(expected = BetfairException.class)
+    public void testGetAllMarketsForEventTypeFailure() throws BetfairException {
+        APIResponseHeader header = createMockHeader(APIErrorEnum.OK, SESSION_TOKEN);
+        GetAllMarketsResp resp = mock(GetAllMarketsResp.class);
+        when(resp.getErrorCode()).thenReturn(GetAllMarketsErrorEnum.API_ERROR);
+        when(resp.getHeader()).thenReturn(header);
+        when(exchangeService.getAllMarkets((GetAllMarketsReq) anyObject())).thenReturn(resp);
+
+        exchangeAPI.getAllMarkets(HorseRacing.HORSE_RACING_SPORT_ID);
+    }
+
     @Test
     public void testGetMarket() throws BetfairException {
         GetMarketResp resp = mock(GetMarketResp.class);
@@ -281,6 +306,22 @@ public class ExchangeAPITest {
         return header;
     }
 
+    private static Matcher<GetAllMarketsReq> aGetAllMarketsReqWithEventTypeId(final int eventTypeId) {
+        return new TypeSafeMatcher<GetAllMarketsReq>() {
+            @Override
+            protected boolean matchesSafely(GetAllMarketsReq req) {
+                return req.getEventTypeIds() != null &&
+                        Collections.singletonList(eventTypeId).equals(req.getEventTypeIds().getInt());
+            }
+
+            public void describeTo(Description description) {
+                description.appendText(
+                        String.format("a GetAllMarketsReq with eventTypeIds [%d]", eventTypeId)
+                );
+            }
+        };
+    }
+
     private static Matcher<GetMarketReq> aGetMarketReqWithMarketId(final int marketId) {
         return new TypeSafeMatcher<GetMarketReq>() {
             @Override
@@ -1,20 +1,48 @@
 package com.scidef.betfair.api;
 
+import com.betfair.publicapi.types.exchange.v5.ArrayOfRunner;
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.GetAllMarketsResp;
 import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
 import com.betfair.publicapi.types.exchange.v5.GetMarketPricesResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketResp;
+import com.betfair.publicapi.types.exchange.v5.Market;
 import com.betfair.publicapi.types.exchange.v5.MarketPrices;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.Runner;
 import com.betfair.publicapi.types.global.v3.ArrayOfBFEvent;
 import com.betfair.publicapi.types.global.v3.BFEvent;
 import com.betfair.publicapi.types.global.v3.GetEventsResp;
+import com.betfair.publicapi.types.global.v3.MarketSummary;
+import com.scidef.betfair.api.account.SessionPool;
 import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.paper.PaperExchange;
+import com.scidef.betfair.api.prices.PriceHistory;
+import com.scidef.betfair.api.trace.RingBufferSpanSink;
+import com.scidef.betfair.api.trace.Span;
+import com.scidef.betfair.api.trace.Tracer;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import static com.scidef.betfair.api.HorseRacing.GB_HORSE_RACING_EVENT_ID;
@@ -25,9 +53,14 @@ import static com.scidef.betfair.api.TestConstant.USERNAME;
 import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
 import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -39,6 +72,17 @@ import static org.mockito.Mockito.when;
  */
 public class HorseRacingTest {
 
+    private static final int THREADS = 16;
+    private static final String ALL_MARKETS_DATA =
+            ":101442426~2m4f Hcap~O~ACTIVE~1350662400000~\\Horse Racing\\GB\\Kemp 19th Oct~" +
+                    "/7/298251/26990145/101442426~0~1~GBR~1350640000000~13~1~1234.5~Y~N" +
+                    ":101442427~To Be Placed~O~ACTIVE~1350662400000~\\Horse Racing\\GB\\Kemp 19th Oct~" +
+                    "/7/298251/26990145/101442427~0~1~GBR~1350640000000~13~3~0.0~N~N" +
+                    ":101442500~1m Mdn~O~ACTIVE~1350666000000~\\Horse Racing\\IRE\\Dund 19th Oct~" +
+                    "/7/298252/26990200/101442500~0~1~IRL~1350640000000~13~1~50.25~Y~N" +
+                    ":101442600~Forecast~O~ACTIVE~1350666000000~\\Horse Racing\\GB\\Daily Specials~" +
+                    "/7/298251/26990300/101442600~0~1~GBR~1350640000000~13~1~0.0~N~N";
+
     private GlobalAPI globalAPI;
     private ExchangeAPI exchangeAPI;
     private HorseRacing horseRacing;
@@ -125,6 +169,39 @@ public class HorseRacingTest {
         assertThat(events, hasItem(aBFEventWithEventName("Punch 1st Mar")));
     }
 
+    @Test
+    public void testGetEventsMapFromCatalog() throws BetfairException {
+        horseRacing.setEventInclusionPatterns(
+                Collections.singletonList(Pattern.compile("^[A-Za-z]*? [0-9]*?[a-z][a-z] [A-Za-z]*?$"))
+        );
+        horseRacing.setMarketExclusionPatterns(Collections.singletonList(Pattern.compile("To Be Placed")));
+        horseRacing.setCatalogMode(true);
+
+        GetAllMarketsResp allMarketsResp = new GetAllMarketsResp();
+        allMarketsResp.setMarketData(ALL_MARKETS_DATA);
+        when(exchangeAPI.getAllMarkets(HorseRacing.HORSE_RACING_SPORT_ID)).thenReturn(allMarketsResp);
+        GetMarketPricesCompressedResp pricesResp = new GetMarketPricesCompressedResp();
+        pricesResp.setMarketPrices(COMPRESSED_MARKET_DATA);
+        when(exchangeAPI.getMarketPricesCompressed(Matchers.anyInt())).thenReturn(pricesResp);
+
+        Map<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> eventsMap = horseRacing.getEventsMap(null);
+
+        assertThat(eventsMap.size(), is(2));
+        assertThat(eventsMap.keySet(), hasItem(aBFEventWithEventName("Kemp 19th Oct")));
+        assertThat(eventsMap.keySet(), hasItem(aBFEventWithEventName("Dund 19th Oct")));
+        for (Map.Entry<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> entry : eventsMap.entrySet()) {
+            assertThat(entry.getValue().size(), is(1));
+            MarketSummary marketSummary = entry.getValue().keySet().iterator().next();
+            assertThat(marketSummary.getEventParentId(), is(entry.getKey().getEventId()));
+            assertThat(entry.getValue().get(marketSummary).size(), is(13));
+        }
+
+        verify(exchangeAPI, times(1)).getAllMarkets(HorseRacing.HORSE_RACING_SPORT_ID);
+        verify(exchangeAPI).getMarketPricesCompressed(101442426);
+        verify(exchangeAPI).getMarketPricesCompressed(101442500);
+        verify(globalAPI, never()).getEvents(Matchers.anyInt());
+    }
+
     @Test
     public void testGetRunners() throws BetfairException {
         GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
@@ -136,6 +213,100 @@ public class HorseRacingTest {
         assertThat(runners.size(), is(13));
     }
 
+    @Test
+    public void testGetRunnersIsTraced() throws BetfairException {
+        GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
+        resp.setMarketPrices(COMPRESSED_MARKET_DATA);
+        when(exchangeAPI.getMarketPricesCompressed(MARKET_ID)).thenReturn(resp);
+        RingBufferSpanSink sink = new RingBufferSpanSink();
+        Tracer.setSink(sink);
+        try {
+            horseRacing.getRunners(MARKET_ID);
+        } finally {
+            Tracer.setSink(null);
+        }
+
+        List<Span> spans = sink.getSpans();
+        assertThat(spans.size(), is(2));
+        assertThat(spans.get(0).getName(), is("MessageUtil.parseCompressedMarketPrices"));
+        assertThat(spans.get(1).getName(), is("HorseRacing.getRunners"));
+        assertThat(spans.get(0).getParentSpanId(), is(spans.get(1).getSpanId()));
+    }
+
+    @Test
+    public void testGetRunnersUpdatesNonRunnerIndex() throws BetfairException {
+        // remove the last runner and record it in the header's removed runners field
+        String compressed = COMPRESSED_MARKET_DATA
+                .replace("1274885395669~~Y", "1274885395669~Sleepy Lucy,11.43,2.3;~Y");
+        compressed = compressed.substring(0, compressed.lastIndexOf(":4299096"));
+        GetMarketPricesCompressedResp before = new GetMarketPricesCompressedResp();
+        before.setMarketPrices(COMPRESSED_MARKET_DATA);
+        GetMarketPricesCompressedResp after = new GetMarketPricesCompressedResp();
+        after.setMarketPrices(compressed);
+        when(exchangeAPI.getMarketPricesCompressed(MARKET_ID)).thenReturn(before, after);
+
+        horseRacing.getRunners(MARKET_ID);
+        List<RunnerPricesWrapper> runners = horseRacing.getRunners(MARKET_ID);
+
+        assertThat(runners.size(), is(12));
+        assertThat(horseRacing.getNonRunnerIndex().isNonRunner(MARKET_ID, 4299096), is(true));
+        assertThat(horseRacing.getNonRunnerIndex().getNonRunner(MARKET_ID, 4299096).getName(), is("Sleepy Lucy"));
+    }
+
+    @Test
+    public void testGetRunnersReleasesPriceHistoryWhenMarketCloses() throws BetfairException {
+        GetMarketPricesCompressedResp active = new GetMarketPricesCompressedResp();
+        active.setMarketPrices(COMPRESSED_MARKET_DATA);
+        GetMarketPricesCompressedResp closed = new GetMarketPricesCompressedResp();
+        closed.setMarketPrices(COMPRESSED_MARKET_DATA.replace("~GBP~ACTIVE~", "~GBP~CLOSED~"));
+        when(exchangeAPI.getMarketPricesCompressed(MARKET_ID)).thenReturn(active, closed);
+        PriceHistory priceHistory = new PriceHistory(13, 10);
+        horseRacing.setPriceHistory(priceHistory);
+
+        horseRacing.getRunners(MARKET_ID);
+        assertThat(priceHistory.getRing(MARKET_ID, 4056154).getSequence(), is(1L));
+
+        horseRacing.getRunners(MARKET_ID);
+        assertThat(priceHistory.getRing(MARKET_ID, 4056154), is(nullValue()));
+    }
+
+    @Test
+    public void testGetRunnersWithCoalescerSharesResult() throws BetfairException {
+        GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
+        resp.setMarketPrices(COMPRESSED_MARKET_DATA);
+        when(exchangeAPI.getMarketPricesCompressed(MARKET_ID)).thenReturn(resp);
+        horseRacing.setMarketDataCoalescer(new MarketDataCoalescer(exchangeAPI, 60000));
+
+        List<RunnerPricesWrapper> first = horseRacing.getRunners(MARKET_ID);
+        List<RunnerPricesWrapper> second = horseRacing.getRunners(MARKET_ID);
+
+        assertThat(second, is(sameInstance(first)));
+        verify(exchangeAPI, times(1)).getMarketPricesCompressed(MARKET_ID);
+    }
+
+    @Test
+    public void testGetRunnersPrefersSessionPoolAndCoalesces() throws BetfairException {
+        GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
+        resp.setMarketPrices(COMPRESSED_MARKET_DATA);
+        ExchangeAPI pooledExchangeAPI = mock(ExchangeAPI.class);
+        when(pooledExchangeAPI.getMarketPricesCompressed(MARKET_ID)).thenReturn(resp);
+        SessionPool sessionPool = new SessionPool();
+        sessionPool.addSession("one", USERNAME, PASSWORD, mock(GlobalAPI.class), pooledExchangeAPI);
+        StreamingExchangeAPI streamingExchangeAPI = mock(StreamingExchangeAPI.class);
+        horseRacing.setStreamingExchangeAPI(streamingExchangeAPI);
+        horseRacing.setSessionPool(sessionPool);
+        horseRacing.setMarketDataCoalescer(new MarketDataCoalescer(exchangeAPI, 60000));
+
+        List<RunnerPricesWrapper> first = horseRacing.getRunners(MARKET_ID);
+        List<RunnerPricesWrapper> second = horseRacing.getRunners(MARKET_ID);
+
+        assertThat(first.size(), is(13));
+        assertThat(second, is(sameInstance(first)));
+        verify(pooledExchangeAPI, times(1)).getMarketPricesCompressed(MARKET_ID);
+        verify(streamingExchangeAPI, never()).getMarketPricesCompressed(MARKET_ID);
+        verify(exchangeAPI, never()).getMarketPricesCompressed(MARKET_ID);
+    }
+
     @Test
     public void testGetNonRunners() throws BetfairException {
         GetMarketPricesResp resp = new GetMarketPricesResp();
@@ -155,11 +326,229 @@ public class HorseRacingTest {
         assertThat(nonRunners, hasItem(is("Teth")));
         assertThat(nonRunners, hasItem(is("Leitrim King")));
         assertThat(nonRunners, hasItem(is("Sleepy Lucy")));
+        assertThat(horseRacing.getNonRunnerIndex().isNonRunner(MARKET_ID, 0, "Sleepy Lucy"), is(true));
+    }
+
+    @Test
+    public void testMockBetsArePlacedOnPaperExchange() throws BetfairException {
+        GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
+        resp.setMarketPrices(COMPRESSED_MARKET_DATA);
+        when(exchangeAPI.getMarketPricesCompressed(MARKET_ID)).thenReturn(resp);
+        PaperExchange paperExchange = new PaperExchange(100.0);
+        horseRacing.setPaperExchange(paperExchange);
+
+        List<RunnerPricesWrapper> runners = horseRacing.getRunners(MARKET_ID);
+        RunnerPricesWrapper runner = runners.get(0);
+        Bet bet = new Bet(MARKET_ID, runner.getRunnerPrices().getSelectionId(), BetTypeEnum.B,
+                runner.getBestPricesToBack().get(0).getPrice(), 0.0, null, null, null);
+        bet.setSize(2.0);
+        PlaceBetsResp placed = horseRacing.placeBets(Collections.singletonList(bet));
+
+        assertThat(paperExchange.getSnapshots(), is(1L));
+        assertThat(placed.getBetResults().getPlaceBetsResult().get(0).isSuccess(), is(true));
+        assertThat(placed.getBetResults().getPlaceBetsResult().get(0).getSizeMatched(), is(2.0));
+        verify(exchangeAPI, never()).placeBets(Matchers.<List<Bet>>any());
+    }
+
+    @Test
+    public void testPaperBetsAreClosedAndSettledWhenMarketCloses() throws BetfairException {
+        GetMarketPricesCompressedResp active = new GetMarketPricesCompressedResp();
+        active.setMarketPrices(COMPRESSED_MARKET_DATA);
+        GetMarketPricesCompressedResp closed = new GetMarketPricesCompressedResp();
+        closed.setMarketPrices(COMPRESSED_MARKET_DATA.replace("~GBP~ACTIVE~", "~GBP~CLOSED~"));
+        when(exchangeAPI.getMarketPricesCompressed(MARKET_ID)).thenReturn(active, closed);
+        when(exchangeAPI.getMarket(MARKET_ID)).thenReturn(market(4056154, "Kheskianto "));
+        ResultsIndex resultsIndex = mock(ResultsIndex.class);
+        when(resultsIndex.contains(MARKET_ID)).thenReturn(true);
+        when(resultsIndex.getWinners(MARKET_ID)).thenReturn(Collections.singletonList("Kheskianto"));
+        PaperExchange paperExchange = new PaperExchange(100.0);
+        horseRacing.setPaperExchange(paperExchange);
+        horseRacing.setResultsIndex(resultsIndex);
+
+        double price = horseRacing.getRunners(MARKET_ID).get(0).getBestPricesToBack().get(0).getPrice();
+        Bet back = new Bet(MARKET_ID, 4056154, BetTypeEnum.B, price, 0.0, null, null, null);
+        back.setSize(2.0);
+        Bet lay = new Bet(MARKET_ID, 4056154, BetTypeEnum.L, 1.5, 0.0, null, null, null);
+        lay.setSize(2.0);
+        horseRacing.placeBets(Arrays.asList(back, lay));
+        assertThat(paperExchange.getExposure(), is(3.0));
+
+        horseRacing.getRunners(MARKET_ID);
+
+        // the unmatched lay lapses and the matched back wins
+        assertThat(paperExchange.getExposure(), is(0.0));
+        assertThat(paperExchange.getBalance(), is(100.0 + 2.0 * (price - 1.0)));
+        assertThat(paperExchange.isAwaitingSettlement(MARKET_ID), is(false));
+    }
+
+    @Test(expected = BetfairException.class)
+    public void testSettlePaperBetsWithUnknownWinner() throws BetfairException {
+        when(exchangeAPI.getMarket(MARKET_ID)).thenReturn(market(4056154, "Kheskianto"));
+        ResultsIndex resultsIndex = mock(ResultsIndex.class);
+        when(resultsIndex.getWinners(MARKET_ID)).thenReturn(Collections.singletonList("Teth"));
+        horseRacing.setPaperExchange(new PaperExchange(100.0));
+        horseRacing.setResultsIndex(resultsIndex);
+
+        horseRacing.settlePaperBets(MARKET_ID);
+    }
+
+    @Test
+    public void testBetsArePlacedOnExchangeWhenNotMocked() throws BetfairException {
+        List<Bet> bets = Collections.singletonList(new Bet());
+        PlaceBetsResp resp = new PlaceBetsResp();
+        when(exchangeAPI.placeBets(bets)).thenReturn(resp);
+        horseRacing.setPaperExchange(new PaperExchange(100.0));
+        horseRacing.setMockBets(false);
+
+        assertThat(horseRacing.placeBets(bets), is(sameInstance(resp)));
+        assertThat(horseRacing.getPaperExchange().getBetsPlaced(), is(0L));
+    }
+
+    @Test
+    public void testConcurrentLoginsAreCoalesced() throws Exception {
+        final AtomicInteger logins = new AtomicInteger();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                logins.incrementAndGet();
+                Thread.sleep(200);
+                return null;
+            }
+        }).when(globalAPI).login(USERNAME, PASSWORD, GlobalAPI.FREE_API_PRODUCT_ID);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < THREADS; i++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    horseRacing.login();
+                    return null;
+                }
+            });
+        }
+
+        runAll(tasks, start);
+
+        assertThat(logins.get(), is(1));
+        assertThat(horseRacing.isLoggedIn(), is(true));
+    }
+
+    @Test
+    public void testLoginWithoutUsername() throws BetfairException {
+        horseRacing = new HorseRacing(null, null, globalAPI, exchangeAPI);
+
+        horseRacing.login();
+
+        verify(globalAPI).login(null, null, GlobalAPI.FREE_API_PRODUCT_ID);
+        assertThat(horseRacing.isLoggedIn(), is(true));
+    }
+
+    @Test
+    public void testConcurrentUseWithChangingPatterns() throws Exception {
+        final List<Pattern> handicaps = Collections.singletonList(Pattern.compile("Hcap"));
+        final List<Pattern> maidens = Collections.singletonList(Pattern.compile("Mdn"));
+        horseRacing.setEventInclusionPatterns(Collections.singletonList(Pattern.compile(" 19th Oct$")));
+        horseRacing.setMarketInclusionPatterns(handicaps);
+        horseRacing.setCatalogMode(true);
+
+        GetAllMarketsResp allMarketsResp = new GetAllMarketsResp();
+        allMarketsResp.setMarketData(ALL_MARKETS_DATA);
+        when(exchangeAPI.getAllMarkets(HorseRacing.HORSE_RACING_SPORT_ID)).thenReturn(allMarketsResp);
+        GetMarketPricesCompressedResp pricesResp = new GetMarketPricesCompressedResp();
+        pricesResp.setMarketPrices(COMPRESSED_MARKET_DATA);
+        when(exchangeAPI.getMarketPricesCompressed(Matchers.anyInt())).thenReturn(pricesResp);
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        tasks.add(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                start.await();
+                // keep swapping the market patterns while the other threads filter with them
+                for (int i = 0; running.get(); i++) {
+                    horseRacing.setMarketInclusionPatterns(i % 2 == 0 ? maidens : handicaps);
+                    if (i % 100 == 0) {
+                        horseRacing.login();
+                    }
+                }
+                return null;
+            }
+        });
+        for (int i = 1; i < THREADS; i++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int j = 0; j < 200; j++) {
+                        Map<BFEvent, Map<MarketSummary, List<RunnerPricesWrapper>>> eventsMap =
+                                horseRacing.getEventsMap(null);
+                        // each call sees one set of patterns, which includes exactly one market
+                        int markets = 0;
+                        for (Map<MarketSummary, List<RunnerPricesWrapper>> marketsMap : eventsMap.values()) {
+                            markets += marketsMap.size();
+                        }
+                        assertThat(markets, is(1));
+                        assertThat(horseRacing.getRunners(MARKET_ID).size(), is(13));
+                    }
+                    return null;
+                }
+            });
+        }
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (int i = 1; i < futures.size(); i++) {
+                futures.get(i).get(60, TimeUnit.SECONDS);
+            }
+            running.set(false);
+            futures.get(0).get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(horseRacing.isLoggedIn(), is(true));
     }
 
     /////////////////////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
+    // runs the tasks on their own threads, releases them together and rethrows any failure
+    private static GetMarketResp market(int selectionId, String name) {
+        Runner runner = new Runner();
+        runner.setSelectionId(selectionId);
+        runner.setName(name);
+        Market market = new Market();
+        market.setRunners(new ArrayOfRunner());
+        market.getRunners().getRunner().add(runner);
+        GetMarketResp resp = new GetMarketResp();
+        resp.setMarket(market);
+        return resp;
+    }
+
+    private static void runAll(List<Callable<Void>> tasks, CountDownLatch start) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private Matcher<BFEvent> aBFEventWithEventName(final String eventName) {
         return new TypeSafeMatcher<BFEvent>() {
             @Override
@@ -1,5 +1,6 @@
 package com.scidef.betfair.api;
 
+import com.betfair.publicapi.types.exchange.v5.MarketStatusEnum;
 import com.betfair.publicapi.types.global.v3.MarketSummary;
 import org.junit.Test;
 
@@ -9,6 +10,7 @@ import java.util.List;
 
 import static com.scidef.betfair.api.MessageUtil.getMarketNameWithTime;
 import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketPrices;
+import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketStatus;
 import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
@@ -43,4 +45,12 @@ public class MessageUtilTest {
         assertThat(l.get(0).getBestPricesToLay().get(1).getPrice(), is(1.82));
     }
 
+    @Test
+    public void testCompressedMarketStatusParsing() {
+        assertThat(parseCompressedMarketStatus(COMPRESSED_MARKET_DATA), is(MarketStatusEnum.ACTIVE));
+        assertThat(parseCompressedMarketStatus(COMPRESSED_MARKET_DATA.replace("~ACTIVE~", "~CLOSED~")),
+                is(MarketStatusEnum.CLOSED));
+        assertThat(parseCompressedMarketStatus("101442426~GBP~"), is((MarketStatusEnum) null));
+    }
+
 }
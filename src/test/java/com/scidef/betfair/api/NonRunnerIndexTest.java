@@ -0,0 +1,153 @@
+package com.scidef.betfair.api;
+
+import com.betfair.publicapi.types.exchange.v5.ArrayOfRunnerPrices;
+import com.betfair.publicapi.types.exchange.v5.MarketPrices;
+import com.betfair.publicapi.types.exchange.v5.Price;
+import com.betfair.publicapi.types.exchange.v5.Runner;
+import com.betfair.publicapi.types.exchange.v5.RunnerPrices;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>NonRunnerIndex</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class NonRunnerIndexTest {
+
+    private NonRunnerIndex index;
+
+    @Before
+    public void setupNonRunnerIndex() {
+        index = new NonRunnerIndex();
+        List<Runner> runners = new ArrayList<Runner>();
+        runners.add(runner(10, "Kheskianto"));
+        runners.add(runner(11, "True Pleasure (IRE)"));
+        runners.add(runner(12, "Teth"));
+        index.registerRunners(MARKET_ID, runners);
+    }
+
+    @Test
+    public void testRemovalsAreResolvedBySelectionId() {
+        index.update(MARKET_ID, "Kheskianto,10.18,2.0;true pleasure,9.28,6.7;", pricesFor(12));
+
+        assertThat(index.isNonRunner(MARKET_ID, 10), is(true));
+        assertThat(index.isNonRunner(MARKET_ID, 11), is(true));
+        assertThat(index.isNonRunner(MARKET_ID, 12), is(false));
+        assertThat(index.getNonRunner(MARKET_ID, 10).getRemovalTime(), is("10.18"));
+        assertThat(index.getNonRunner(MARKET_ID, 11).getReductionFactor(), is(6.7));
+        assertThat(index.getNonRunners(MARKET_ID).size(), is(2));
+    }
+
+    @Test
+    public void testRemovalsAreTrackedIncrementally() {
+        index.update(MARKET_ID, "", pricesFor(10, 11, 12));
+        assertThat(index.isNonRunner(MARKET_ID, 10), is(false));
+
+        index.update(MARKET_ID, "Kheskianto,10.18,2.0;", pricesFor(11, 12));
+        NonRunner first = index.getNonRunner(MARKET_ID, 10);
+
+        index.update(MARKET_ID, "Kheskianto,10.18,2.0;Teth,10.04,11.1;", pricesFor(11));
+
+        assertThat(index.getNonRunner(MARKET_ID, 10) == first, is(true));
+        assertThat(index.isNonRunner(MARKET_ID, 12), is(true));
+        assertThat(index.getNonRunners(MARKET_ID).size(), is(2));
+    }
+
+    @Test
+    public void testUnknownNameIsResolvedFromDisappearedSelection() {
+        index.update(MARKET_ID, "", pricesFor(10, 11, 12, 13));
+
+        index.update(MARKET_ID, "Leitrim King,12.01,13.2;", pricesFor(10, 11, 12));
+
+        assertThat(index.isNonRunner(MARKET_ID, 13), is(true));
+        assertThat(index.getNonRunner(MARKET_ID, 13).getName(), is("Leitrim King"));
+    }
+
+    @Test
+    public void testUnresolvedRemovalFallsBackOnName() {
+        index.update(MARKET_ID, "Sleepy Lucy,11.43,2.3;", pricesFor(10, 11, 12));
+
+        assertThat(index.getNonRunner(MARKET_ID, 20), is(nullValue()));
+        assertThat(index.isNonRunner(MARKET_ID, 20, "SLEEPY LUCY"), is(true));
+        assertThat(index.isNonRunner(MARKET_ID, 12, "Teth"), is(false));
+    }
+
+    @Test
+    public void testResolvedRemovalKeepsTimeFirstSeen() throws InterruptedException {
+        long before = System.currentTimeMillis();
+        index.update(MARKET_ID, "Sleepy Lucy,11.43,2.3;", pricesFor(10, 11, 12));
+        long seen = System.currentTimeMillis();
+        Thread.sleep(20);
+
+        // resolved once the runner's selection id is known
+        index.registerRunners(MARKET_ID, Collections.singletonList(runner(20, "Sleepy Lucy")));
+
+        NonRunner nonRunner = index.getNonRunner(MARKET_ID, 20);
+        assertThat(nonRunner.getDetectedAt() >= before && nonRunner.getDetectedAt() <= seen, is(true));
+    }
+
+    @Test
+    public void testEvictsMarketsNotUpdatedForMaxAge() {
+        index.setMaxAgeMillis(60000);
+        index.update(MARKET_ID, "Kheskianto,10.18,2.0;", pricesFor(11, 12));
+        long now = System.currentTimeMillis();
+
+        assertThat(index.evict(now), is(0));
+        assertThat(index.isNonRunner(MARKET_ID, 10), is(true));
+
+        assertThat(index.evict(now + 120000), is(1));
+        assertThat(index.size(), is(0));
+        assertThat(index.isNonRunner(MARKET_ID, 10), is(false));
+        assertThat(index.getEvictions(), is(1L));
+    }
+
+    @Test
+    public void testUpdateFromMarketPrices() {
+        MarketPrices marketPrices = new MarketPrices();
+        marketPrices.setRemovedRunners("Teth,10.04,11.1;");
+        ArrayOfRunnerPrices runnerPrices = new ArrayOfRunnerPrices();
+        RunnerPrices prices = new RunnerPrices();
+        prices.setSelectionId(10);
+        runnerPrices.getRunnerPrices().add(prices);
+        marketPrices.setRunnerPrices(runnerPrices);
+
+        index.update(MARKET_ID, marketPrices);
+
+        assertThat(index.isNonRunner(MARKET_ID, 12), is(true));
+        assertThat(index.isCurrent(MARKET_ID, 0L), is(true));
+        assertThat(index.isCurrent(MARKET_ID, Long.MAX_VALUE), is(false));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static Runner runner(int selectionId, String name) {
+        Runner runner = new Runner();
+        runner.setSelectionId(selectionId);
+        runner.setName(name);
+        return runner;
+    }
+
+    private static List<RunnerPricesWrapper> pricesFor(int... selectionIds) {
+        List<RunnerPricesWrapper> wrappers = new ArrayList<RunnerPricesWrapper>();
+        for (int selectionId : selectionIds) {
+            RunnerPrices runnerPrices = new RunnerPrices();
+            runnerPrices.setSelectionId(selectionId);
+            wrappers.add(new RunnerPricesWrapper(runnerPrices,
+                    Collections.<Price>emptyList(), Collections.<Price>emptyList()));
+        }
+        return wrappers;
+    }
+
+}
@@ -1,13 +1,32 @@
 package com.scidef.betfair.api;
 
 import com.scidef.betfair.api.exception.BetfairException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.scidef.betfair.api.ResultsAPI.parseFirstDescription;
 import static com.scidef.betfair.api.ResultsAPI.parseWinners;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 /**
  * Tests for the <code>ResultAPI</code> class.
@@ -17,6 +36,52 @@ import static org.junit.Assert.assertThat;
  */
 public class ResultAPITest {
 
+    private static final String FEED =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?><rss version=\"2.0\"><channel>" +
+                    "<title>Betfair results</title><description>Settled markets</description>" +
+                    "<item><title>Kemp 19th Oct / 2m4f Hcap</title>" +
+                    "<description>Winner(s): Sleepy Lucy</description></item>" +
+                    "<item><title>Kemp 19th Oct / 3m Hcap</title>" +
+                    "<description>Winner(s): Teth</description></item>" +
+                    "</channel></rss>";
+
+    private HttpServer server;
+    private final List<String> ifNoneMatch = Collections.synchronizedList(new ArrayList<String>());
+    private volatile String feed = FEED;
+    private volatile int status = 200;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String etag = "\"" + feed.hashCode() + "\"";
+                String requestEtag = exchange.getRequestHeaders().getFirst("If-None-Match");
+                ifNoneMatch.add(requestEtag);
+                exchange.getResponseHeaders().add("ETag", etag);
+                if (etag.equals(requestEtag)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                byte[] body = feed.getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        ResultsAPI.setRssUrl("http://localhost:" + server.getAddress().getPort() + "/RSS.aspx");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        ResultsAPI.setRssUrl("http://rss.betfair.com/RSS.aspx");
+    }
+
     @Test
     public void testOneWinnerExpression() throws BetfairException {
         String s = "Winner(s): Blah";
@@ -35,4 +100,92 @@ public class ResultAPITest {
         assertThat(winners.get(2), is("Wobble"));
     }
 
+    @Test
+    public void testParseFirstDescription() throws Exception {
+        assertThat(parseFirstDescription(stream(FEED)), is("Winner(s): Sleepy Lucy"));
+        assertThat(parseFirstDescription(stream("<rss><channel><description>x</description></channel></rss>")),
+                is(nullValue()));
+    }
+
+    @Test
+    public void testParseFirstDescriptionStopsAfterFirstEntry() throws Exception {
+        // anything after the first entry is never read, so a truncated feed still parses
+        String truncated = FEED.substring(0, FEED.indexOf("<item><title>Kemp 19th Oct / 3m") + 20);
+
+        assertThat(parseFirstDescription(stream(truncated)), is("Winner(s): Sleepy Lucy"));
+    }
+
+    @Test
+    public void testGetWinnersUsesConditionalGet() throws BetfairException {
+        List<String> first = ResultsAPI.getWinners(7, 101442426);
+        List<String> second = ResultsAPI.getWinners(7, 101442426);
+
+        assertThat(first, is(Collections.singletonList("Sleepy Lucy")));
+        assertThat(second, is(first));
+        assertThat(ifNoneMatch.size(), is(2));
+        assertThat(ifNoneMatch.get(0), is(nullValue()));
+        assertThat(ifNoneMatch.get(1), is("\"" + FEED.hashCode() + "\""));
+
+        feed = FEED.replace("Sleepy Lucy", "Teth, Sleepy Lucy");
+
+        assertThat(ResultsAPI.getWinners(7, 101442426).size(), is(2));
+    }
+
+    @Test
+    public void testGetWinnersAsync() throws Exception {
+        List<String> winners = ResultsAPI.getWinnersAsync(7, 101442427).get(5, TimeUnit.SECONDS);
+
+        assertThat(winners, is(Collections.singletonList("Sleepy Lucy")));
+    }
+
+    @Test
+    public void testGetWinnersAsyncParsesOnCallersExecutor() throws Exception {
+        final AtomicInteger tasks = new AtomicInteger();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.incrementAndGet();
+                command.run();
+            }
+        };
+
+        List<String> winners = ResultsAPI.getWinnersAsync(7, 101442431, executor).get(5, TimeUnit.SECONDS);
+
+        assertThat(winners, is(Collections.singletonList("Sleepy Lucy")));
+        assertThat(tasks.get(), is(1));
+    }
+
+    @Test
+    public void testGetWinnersAsyncFailsOnErrorStatus() throws Exception {
+        status = 503;
+
+        try {
+            ResultsAPI.getWinnersAsync(7, 101442429).get(5, TimeUnit.SECONDS);
+            fail("Expected the future to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause() instanceof BetfairException, is(true));
+        }
+    }
+
+    @Test(expected = BetfairException.class)
+    public void testGetWinnersFailsOnErrorStatus() throws BetfairException {
+        status = 503;
+
+        ResultsAPI.getWinners(7, 101442430);
+    }
+
+    @Test(expected = BetfairException.class)
+    public void testGetWinnersWithNoResults() throws BetfairException {
+        feed = "<rss version=\"2.0\"><channel><title>Betfair results</title></channel></rss>";
+
+        ResultsAPI.getWinners(7, 101442428);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static InputStream stream(String xml) throws IOException {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
 }
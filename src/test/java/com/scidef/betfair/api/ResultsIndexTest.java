@@ -0,0 +1,154 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.exception.BetfairException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static com.scidef.betfair.api.HorseRacing.HORSE_RACING_SPORT_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>ResultsIndex</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class ResultsIndexTest {
+
+    private static final String SPORT_FEED =
+            "<?xml version=\"1.0\" encoding=\"utf-8\"?><rss version=\"2.0\"><channel>" +
+                    "<title>Betfair results</title>" +
+                    item(101442426, "Kemp 19th Oct / 2m4f Hcap", "Winner(s): Sleepy Lucy") +
+                    item(101442427, "Kemp 19th Oct / To Be Placed", "Winner(s): Sleepy Lucy, Teth, Dingbat") +
+                    item(101442428, "Kemp 19th Oct / Broken", "No winners") +
+                    "<item><title>No market</title><description>Winner(s): Teth</description></item>" +
+                    "</channel></rss>";
+    private static final String MARKET_FEED =
+            "<rss version=\"2.0\"><channel>" +
+                    item(101442500, "Dund 19th Oct / 1m Mdn", "Winner(s): Bilbo Baggins") +
+                    "</channel></rss>";
+
+    private HttpServer server;
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String query = exchange.getRequestURI().getQuery();
+                queries.add(query);
+                byte[] body = (query.contains("marketID") ? MARKET_FEED : SPORT_FEED).getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        ResultsAPI.setRssUrl("http://localhost:" + server.getAddress().getPort() + "/RSS.aspx");
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        ResultsAPI.setRssUrl("http://rss.betfair.com/RSS.aspx");
+    }
+
+    @Test
+    public void testRefreshIndexesWholeFeed() throws BetfairException {
+        ResultsIndex index = new ResultsIndex(HORSE_RACING_SPORT_ID);
+
+        assertThat(index.refresh(), is(2));
+
+        assertThat(index.size(), is(2));
+        assertThat(index.getWinners(101442426), is(Collections.singletonList("Sleepy Lucy")));
+        assertThat(index.getWinners(101442427), is(Arrays.asList("Sleepy Lucy", "Teth", "Dingbat")));
+        assertThat(index.getPosition(101442427, "Teth"), is(2));
+        assertThat(index.getPosition(101442427, "Bilbo Baggins"), is(0));
+        assertThat(queries, is(Collections.singletonList("format=rss&sportID=7")));
+
+        // a second refresh adds nothing new
+        assertThat(index.refresh(), is(0));
+        assertThat(index.getRefreshes(), is(2L));
+    }
+
+    @Test
+    public void testFallbackToMarketFeed() throws BetfairException {
+        ResultsIndex index = new ResultsIndex(HORSE_RACING_SPORT_ID);
+        index.refresh();
+
+        assertThat(index.contains(101442500), is(false));
+        assertThat(index.getWinners(101442500), is(Collections.singletonList("Bilbo Baggins")));
+        assertThat(index.contains(101442500), is(true));
+        assertThat(index.getWinners(101442500), is(Collections.singletonList("Bilbo Baggins")));
+
+        assertThat(index.getFallbacks(), is(1L));
+        assertThat(queries.size(), is(2));
+    }
+
+    @Test(expected = BetfairException.class)
+    public void testNoFallback() throws BetfairException {
+        ResultsIndex index = new ResultsIndex(HORSE_RACING_SPORT_ID);
+        index.setFallbackToMarketFeed(false);
+
+        index.getWinners(101442500);
+    }
+
+    @Test
+    public void testEvictsMarketsNotSeenForMaxAge() throws BetfairException {
+        ResultsIndex index = new ResultsIndex(HORSE_RACING_SPORT_ID);
+        index.setMaxAgeMillis(60000);
+        index.refresh();
+        index.getWinners(101442500);
+        long now = System.currentTimeMillis();
+
+        assertThat(index.evict(now), is(0));
+        assertThat(index.size(), is(3));
+
+        assertThat(index.evict(now + 120000), is(3));
+        assertThat(index.size(), is(0));
+        assertThat(index.getEvictions(), is(3L));
+
+        // the sport feed still holds the markets, so a refresh brings them back
+        assertThat(index.refresh(), is(2));
+        assertThat(index.contains(101442500), is(false));
+    }
+
+    @Test
+    public void testRefreshOnlyWithinHours() {
+        ResultsIndex index = new ResultsIndex(HORSE_RACING_SPORT_ID);
+
+        assertThat(index.refreshIfDue(new GregorianCalendar(2026, 9, 19, 9, 0), 12, 22), is(false));
+        assertThat(index.refreshIfDue(new GregorianCalendar(2026, 9, 19, 22, 30), 12, 22), is(false));
+        assertThat(queries.size(), is(0));
+
+        assertThat(index.refreshIfDue(new GregorianCalendar(2026, 9, 19, 15, 0), 12, 22), is(true));
+        assertThat(index.size(), is(2));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static String item(int marketId, String title, String description) {
+        return "<item><title>" + title + "</title>" +
+                "<link>http://rss.betfair.com/RSS.aspx?format=rss&amp;sportID=7&amp;marketID=" + marketId + "</link>" +
+                "<description>" + description + "</description></item>";
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.exception.BetfairException;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the <code>ServiceBootstrap</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class ServiceBootstrapTest {
+
+    @Test
+    public void testTasksRunInParallel() throws BetfairException {
+        // each task waits for the other, so they only both succeed if they run at the same time
+        final CountDownLatch latch = new CountDownLatch(2);
+        Map<String, Callable<?>> tasks = new LinkedHashMap<String, Callable<?>>();
+        for (String name : new String[]{"first", "second"}) {
+            tasks.put(name, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    latch.countDown();
+                    if (!latch.await(5, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("tasks did not run in parallel");
+                    }
+                    return true;
+                }
+            });
+        }
+        ServiceBootstrap bootstrap = new ServiceBootstrap();
+
+        bootstrap.start(tasks);
+
+        assertThat(bootstrap.isStarted(), is(true));
+        assertThat(bootstrap.getStartupTime() >= 0, is(true));
+        assertThat(bootstrap.getTaskTimes().keySet().size(), is(2));
+        assertThat(bootstrap.getTaskTimes().containsKey("first"), is(true));
+        assertThat(bootstrap.getTaskTimes().containsKey("second"), is(true));
+    }
+
+    @Test
+    public void testFailedTaskFailsStartup() {
+        Map<String, Callable<?>> tasks = new LinkedHashMap<String, Callable<?>>();
+        tasks.put("ok", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return true;
+            }
+        });
+        tasks.put("broken", new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                throw new IllegalStateException("no WSDL");
+            }
+        });
+        ServiceBootstrap bootstrap = new ServiceBootstrap();
+
+        try {
+            bootstrap.start(tasks);
+            fail("expected startup to fail");
+        } catch (BetfairException e) {
+            assertThat(e.getCause().getMessage(), is("no WSDL"));
+        }
+
+        assertThat(bootstrap.isStarted(), is(false));
+        assertThat(bootstrap.getStartupTime(), is(-1L));
+        assertThat(bootstrap.getTaskTimes().containsKey("broken"), is(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testServicesNotAvailableBeforeStart() {
+        new ServiceBootstrap().getExchangeService();
+    }
+
+}
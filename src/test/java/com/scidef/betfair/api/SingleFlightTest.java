@@ -0,0 +1,124 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.exception.BetfairException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the <code>SingleFlight</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallersShareOneCall() throws Exception {
+        final SingleFlight<Integer, String> flight = new SingleFlight<Integer, String>(0);
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final SingleFlight.Call<String> call = new SingleFlight.Call<String>() {
+            @Override
+            public String call() throws BetfairException {
+                calls.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new BetfairException("interrupted", e);
+                }
+                return "prices";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return flight.get(53, call);
+                    }
+                }));
+            }
+            while (flight.getJoined() < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get(), is("prices"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(calls.get(), is(1));
+        assertThat(flight.getExecutions(), is(1L));
+        assertThat(flight.getJoined(), is(7L));
+        assertThat(flight.getSaved(), is(7L));
+
+        // without a freshness window, the next caller makes a new call
+        flight.get(53, call);
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void testFreshnessWindow() throws BetfairException {
+        SingleFlight<Integer, Integer> flight = new SingleFlight<Integer, Integer>(60000);
+        CountingCall call = new CountingCall();
+
+        assertThat(flight.get(53, call), is(1));
+        assertThat(flight.get(53, call), is(1));
+        assertThat(flight.get(54, call), is(2));
+        assertThat(flight.getServedFresh(), is(1L));
+
+        flight.remove(53);
+        assertThat(flight.get(53, call), is(3));
+    }
+
+    @Test
+    public void testFailuresAreNotReused() throws BetfairException {
+        SingleFlight<Integer, Integer> flight = new SingleFlight<Integer, Integer>(60000);
+        SingleFlight.Call<Integer> failing = new SingleFlight.Call<Integer>() {
+            @Override
+            public Integer call() throws BetfairException {
+                throw new BetfairException("throttled");
+            }
+        };
+
+        try {
+            flight.get(53, failing);
+            fail("expected a BetfairException");
+        } catch (BetfairException e) {
+            assertThat(e.getMessage(), is("throttled"));
+        }
+        assertThat(flight.get(53, new CountingCall()), is(1));
+        assertThat(flight.getExecutions(), is(2L));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static class CountingCall implements SingleFlight.Call<Integer> {
+
+        private int calls;
+
+        @Override
+        public Integer call() {
+            return ++calls;
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.scidef.betfair.api;
+
+import com.scidef.betfair.api.aop.DeadlineExceededException;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.exception.ExceededThrottleException;
+import com.scidef.betfair.api.exception.NoSessionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static com.scidef.betfair.api.TestConstant.SESSION_TOKEN;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>StreamingExchangeAPI</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class StreamingExchangeAPITest {
+
+    @Test
+    public void testBuildRequest() {
+        String request = StreamingExchangeAPI.buildGetMarketPricesCompressedRequest(SESSION_TOKEN, MARKET_ID);
+
+        assertThat(request, containsString("<sessionToken>" + SESSION_TOKEN + "</sessionToken>"));
+        assertThat(request, containsString("<marketId>" + MARKET_ID + "</marketId>"));
+        assertThat(request, containsString("<bfex:getMarketPricesCompressed>"));
+    }
+
+    @Test
+    public void testParseResponse() throws BetfairException {
+        String marketPrices = StreamingExchangeAPI.parseGetMarketPricesCompressedResponse(
+                response("OK", "OK", COMPRESSED_MARKET_DATA));
+
+        assertThat(marketPrices, is(COMPRESSED_MARKET_DATA));
+    }
+
+    @Test(expected = NoSessionException.class)
+    public void testParseResponseWithNoSession() throws BetfairException {
+        StreamingExchangeAPI.parseGetMarketPricesCompressedResponse(response("NO_SESSION", "API_ERROR", null));
+    }
+
+    @Test(expected = ExceededThrottleException.class)
+    public void testParseResponseWithExceededThrottle() throws BetfairException {
+        StreamingExchangeAPI.parseGetMarketPricesCompressedResponse(
+                response("EXCEEDED_THROTTLE", "API_ERROR", null));
+    }
+
+    @Test
+    public void testParseResponseWithError() {
+        try {
+            StreamingExchangeAPI.parseGetMarketPricesCompressedResponse(response("OK", "INVALID_MARKET", null));
+            fail("expected a BetfairException");
+        } catch (BetfairException e) {
+            assertThat(e.getMessage(), is("getMarketPricesCompressed error. Error code: INVALID_MARKET; API code: OK"));
+        }
+    }
+
+    @Test
+    public void testParseFault() {
+        String fault = "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>" +
+                "<soap:Fault><faultcode>soap:Client</faultcode><faultstring>Unmarshalling Error</faultstring>" +
+                "</soap:Fault></soap:Body></soap:Envelope>";
+        try {
+            StreamingExchangeAPI.parseGetMarketPricesCompressedResponse(stream(fault));
+            fail("expected a BetfairException");
+        } catch (BetfairException e) {
+            assertThat(e.getMessage(), is("getMarketPricesCompressed fault: Unmarshalling Error"));
+        }
+    }
+
+    @Test
+    public void testGetMarketPricesCompressedOverHttp() throws Exception {
+        final AtomicReference<String> soapAction = new AtomicReference<String>();
+        final AtomicReference<String> requestBody = new AtomicReference<String>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                soapAction.set(exchange.getRequestHeaders().getFirst("SOAPAction"));
+                requestBody.set(new String(readAll(exchange.getRequestBody()), "UTF-8"));
+                ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+                GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+                gzip.write(readAll(response("OK", "OK", COMPRESSED_MARKET_DATA)));
+                gzip.close();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, gzipped.size());
+                OutputStream out = exchange.getResponseBody();
+                out.write(gzipped.toByteArray());
+                out.close();
+            }
+        });
+        server.start();
+        try {
+            GlobalAPI globalAPI = mock(GlobalAPI.class);
+            when(globalAPI.getSessionToken()).thenReturn(SESSION_TOKEN);
+            StreamingExchangeAPI api = new StreamingExchangeAPI(globalAPI,
+                    "http://localhost:" + server.getAddress().getPort() + "/", 1000, 1000);
+
+            assertThat(api.getMarketPricesCompressed(MARKET_ID), is(COMPRESSED_MARKET_DATA));
+            assertThat(soapAction.get(), is("getMarketPricesCompressed"));
+            assertThat(requestBody.get(), containsString("<marketId>" + MARKET_ID + "</marketId>"));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testDeadlineCutsReadTimeout() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            GlobalAPI globalAPI = mock(GlobalAPI.class);
+            when(globalAPI.getSessionToken()).thenReturn(SESSION_TOKEN);
+            StreamingExchangeAPI api = new StreamingExchangeAPI(globalAPI,
+                    "http://localhost:" + server.getAddress().getPort() + "/", 10000, 10000);
+            long misses = Deadline.getMisses();
+
+            Deadline previous = Deadline.set(Deadline.after(200));
+            long start = System.currentTimeMillis();
+            try {
+                api.getMarketPricesCompressed(MARKET_ID);
+                fail("expected a DeadlineExceededException");
+            } catch (DeadlineExceededException e) {
+                assertThat(e.getOperation(), is("StreamingExchangeAPI.getMarketPricesCompressed"));
+            } finally {
+                Deadline.restore(previous);
+            }
+
+            assertThat(System.currentTimeMillis() - start < 1500, is(true));
+            assertThat(Deadline.getMisses(), is(misses + 1));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static InputStream response(String apiErrorCode, String errorCode, String marketPrices) {
+        return stream("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" " +
+                "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+                "<soap:Header><trace><errorCode>ignored</errorCode></trace></soap:Header>" +
+                "<soap:Body><n:getMarketPricesCompressedResponse " +
+                "xmlns:n=\"http://www.betfair.com/publicapi/v5/BFExchangeService/\">" +
+                "<n:Result xsi:type=\"n2:GetMarketPricesCompressedResp\" " +
+                "xmlns:n2=\"http://www.betfair.com/publicapi/types/exchange/v5/\">" +
+                "<header><errorCode>" + apiErrorCode + "</errorCode><minorErrorCode xsi:nil=\"1\"/>" +
+                "<sessionToken>" + SESSION_TOKEN + "</sessionToken>" +
+                "<timestamp>2026-10-19T12:00:00.000Z</timestamp></header>" +
+                "<errorCode>" + errorCode + "</errorCode>" +
+                (marketPrices != null ? "<marketPrices>" + escape(marketPrices) + "</marketPrices>" :
+                        "<marketPrices xsi:nil=\"1\"/>") +
+                "<minorErrorCode xsi:nil=\"1\"/></n:Result></n:getMarketPricesCompressedResponse>" +
+                "</soap:Body></soap:Envelope>");
+    }
+
+    private static InputStream stream(String xml) {
+        try {
+            return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+}
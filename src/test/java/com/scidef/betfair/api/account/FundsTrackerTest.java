@@ -0,0 +1,186 @@
+package com.scidef.betfair.api.account;
+
+import com.betfair.publicapi.types.exchange.v5.ArrayOfMUBet;
+import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.GetAccountFundsErrorEnum;
+import com.betfair.publicapi.types.exchange.v5.GetAccountFundsResp;
+import com.betfair.publicapi.types.exchange.v5.GetMUBetsResp;
+import com.betfair.publicapi.types.exchange.v5.MUBet;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.ExchangeAPI;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.datatype.XMLGregorianCalendar;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+
+import static com.scidef.betfair.api.TestConstant.BET_ID_1;
+import static com.scidef.betfair.api.TestConstant.BET_ID_2;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>FundsTracker</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class FundsTrackerTest {
+
+    private static final double DELTA = 1e-9;
+
+    private ExchangeAPI exchangeAPI;
+    private OwnOrderBook ownOrderBook;
+    private FundsTracker fundsTracker;
+
+    @Before
+    public void setupFundsTracker() {
+        exchangeAPI = mock(ExchangeAPI.class);
+        when(exchangeAPI.getAccountFunds()).thenReturn(generateGetAccountFundsResp(100.0));
+        ownOrderBook = new OwnOrderBook(exchangeAPI);
+        fundsTracker = new FundsTracker(exchangeAPI, ownOrderBook, 60000, 0.01);
+    }
+
+    @Test
+    public void testFundsAreAdjustedLocally() {
+        assertThat(fundsTracker.canAfford(1.0), is(false));
+        assertThat(fundsTracker.reconcileIfDue(), is(true));
+        assertEquals(100.0, fundsTracker.getAvailableBalance(), DELTA);
+
+        // an unmatched lay of 10 at 3.0 ties up 20
+        ownOrderBook.apply(MARKET_ID, Collections.singletonList(
+                muBet(BET_ID_1, BetTypeEnum.L, BetStatusEnum.U, 3.0, 10.0)), true);
+        assertEquals(80.0, fundsTracker.getAvailableBalance(), DELTA);
+        assertEquals(20.0, fundsTracker.getExposure(), DELTA);
+
+        // the lay is matched and another runner is backed for 10: if the laid runner wins we lose 20 + 10
+        ownOrderBook.apply(MARKET_ID, Arrays.asList(
+                muBet(BET_ID_1, BetTypeEnum.L, BetStatusEnum.M, 3.0, 10.0),
+                muBet(BET_ID_2, BetTypeEnum.B, BetStatusEnum.M, 4.0, 10.0)), true);
+        assertEquals(70.0, fundsTracker.getAvailableBalance(), DELTA);
+
+        Bet bet = new Bet(MARKET_ID, 1, BetTypeEnum.L, 11.0, 0.0, null, null, null);
+        bet.setSize(8.0);
+        assertThat(fundsTracker.canAfford(Collections.singletonList(bet)), is(false));
+        bet.setSize(7.0);
+        assertThat(fundsTracker.canAfford(Collections.singletonList(bet)), is(true));
+
+        // the lay loses and the back wins: +10 + 30
+        fundsTracker.onSettled(MARKET_ID, 40.0);
+        assertEquals(140.0, fundsTracker.getAvailableBalance(), DELTA);
+        assertEquals(140.0, fundsTracker.getBalance(), DELTA);
+        assertEquals(0.0, fundsTracker.getExposure(), DELTA);
+
+        // no more calls to the API until the interval has passed
+        assertThat(fundsTracker.reconcileIfDue(), is(false));
+        verify(exchangeAPI, times(1)).getAccountFunds();
+    }
+
+    @Test
+    public void testDriftForcesReconcile() {
+        fundsTracker.reconcile();
+        when(exchangeAPI.getAccountFunds()).thenReturn(generateGetAccountFundsResp(90.0));
+
+        // the API disagrees with the local figures, so reconcile again on the next check
+        fundsTracker.reconcile();
+        assertEquals(-10.0, fundsTracker.getLastDrift(), DELTA);
+        assertThat(fundsTracker.getDriftsDetected(), is(1L));
+        assertThat(fundsTracker.reconcileIfDue(), is(true));
+        assertThat(fundsTracker.reconcileIfDue(), is(false));
+
+        fundsTracker.invalidate();
+        assertThat(fundsTracker.reconcileIfDue(), is(true));
+
+        // negative local funds also force a reconcile
+        fundsTracker.onSettled(MARKET_ID, -100.0);
+        assertThat(fundsTracker.reconcileIfDue(), is(true));
+        assertThat(fundsTracker.getReconciliations(), is(5L));
+    }
+
+    @Test
+    public void testSeedAfterReconcileIsNotDeductedTwice() throws Exception {
+        // the API's figures already allow for a lay of 10 at 3.0 placed before the reconcile
+        when(exchangeAPI.getAccountFunds()).thenReturn(generateGetAccountFundsResp(80.0));
+        fundsTracker.reconcile();
+
+        MUBet lay = muBet(BET_ID_1, BetTypeEnum.L, BetStatusEnum.U, 3.0, 10.0);
+        lay.setPlacedDate(placedDate(System.currentTimeMillis() - 60000));
+        GetMUBetsResp resp = new GetMUBetsResp();
+        resp.setBets(new ArrayOfMUBet());
+        resp.getBets().getMUBet().add(lay);
+        resp.setTotalRecordCount(1);
+        when(exchangeAPI.getMatchedAndUnmatchedBets(MARKET_ID, BetStatusEnum.MU)).thenReturn(resp);
+        ownOrderBook.sync(MARKET_ID);
+
+        assertEquals(80.0, fundsTracker.getAvailableBalance(), DELTA);
+        assertEquals(20.0, fundsTracker.getExposure(), DELTA);
+        assertThat(fundsTracker.canAfford(80.0), is(true));
+        assertThat(fundsTracker.canAfford(80.01), is(false));
+
+        // a back of 10 placed since, on another runner, is deducted as usual
+        lay.setBetStatus(BetStatusEnum.M);
+        resp.getBets().getMUBet().add(muBet(BET_ID_2, BetTypeEnum.B, BetStatusEnum.M, 4.0, 10.0));
+        resp.setTotalRecordCount(2);
+        ownOrderBook.sync(MARKET_ID);
+        assertEquals(70.0, fundsTracker.getAvailableBalance(), DELTA);
+        assertEquals(30.0, fundsTracker.getExposure(), DELTA);
+    }
+
+    @Test
+    public void testReconcileTakesExposureFromBook() {
+        ownOrderBook.removeListener(fundsTracker);
+        ownOrderBook.apply(MARKET_ID, Collections.singletonList(
+                muBet(BET_ID_1, BetTypeEnum.L, BetStatusEnum.U, 3.0, 10.0)), true);
+        ownOrderBook.addListener(fundsTracker);
+        fundsTracker.reconcile();
+        assertEquals(20.0, fundsTracker.getExposure(), DELTA);
+
+        // only the change in the market's exposure is deducted, not the whole of it
+        ownOrderBook.apply(MARKET_ID, Arrays.asList(
+                muBet(BET_ID_1, BetTypeEnum.L, BetStatusEnum.M, 3.0, 10.0),
+                muBet(BET_ID_2, BetTypeEnum.B, BetStatusEnum.M, 4.0, 10.0)), true);
+        assertEquals(90.0, fundsTracker.getAvailableBalance(), DELTA);
+        assertEquals(30.0, fundsTracker.getExposure(), DELTA);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static XMLGregorianCalendar placedDate(long millis) throws DatatypeConfigurationException {
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeInMillis(millis);
+        return DatatypeFactory.newInstance().newXMLGregorianCalendar(calendar);
+    }
+
+    private static MUBet muBet(long betId, BetTypeEnum betType, BetStatusEnum betStatus, double price, double size) {
+        MUBet muBet = new MUBet();
+        muBet.setBetId(betId);
+        muBet.setMarketId(MARKET_ID);
+        muBet.setSelectionId((int) betId);
+        muBet.setBetType(betType);
+        muBet.setBetStatus(betStatus);
+        muBet.setPrice(price);
+        muBet.setSize(size);
+        return muBet;
+    }
+
+    private static GetAccountFundsResp generateGetAccountFundsResp(double availableBalance) {
+        GetAccountFundsResp resp = new GetAccountFundsResp();
+        resp.setErrorCode(GetAccountFundsErrorEnum.OK);
+        resp.setBalance(availableBalance);
+        resp.setAvailBalance(availableBalance);
+        return resp;
+    }
+
+}
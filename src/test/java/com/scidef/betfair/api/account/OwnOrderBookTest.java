@@ -0,0 +1,189 @@
+package com.scidef.betfair.api.account;
+
+import com.betfair.publicapi.types.exchange.v5.ArrayOfMUBet;
+import com.betfair.publicapi.types.exchange.v5.ArrayOfPlaceBetsResult;
+import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.GetMUBetsResp;
+import com.betfair.publicapi.types.exchange.v5.MUBet;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.ExchangeAPI;
+import com.scidef.betfair.api.exception.BetfairException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.scidef.betfair.api.TestConstant.BET_ID_1;
+import static com.scidef.betfair.api.TestConstant.BET_ID_2;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>OwnOrderBook</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class OwnOrderBookTest {
+
+    private static final double DELTA = 1e-9;
+
+    private ExchangeAPI exchangeAPI;
+    private OwnOrderBook book;
+    private List<OwnBet[]> changes;
+
+    @Before
+    public void setupOwnOrderBook() {
+        exchangeAPI = mock(ExchangeAPI.class);
+        book = new OwnOrderBook(exchangeAPI);
+        changes = new ArrayList<OwnBet[]>();
+        book.addListener(new OwnOrderBook.Listener() {
+            @Override
+            public void onChange(OwnBet previous, OwnBet current) {
+                changes.add(new OwnBet[]{previous, current});
+            }
+        });
+    }
+
+    @Test
+    public void testSyncSeedsMarket() throws BetfairException {
+        when(exchangeAPI.getMatchedAndUnmatchedBets(MARKET_ID, BetStatusEnum.MU)).thenReturn(generateGetMUBetsResp(
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.M, 4.0, 2.0),
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.U, 4.0, 3.0),
+                muBet(BET_ID_2, 2, BetTypeEnum.L, BetStatusEnum.U, 3.0, 10.0)));
+
+        assertThat(book.isSeeded(MARKET_ID), is(false));
+        book.sync(MARKET_ID);
+
+        assertThat(book.isSeeded(MARKET_ID), is(true));
+        assertThat(book.getBet(MARKET_ID, BET_ID_1).getState(), is(OwnBetState.PARTIALLY_MATCHED));
+        assertEquals(5.0, book.getBet(MARKET_ID, BET_ID_1).getRequestedSize(), DELTA);
+        assertThat(book.getBet(MARKET_ID, BET_ID_2).getState(), is(OwnBetState.UNMATCHED));
+        assertThat(book.getOpenBets(MARKET_ID).size(), is(2));
+        assertEquals(3.0, book.getUnmatchedSize(MARKET_ID, 1), DELTA);
+        // unmatched back of 3 plus unmatched lay of 10 at 3.0
+        assertEquals(3.0 + 20.0, book.getUnmatchedLiability(MARKET_ID), DELTA);
+        assertThat(changes.size(), is(2));
+    }
+
+    @Test
+    public void testStateTransitions() {
+        book.apply(MARKET_ID, Arrays.asList(
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.U, 4.0, 5.0),
+                muBet(BET_ID_2, 2, BetTypeEnum.B, BetStatusEnum.U, 6.0, 5.0)), true);
+        changes.clear();
+
+        // an identical poll changes nothing
+        book.apply(MARKET_ID, Arrays.asList(
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.U, 4.0, 5.0),
+                muBet(BET_ID_2, 2, BetTypeEnum.B, BetStatusEnum.U, 6.0, 5.0)), true);
+        assertThat(changes.size(), is(0));
+
+        // the first bet is partly matched
+        book.apply(MARKET_ID, Arrays.asList(
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.M, 4.2, 2.0),
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.U, 4.0, 3.0),
+                muBet(BET_ID_2, 2, BetTypeEnum.B, BetStatusEnum.U, 6.0, 5.0)), true);
+        assertThat(changes.size(), is(1));
+        assertThat(changes.get(0)[0].getState(), is(OwnBetState.UNMATCHED));
+        assertThat(changes.get(0)[1].getState(), is(OwnBetState.PARTIALLY_MATCHED));
+        assertEquals(4.2, book.getBet(MARKET_ID, BET_ID_1).getAverageMatchedPrice(), DELTA);
+
+        // then fully matched, and the second bet has disappeared so has lapsed
+        changes.clear();
+        book.apply(MARKET_ID, Arrays.asList(
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.M, 4.2, 2.0),
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.M, 4.0, 3.0)), true);
+        assertThat(changes.size(), is(2));
+        assertThat(book.getBet(MARKET_ID, BET_ID_1).getState(), is(OwnBetState.MATCHED));
+        assertEquals((4.2 * 2 + 4.0 * 3) / 5, book.getBet(MARKET_ID, BET_ID_1).getAverageMatchedPrice(), DELTA);
+        assertThat(book.getBet(MARKET_ID, BET_ID_2).getState(), is(OwnBetState.LAPSED));
+        assertThat(book.getOpenBets(MARKET_ID).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testIncompletePollDoesNotLapseBets() {
+        book.apply(MARKET_ID, Collections.singletonList(
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.U, 4.0, 5.0)), true);
+        book.apply(MARKET_ID, Collections.<MUBet>emptyList(), false);
+
+        assertThat(book.getBet(MARKET_ID, BET_ID_1).getState(), is(OwnBetState.UNMATCHED));
+    }
+
+    @Test
+    public void testOnPlaced() {
+        Bet bet = new Bet(MARKET_ID, 1, BetTypeEnum.L, 3.0, 100.0, null, null, null);
+        bet.setSize(10.0);
+        PlaceBetsResult result = new PlaceBetsResult();
+        result.setSuccess(true);
+        result.setBetId(BET_ID_1);
+        result.setSizeMatched(4.0);
+        result.setAveragePriceMatched(3.0);
+        PlaceBetsResult failed = new PlaceBetsResult();
+        failed.setSuccess(false);
+        PlaceBetsResp resp = new PlaceBetsResp();
+        resp.setBetResults(new ArrayOfPlaceBetsResult());
+        resp.getBetResults().getPlaceBetsResult().add(result);
+        resp.getBetResults().getPlaceBetsResult().add(failed);
+
+        book.onPlaced(Arrays.asList(bet, new Bet()), resp);
+
+        OwnBet ownBet = book.getBet(MARKET_ID, BET_ID_1);
+        assertThat(ownBet.getState(), is(OwnBetState.PARTIALLY_MATCHED));
+        assertEquals(6.0, ownBet.getUnmatchedSize(), DELTA);
+        assertThat(changes.size(), is(1));
+        assertThat(changes.get(0)[0], is(nullValue()));
+
+        // a bet placed moments ago is not lapsed just because a poll has missed it
+        book.apply(MARKET_ID, Collections.<MUBet>emptyList(), true);
+        assertThat(book.getBet(MARKET_ID, BET_ID_1).getState(), is(OwnBetState.PARTIALLY_MATCHED));
+    }
+
+    @Test
+    public void testMatchedExposure() {
+        book.apply(MARKET_ID, Arrays.asList(
+                muBet(BET_ID_1, 1, BetTypeEnum.B, BetStatusEnum.M, 4.0, 10.0),
+                muBet(BET_ID_2, 2, BetTypeEnum.L, BetStatusEnum.M, 3.0, 10.0)), true);
+
+        // 1 wins: +30 - 10 = 20; 2 wins: -10 - 20 = -30; another runner wins: -10 + 10 = 0
+        assertEquals(30.0, book.getMatchedExposure(MARKET_ID), DELTA);
+        assertEquals(30.0, book.getExposure(MARKET_ID), DELTA);
+        assertEquals(0.0, book.getMatchedExposure(MARKET_ID + 1), DELTA);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static MUBet muBet(long betId, int selectionId, BetTypeEnum betType, BetStatusEnum betStatus,
+                               double price, double size) {
+        MUBet muBet = new MUBet();
+        muBet.setBetId(betId);
+        muBet.setMarketId(MARKET_ID);
+        muBet.setSelectionId(selectionId);
+        muBet.setBetType(betType);
+        muBet.setBetStatus(betStatus);
+        muBet.setPrice(price);
+        muBet.setSize(size);
+        return muBet;
+    }
+
+    private static GetMUBetsResp generateGetMUBetsResp(MUBet... muBets) {
+        GetMUBetsResp resp = new GetMUBetsResp();
+        resp.setBets(new ArrayOfMUBet());
+        resp.getBets().getMUBet().addAll(Arrays.asList(muBets));
+        resp.setTotalRecordCount(muBets.length);
+        return resp;
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.scidef.betfair.api.account;
+
+import com.betfair.publicapi.types.exchange.v5.ArrayOfPlaceBetsResult;
+import com.betfair.publicapi.types.exchange.v5.BetStatusEnum;
+import com.betfair.publicapi.types.exchange.v5.GetBetResp;
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.ExchangeAPI;
+import com.scidef.betfair.api.GlobalAPI;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.exception.ExceededThrottleException;
+import com.scidef.betfair.api.exception.NoSessionException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.scidef.betfair.api.TestConstant.BET_ID_1;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static com.scidef.betfair.api.TestConstant.PASSWORD;
+import static com.scidef.betfair.api.TestConstant.USERNAME;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>SessionPool</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class SessionPoolTest {
+
+    private GlobalAPI globalAPI1;
+    private GlobalAPI globalAPI2;
+    private ExchangeAPI exchangeAPI1;
+    private ExchangeAPI exchangeAPI2;
+    private SessionPool pool;
+
+    @Before
+    public void setupPool() throws BetfairException {
+        globalAPI1 = mock(GlobalAPI.class);
+        globalAPI2 = mock(GlobalAPI.class);
+        exchangeAPI1 = mock(ExchangeAPI.class);
+        exchangeAPI2 = mock(ExchangeAPI.class);
+        when(exchangeAPI1.getMarketPricesCompressed(MARKET_ID)).thenReturn(new GetMarketPricesCompressedResp());
+        when(exchangeAPI2.getMarketPricesCompressed(MARKET_ID)).thenReturn(new GetMarketPricesCompressedResp());
+
+        pool = new SessionPool(Collections.singletonMap(SessionPool.GET_MARKET_PRICES_COMPRESSED, 2));
+        pool.addSession("one", USERNAME, PASSWORD, globalAPI1, exchangeAPI1);
+        pool.addSession("two", USERNAME + "2", PASSWORD, globalAPI2, exchangeAPI2);
+    }
+
+    @Test
+    public void testLoginAll() throws BetfairException {
+        pool.loginAll();
+
+        verify(globalAPI1).login(USERNAME, PASSWORD, GlobalAPI.FREE_API_PRODUCT_ID);
+        verify(globalAPI2).login(USERNAME + "2", PASSWORD, GlobalAPI.FREE_API_PRODUCT_ID);
+    }
+
+    @Test
+    public void testReadsAreSpreadByHeadroom() throws BetfairException {
+        for (int i = 0; i < 4; i++) {
+            pool.getMarketPricesCompressed(MARKET_ID);
+        }
+
+        verify(exchangeAPI1, times(2)).getMarketPricesCompressed(MARKET_ID);
+        verify(exchangeAPI2, times(2)).getMarketPricesCompressed(MARKET_ID);
+        assertThat(pool.getHeadroom("one", SessionPool.GET_MARKET_PRICES_COMPRESSED), is(0));
+        assertThat(pool.getHeadroom("two", SessionPool.GET_MARKET_PRICES_COMPRESSED), is(0));
+    }
+
+    @Test
+    public void testThrottledSessionFailsOver() throws BetfairException {
+        when(exchangeAPI1.getMarketPricesCompressed(MARKET_ID)).thenThrow(new ExceededThrottleException());
+        when(exchangeAPI2.getMarketPricesCompressed(MARKET_ID)).thenThrow(new ExceededThrottleException());
+
+        try {
+            pool.getMarketPricesCompressed(MARKET_ID);
+            fail("expected an ExceededThrottleException");
+        } catch (ExceededThrottleException e) {
+            // both sessions were tried
+        }
+
+        verify(exchangeAPI1).getMarketPricesCompressed(MARKET_ID);
+        verify(exchangeAPI2).getMarketPricesCompressed(MARKET_ID);
+        assertThat(pool.getHeadroom("one", SessionPool.GET_MARKET_PRICES_COMPRESSED), is(0));
+        assertThat(pool.getHeadroom("two", SessionPool.GET_MARKET_PRICES_COMPRESSED), is(0));
+    }
+
+    @Test
+    public void testThrottledReadIsServedByAnotherSession() throws BetfairException {
+        GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
+        when(exchangeAPI1.getMarketPricesCompressed(MARKET_ID)).thenThrow(new ExceededThrottleException());
+        when(exchangeAPI2.getMarketPricesCompressed(MARKET_ID)).thenReturn(resp);
+
+        assertThat(pool.getMarketPricesCompressed(MARKET_ID), is(sameInstance(resp)));
+        assertThat(pool.getMarketPricesCompressed(MARKET_ID), is(sameInstance(resp)));
+
+        // session one is not tried again once it has been throttled
+        verify(exchangeAPI1, times(1)).getMarketPricesCompressed(MARKET_ID);
+    }
+
+    @Test
+    public void testExpiredSessionIsLoggedInAgain() throws BetfairException {
+        GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
+        pool = new SessionPool();
+        pool.addSession("one", USERNAME, PASSWORD, globalAPI1, exchangeAPI1);
+        when(exchangeAPI1.getMarketPricesCompressed(MARKET_ID)).thenThrow(new NoSessionException()).thenReturn(resp);
+
+        assertThat(pool.getMarketPricesCompressed(MARKET_ID), is(sameInstance(resp)));
+
+        verify(globalAPI1).login(USERNAME, PASSWORD, GlobalAPI.FREE_API_PRODUCT_ID);
+    }
+
+    @Test
+    public void testBetsStayWithTheirOwner() throws BetfairException {
+        PlaceBetsResult result = new PlaceBetsResult();
+        result.setSuccess(true);
+        result.setBetId(BET_ID_1);
+        PlaceBetsResp resp = new PlaceBetsResp();
+        resp.setBetResults(new ArrayOfPlaceBetsResult());
+        resp.getBetResults().getPlaceBetsResult().add(result);
+        List<Bet> bets = Collections.singletonList(new Bet());
+        when(exchangeAPI2.placeBets(bets)).thenReturn(resp);
+        GetBetResp betResp = new GetBetResp();
+        when(exchangeAPI2.getBet(BET_ID_1)).thenReturn(betResp);
+
+        pool.placeBets("two", bets);
+
+        assertThat(pool.getOwner(BET_ID_1), is("two"));
+        assertThat(pool.getBet(BET_ID_1), is(sameInstance(betResp)));
+        assertThat(pool.getOwner(BET_ID_1 + 1), is(nullValue()));
+        assertThat(pool.getExchangeAPI("two"), is(sameInstance(exchangeAPI2)));
+        verify(exchangeAPI1, never()).placeBets(bets);
+        verify(exchangeAPI1, never()).getBet(BET_ID_1);
+    }
+
+    @Test
+    public void testExpiredOwnerIsLoggedInAgain() throws BetfairException {
+        PlaceBetsResp resp = new PlaceBetsResp();
+        List<Bet> bets = Collections.singletonList(new Bet());
+        when(exchangeAPI2.placeBets(bets)).thenThrow(new NoSessionException()).thenReturn(resp);
+
+        assertThat(pool.placeBets("two", bets), is(sameInstance(resp)));
+
+        // the owner is logged in, not the primary session
+        verify(globalAPI2).login(USERNAME + "2", PASSWORD, GlobalAPI.FREE_API_PRODUCT_ID);
+        verify(globalAPI1, never()).login(USERNAME, PASSWORD, GlobalAPI.FREE_API_PRODUCT_ID);
+    }
+
+    @Test
+    public void testThrottledOwnerIsNotRetried() throws BetfairException {
+        List<Bet> bets = Collections.singletonList(new Bet());
+        when(exchangeAPI2.placeBets(bets)).thenThrow(new ExceededThrottleException());
+        pool.setThrottleLimit(SessionPool.PLACE_BETS, 5);
+
+        try {
+            pool.placeBets("two", bets);
+            fail("expected an ExceededThrottleException");
+        } catch (ExceededThrottleException e) {
+            // the bets belong to session two, so there is nowhere else to place them
+        }
+
+        verify(exchangeAPI1, never()).placeBets(bets);
+        assertThat(pool.getHeadroom("two", SessionPool.PLACE_BETS), is(0));
+    }
+
+    @Test
+    public void testSettledBetsAreForgotten() throws BetfairException {
+        PlaceBetsResult result = new PlaceBetsResult();
+        result.setSuccess(true);
+        result.setBetId(BET_ID_1);
+        PlaceBetsResp resp = new PlaceBetsResp();
+        resp.setBetResults(new ArrayOfPlaceBetsResult());
+        resp.getBetResults().getPlaceBetsResult().add(result);
+        List<Bet> bets = Collections.singletonList(new Bet());
+        when(exchangeAPI2.placeBets(bets)).thenReturn(resp);
+        GetBetResp betResp = new GetBetResp();
+        betResp.setBet(new com.betfair.publicapi.types.exchange.v5.Bet());
+        betResp.getBet().setBetStatus(BetStatusEnum.S);
+        when(exchangeAPI2.getBet(BET_ID_1)).thenReturn(betResp);
+
+        pool.placeBets("two", bets);
+        assertThat(pool.getBetOwnerCount(), is(1));
+
+        pool.getBet(BET_ID_1);
+
+        assertThat(pool.getOwner(BET_ID_1), is(nullValue()));
+        assertThat(pool.getBetOwnerCount(), is(0));
+    }
+
+    @Test(expected = BetfairException.class)
+    public void testUnknownBetIsRejected() throws BetfairException {
+        pool.getBet(BET_ID_1);
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.scidef.betfair.api.analytics;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.scidef.betfair.api.Bet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>BetAggregator</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class BetAggregatorTest {
+
+    private BetTable table;
+    private BetAggregator aggregator;
+
+    @Before
+    public void setupBetAggregator() {
+        table = new BetTable(generateBets());
+        // a tiny split threshold forces the rows to be aggregated across several tasks
+        aggregator = new BetAggregator(new ForkJoinPool(4), 2);
+    }
+
+    @Test
+    public void testAggregateByVenue() {
+        Map<String, PnlSummary> byVenue = aggregator.aggregate(table, BetGrouping.byVenue());
+
+        assertThat(byVenue.size(), is(2));
+        assertThat(byVenue.get("Punch").getBets(), is(3));
+        assertThat(byVenue.get("Punch").getSettledBets(), is(2));
+        assertThat(byVenue.get("Punch").getWinningBets(), is(1));
+        assertThat(byVenue.get("Punch").getTotalProfitOrLoss(), is(2.0));
+        assertThat(byVenue.get("Ling").getBets(), is(2));
+        assertThat(byVenue.get("Ling").getTotalProfitOrLoss(), is(-3.0));
+    }
+
+    @Test
+    public void testAggregateByBetType() {
+        Map<String, PnlSummary> byBetType = aggregator.aggregate(table, BetGrouping.byBetType());
+
+        assertThat(byBetType.get("Back").getBets(), is(3));
+        assertThat(byBetType.get("Back").getTotalProfitOrLoss(), is(2.0));
+        assertThat(byBetType.get("Lay").getBets(), is(2));
+        assertThat(byBetType.get("Lay").getTotalProfitOrLoss(), is(-3.0));
+    }
+
+    @Test
+    public void testAggregateByPriceBand() {
+        Map<String, PnlSummary> byPriceBand = aggregator.aggregate(table, BetGrouping.byPriceBand(3.0, 5.0));
+
+        assertThat(byPriceBand.get("<= 3.0").getBets(), is(1));
+        assertThat(byPriceBand.get("(3.0, 5.0]").getBets(), is(3));
+        assertThat(byPriceBand.get("> 5.0").getBets(), is(1));
+    }
+
+    @Test
+    public void testAggregateByNumberOfRunners() {
+        Map<String, PnlSummary> byRunners = aggregator.aggregate(table, BetGrouping.byNumberOfRunners(10));
+
+        assertThat(byRunners.get("8").getBets(), is(3));
+        assertThat(byRunners.get("> 10").getBets(), is(1));
+        assertThat(byRunners.get("Unknown").getBets(), is(1));
+    }
+
+    @Test
+    public void testAggregateByHourOfDay() {
+        Map<String, PnlSummary> byHour = aggregator.aggregate(table,
+                BetGrouping.byHourOfDay(TimeZone.getDefault()));
+
+        assertThat(byHour.get("14:00").getBets(), is(4));
+        assertThat(byHour.get("16:00").getBets(), is(1));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private static List<Bet> generateBets() {
+        List<Bet> bets = new ArrayList<Bet>();
+        bets.add(settledBet("Punch", BetTypeEnum.B, 4.0, 1, 8, 14));
+        bets.add(settledBet("Punch", BetTypeEnum.B, 3.0, 0, 8, 14));
+        bets.add(settledBet("Ling", BetTypeEnum.L, 5.0, 1, 12, 14));
+        bets.add(settledBet("Ling", BetTypeEnum.L, 6.0, 0, null, 16));
+        Bet unsettled = new Bet(1, 14, BetTypeEnum.B, 4.5, 20.0,
+                new GregorianCalendar(2013, 0, 21, 14, 0).getTime(), "Punch", "Desc");
+        unsettled.setNumberOfRunners(8);
+        bets.add(unsettled);
+        return bets;
+    }
+
+    private static Bet settledBet(String venue, BetTypeEnum betType, double price, int outcome,
+                                  Integer numberOfRunners, int hourOfDay) {
+        Bet bet = new Bet(1, 10, betType, price, 20.0,
+                new GregorianCalendar(2013, 0, 21, hourOfDay, 0).getTime(), venue, "Desc");
+        bet.setNonRunner(false);
+        bet.setEventOutcome(outcome);
+        bet.setNumberOfRunners(numberOfRunners);
+        return bet;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.scidef.betfair.api.analytics;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.scidef.betfair.api.Bet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>BetTable</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class BetTableTest {
+
+    @Test
+    public void testColumnsArePopulatedFromBets() {
+        List<Bet> bets = new ArrayList<Bet>();
+        Bet bet1 = new Bet(1, 10, BetTypeEnum.B, 4.0, 20.0,
+                new GregorianCalendar(2013, 0, 21, 14, 30).getTime(), "Punch", "Desc");
+        bet1.setSize(2.0);
+        bet1.setNumberOfRunners(8);
+        bets.add(bet1);
+        Bet bet2 = new Bet(2, 11, BetTypeEnum.L, 6.0, 30.0, null, "Ling", "Desc");
+        bets.add(bet2);
+        Bet bet3 = new Bet(3, 12, BetTypeEnum.B, 3.0, 40.0, null, "Punch", "Desc");
+        bets.add(bet3);
+
+        BetTable table = new BetTable(bets);
+
+        assertThat(table.getRowCount(), is(3));
+        assertThat(table.getVenueCount(), is(2));
+        assertThat(table.getVenueName(table.getVenue(0)), is("Punch"));
+        assertThat(table.getVenue(2), is(table.getVenue(0)));
+        assertThat(table.getBetType(0), is(BetTable.BACK));
+        assertThat(table.getBetType(1), is(BetTable.LAY));
+        assertThat(table.getSize(0), is(2.0));
+        assertThat(Double.isNaN(table.getSize(1)), is(true));
+        assertThat(table.getNumberOfRunners(0), is(8));
+        assertThat(table.getNumberOfRunners(1), is(BetTable.UNKNOWN));
+        assertThat(table.getEventTime(1), is(BetTable.UNKNOWN_TIME));
+    }
+
+    @Test
+    public void testProfitOrLossIsCalculatedWhenMissing() {
+        List<Bet> bets = new ArrayList<Bet>();
+        Bet winner = new Bet(1, 10, BetTypeEnum.B, 4.0, 20.0, null, "Punch", "Desc");
+        winner.setNonRunner(false);
+        winner.setEventOutcome(1);
+        bets.add(winner);
+        Bet nonRunner = new Bet(1, 11, BetTypeEnum.L, 6.0, 20.0, null, "Punch", "Desc");
+        nonRunner.setNonRunner(true);
+        nonRunner.setEventOutcome(0);
+        bets.add(nonRunner);
+        Bet unsettled = new Bet(1, 12, BetTypeEnum.B, 5.0, 20.0, null, "Punch", "Desc");
+        bets.add(unsettled);
+        Bet alreadySettled = new Bet(1, 13, BetTypeEnum.L, 5.0, 20.0, null, "Punch", "Desc");
+        alreadySettled.setProfitOrLoss(0.95);
+        bets.add(alreadySettled);
+
+        BetTable table = new BetTable(bets);
+
+        assertThat(table.getProfitOrLoss(0), is(3.0));
+        assertThat(table.isNonRunner(1), is(true));
+        assertThat(table.getProfitOrLoss(1), is(0.0));
+        assertThat(table.isSettled(2), is(false));
+        assertThat(table.getProfitOrLoss(3), is(0.95));
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.scidef.betfair.api.aop;
+
+import com.scidef.betfair.api.HorseRacing;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.exception.ExceededThrottleException;
+import com.scidef.betfair.api.exception.NoSessionException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.scidef.betfair.api.aop.TestJoinPoint.mockJoinPoint;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>CircuitBreaker</code> class and its use by the <code>RetryMethodAspect</code>.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class CircuitBreakerTest {
+
+    private static final String OPERATION = "ExchangeAPI.getMarketPricesCompressed";
+
+    private CircuitBreaker circuitBreaker;
+    private final List<String> transitions = new ArrayList<String>();
+
+    @Before
+    public void setupCircuitBreaker() {
+        circuitBreaker = new CircuitBreaker(OPERATION, 4, 4, 0.5, 1000L, 0.5, 50L, 2);
+        circuitBreaker.addListener(new CircuitBreaker.Listener() {
+            @Override
+            public void stateChanged(CircuitBreaker circuitBreaker, CircuitBreaker.State from,
+                                     CircuitBreaker.State to) {
+                transitions.add(from + "->" + to);
+            }
+        });
+    }
+
+    @Test
+    public void testOpensOnFailureRate() {
+        call(true, 0);
+        call(false, 0);
+        call(false, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        call(true, 0);
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+        assertThat(circuitBreaker.getRejected(), is(1L));
+        assertThat(transitions.size(), is(1));
+        assertThat(transitions.get(0), is("CLOSED->OPEN"));
+    }
+
+    @Test
+    public void testOpensOnSlowCalls() {
+        call(false, 0);
+        call(false, 0);
+        call(false, 1000);
+        call(false, 2000);
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.getSlowCallRate(), is(0.5));
+    }
+
+    @Test
+    public void testOnlyRecentCallsCount() {
+        call(true, 0);
+        for (int i = 0; i < 10; i++) {
+            call(false, 0);
+        }
+        call(true, 0);
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.getFailureRate(), is(0.25));
+    }
+
+    @Test
+    public void testHalfOpenTrialsClose() throws InterruptedException {
+        open();
+        Thread.sleep(60);
+
+        long first = circuitBreaker.tryAcquire();
+        long second = circuitBreaker.tryAcquire();
+        assertThat(first, is(not(CircuitBreaker.NO_PERMIT)));
+        assertThat(second, is(not(CircuitBreaker.NO_PERMIT)));
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        // only two trials at a time
+        assertThat(circuitBreaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+
+        circuitBreaker.onSuccess(first, 0);
+        circuitBreaker.onSuccess(second, 0);
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.getFailureRate(), is(0.0));
+        assertThat(transitions.toString(), is("[CLOSED->OPEN, OPEN->HALF_OPEN, HALF_OPEN->CLOSED]"));
+    }
+
+    @Test
+    public void testFailedTrialOpensAgain() throws InterruptedException {
+        open();
+        Thread.sleep(60);
+
+        circuitBreaker.onFailure(circuitBreaker.tryAcquire(), 0);
+
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.getOpened(), is(2L));
+        assertThat(circuitBreaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+    }
+
+    @Test
+    public void testCallsFromAnEarlierStateAreNotTakenForTrials() throws InterruptedException {
+        long closedPermit = circuitBreaker.tryAcquire();
+        open();
+        Thread.sleep(60);
+        long trial = circuitBreaker.tryAcquire();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+
+        // a call let through while closed finishes now, and neither counts as a trial...
+        circuitBreaker.onSuccess(closedPermit, 0);
+        circuitBreaker.onFailure(closedPermit, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+
+        // ...nor frees a trial slot
+        circuitBreaker.onIgnored(closedPermit);
+        assertThat(circuitBreaker.tryAcquire(), is(not(CircuitBreaker.NO_PERMIT)));
+        assertThat(circuitBreaker.tryAcquire(), is(CircuitBreaker.NO_PERMIT));
+
+        circuitBreaker.onFailure(trial, 0);
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void testAspectFailsFastWhenOpen() throws Throwable {
+        RetryMethodAspect aspect = new RetryMethodAspect(mock(HorseRacing.class));
+        aspect.setStandardSleepTime(0);
+        aspect.setCircuitBreaker(circuitBreaker);
+        ProceedingJoinPoint pjp = mockJoinPoint();
+        when(pjp.proceed()).thenThrow(new BetfairException("Service unavailable"));
+
+        // the first call exhausts its retries; the second opens the breaker part way through
+        try {
+            aspect.retryMethod(pjp);
+            fail("expected an ExceededMaxRetriesException");
+        } catch (ExceededMaxRetriesException e) {
+            assertThat(e instanceof CircuitOpenException, is(false));
+        }
+        try {
+            aspect.retryMethod(pjp);
+            fail("expected a CircuitOpenException");
+        } catch (CircuitOpenException e) {
+            assertThat(e.getOperation(), is(OPERATION));
+        }
+        verify(pjp, times(4)).proceed();
+
+        // further calls do not reach the service at all
+        try {
+            aspect.retryMethod(pjp);
+            fail("expected a CircuitOpenException");
+        } catch (CircuitOpenException e) {
+            assertThat(e.getCause() == null, is(true));
+        }
+        verify(pjp, times(4)).proceed();
+        assertThat(aspect.getCircuitBreakers().get(OPERATION), is(circuitBreaker));
+    }
+
+    @Test
+    public void testAspectIgnoresExpiredSessions() throws Throwable {
+        HorseRacing horseRacing = mock(HorseRacing.class);
+        RetryMethodAspect aspect = new RetryMethodAspect(horseRacing);
+        ProceedingJoinPoint pjp = mockJoinPoint();
+        when(pjp.proceed()).thenThrow(new NoSessionException()).thenReturn("result");
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(aspect.retryMethod(pjp), is((Object) "result"));
+        }
+
+        CircuitBreaker created = aspect.getCircuitBreaker(OPERATION);
+        assertThat(created.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(created.getFailureRate(), is(0.0));
+        verify(horseRacing).login();
+    }
+
+    @Test
+    public void testAspectRethrowsSessionErrorsWhenAsked() throws Throwable {
+        HorseRacing horseRacing = mock(HorseRacing.class);
+        RetryMethodAspect aspect = new RetryMethodAspect(horseRacing);
+        ProceedingJoinPoint pjp = mockJoinPoint();
+        ExceededThrottleException throttled = new ExceededThrottleException();
+        when(pjp.proceed()).thenThrow(new NoSessionException(), throttled);
+
+        boolean previous = RetryMethodAspect.setRethrowSessionErrors(true);
+        try {
+            try {
+                aspect.retryMethod(pjp);
+                fail("expected a NoSessionException");
+            } catch (NoSessionException e) {
+                // thrown back without logging in the primary session
+            }
+            try {
+                aspect.retryMethod(pjp);
+                fail("expected an ExceededThrottleException");
+            } catch (ExceededThrottleException e) {
+                assertThat(e, is(throttled));
+            }
+        } finally {
+            RetryMethodAspect.setRethrowSessionErrors(previous);
+        }
+
+        verify(horseRacing, never()).login();
+        verify(pjp, times(2)).proceed();
+        assertThat(aspect.getCircuitBreaker(OPERATION).getFailureRate(), is(0.0));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private void call(boolean failure, long elapsedMillis) {
+        long permit = circuitBreaker.tryAcquire();
+        assertThat(permit, is(not(CircuitBreaker.NO_PERMIT)));
+        if (failure) {
+            circuitBreaker.onFailure(permit, elapsedMillis);
+        } else {
+            circuitBreaker.onSuccess(permit, elapsedMillis);
+        }
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            call(true, 0);
+        }
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+}
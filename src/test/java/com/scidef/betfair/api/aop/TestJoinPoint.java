@@ -0,0 +1,32 @@
+package com.scidef.betfair.api.aop;
+
+import com.scidef.betfair.api.ExchangeAPI;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Mock join points used by the tests of the aspects.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class TestJoinPoint {
+
+    /**
+     * @return a mock join point for a call to <code>ExchangeAPI.getMarketPricesCompressed</code>,
+     *         which does nothing until it is told what to return or throw when it proceeds
+     */
+    public static ProceedingJoinPoint mockJoinPoint() {
+        Signature signature = mock(Signature.class);
+        when(signature.getDeclaringType()).thenReturn(ExchangeAPI.class);
+        when(signature.getName()).thenReturn("getMarketPricesCompressed");
+        when(signature.toShortString()).thenReturn("ExchangeAPI.getMarketPricesCompressed(..)");
+        ProceedingJoinPoint pjp = mock(ProceedingJoinPoint.class);
+        when(pjp.getSignature()).thenReturn(signature);
+        return pjp;
+    }
+
+}
@@ -0,0 +1,188 @@
+package com.scidef.betfair.api.backtest;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.strategy.BookSnapshot;
+import com.scidef.betfair.api.strategy.Strategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>Backtester</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class BacktesterTest {
+
+    private static final double DELTA = 1e-9;
+    private static final int RECORDED_MARKET_ID = 101442426;
+    private static final int FAVOURITE = 4056154;
+    private static final int SECOND_FAVOURITE = 3793446;
+
+    private File root;
+    private Backtester backtester;
+
+    @Before
+    public void setupRecording() throws IOException {
+        root = new File(System.getProperty("java.io.tmpdir"), "backtest-" + System.nanoTime());
+        recordDay("2026-10-17", "Sleepy Lucy");
+        recordDay("2026-10-18", "Teth");
+        recordDay("2026-10-19", null);
+        backtester = new Backtester(new Backtester.StrategyFactory() {
+            @Override
+            public List<Strategy> create() {
+                return Arrays.asList(new BackFavouriteOnce(), new FailingStrategy());
+            }
+        }, 100.0, new ForkJoinPool(2));
+    }
+
+    @After
+    public void deleteRecording() {
+        backtester.shutdown();
+        delete(root);
+    }
+
+    @Test
+    public void testRun() {
+        BacktestResult result = backtester.run(root);
+
+        assertThat(result.getDays(), is(3));
+        assertThat(result.getMarkets(), is(3L));
+        assertThat(result.getSnapshots(), is(6L));
+        assertThat(result.getBetsPlaced(), is(3L));
+        assertThat(result.getSettledMarkets(), is(2L));
+        assertThat(result.getUnsettledMarkets(), is(1L));
+        assertThat(result.getStrategyFailures(), is(6L));
+        assertThat(result.getFailedDays(), is(0L));
+        // 10 backed at 1.79 wins 7.90 on the first day and loses 10 on the second
+        assertEquals(7.9, result.getProfitOrLossByDay().get("2026-10-17"), DELTA);
+        assertEquals(-10.0, result.getProfitOrLossByDay().get("2026-10-18"), DELTA);
+        assertEquals(0.0, result.getProfitOrLossByDay().get("2026-10-19"), DELTA);
+        assertEquals(-2.1, result.getProfitOrLoss(), DELTA);
+    }
+
+    @Test
+    public void testPriceStreamSkipsUnreadableLines() throws IOException {
+        File dir = new File(root, "2026-10-20");
+        PriceStreamWriter writer = new PriceStreamWriter(dir);
+        writer.writePrices(1000L, COMPRESSED_MARKET_DATA);
+        writer.writePrices(2000L, "not prices");
+        writer.writePrices(3000L, COMPRESSED_MARKET_DATA);
+        writer.close();
+
+        PriceStreamReader reader = new RecordedDay(dir).openPrices();
+        try {
+            List<Long> timestamps = new ArrayList<Long>();
+            while (reader.next()) {
+                assertThat(reader.getMarketId(), is(RECORDED_MARKET_ID));
+                assertThat(reader.getCompressed(), is(COMPRESSED_MARKET_DATA));
+                timestamps.add(reader.getTimestamp());
+            }
+            assertThat(timestamps, is(Arrays.asList(1000L, 3000L)));
+            assertThat(reader.getSkippedLines(), is(1L));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMissingDaysAreEmpty() {
+        BacktestResult result = backtester.run(new File(root, "missing"));
+
+        assertThat(result.getDays(), is(0));
+        assertEquals(0.0, result.getProfitOrLoss(), DELTA);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // two polls of the market, and a result naming the winner if there is one
+    private void recordDay(String day, String winner) throws IOException {
+        File dir = new File(root, day);
+        PriceStreamWriter writer = new PriceStreamWriter(dir);
+        writer.writeRunnerName(RECORDED_MARKET_ID, FAVOURITE, "Sleepy Lucy");
+        writer.writeRunnerName(RECORDED_MARKET_ID, SECOND_FAVOURITE, "Teth");
+        writer.writePrices(1000L, COMPRESSED_MARKET_DATA);
+        writer.writePrices(2000L, COMPRESSED_MARKET_DATA);
+        writer.close();
+        if (winner != null) {
+            OutputStream out = new FileOutputStream(new File(dir, RecordedDay.RESULTS_FILE));
+            try {
+                out.write(("<?xml version=\"1.0\" encoding=\"utf-8\"?><rss version=\"2.0\"><channel>" +
+                        "<item><title>Kemp / 2m4f Hcap</title>" +
+                        "<link>http://rss.betfair.com/RSS.aspx?marketID=" + RECORDED_MARKET_ID + "</link>" +
+                        "<description>Winner(s): " + winner + "</description></item>" +
+                        "</channel></rss>").getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            delete(files[i]);
+        }
+        file.delete();
+    }
+
+    // backs the first runner at its best price the first time each market is seen
+    private static class BackFavouriteOnce implements Strategy {
+
+        private final Set<Integer> seen = new HashSet<Integer>();
+
+        @Override
+        public String getName() {
+            return "BackFavouriteOnce";
+        }
+
+        @Override
+        public List<Bet> evaluate(BookSnapshot snapshot) {
+            if (!seen.add(snapshot.getMarketId())) {
+                return Collections.emptyList();
+            }
+            RunnerPricesWrapper runner = snapshot.getRunners().get(0);
+            Bet bet = new Bet(snapshot.getMarketId(), runner.getRunnerPrices().getSelectionId(), BetTypeEnum.B,
+                    runner.getBestPricesToBack().get(0).getPrice(), 0.0, null, null, null);
+            bet.setSize(10.0);
+            return Collections.singletonList(bet);
+        }
+
+    }
+
+    private static class FailingStrategy implements Strategy {
+
+        @Override
+        public String getName() {
+            return "FailingStrategy";
+        }
+
+        @Override
+        public List<Bet> evaluate(BookSnapshot snapshot) throws Exception {
+            throw new IllegalStateException("failed");
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.scidef.betfair.api.catalog;
+
+import com.betfair.publicapi.types.exchange.v5.MarketStatusEnum;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>MarketCatalog</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class MarketCatalogTest {
+
+    private static final String ALL_MARKETS_DATA =
+            ":101442426~2m4f Hcap~O~ACTIVE~1350662400000~\\Horse Racing\\GB\\Kemp 19th Oct~" +
+                    "/7/298251/26990145/101442426~0~1~GBR~1350640000000~12~1~1234.5~Y~N" +
+                    ":101442427~To Be Placed~O~SUSPENDED~1350662400000~\\Horse Racing\\GB\\Kemp 19th Oct~" +
+                    "/7/298251/26990145/101442427~0~1~GBR~1350640000000~12~3~0.0~N~N" +
+                    ":101442500~Race 1\\: Hcap~O~ACTIVE~1350666000000~\\Horse Racing\\IRE\\Dund 19th Oct~" +
+                    "/7/298252/26990200/101442500~0~1~IRL~1350640000000~9~1~50.25~Y~Y" +
+                    ":20158165~Match Odds~O~CLOSED~1164223800000~\\Soccer\\Scotland\\Premier League~" +
+                    "/1/2695886/610072/20158165~0~1~GBR~1164192924479~3~1~8737.44~N~N" +
+                    ":123~truncated~O";
+
+    @Test
+    public void testParse() {
+        MarketCatalog catalog = MarketCatalog.parse(ALL_MARKETS_DATA);
+
+        assertThat(catalog.size(), is(4));
+
+        int row = catalog.getRow(101442426);
+        assertThat(row, is(0));
+        assertThat(catalog.getMarketName(row), is("2m4f Hcap"));
+        assertThat(catalog.getMarketType(row), is('O'));
+        assertThat(catalog.getStatus(row), is(MarketStatusEnum.ACTIVE));
+        assertThat(catalog.getStartTime(row), is(1350662400000L));
+        assertThat(catalog.getMenuPath(row), is("\\Horse Racing\\GB\\Kemp 19th Oct"));
+        assertThat(catalog.getEventHierarchy(row), is(new int[]{7, 298251, 26990145, 101442426}));
+        assertThat(catalog.getEventId(row), is(26990145));
+        assertThat(catalog.getEventTypeId(row), is(7));
+        assertThat(catalog.getCountry(row), is("GBR"));
+        assertThat(catalog.getNumberOfRunners(row), is(12));
+        assertThat(catalog.getNumberOfWinners(row), is(1));
+        assertEquals(1234.5, catalog.getTotalMatched(row), 1e-9);
+        assertThat(catalog.isBspMarket(row), is(true));
+        assertThat(catalog.isTurningInPlay(row), is(false));
+
+        int placed = catalog.getRow(101442427);
+        assertThat(catalog.getStatus(placed), is(MarketStatusEnum.SUSPENDED));
+        assertThat(catalog.getNumberOfWinners(placed), is(3));
+
+        // escaped delimiters are unescaped
+        assertThat(catalog.getMarketName(catalog.getRow(101442500)), is("Race 1: Hcap"));
+        assertThat(catalog.isTurningInPlay(catalog.getRow(101442500)), is(true));
+
+        assertThat(catalog.getRow(123), is(-1));
+    }
+
+    @Test
+    public void testStringsAreInterned() {
+        MarketCatalog catalog = MarketCatalog.parse(ALL_MARKETS_DATA);
+
+        assertThat(catalog.getMenuPath(1), is(sameInstance(catalog.getMenuPath(0))));
+        assertThat(catalog.getCountry(3), is(sameInstance(catalog.getCountry(0))));
+    }
+
+    @Test
+    public void testRowsForEvent() {
+        MarketCatalog catalog = MarketCatalog.parse(ALL_MARKETS_DATA);
+
+        assertThat(catalog.getRowsForEvent(26990145), is(new int[]{0, 1}));
+        assertThat(catalog.getRowsForEvent(298252), is(new int[]{2}));
+        assertThat(catalog.getRowsForEvent(7), is(new int[]{0, 1, 2}));
+        assertThat(catalog.getRowsForEvent(1).length, is(1));
+        assertThat(catalog.getRowsForEvent(999).length, is(0));
+    }
+
+    @Test
+    public void testParseLargeResponse() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append(':').append(200000000 + i).append("~Race ").append(i % 10).append("~O~ACTIVE~1350662400000~")
+                    .append("\\Horse Racing\\GB\\Meeting ").append(i % 40).append("~/7/298251/").append(1000 + i % 40)
+                    .append('/').append(200000000 + i).append("~0~1~GBR~1350640000000~10~1~1.5~N~N");
+        }
+
+        MarketCatalog catalog = MarketCatalog.parse(sb.toString());
+
+        assertThat(catalog.size(), is(50000));
+        assertThat(catalog.getRow(200049999), is(49999));
+        assertThat(catalog.getRowsForEvent(1000).length, is(1250));
+        // 10 names, 40 menu paths and a country code
+        assertThat(catalog.getInternedStringCount(), is(51));
+    }
+
+    @Test
+    public void testParseEmpty() {
+        assertThat(MarketCatalog.parse(null).size(), is(0));
+        assertThat(MarketCatalog.parse("").getRow(1), is(-1));
+        assertThat(MarketCatalog.parse(":1~x~O~UNKNOWN~0~~/7/1~0~1~~0~0~0~0~N~N").getStatus(0), is(nullValue()));
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.scidef.betfair.api.jfr;
+
+import com.betfair.publicapi.types.exchange.v5.GetMarketPricesCompressedResp;
+import com.scidef.betfair.api.HorseRacing;
+import com.scidef.betfair.api.aop.RetryMethodAspect;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.exception.ExceededThrottleException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static com.scidef.betfair.api.aop.TestJoinPoint.mockJoinPoint;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>JfrEvents</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class JfrEventsTest {
+
+    private Recording recording;
+    private File file;
+
+    @Before
+    public void startRecording() {
+        recording = new Recording();
+        recording.enable(JfrEvents.API_CALL);
+        recording.enable(JfrEvents.RETRY);
+        recording.enable(JfrEvents.THROTTLE_WAIT);
+        recording.enable(JfrEvents.PRICE_PARSE);
+        recording.enable(JfrEvents.ENRICHMENT_STAGE);
+        recording.start();
+    }
+
+    @After
+    public void closeRecording() {
+        recording.close();
+    }
+
+    @Test
+    public void testRetriedCallIsRecorded() throws Throwable {
+        GetMarketPricesCompressedResp resp = new GetMarketPricesCompressedResp();
+        resp.setMarketPrices(COMPRESSED_MARKET_DATA);
+        ProceedingJoinPoint pjp = mockJoinPoint();
+        when(pjp.proceed()).thenThrow(new ExceededThrottleException(), new BetfairException()).thenReturn(resp);
+        RetryMethodAspect aspect = new RetryMethodAspect(mock(HorseRacing.class));
+        aspect.setExceededThrottleSleepTime(1);
+        aspect.setStandardSleepTime(1);
+
+        aspect.retryMethod(pjp);
+
+        List<RecordedEvent> calls = stopAndRead(JfrEvents.API_CALL);
+        assertThat(calls.size(), is(3));
+        assertThat(calls.get(0).getString("outcome"), is(JfrEvents.THROTTLED));
+        assertThat(calls.get(1).getString("outcome"), is(JfrEvents.FAILED));
+        assertThat(calls.get(2).getString("outcome"), is(JfrEvents.SUCCESS));
+        assertThat(calls.get(2).getString("operation"), is("ExchangeAPI.getMarketPricesCompressed"));
+        assertThat(calls.get(2).getInt("attempt"), is(3));
+        assertThat(calls.get(2).getLong("bytes"), is((long) COMPRESSED_MARKET_DATA.length()));
+
+        List<RecordedEvent> waits = read(JfrEvents.THROTTLE_WAIT);
+        assertThat(waits.size(), is(1));
+        assertThat(waits.get(0).getInt("attempt"), is(1));
+
+        List<RecordedEvent> retries = read(JfrEvents.RETRY);
+        assertThat(retries.size(), is(1));
+        assertThat(retries.get(0).getInt("attempt"), is(2));
+        assertThat(retries.get(0).getString("cause"), is(BetfairException.class.getName()));
+    }
+
+    @Test
+    public void testParseAndEnrichmentEvents() throws IOException {
+        Object parse = JfrEvents.beginPriceParse();
+        JfrEvents.commitPriceParse(parse, MARKET_ID, COMPRESSED_MARKET_DATA.length(), 13);
+        Object stage = JfrEvents.beginEnrichmentStage();
+        JfrEvents.commitEnrichmentStage(stage, "RUNNER_NAMES", true);
+
+        List<RecordedEvent> parses = stopAndRead(JfrEvents.PRICE_PARSE);
+        assertThat(parses.size(), is(1));
+        assertThat(parses.get(0).getInt("marketId"), is(MARKET_ID));
+        assertThat(parses.get(0).getInt("runners"), is(13));
+
+        List<RecordedEvent> stages = read(JfrEvents.ENRICHMENT_STAGE);
+        assertThat(stages.size(), is(1));
+        assertThat(stages.get(0).getString("stage"), is("RUNNER_NAMES"));
+        assertThat(stages.get(0).getBoolean("failed"), is(true));
+    }
+
+    @Test
+    public void testNullEventIsIgnored() {
+        JfrEvents.commitApiCall(null, "ExchangeAPI.getMarketPricesCompressed", MARKET_ID, 0, JfrEvents.SUCCESS, 1);
+        JfrEvents.commitPriceParse(null, MARKET_ID, 0, 0);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private List<RecordedEvent> stopAndRead(String name) throws IOException {
+        recording.stop();
+        file = File.createTempFile("betfair", ".jfr");
+        file.deleteOnExit();
+        recording.dump(file.toPath());
+        return read(name);
+    }
+
+    private List<RecordedEvent> read(String name) throws IOException {
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+            if (event.getEventType().getName().equals(name)) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+}
@@ -0,0 +1,323 @@
+package com.scidef.betfair.api.paper;
+
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResultEnum;
+import com.betfair.publicapi.types.exchange.v5.Price;
+import com.betfair.publicapi.types.exchange.v5.RunnerPrices;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.account.OwnBet;
+import com.scidef.betfair.api.account.OwnBetState;
+import com.scidef.betfair.api.account.OwnOrderBook;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>PaperExchange</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PaperExchangeTest {
+
+    private static final double DELTA = 1e-9;
+    private static final int SELECTION_ID = 4056154;
+    private static final double[] NONE = {};
+
+    private PaperExchange exchange;
+    private List<OwnBet[]> changes;
+
+    @Before
+    public void setupPaperExchange() {
+        exchange = new PaperExchange(1000.0);
+        changes = new ArrayList<OwnBet[]>();
+        exchange.addListener(new OwnOrderBook.Listener() {
+            @Override
+            public void onChange(OwnBet previous, OwnBet current) {
+                changes.add(new OwnBet[]{previous, current});
+            }
+        });
+    }
+
+    @Test
+    public void testBackIsMatchedAtItsPriceOrBetter() {
+        prices(new double[]{3.0, 10.0, 2.9, 20.0, 2.8, 50.0}, new double[]{3.1, 15.0});
+
+        PlaceBetsResult result = place(BetTypeEnum.B, 2.9, 25.0);
+
+        assertThat(result.isSuccess(), is(true));
+        assertEquals(25.0, result.getSizeMatched(), DELTA);
+        // 10 at 3.0 and 15 at 2.9
+        assertEquals((10.0 * 3.0 + 15.0 * 2.9) / 25.0, result.getAveragePriceMatched(), DELTA);
+        assertThat(exchange.getBet(MARKET_ID, result.getBetId()).getState(), is(OwnBetState.MATCHED));
+    }
+
+    @Test
+    public void testUnmatchedStakeWaits() {
+        prices(new double[]{3.0, 10.0}, new double[]{3.1, 15.0});
+
+        PlaceBetsResult result = place(BetTypeEnum.B, 3.0, 30.0);
+
+        assertEquals(10.0, result.getSizeMatched(), DELTA);
+        OwnBet bet = exchange.getBet(MARKET_ID, result.getBetId());
+        assertThat(bet.getState(), is(OwnBetState.PARTIALLY_MATCHED));
+        assertEquals(20.0, bet.getUnmatchedSize(), DELTA);
+    }
+
+    @Test
+    public void testDepthIsTakenUntilNextPrices() {
+        prices(new double[]{3.0, 15.0}, new double[]{3.1, 15.0});
+
+        assertEquals(10.0, place(BetTypeEnum.B, 3.0, 10.0).getSizeMatched(), DELTA);
+        assertEquals(5.0, place(BetTypeEnum.B, 3.0, 10.0).getSizeMatched(), DELTA);
+
+        prices(new double[]{3.0, 15.0}, new double[]{3.1, 15.0});
+        // the new prices cross the second bet's unmatched 5
+        assertEquals(10.0, exchange.getBets(MARKET_ID).get(1).getMatchedSize(), DELTA);
+    }
+
+    @Test
+    public void testQueuePosition() {
+        prices(new double[]{2.9, 50.0}, new double[]{3.0, 40.0, 3.1, 15.0});
+        long betId = place(BetTypeEnum.B, 3.0, 10.0).getBetId();
+        assertEquals(0.0, exchange.getBet(MARKET_ID, betId).getMatchedSize(), DELTA);
+
+        // 10 of the 40 ahead is taken
+        prices(new double[]{2.9, 50.0}, new double[]{3.0, 30.0, 3.1, 15.0});
+        assertEquals(0.0, exchange.getBet(MARKET_ID, betId).getMatchedSize(), DELTA);
+
+        // 30 more joins behind us
+        prices(new double[]{2.9, 50.0}, new double[]{3.0, 60.0, 3.1, 15.0});
+        assertEquals(0.0, exchange.getBet(MARKET_ID, betId).getMatchedSize(), DELTA);
+
+        // 34 is taken: the 30 still ahead of us, then 4 of ours
+        prices(new double[]{2.9, 50.0}, new double[]{3.0, 26.0, 3.1, 15.0});
+        OwnBet bet = exchange.getBet(MARKET_ID, betId);
+        assertEquals(4.0, bet.getMatchedSize(), DELTA);
+        assertEquals(3.0, bet.getAverageMatchedPrice(), DELTA);
+        assertThat(bet.getState(), is(OwnBetState.PARTIALLY_MATCHED));
+        assertThat(exchange.getFills(), is(1L));
+    }
+
+    @Test
+    public void testTradedThroughPriceMatchesInFull() {
+        prices(new double[]{2.9, 50.0}, new double[]{3.0, 40.0});
+        long betId = place(BetTypeEnum.B, 3.0, 10.0).getBetId();
+
+        prices(new double[]{3.05, 50.0}, new double[]{3.1, 40.0});
+
+        OwnBet bet = exchange.getBet(MARKET_ID, betId);
+        assertThat(bet.getState(), is(OwnBetState.MATCHED));
+        assertEquals(3.0, bet.getAverageMatchedPrice(), DELTA);
+    }
+
+    @Test
+    public void testCrossingOfferMatchesWaitingLayAtItsPrice() {
+        prices(new double[]{2.9, 50.0}, new double[]{3.1, 40.0});
+        long betId = place(BetTypeEnum.L, 3.0, 10.0).getBetId();
+        assertEquals(0.0, exchange.getBet(MARKET_ID, betId).getMatchedSize(), DELTA);
+
+        prices(new double[]{2.9, 50.0}, new double[]{2.98, 6.0, 3.1, 40.0});
+
+        OwnBet bet = exchange.getBet(MARKET_ID, betId);
+        assertEquals(6.0, bet.getMatchedSize(), DELTA);
+        assertEquals(3.0, bet.getAverageMatchedPrice(), DELTA);
+        assertThat(bet.getState(), is(OwnBetState.PARTIALLY_MATCHED));
+    }
+
+    @Test
+    public void testSamePricesAreOnlyAppliedOnce() {
+        List<RunnerPricesWrapper> runners = runners(new double[]{3.0, 10.0}, new double[]{3.1, 15.0});
+
+        exchange.onPrices(MARKET_ID, runners);
+        exchange.onPrices(MARKET_ID, runners);
+
+        assertThat(exchange.getSnapshots(), is(1L));
+    }
+
+    @Test
+    public void testLiabilityIsHeldAndReleased() {
+        prices(NONE, NONE);
+
+        long betId = place(BetTypeEnum.L, 3.0, 10.0).getBetId();
+        assertEquals(20.0, exchange.getExposure(), DELTA);
+        assertEquals(980.0, exchange.getAvailableBalance(), DELTA);
+
+        PlaceBetsResult rejected = place(BetTypeEnum.B, 3.0, 990.0);
+        assertThat(rejected.isSuccess(), is(false));
+        assertThat(rejected.getResultCode(), is(PlaceBetsResultEnum.UNKNOWN_ERROR));
+
+        OwnBet cancelled = exchange.cancel(MARKET_ID, betId);
+        assertThat(cancelled.getState(), is(OwnBetState.LAPSED));
+        assertEquals(0.0, exchange.getExposure(), DELTA);
+        assertEquals(1000.0, exchange.getBalance(), DELTA);
+    }
+
+    @Test
+    public void testSettle() {
+        prices(new double[]{3.0, 10.0}, new double[]{3.1, 15.0});
+        place(BetTypeEnum.B, 3.0, 10.0);
+        place(BetTypeEnum.L, 2.0, 10.0);
+
+        double profitOrLoss = exchange.settle(MARKET_ID, Collections.singleton(SELECTION_ID));
+
+        // the back wins 20; the lay was never matched
+        assertEquals(20.0, profitOrLoss, DELTA);
+        assertEquals(1020.0, exchange.getBalance(), DELTA);
+        assertEquals(0.0, exchange.getExposure(), DELTA);
+        assertThat(exchange.getBet(MARKET_ID, 2L), is(nullValue()));
+        assertThat(changes.get(changes.size() - 1)[1].getState(), is(OwnBetState.LAPSED));
+        assertThat(place(BetTypeEnum.B, 3.0, 10.0).getResultCode(), is(PlaceBetsResultEnum.MARKET_CLOSED));
+    }
+
+    @Test
+    public void testSettledMarketTurnsAwayBetsAndPrices() {
+        exchange.settle(MARKET_ID, Collections.singleton(SELECTION_ID));
+
+        // a market that was never traded is settled too, and stays settled
+        prices(new double[]{3.0, 10.0}, new double[]{3.1, 15.0});
+        assertThat(place(BetTypeEnum.B, 3.0, 10.0).getResultCode(), is(PlaceBetsResultEnum.MARKET_CLOSED));
+        assertThat(exchange.getSnapshots(), is(0L));
+        assertThat(exchange.getBets(MARKET_ID).isEmpty(), is(true));
+        assertEquals(0.0, exchange.settle(MARKET_ID, Collections.singleton(SELECTION_ID)), DELTA);
+    }
+
+    @Test
+    public void testCloseLapsesUnmatchedStakesAndHoldsMatchedOnes() {
+        prices(new double[]{3.0, 10.0}, new double[]{3.1, 15.0});
+        place(BetTypeEnum.B, 3.0, 10.0);
+        long layId = place(BetTypeEnum.L, 2.0, 10.0).getBetId();
+        assertEquals(20.0, exchange.getExposure(), DELTA);
+
+        exchange.close(MARKET_ID);
+
+        // the lay's liability of 10 is released; the matched back's stake waits for the result
+        assertThat(exchange.getBet(MARKET_ID, layId).getState(), is(OwnBetState.LAPSED));
+        assertEquals(10.0, exchange.getExposure(), DELTA);
+        assertThat(exchange.isAwaitingSettlement(MARKET_ID), is(true));
+        assertThat(place(BetTypeEnum.B, 3.0, 10.0).getResultCode(), is(PlaceBetsResultEnum.MARKET_CLOSED));
+
+        assertEquals(20.0, exchange.settle(MARKET_ID, Collections.singleton(SELECTION_ID)), DELTA);
+        assertEquals(0.0, exchange.getExposure(), DELTA);
+        assertThat(exchange.isAwaitingSettlement(MARKET_ID), is(false));
+    }
+
+    @Test
+    public void testClosedMarketWithNoMatchedBetsIsSettled() {
+        prices(NONE, NONE);
+        place(BetTypeEnum.L, 3.0, 10.0);
+
+        exchange.close(MARKET_ID);
+
+        assertEquals(0.0, exchange.getExposure(), DELTA);
+        assertEquals(1000.0, exchange.getBalance(), DELTA);
+        assertThat(exchange.isAwaitingSettlement(MARKET_ID), is(false));
+        assertThat(exchange.getBets(MARKET_ID).isEmpty(), is(true));
+        prices(new double[]{3.0, 10.0}, new double[]{3.1, 15.0});
+        assertThat(exchange.getSnapshots(), is(1L));
+        assertThat(place(BetTypeEnum.B, 3.0, 10.0).getResultCode(), is(PlaceBetsResultEnum.MARKET_CLOSED));
+    }
+
+    @Test
+    public void testTimesAreTakenFromCaller() {
+        exchange.onPrices(MARKET_ID, runners(new double[]{3.0, 10.0}, new double[]{3.1, 15.0}), 1000L);
+        exchange.placeBets(Arrays.asList(bet(BetTypeEnum.B, 3.05, 10.0), bet(BetTypeEnum.L, 2.0, 10.0)), 2000L);
+        assertThat(exchange.getBet(MARKET_ID, 1L).getUpdatedAt(), is(2000L));
+
+        exchange.onPrices(MARKET_ID, runners(new double[]{3.1, 10.0}, new double[]{3.2, 15.0}), 3000L);
+        assertThat(exchange.getBet(MARKET_ID, 1L).getState(), is(OwnBetState.MATCHED));
+        assertThat(exchange.getBet(MARKET_ID, 1L).getUpdatedAt(), is(3000L));
+
+        // the unmatched lay lapses when the market is settled
+        exchange.settle(MARKET_ID, Collections.singleton(SELECTION_ID), 4000L);
+        assertThat(changes.get(changes.size() - 1)[1].getBetId(), is(2L));
+        assertThat(changes.get(changes.size() - 1)[1].getUpdatedAt(), is(4000L));
+    }
+
+    @Test
+    public void testInvalidBetsAreRejected() {
+        assertThat(place(BetTypeEnum.B, 3.0, -1.0).getResultCode(), is(PlaceBetsResultEnum.INVALID_SIZE));
+        assertThat(place(BetTypeEnum.B, 1.0, 10.0).getResultCode(), is(PlaceBetsResultEnum.INVALID_SIZE));
+        assertThat(exchange.getBetsRejected(), is(2L));
+        assertThat(exchange.getBetsPlaced(), is(0L));
+    }
+
+    @Test
+    public void testListenersAreToldOfChanges() {
+        prices(new double[]{2.9, 50.0}, new double[]{3.0, 40.0});
+        place(BetTypeEnum.B, 3.0, 10.0);
+        prices(new double[]{3.05, 50.0}, new double[]{3.1, 40.0});
+
+        assertThat(changes.size(), is(2));
+        assertThat(changes.get(0)[0], is(nullValue()));
+        assertThat(changes.get(0)[1].getState(), is(OwnBetState.UNMATCHED));
+        assertThat(changes.get(1)[0].getState(), is(OwnBetState.UNMATCHED));
+        assertThat(changes.get(1)[1].getState(), is(OwnBetState.MATCHED));
+    }
+
+    @Test
+    public void testPlaceBetsKeepsOrderOfBets() {
+        prices(new double[]{3.0, 10.0}, new double[]{3.1, 15.0});
+
+        PlaceBetsResp resp = exchange.placeBets(Arrays.asList(
+                bet(BetTypeEnum.B, 3.0, 4.0), bet(BetTypeEnum.B, 3.0, null), bet(BetTypeEnum.L, 3.1, 2.0)));
+
+        List<PlaceBetsResult> results = resp.getBetResults().getPlaceBetsResult();
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).isSuccess(), is(true));
+        assertThat(results.get(1).isSuccess(), is(false));
+        assertThat(results.get(2).isSuccess(), is(true));
+        assertEquals(2.0, results.get(2).getSizeMatched(), DELTA);
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    private PlaceBetsResult place(BetTypeEnum betType, double price, Double size) {
+        return exchange.placeBets(Collections.singletonList(bet(betType, price, size)))
+                .getBetResults().getPlaceBetsResult().get(0);
+    }
+
+    private void prices(double[] toBack, double[] toLay) {
+        exchange.onPrices(MARKET_ID, runners(toBack, toLay));
+    }
+
+    private static Bet bet(BetTypeEnum betType, double price, Double size) {
+        Bet bet = new Bet(MARKET_ID, SELECTION_ID, betType, price, 0.0, null, null, null);
+        bet.setSize(size);
+        return bet;
+    }
+
+    // prices and amounts in pairs, best first
+    private static List<RunnerPricesWrapper> runners(double[] toBack, double[] toLay) {
+        RunnerPrices runnerPrices = new RunnerPrices();
+        runnerPrices.setSelectionId(SELECTION_ID);
+        return Collections.singletonList(new RunnerPricesWrapper(runnerPrices, levels(toBack), levels(toLay)));
+    }
+
+    private static List<Price> levels(double[] pairs) {
+        List<Price> levels = new ArrayList<Price>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            Price price = new Price();
+            price.setPrice(pairs[i]);
+            price.setAmountAvailable(pairs[i + 1]);
+            price.setDepth(i / 2 + 1);
+            levels.add(price);
+        }
+        return levels;
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.scidef.betfair.api.prices;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketPrices;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the <code>MarketBook</code> and <code>PriceLadder</code> classes.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class MarketBookTest {
+
+    private static final double DELTA = 1e-9;
+
+    // two runners: the first with back and lay prices, the second with no lay prices
+    private static final String COMPRESSED_MARKET_DATA =
+            "101442426~GBP~ACTIVE~0~1~~true~5.0~1274885395669~~Y:4056154~0~24778.26~1.81~~54.1~false~3.12~1.89~" +
+                    "~|1.79~54.64~L~1~1.78~82.0~L~2~|1.81~18.46~B~1~1.82~103.26~B~2~:3793446~1~0.0~~~11.1~false~~~" +
+                    "~|8.8~109.03~L~1~|";
+
+    private MarketBook book;
+
+    @Before
+    public void setupMarketBook() {
+        book = new MarketBook(53);
+    }
+
+    @Test
+    public void testTickIndex() {
+        assertThat(PriceLadder.tickIndex(1.01), is(0));
+        assertThat(PriceLadder.tickIndex(2.0), is(99));
+        assertThat(PriceLadder.tickIndex(2.02), is(100));
+        assertThat(PriceLadder.tickIndex(4.0), is(169));
+        assertThat(PriceLadder.tickIndex(1000), is(349));
+        assertThat(PriceLadder.ticksBetween(1.99, 2.02), is(2));
+        assertThat(PriceLadder.ticksBetween(9.8, 10.5), is(2));
+    }
+
+    @Test
+    public void testUpdateFromCompressedPrices() {
+        int changed = book.update(parseCompressedMarketPrices(COMPRESSED_MARKET_DATA));
+
+        assertThat(changed, is(2));
+        assertThat(book.getRunnerCount(), is(2));
+        assertThat(book.getFavourite(), is(4056154));
+        assertEquals(100 / 1.79 + 100 / 8.8, book.getBackBookPercentage(), DELTA);
+        assertEquals(100 / 1.81, book.getLayBookPercentage(), DELTA);
+        assertThat(book.getSpreadTicks(4056154), is(2));
+        assertThat(book.getSpreadTicks(3793446), is(MarketBook.UNKNOWN_SPREAD));
+        assertEquals(1 / 1.79, book.getImpliedProbability(4056154), DELTA);
+
+        // an identical snapshot changes nothing
+        assertThat(book.update(parseCompressedMarketPrices(COMPRESSED_MARKET_DATA)), is(0));
+        assertThat(book.getUpdates(), is(2L));
+    }
+
+    @Test
+    public void testUpdateRunner() {
+        book.updateRunner(1, 2.0, 2.02);
+        book.updateRunner(2, 3.0, 3.1);
+        book.updateRunner(3, 6.0, 6.4);
+        assertThat(book.getFavourite(), is(1));
+        assertEquals(100 / 2.0 + 100 / 3.0 + 100 / 6.0, book.getBackBookPercentage(), DELTA);
+
+        // the favourite drifts, so runner 2 takes over
+        assertTrue(book.updateRunner(1, 3.5, 3.6));
+        assertThat(book.getFavourite(), is(2));
+        assertEquals(100 / 3.5 + 100 / 3.0 + 100 / 6.0, book.getBackBookPercentage(), DELTA);
+        assertThat(book.getSpreadTicks(1), is(2));
+
+        // runner 3 shortens into favouritism
+        book.updateRunner(3, 2.5, 2.52);
+        assertThat(book.getFavourite(), is(3));
+
+        book.removeRunner(3);
+        assertThat(book.getFavourite(), is(2));
+        assertThat(book.getRunnerCount(), is(2));
+        assertEquals(100 / 3.5 + 100 / 3.0, book.getBackBookPercentage(), DELTA);
+        assertEquals(100 / 3.6 + 100 / 3.1, book.getLayBookPercentage(), DELTA);
+        assertEquals((1 / 3.0) / (1 / 3.5 + 1 / 3.0), book.getNormalisedProbability(2), DELTA);
+
+        // a runner that loses its back price no longer counts towards the back book
+        book.updateRunner(2, Double.NaN, 3.1);
+        assertThat(book.getFavourite(), is(1));
+        assertEquals(100 / 3.5, book.getBackBookPercentage(), DELTA);
+    }
+
+    @Test
+    public void testRunnersMissingFromSnapshotAreRemoved() {
+        book.updateRunner(1, 2.0, 2.02);
+        book.update(parseCompressedMarketPrices(COMPRESSED_MARKET_DATA));
+
+        assertThat(book.getRunnerCount(), is(2));
+        assertTrue(Double.isNaN(book.getBestBack(1)));
+        assertEquals(100 / 1.79 + 100 / 8.8, book.getBackBookPercentage(), DELTA);
+    }
+
+    @Test
+    public void testIncrementalSumsMatchRecalculation() {
+        for (int i = 0; i < MarketBook.RESYNC_INTERVAL - 1; i++) {
+            book.updateRunner(i % 10, 1.5 + (i % 37) * 0.1, 1.6 + (i % 37) * 0.1);
+        }
+        double incremental = book.getBackBookPercentage();
+        book.resync();
+        assertEquals(book.getBackBookPercentage(), incremental, 1e-9);
+    }
+
+}
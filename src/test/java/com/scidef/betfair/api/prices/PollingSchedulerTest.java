@@ -0,0 +1,171 @@
+package com.scidef.betfair.api.prices;
+
+import com.scidef.betfair.api.Deadline;
+import com.scidef.betfair.api.HorseRacing;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.exception.BetfairException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketPrices;
+import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>PollingScheduler</code> and <code>PollingPolicy</code> classes.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PollingSchedulerTest {
+
+    private static final long NOW = 1350000000000L;
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private HorseRacing horseRacing;
+    private List<Integer> polled;
+    private PollingScheduler.Listener listener;
+
+    @Before
+    public void setupPollingScheduler() throws BetfairException {
+        horseRacing = mock(HorseRacing.class);
+        when(horseRacing.getRunners(anyInt())).thenReturn(parseCompressedMarketPrices(COMPRESSED_MARKET_DATA));
+        polled = new ArrayList<Integer>();
+        listener = new PollingScheduler.Listener() {
+            @Override
+            public void onPrices(int marketId, List<RunnerPricesWrapper> runners) {
+                polled.add(marketId);
+            }
+        };
+    }
+
+    @Test
+    public void testDefaultPolicy() {
+        PollingPolicy policy = PollingPolicy.defaultPolicy();
+
+        assertThat(policy.getInterval(3 * HOUR), is(15 * MINUTE));
+        assertThat(policy.getInterval(HOUR), is(2 * MINUTE));
+        assertThat(policy.getInterval(10 * MINUTE), is(15 * SECOND));
+        assertThat(policy.getInterval(MINUTE), is(SECOND));
+        assertThat(policy.getInterval(-MINUTE), is(5 * SECOND));
+        assertThat(policy.getInterval(-11 * MINUTE), is(PollingPolicy.STOP));
+        assertThat(policy.getNextChange(HOUR), is(30 * MINUTE));
+        assertThat(policy.getNextChange(MINUTE), is(0L));
+    }
+
+    @Test
+    public void testMarketsArePolledByTimeToOff() {
+        PollingScheduler scheduler = new PollingScheduler(horseRacing, PollingPolicy.defaultPolicy(), listener, 600);
+        scheduler.add(MARKET_ID, NOW + 3 * HOUR, NOW);
+        scheduler.add(MARKET_ID + 1, NOW + 2 * MINUTE, NOW);
+
+        assertThat(scheduler.pollNext(NOW), is(NOW));
+        long next = scheduler.pollNext(NOW + 100);
+        assertThat(polled.size(), is(2));
+        assertThat(scheduler.getNextDue(MARKET_ID), is(NOW + 15 * MINUTE));
+        assertThat(scheduler.getNextDue(MARKET_ID + 1), is(NOW + SECOND));
+        assertThat(next, is(NOW + 100));
+
+        // nothing is due until the second market's next poll
+        assertThat(scheduler.pollNext(NOW + 200), is(NOW + SECOND));
+        assertThat(polled.size(), is(2));
+    }
+
+    @Test
+    public void testPollIsBroughtForwardToBandChange() {
+        PollingScheduler scheduler = new PollingScheduler(horseRacing, PollingPolicy.defaultPolicy(), listener, 600);
+        scheduler.add(MARKET_ID, NOW + 2 * HOUR + MINUTE, NOW);
+
+        scheduler.pollNext(NOW);
+
+        // the 15 minute interval would sleep through the start of the 2 minute band
+        assertThat(scheduler.getNextDue(MARKET_ID), is(NOW + MINUTE));
+    }
+
+    @Test
+    public void testPollDeadlineIsAtLeastTheInterval() throws BetfairException {
+        final List<Long> remaining = new ArrayList<Long>();
+        when(horseRacing.getRunners(anyInt())).thenAnswer(new Answer<List<RunnerPricesWrapper>>() {
+            @Override
+            public List<RunnerPricesWrapper> answer(InvocationOnMock invocation) {
+                remaining.add(Deadline.current().getRemainingMillis());
+                return parseCompressedMarketPrices(COMPRESSED_MARKET_DATA);
+            }
+        });
+        PollingScheduler scheduler = new PollingScheduler(horseRacing, PollingPolicy.defaultPolicy(), listener, 600);
+        scheduler.add(MARKET_ID, NOW + 2 * HOUR + 1, NOW);
+
+        scheduler.pollNext(NOW);
+
+        // the next poll is brought forward to the band change 1ms away, but this one still gets its interval
+        assertThat(scheduler.getNextDue(MARKET_ID), is(NOW + 1));
+        assertThat(remaining.size(), is(1));
+        assertThat(remaining.get(0) > 14 * MINUTE, is(true));
+    }
+
+    @Test
+    public void testScheduleIsStretchedToFitBudget() {
+        PollingScheduler scheduler = new PollingScheduler(horseRacing, PollingPolicy.defaultPolicy(), listener, 30);
+        scheduler.add(MARKET_ID, NOW + 2 * MINUTE, NOW);
+        scheduler.add(MARKET_ID + 1, NOW + 3 * MINUTE, NOW);
+
+        // two markets at one poll a second each is 120 a minute, 4 times the budget
+        assertEquals(4.0, scheduler.getStretch(), 1e-9);
+
+        scheduler.pollNext(NOW);
+        assertThat(scheduler.getNextDue(MARKET_ID), is(NOW + 4 * SECOND));
+
+        // requests are spaced 2 seconds apart
+        assertThat(scheduler.pollNext(NOW), is(NOW + 2 * SECOND));
+        assertThat(polled.size(), is(1));
+        assertThat(scheduler.pollNext(NOW + 2 * SECOND), is(NOW + 2 * SECOND));
+        assertThat(polled.size(), is(2));
+    }
+
+    @Test
+    public void testDeadlineMissesAreReported() {
+        PollingScheduler scheduler = new PollingScheduler(horseRacing, PollingPolicy.defaultPolicy(), listener, 600);
+        scheduler.add(MARKET_ID, NOW + 2 * MINUTE, NOW);
+
+        scheduler.pollNext(NOW);
+        scheduler.pollNext(NOW + SECOND + 100);
+        scheduler.pollNext(NOW + 2 * SECOND + 500);
+
+        assertThat(scheduler.getPolls(), is(3L));
+        assertThat(scheduler.getDeadlineMisses(), is(1L));
+        assertThat(scheduler.getDeadlineMisses(MARKET_ID), is(1L));
+        assertThat(scheduler.getMaxLateness(), is(500L));
+    }
+
+    @Test
+    public void testPollingStopsAfterTheOff() throws BetfairException {
+        when(horseRacing.getRunners(MARKET_ID)).thenReturn(null);
+        PollingScheduler scheduler = new PollingScheduler(horseRacing, PollingPolicy.defaultPolicy(), listener, 600);
+        scheduler.add(MARKET_ID, NOW - 11 * MINUTE, NOW);
+        assertThat(scheduler.getMarketCount(), is(0));
+
+        scheduler.add(MARKET_ID, NOW - 9 * MINUTE, NOW);
+        scheduler.pollNext(NOW);
+        assertThat(scheduler.getFailures(), is(1L));
+        assertThat(scheduler.getNextDue(MARKET_ID), is(NOW + 5 * SECOND));
+
+        assertThat(scheduler.pollNext(NOW + 2 * MINUTE), is(Long.MAX_VALUE));
+        assertThat(scheduler.getMarketCount(), is(0));
+        assertThat(scheduler.getPolls(), is(1L));
+    }
+
+}
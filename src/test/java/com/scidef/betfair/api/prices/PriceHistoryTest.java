@@ -0,0 +1,147 @@
+package com.scidef.betfair.api.prices;
+
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketPrices;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the <code>PriceHistory</code> and <code>PriceRing</code> classes.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class PriceHistoryTest {
+
+    private static final int MARKET_ID = 53;
+
+    // two runners: the first with back and lay prices, the second with no lay prices or trades
+    private static final String COMPRESSED_MARKET_DATA =
+            "101442426~GBP~ACTIVE~0~1~~true~5.0~1274885395669~~Y:4056154~0~24778.26~1.81~~54.1~false~3.12~1.89~" +
+                    "~|1.79~54.64~L~1~1.78~82.0~L~2~|1.81~18.46~B~1~1.82~103.26~B~2~:3793446~1~0.0~~~11.1~false~~~" +
+                    "~|8.8~109.03~L~1~|";
+
+    private PriceHistory history;
+
+    @Before
+    public void setupPriceHistory() {
+        history = new PriceHistory(2, 3);
+    }
+
+    @Test
+    public void testRecordFromCompressedPrices() {
+        history.record(MARKET_ID, parseCompressedMarketPrices(COMPRESSED_MARKET_DATA), 1000L);
+
+        PriceSeries series = new PriceSeries(10);
+        history.getRing(MARKET_ID, 4056154).readLast(10, series);
+        assertThat(series.size(), is(1));
+        assertThat(series.getTimestamp(0), is(1000L));
+        assertThat(series.getBestBack(0), is(1.79));
+        assertThat(series.getBestLay(0), is(1.81));
+        assertThat(series.getLastTraded(0), is(1.81));
+
+        history.getRing(MARKET_ID, 3793446).readLast(10, series);
+        assertThat(series.getBestBack(0), is(8.8));
+        assertThat(Double.isNaN(series.getBestLay(0)), is(true));
+        assertThat(Double.isNaN(series.getLastTraded(0)), is(true));
+    }
+
+    @Test
+    public void testRingOverwritesOldestSnapshots() {
+        List<RunnerPricesWrapper> runners = parseCompressedMarketPrices(COMPRESSED_MARKET_DATA);
+        for (long t = 1; t <= 5; t++) {
+            history.record(MARKET_ID, runners, t * 1000L);
+        }
+
+        PriceRing ring = history.getRing(MARKET_ID, 4056154);
+        PriceSeries series = new PriceSeries(10);
+
+        assertThat(ring.getSequence(), is(5L));
+        assertThat(ring.readLast(10, series), is(3));
+        assertThat(series.getTimestamp(0), is(3000L));
+        assertThat(series.getTimestamp(2), is(5000L));
+
+        assertThat(ring.readLast(2, series), is(2));
+        assertThat(series.getTimestamp(0), is(4000L));
+
+        assertThat(ring.readSince(4500L, series), is(1));
+        assertThat(series.getTimestamp(0), is(5000L));
+    }
+
+    @Test
+    public void testMemoryIsBoundedAndReused() {
+        List<RunnerPricesWrapper> runners = parseCompressedMarketPrices(COMPRESSED_MARKET_DATA);
+        history.record(MARKET_ID, runners, 1000L);
+        history.record(MARKET_ID + 1, runners, 1000L);
+
+        assertThat(history.getRing(MARKET_ID + 1, 4056154), is(nullValue()));
+        assertThat(history.getDroppedSnapshots(), is(2L));
+        assertThat(history.getAllocatedBytes(), is(history.getMaxBytes()));
+
+        history.release(MARKET_ID);
+        history.record(MARKET_ID + 1, runners, 2000L);
+
+        assertThat(history.getRing(MARKET_ID, 4056154), is(nullValue()));
+        assertThat(history.getRing(MARKET_ID + 1, 4056154), is(notNullValue()));
+        assertThat(history.getRing(MARKET_ID + 1, 4056154).getSequence(), is(1L));
+        assertThat(history.getAllocatedBytes(), is(history.getMaxBytes()));
+    }
+
+    @Test
+    public void testAppendsFromAReleasedLeaseAreTurnedAway() {
+        List<RunnerPricesWrapper> runners = parseCompressedMarketPrices(COMPRESSED_MARKET_DATA);
+        history.record(MARKET_ID, runners, 1000L);
+        PriceRing ring = history.getRing(MARKET_ID, 4056154);
+        int generation = ring.getGeneration();
+
+        history.release(MARKET_ID);
+        history.record(MARKET_ID + 1, runners, 2000L);
+
+        // a writer still holding the old lease must not land in the new market's ring
+        assertThat(ring.append(generation, 1500L, 1.0, 1.0, 1.0), is(false));
+        assertThat(history.getRing(MARKET_ID + 1, 4056154).getSequence(), is(1L));
+    }
+
+    @Test
+    public void testReadersSeeConsistentSnapshotsWhileWriting() throws InterruptedException {
+        final PriceRing ring = new PriceRing(64);
+        final AtomicBoolean torn = new AtomicBoolean(false);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                PriceSeries series = new PriceSeries(64);
+                while (done.getCount() > 0) {
+                    int n = ring.readLast(64, series);
+                    for (int i = 0; i < n; i++) {
+                        // every field of a snapshot is written with the same value
+                        if (series.getBestBack(i) != series.getTimestamp(i) ||
+                                series.getLastTraded(i) != series.getTimestamp(i) ||
+                                (i > 0 && series.getTimestamp(i) != series.getTimestamp(i - 1) + 1)) {
+                            torn.set(true);
+                        }
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (long t = 0; t < 200000; t++) {
+            ring.append(t, t, t, t);
+        }
+        done.countDown();
+        reader.join();
+
+        assertThat(torn.get(), is(false));
+    }
+
+}
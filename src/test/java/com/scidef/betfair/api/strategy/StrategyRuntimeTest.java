@@ -0,0 +1,263 @@
+package com.scidef.betfair.api.strategy;
+
+import com.betfair.publicapi.types.exchange.v5.ArrayOfPlaceBetsResult;
+import com.betfair.publicapi.types.exchange.v5.BetTypeEnum;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResp;
+import com.betfair.publicapi.types.exchange.v5.PlaceBetsResult;
+import com.scidef.betfair.api.Bet;
+import com.scidef.betfair.api.ExchangeAPI;
+import com.scidef.betfair.api.RunnerPricesWrapper;
+import com.scidef.betfair.api.exception.BetfairException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.scidef.betfair.api.MessageUtil.parseCompressedMarketPrices;
+import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>StrategyRuntime</code> class.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class StrategyRuntimeTest {
+
+    private ExchangeAPI exchangeAPI;
+    private StrategyRuntime runtime;
+    private List<RunnerPricesWrapper> runners;
+
+    @Before
+    public void setupStrategyRuntime() throws BetfairException {
+        exchangeAPI = mock(ExchangeAPI.class);
+        when(exchangeAPI.placeBets(anyListOf(Bet.class))).thenAnswer(new Answer<PlaceBetsResp>() {
+            @Override
+            public PlaceBetsResp answer(InvocationOnMock invocation) throws Throwable {
+                List<?> bets = (List<?>) invocation.getArguments()[0];
+                PlaceBetsResp resp = new PlaceBetsResp();
+                resp.setBetResults(new ArrayOfPlaceBetsResult());
+                for (int i = 0; i < bets.size(); i++) {
+                    PlaceBetsResult result = new PlaceBetsResult();
+                    result.setSuccess(true);
+                    result.setBetId(1000 + i);
+                    resp.getBetResults().getPlaceBetsResult().add(result);
+                }
+                return resp;
+            }
+        });
+        runtime = new StrategyRuntime(exchangeAPI, new ForkJoinPool(4), 200);
+        runtime.setMockBets(false);
+        runners = parseCompressedMarketPrices(COMPRESSED_MARKET_DATA);
+    }
+
+    @After
+    public void shutdownStrategyRuntime() {
+        runtime.shutdown();
+    }
+
+    @Test
+    public void testBetsFromAllStrategiesArePlacedTogether() throws BetfairException {
+        Strategy backFavourite = new FixedStrategy("backFavourite", 1);
+        Strategy layFavourite = new FixedStrategy("layFavourite", 1);
+        runtime.subscribe(backFavourite, MARKET_ID);
+        runtime.subscribe(layFavourite, MARKET_ID);
+
+        List<Bet> bets = runtime.onPrices(MARKET_ID, runners);
+
+        assertThat(bets.size(), is(2));
+        assertThat(bets.get(0).getBetId(), is(1000L));
+        assertThat(bets.get(1).getBetId(), is(1001L));
+        verify(exchangeAPI, times(1)).placeBets(anyListOf(Bet.class));
+        assertThat(runtime.getStats(backFavourite).getEvaluations(), is(1L));
+        assertThat(runtime.getStats(backFavourite).getBets(), is(1L));
+    }
+
+    @Test
+    public void testBetsAreBatched() throws BetfairException {
+        runtime.subscribe(new FixedStrategy("many", StrategyRuntime.MAX_BETS_PER_REQUEST + 1), MARKET_ID);
+
+        List<Bet> bets = runtime.onPrices(MARKET_ID, runners);
+
+        assertThat(bets.size(), is(StrategyRuntime.MAX_BETS_PER_REQUEST + 1));
+        verify(exchangeAPI, times(2)).placeBets(anyListOf(Bet.class));
+    }
+
+    @Test
+    public void testMockBetsAreNotPlaced() throws BetfairException {
+        runtime.setMockBets(true);
+        runtime.subscribe(new FixedStrategy("one", 1), MARKET_ID);
+
+        assertThat(runtime.onPrices(MARKET_ID, runners).size(), is(1));
+        verify(exchangeAPI, never()).placeBets(anyListOf(Bet.class));
+    }
+
+    @Test
+    public void testUnsubscribedMarketsAreIgnored() {
+        Strategy strategy = new FixedStrategy("one", 1);
+        runtime.subscribe(strategy, MARKET_ID, MARKET_ID + 1);
+        runtime.unsubscribe(strategy, MARKET_ID);
+
+        assertThat(runtime.onPrices(MARKET_ID, runners).isEmpty(), is(true));
+        assertThat(runtime.getSubscribedMarkets(), is(Collections.singleton(MARKET_ID + 1)));
+    }
+
+    @Test
+    public void testFailingStrategyDoesNotAffectOthers() {
+        Strategy failing = new Strategy() {
+            @Override
+            public String getName() {
+                return "failing";
+            }
+
+            @Override
+            public List<Bet> evaluate(BookSnapshot snapshot) throws Exception {
+                throw new IllegalStateException("broken");
+            }
+        };
+        Strategy working = new FixedStrategy("working", 1);
+        runtime.subscribe(failing, MARKET_ID);
+        runtime.subscribe(working, MARKET_ID);
+
+        assertThat(runtime.onPrices(MARKET_ID, runners).size(), is(1));
+        assertThat(runtime.getStats(failing).getFailures(), is(1L));
+        assertThat(runtime.getStats(working).getFailures(), is(0L));
+    }
+
+    @Test
+    public void testSlowStrategyDoesNotDelayOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Strategy slow = new Strategy() {
+            @Override
+            public String getName() {
+                return "slow";
+            }
+
+            @Override
+            public List<Bet> evaluate(BookSnapshot snapshot) throws Exception {
+                release.await();
+                return Collections.singletonList(new Bet());
+            }
+        };
+        Strategy fast = new FixedStrategy("fast", 1);
+        runtime.subscribe(slow, MARKET_ID);
+        runtime.subscribe(fast, MARKET_ID);
+
+        // the slow strategy misses the timeout, so only the fast strategy's bet is placed
+        assertThat(runtime.onPrices(MARKET_ID, runners).size(), is(1));
+        assertThat(runtime.getStats(slow).getTimeouts(), is(1L));
+
+        // while it is still running, the slow strategy is not given the next snapshot
+        long start = System.currentTimeMillis();
+        assertThat(runtime.onPrices(MARKET_ID, runners).size(), is(1));
+        assertThat(System.currentTimeMillis() - start < 200, is(true));
+        assertThat(runtime.getStats(slow).getSkipped(), is(1L));
+        assertThat(runtime.getStats(fast).getEvaluations(), is(2L));
+
+        release.countDown();
+    }
+
+    @Test
+    public void testInFlightEvaluationsAreCappedPerStrategy() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Strategy stuck = new Strategy() {
+            @Override
+            public String getName() {
+                return "stuck";
+            }
+
+            @Override
+            public List<Bet> evaluate(BookSnapshot snapshot) throws Exception {
+                release.await();
+                return Collections.emptyList();
+            }
+        };
+        runtime.setMaxInFlight(2);
+        runtime.subscribe(stuck, MARKET_ID, MARKET_ID + 1, MARKET_ID + 2);
+
+        runtime.onPrices(MARKET_ID, runners);
+        runtime.onPrices(MARKET_ID + 1, runners);
+        assertThat(runtime.getStats(stuck).getTimeouts(), is(2L));
+
+        // a third market is skipped rather than queued behind the two stuck evaluations
+        long start = System.currentTimeMillis();
+        runtime.onPrices(MARKET_ID + 2, runners);
+        assertThat(System.currentTimeMillis() - start < 200, is(true));
+        assertThat(runtime.getStats(stuck).getSkipped(), is(1L));
+
+        release.countDown();
+    }
+
+    @Test
+    public void testSnapshotIncludesBook() {
+        final List<BookSnapshot> snapshots = Collections.synchronizedList(new ArrayList<BookSnapshot>());
+        runtime.subscribe(new Strategy() {
+            @Override
+            public String getName() {
+                return "recording";
+            }
+
+            @Override
+            public List<Bet> evaluate(BookSnapshot snapshot) {
+                snapshots.add(snapshot);
+                return Collections.emptyList();
+            }
+        }, MARKET_ID);
+
+        runtime.onPrices(MARKET_ID, runners);
+
+        assertThat(snapshots.size(), is(1));
+        assertThat(snapshots.get(0).getMarketId(), is(MARKET_ID));
+        assertThat(snapshots.get(0).getRunners().size(), is(runners.size()));
+        assertThat(snapshots.get(0).getBook().getRunnerCount(), is(runners.size()));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // backs the first runner in the snapshot a fixed number of times
+    private static class FixedStrategy implements Strategy {
+
+        private final String name;
+        private final int bets;
+
+        private FixedStrategy(String name, int bets) {
+            this.name = name;
+            this.bets = bets;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<Bet> evaluate(BookSnapshot snapshot) {
+            List<Bet> result = new ArrayList<Bet>();
+            for (int i = 0; i < bets; i++) {
+                Bet bet = new Bet(snapshot.getMarketId(), snapshot.getRunners().get(0).getRunnerPrices().getSelectionId(),
+                        BetTypeEnum.B, 3.0, 10.0, null, null, null);
+                bet.setSize(2.0);
+                result.add(bet);
+            }
+            return result;
+        }
+    }
+
+}
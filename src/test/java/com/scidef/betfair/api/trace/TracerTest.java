@@ -0,0 +1,133 @@
+package com.scidef.betfair.api.trace;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the <code>Tracer</code> and <code>RingBufferSpanSink</code> classes.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class TracerTest {
+
+    private RingBufferSpanSink sink;
+
+    @Before
+    public void enableTracing() {
+        sink = new RingBufferSpanSink(16);
+        Tracer.setSink(sink);
+    }
+
+    @After
+    public void disableTracing() {
+        Tracer.setSink(null);
+    }
+
+    @Test
+    public void testNestedSpansShareTrace() {
+        Span root = Tracer.start("HorseRacing.getRunners");
+        Span child = Tracer.start("ExchangeAPI.getMarketPricesCompressed");
+        assertThat(Tracer.current(), is(sameInstance(child)));
+        child.end();
+        assertThat(Tracer.current(), is(sameInstance(root)));
+        Tracer.record("PollingScheduler.queued", root.getStartNanos(), root.getStartNanos() + 1000);
+        root.end();
+        assertThat(Tracer.current(), is(nullValue()));
+
+        List<Span> spans = sink.getSpans();
+        assertThat(spans.size(), is(3));
+        assertThat(spans.get(0).getName(), is("ExchangeAPI.getMarketPricesCompressed"));
+        assertThat(spans.get(0).getParentSpanId(), is(root.getSpanId()));
+        assertThat(spans.get(1).getParentSpanId(), is(root.getSpanId()));
+        assertThat(spans.get(1).getDurationNanos(), is(1000L));
+        assertThat(spans.get(2), is(sameInstance(root)));
+        assertThat(root.isRoot(), is(true));
+        for (Span span : spans) {
+            assertThat(span.getTraceId(), is(root.getTraceId()));
+        }
+    }
+
+    @Test
+    public void testEndingTwiceEmitsOnce() {
+        Span span = Tracer.start("HorseRacing.getRunners");
+        span.end();
+        span.end();
+
+        assertThat(sink.getWritten(), is(1L));
+    }
+
+    @Test
+    public void testDisabledTracingIsNoOp() {
+        Tracer.setSink(null);
+
+        Span span = Tracer.start("HorseRacing.getRunners");
+        assertThat(span, is(sameInstance(Span.NOOP)));
+        assertThat(Tracer.current(), is(nullValue()));
+        span.end();
+        Tracer.record("PollingScheduler.queued", 0, 1000);
+
+        assertThat(sink.getWritten(), is(0L));
+    }
+
+    @Test
+    public void testRingBufferKeepsLatestSpans() {
+        for (int i = 0; i < 20; i++) {
+            Tracer.start("span" + i).end();
+        }
+
+        List<Span> spans = sink.getSpans();
+        assertThat(sink.getWritten(), is(20L));
+        assertThat(spans.size(), is(16));
+        assertThat(spans.get(0).getName(), is("span4"));
+        assertThat(spans.get(15).getName(), is("span19"));
+
+        sink.clear();
+        assertThat(sink.getSpans().size(), is(0));
+    }
+
+    @Test
+    public void testDump() {
+        Span root = Tracer.start("HorseRacing.getRunners");
+        Tracer.start("ExchangeAPI.getMarketPricesCompressed").end();
+        Tracer.start("MessageUtil.parseCompressedMarketPrices").end();
+        root.end();
+
+        String[] lines = sink.dump().split("\n");
+
+        assertThat(lines.length, is(4));
+        assertThat(lines[0], is("trace " + root.getTraceId()));
+        assertTrue(lines[1].startsWith("  HorseRacing.getRunners "));
+        assertTrue(lines[1].contains("+0us"));
+        assertTrue(lines[2].startsWith("    ExchangeAPI.getMarketPricesCompressed "));
+        assertTrue(lines[3].startsWith("    MessageUtil.parseCompressedMarketPrices "));
+    }
+
+    @Test
+    public void testOverheadUnderAMicrosecond() {
+        sink = new RingBufferSpanSink();
+        Tracer.setSink(sink);
+        int spans = 200000;
+        // the first rounds warm up; take the best round so a GC or JIT pause doesn't count
+        long perSpan = Long.MAX_VALUE;
+        for (int round = 0; round < 10; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < spans; i++) {
+                Tracer.start("HorseRacing.getRunners").end();
+            }
+            perSpan = Math.min(perSpan, (System.nanoTime() - start) / spans);
+        }
+
+        assertTrue("span took " + perSpan + "ns", perSpan < 1000);
+    }
+
+}
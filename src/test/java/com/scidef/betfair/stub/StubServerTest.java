@@ -0,0 +1,242 @@
+package com.scidef.betfair.stub;
+
+import com.scidef.betfair.api.GlobalAPI;
+import com.scidef.betfair.api.StreamingExchangeAPI;
+import com.scidef.betfair.api.exception.BetfairException;
+import com.scidef.betfair.api.exception.ExceededThrottleException;
+import com.scidef.betfair.api.exception.NoSessionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.scidef.betfair.api.TestConstant.COMPRESSED_MARKET_DATA;
+import static com.scidef.betfair.api.TestConstant.MARKET_ID;
+import static com.scidef.betfair.api.TestConstant.NEW_SESSION_TOKEN;
+import static com.scidef.betfair.api.TestConstant.SESSION_TOKEN;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the <code>StubServer</code> and <code>TrafficRecorder</code> classes.
+ * <p/>
+ * User: tompearson
+ * Date: 19/10/2026
+ */
+public class StubServerTest {
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 125;
+
+    private HttpServer upstream;
+    private final AtomicInteger upstreamRequests = new AtomicInteger();
+    private TrafficRecorder recorder;
+    private StubServer stub;
+
+    @Before
+    public void startUpstream() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext(StubServer.EXCHANGE_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                upstreamRequests.incrementAndGet();
+                SoapMessages.read(exchange.getRequestBody());
+                byte[] body = response(COMPRESSED_MARKET_DATA).getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        upstream.start();
+        String endpoint = "http://localhost:" + upstream.getAddress().getPort() + StubServer.EXCHANGE_PATH;
+        recorder = new TrafficRecorder(TrafficRecorder.DEFAULT_GLOBAL_ENDPOINT, endpoint, 0);
+        recorder.start();
+    }
+
+    @After
+    public void stopServers() {
+        recorder.stop();
+        upstream.stop(0);
+        if (stub != null) {
+            stub.stop();
+        }
+    }
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        assertThat(client(SESSION_TOKEN, recorder.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID),
+                is(COMPRESSED_MARKET_DATA));
+
+        List<RecordedCall> calls = recorder.getRecording().getCalls();
+        assertThat(calls.size(), is(1));
+        assertThat(calls.get(0).getService(), is(StubServer.EXCHANGE));
+        assertThat(calls.get(0).getOperation(), is("getMarketPricesCompressed"));
+        assertThat(calls.get(0).getStatus(), is(200));
+
+        // saved and loaded, and replayed to a client with another session
+        File dir = new File(System.getProperty("java.io.tmpdir"), "stub-" + System.nanoTime());
+        try {
+            recorder.getRecording().save(dir);
+            startStub(Recording.load(dir));
+        } finally {
+            File[] files = dir.listFiles();
+            for (int i = 0; files != null && i < files.length; i++) {
+                files[i].delete();
+            }
+            dir.delete();
+        }
+
+        assertThat(client(NEW_SESSION_TOKEN, stub.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID),
+                is(COMPRESSED_MARKET_DATA));
+        assertThat(stub.getUnmatched(), is(0L));
+        assertThat(upstreamRequests.get(), is(1));
+    }
+
+    @Test
+    public void testUnrecordedCallIsAnsweredForSameOperation() throws Exception {
+        record();
+
+        assertThat(client(SESSION_TOKEN, stub.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID + 1),
+                is(COMPRESSED_MARKET_DATA));
+        assertThat(stub.getUnmatched(), is(1L));
+    }
+
+    @Test(expected = BetfairException.class)
+    public void testUnrecordedOperationIsFault() throws Exception {
+        startStub(new Recording());
+
+        client(SESSION_TOKEN, stub.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID);
+    }
+
+    @Test
+    public void testErrorInjection() throws Exception {
+        record();
+
+        stub.setThrottleRate(1);
+        try {
+            client(SESSION_TOKEN, stub.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID);
+            fail("expected an ExceededThrottleException");
+        } catch (ExceededThrottleException e) {
+            assertThat(stub.getThrottled(), is(1L));
+        }
+
+        stub.setThrottleRate(0);
+        stub.setNoSessionRate(1);
+        try {
+            client(SESSION_TOKEN, stub.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID);
+            fail("expected a NoSessionException");
+        } catch (NoSessionException e) {
+            assertThat(stub.getNoSessions(), is(1L));
+        }
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        record();
+        stub.setLatency(LatencyDistribution.fixed(100));
+
+        long start = System.currentTimeMillis();
+        client(SESSION_TOKEN, stub.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID);
+
+        assertTrue(System.currentTimeMillis() - start >= 100);
+    }
+
+    @Test
+    public void testLatencyDistributions() {
+        for (int i = 0; i < 1000; i++) {
+            long uniform = LatencyDistribution.uniform(10, 20).nextMillis();
+            assertTrue(uniform >= 10 && uniform <= 20);
+            assertTrue(LatencyDistribution.logNormal(50, 0.5).nextMillis() >= 0);
+        }
+        assertThat(LatencyDistribution.none().nextMillis(), is(0L));
+    }
+
+    @Test
+    public void testConcurrentLoad() throws Exception {
+        record();
+        stub.setLatency(LatencyDistribution.uniform(0, 5));
+        final StreamingExchangeAPI client = client(SESSION_TOKEN, stub.getExchangeEndpoint());
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws BetfairException {
+                        int ok = 0;
+                        for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+                            if (COMPRESSED_MARKET_DATA.equals(client.getMarketPricesCompressed(MARKET_ID))) {
+                                ok++;
+                            }
+                        }
+                        return ok;
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertThat(future.get(), is(REQUESTS_PER_THREAD));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(stub.getRequests(), is((long) THREADS * REQUESTS_PER_THREAD));
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    // record a call, then serve the recording
+    private void record() throws Exception {
+        client(SESSION_TOKEN, recorder.getExchangeEndpoint()).getMarketPricesCompressed(MARKET_ID);
+        startStub(recorder.getRecording());
+    }
+
+    private void startStub(Recording recording) throws IOException {
+        stub = new StubServer(recording);
+        stub.start();
+    }
+
+    private static StreamingExchangeAPI client(String sessionToken, String endpoint) {
+        GlobalAPI globalAPI = mock(GlobalAPI.class);
+        when(globalAPI.getSessionToken()).thenReturn(sessionToken);
+        return new StreamingExchangeAPI(globalAPI, endpoint, 5000, 5000);
+    }
+
+    private static String response(String marketPrices) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" " +
+                "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+                "<soap:Body><n:getMarketPricesCompressedResponse " +
+                "xmlns:n=\"http://www.betfair.com/publicapi/v5/BFExchangeService/\">" +
+                "<n:Result xsi:type=\"n2:GetMarketPricesCompressedResp\" " +
+                "xmlns:n2=\"http://www.betfair.com/publicapi/types/exchange/v5/\">" +
+                "<header><errorCode>OK</errorCode><minorErrorCode xsi:nil=\"1\"/>" +
+                "<sessionToken>" + SESSION_TOKEN + "</sessionToken>" +
+                "<timestamp>2026-10-19T12:00:00.000Z</timestamp></header>" +
+                "<errorCode>OK</errorCode>" +
+                "<marketPrices>" + marketPrices.replace("&", "&amp;").replace("<", "&lt;") + "</marketPrices>" +
+                "<minorErrorCode xsi:nil=\"1\"/></n:Result></n:getMarketPricesCompressedResponse>" +
+                "</soap:Body></soap:Envelope>";
+    }
+
+}